@@ -0,0 +1,106 @@
+package com.coolioasjulio.rpc.benchmarks;
+
+import com.coolioasjulio.rpc.client.CallOptions;
+import com.coolioasjulio.rpc.client.RPCClient;
+import com.coolioasjulio.rpc.codec.WireFormat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Round trips over piped streams with different kinds of arguments. <code>NESTED_POJO</code> and <code>REMOTE</code>
+ * pass the same tree, once by value and once as a remote object that stays on the server.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ArgumentShapeBenchmark {
+    private static final int STRING_LENGTH = 1024;
+    private static final int ARRAY_LENGTH = 10000;
+    private static final int TREE_DEPTH = 4;
+    private static final int TREE_FANOUT = 4;
+
+    @Param({"PRIMITIVES", "STRING", "LARGE_ARRAY", "NESTED_POJO", "REMOTE"})
+    public Shape shape;
+
+    @Param({"JSON", "BINARY"})
+    public WireFormat format;
+
+    private RPCConnection connection;
+    private RPCClient client;
+    private String methodName;
+    private String[] argClassNames;
+    private Object[] args;
+
+    @Setup
+    public void setup() throws IOException, ExecutionException, InterruptedException {
+        connection = new RPCConnection(Transport.PIPED, format);
+        client = connection.getClient();
+
+        switch (shape) {
+            case PRIMITIVES:
+                methodName = "add";
+                argClassNames = new String[]{"java.lang.Integer", "java.lang.Integer"};
+                args = new Object[]{1, 2};
+                break;
+
+            case STRING:
+                methodName = "length";
+                argClassNames = new String[]{"java.lang.String"};
+                args = new Object[]{BenchmarkTargets.string(STRING_LENGTH)};
+                break;
+
+            case LARGE_ARRAY:
+                methodName = "sum";
+                argClassNames = new String[]{double[].class.getName()};
+                args = new Object[]{BenchmarkTargets.array(ARRAY_LENGTH)};
+                break;
+
+            case NESTED_POJO:
+                methodName = "count";
+                argClassNames = new String[]{BenchmarkTargets.NODE_CLASS_NAME};
+                args = new Object[]{BenchmarkTargets.tree(TREE_DEPTH, TREE_FANOUT)};
+                break;
+
+            case REMOTE:
+                // Build the tree on the server, and keep it there
+                client.executeStaticMethodAsync(BenchmarkTargets.CLASS_NAME, "tree",
+                        new String[]{"java.lang.Integer", "java.lang.Integer"}, new Object[]{TREE_DEPTH, TREE_FANOUT},
+                        CallOptions.DEFAULT.withResultName("tree")).get();
+                methodName = "count";
+                argClassNames = new String[]{"REMOTE:" + BenchmarkTargets.NODE_CLASS_NAME};
+                args = new Object[]{"tree"};
+                break;
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        connection.close();
+    }
+
+    @Benchmark
+    public Object call() {
+        return client.executeStaticMethod(BenchmarkTargets.CLASS_NAME, methodName, argClassNames, args);
+    }
+
+    public enum Shape {
+        PRIMITIVES, STRING, LARGE_ARRAY, NESTED_POJO, REMOTE
+    }
+}
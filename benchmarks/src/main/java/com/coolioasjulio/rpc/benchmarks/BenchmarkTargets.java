@@ -0,0 +1,80 @@
+package com.coolioasjulio.rpc.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Static methods that the benchmarks call over RPC, one for each argument shape.
+ */
+public class BenchmarkTargets {
+    public static final String CLASS_NAME = BenchmarkTargets.class.getName();
+    public static final String NODE_CLASS_NAME = Node.class.getName();
+
+    public static int add(int a, int b) {
+        return a + b;
+    }
+
+    public static int length(String s) {
+        return s.length();
+    }
+
+    public static double sum(double[] values) {
+        double sum = 0;
+        for (double value : values) {
+            sum += value;
+        }
+        return sum;
+    }
+
+    public static int count(Node node) {
+        int count = 1;
+        if (node.children != null) {
+            for (Node child : node.children) {
+                count += count(child);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Build a complete tree of nodes.
+     *
+     * @param depth  The number of levels below the root.
+     * @param fanout The number of children of each node.
+     * @return The root of the tree.
+     */
+    public static Node tree(int depth, int fanout) {
+        Node node = new Node();
+        node.value = depth;
+        node.name = "node-" + depth;
+        if (depth > 0) {
+            node.children = new ArrayList<>();
+            for (int i = 0; i < fanout; i++) {
+                node.children.add(tree(depth - 1, fanout));
+            }
+        }
+        return node;
+    }
+
+    public static double[] array(int length) {
+        double[] values = new double[length];
+        for (int i = 0; i < length; i++) {
+            values[i] = i * 0.5;
+        }
+        return values;
+    }
+
+    public static String string(int length) {
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append((char) ('a' + i % 26));
+        }
+        return sb.toString();
+    }
+
+    public static class Node {
+        public int value;
+        public String name;
+        public List<Node> children;
+    }
+}
@@ -0,0 +1,176 @@
+package com.coolioasjulio.rpc.benchmarks;
+
+import com.coolioasjulio.rpc.RPCRequest;
+import com.coolioasjulio.rpc.RPCResponse;
+import com.coolioasjulio.rpc.client.RPCResponseDecoder;
+import com.coolioasjulio.rpc.codec.Attachments;
+import com.coolioasjulio.rpc.codec.BinaryCodec;
+import com.coolioasjulio.rpc.server.DispatchCache;
+import com.coolioasjulio.rpc.server.RPCRequestDecoder;
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.reflect.TypeToken;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serialization of requests and responses, with no dispatch or I/O. The binary benchmarks measure the steady state,
+ * where every name has already been interned.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecBenchmark {
+    private static final Type JSON_RESPONSE_TYPE = new TypeToken<RPCResponse<JsonElement>>() {}.getType();
+
+    private final Gson gson = new Gson();
+    private final RPCRequestDecoder decoder = new RPCRequestDecoder(gson, new DispatchCache());
+    private final RPCResponseDecoder responseDecoder = new RPCResponseDecoder(gson);
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+    private RPCRequest request;
+    private RPCResponse<Double> response;
+    private String requestJson;
+    private String responseJson;
+    private String treeResponseJson;
+
+    private BinaryCodec binaryWriter;
+    private BinaryCodec binaryReader;
+    private byte[] requestFrame;
+    private byte[] responseFrame;
+
+    private double[] samples;
+    private String samplesJson;
+    private ByteBuffer samplesPayload;
+
+    @Setup
+    public void setup() throws IOException {
+        request = new RPCRequest(1, false, "java.lang.Math", "", "max",
+                new String[]{"java.lang.Double", "java.lang.Double"}, new Object[]{1.5, 2.5});
+        response = new RPCResponse<>(1, 2.5);
+        requestJson = gson.toJson(request);
+        responseJson = gson.toJson(response);
+        treeResponseJson = gson.toJson(new RPCResponse<>(1, BenchmarkTargets.tree(3, 4)));
+
+        binaryWriter = new BinaryCodec(gson);
+        binaryReader = new BinaryCodec(gson);
+        // The first frame interns the names, and the second refers to them by index
+        binaryWriter.writeRequest(buffer, request);
+        binaryReader.readRequest(new ByteArrayInputStream(buffer.toByteArray()));
+        buffer.reset();
+        binaryWriter.writeRequest(buffer, request);
+        requestFrame = buffer.toByteArray();
+
+        buffer.reset();
+        binaryWriter.writeResponse(buffer, response);
+        responseFrame = buffer.toByteArray();
+
+        samples = new double[4096];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = Math.sin(i) * 1000;
+        }
+        samplesJson = gson.toJson(samples);
+        samplesPayload = Attachments.encode(samples);
+    }
+
+    @Benchmark
+    public String jsonEncodeRequest() {
+        return gson.toJson(request);
+    }
+
+    @Benchmark
+    public RPCRequest jsonDecodeRequest() {
+        return decoder.decode(requestJson);
+    }
+
+    @Benchmark
+    public String jsonEncodeResponse() {
+        return gson.toJson(response);
+    }
+
+    @Benchmark
+    public RPCResponse<Double> jsonDecodeResponse() {
+        return responseDecoder.decode(responseJson, Double.class);
+    }
+
+    @Benchmark
+    public BenchmarkTargets.Node jsonDecodeTreeResponse() {
+        RPCResponse<BenchmarkTargets.Node> decoded = responseDecoder.decode(treeResponseJson, BenchmarkTargets.Node.class);
+        return decoded.getValue();
+    }
+
+    /**
+     * Decoding the response into a parse tree, and then binding the value, as the client did before responses were
+     * decoded in a single pass.
+     */
+    @Benchmark
+    public BenchmarkTargets.Node jsonDecodeTreeResponseTwoPass() {
+        RPCResponse<JsonElement> decoded = gson.fromJson(treeResponseJson, JSON_RESPONSE_TYPE);
+        return gson.fromJson(decoded.getValue(), BenchmarkTargets.Node.class);
+    }
+
+    @Benchmark
+    public int binaryEncodeRequest() throws IOException {
+        buffer.reset();
+        binaryWriter.writeRequest(buffer, request);
+        return buffer.size();
+    }
+
+    @Benchmark
+    public RPCRequest binaryDecodeRequest() throws IOException {
+        return binaryReader.readRequest(new ByteArrayInputStream(requestFrame));
+    }
+
+    @Benchmark
+    public int binaryEncodeResponse() throws IOException {
+        buffer.reset();
+        binaryWriter.writeResponse(buffer, response);
+        return buffer.size();
+    }
+
+    @Benchmark
+    public RPCResponse<Double> binaryDecodeResponse() throws IOException {
+        return binaryReader.readResponse(new ByteArrayInputStream(responseFrame), Double.class);
+    }
+
+    @Benchmark
+    public String jsonEncodeSamples() {
+        return gson.toJson(samples);
+    }
+
+    @Benchmark
+    public double[] jsonDecodeSamples() {
+        return gson.fromJson(samplesJson, double[].class);
+    }
+
+    /**
+     * Encoding a primitive array as a binary attachment of the JSON wire format, instead of as JSON text.
+     */
+    @Benchmark
+    public ByteBuffer attachmentEncodeSamples() {
+        return Attachments.encode(samples);
+    }
+
+    @Benchmark
+    public Object attachmentDecodeSamples() {
+        return Attachments.decode(samplesPayload, "[D");
+    }
+}
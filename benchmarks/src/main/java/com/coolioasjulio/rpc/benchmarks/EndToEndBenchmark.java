@@ -0,0 +1,71 @@
+package com.coolioasjulio.rpc.benchmarks;
+
+import com.coolioasjulio.rpc.client.RPCClient;
+import com.coolioasjulio.rpc.codec.WireFormat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Round trips of <code>RPCClient</code> calls to an <code>RPCServer</code> session, over piped streams and loopback
+ * sockets.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EndToEndBenchmark {
+    private static final String[] ADD_CLASSES = {"java.lang.Integer", "java.lang.Integer"};
+    private static final Object[] ADD_ARGS = {1, 2};
+
+    @Param({"PIPED", "SOCKET"})
+    public Transport transport;
+
+    @Param({"JSON", "BINARY"})
+    public WireFormat format;
+
+    private RPCConnection connection;
+    private RPCClient client;
+
+    @Setup
+    public void setup() throws IOException {
+        connection = new RPCConnection(transport, format);
+        client = connection.getClient();
+        client.instantiateObject("java.lang.StringBuilder", "sb", new String[]{"java.lang.String"},
+                new Object[]{"hello"});
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        connection.close();
+    }
+
+    @Benchmark
+    public Object staticMethod() {
+        return client.executeStaticMethod(BenchmarkTargets.CLASS_NAME, "add", ADD_CLASSES, ADD_ARGS);
+    }
+
+    @Benchmark
+    public Object remoteObjectMethod() {
+        return client.executeMethod("sb", "length");
+    }
+
+    @Benchmark
+    public Object instantiateObject() {
+        return client.instantiateObject("java.lang.Object", "obj");
+    }
+}
@@ -0,0 +1,58 @@
+package com.coolioasjulio.rpc.benchmarks;
+
+import com.coolioasjulio.rpc.client.RPCClient;
+import com.coolioasjulio.rpc.codec.WireFormat;
+import com.coolioasjulio.rpc.server.RPCServer;
+
+import java.io.IOException;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+/**
+ * A client connected to its own session of the RPC server, over piped streams or a loopback socket.
+ */
+class RPCConnection implements AutoCloseable {
+    private static final int PIPE_SIZE = 1 << 20;
+
+    private final RPCClient client;
+    private final RPCServer.RPCSession session;
+    private final Socket socket;
+
+    RPCConnection(Transport transport, WireFormat format) throws IOException {
+        RPCServer server = RPCServer.getInstance();
+        if (transport == Transport.PIPED) {
+            PipedInputStream serverIn = new PipedInputStream(PIPE_SIZE);
+            PipedInputStream clientIn = new PipedInputStream(PIPE_SIZE);
+            PipedOutputStream clientOut = new PipedOutputStream(serverIn);
+            PipedOutputStream serverOut = new PipedOutputStream(clientIn);
+            session = server.createRPCSession(serverIn, serverOut, true);
+            client = new RPCClient(clientIn, clientOut, format);
+            socket = null;
+        } else {
+            try (ServerSocket serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+                socket = new Socket(InetAddress.getLoopbackAddress(), serverSocket.getLocalPort());
+                socket.setTcpNoDelay(true);
+                Socket accepted = serverSocket.accept();
+                accepted.setTcpNoDelay(true);
+                session = server.createRPCSession(accepted.getInputStream(), accepted.getOutputStream(), true);
+            }
+            client = new RPCClient(socket.getInputStream(), socket.getOutputStream(), format);
+        }
+    }
+
+    RPCClient getClient() {
+        return client;
+    }
+
+    @Override
+    public void close() throws Exception {
+        client.close();
+        session.close(true);
+        if (socket != null) {
+            socket.close();
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.coolioasjulio.rpc.benchmarks;
+
+import com.coolioasjulio.rpc.server.RPCServer;
+import com.coolioasjulio.rpc.server.SessionThreadFactories;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures how memory use grows with the number of idle RPC sessions, with a platform or virtual thread per session.
+ * Each session is served over a loopback socket, and answers one request before it's left idle.
+ * <p>
+ * Usage: <code>SessionMemoryBenchmark [platform|virtual] [sessionCount...]</code>
+ */
+public class SessionMemoryBenchmark {
+    private static final String REQUEST = "{\"id\":0,\"className\":\"java.lang.Math\",\"methodName\":\"random\"}";
+
+    public static void main(String[] args) throws Exception {
+        String mode = args.length > 0 ? args[0] : "platform";
+        List<Integer> counts = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            counts.add(Integer.parseInt(args[i]));
+        }
+        if (counts.isEmpty()) {
+            counts.add(100);
+            counts.add(1000);
+            counts.add(5000);
+        }
+
+        RPCServer server = RPCServer.getInstance();
+        if (mode.equals("virtual")) {
+            server.setSessionThreadFactory(SessionThreadFactories.virtualThreads());
+        } else {
+            server.setSessionThreadFactory(SessionThreadFactories.platformThreads(true));
+        }
+
+        try (ServerSocket serverSocket = new ServerSocket(0, 1024, InetAddress.getLoopbackAddress())) {
+            Thread acceptor = new Thread(() -> accept(serverSocket, server), "acceptor");
+            acceptor.setDaemon(true);
+            acceptor.start();
+
+            System.out.printf("%-10s %10s %10s %10s %10s%n", "mode", "sessions", "threads", "heap MB", "rss MB");
+            report(mode, 0);
+            for (int count : counts) {
+                List<Socket> sockets = new ArrayList<>();
+                for (int i = 0; i < count; i++) {
+                    Socket socket = new Socket(InetAddress.getLoopbackAddress(), serverSocket.getLocalPort());
+                    call(socket);
+                    sockets.add(socket);
+                }
+                report(mode, server.getSessionCount());
+
+                for (Socket socket : sockets) {
+                    socket.close();
+                }
+                while (server.getSessionCount() > 0) {
+                    Thread.sleep(10);
+                }
+            }
+        }
+    }
+
+    private static void accept(ServerSocket serverSocket, RPCServer server) {
+        try {
+            while (!serverSocket.isClosed()) {
+                Socket socket = serverSocket.accept();
+                server.createRPCSession(socket.getInputStream(), socket.getOutputStream(), true);
+            }
+        } catch (IOException e) {
+            // The benchmark is done
+        }
+    }
+
+    private static void call(Socket socket) throws IOException {
+        PrintStream out = new PrintStream(socket.getOutputStream(), true, "UTF-8");
+        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        out.println(REQUEST);
+        if (in.readLine() == null) {
+            throw new IOException("Session closed unexpectedly");
+        }
+    }
+
+    private static void report(String mode, int sessions) throws InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        Runtime runtime = Runtime.getRuntime();
+        double heap = (runtime.totalMemory() - runtime.freeMemory()) / 1e6;
+        int threads = ManagementFactory.getThreadMXBean().getThreadCount();
+        System.out.printf("%-10s %10d %10d %10.1f %10s%n", mode, sessions, threads, heap, residentSetSize());
+    }
+
+    private static String residentSetSize() {
+        Path status = Paths.get("/proc/self/status");
+        try {
+            for (String line : Files.readAllLines(status)) {
+                if (line.startsWith("VmRSS:")) {
+                    String kb = line.substring("VmRSS:".length()).trim().split("\\s+")[0];
+                    return String.format("%.1f", Long.parseLong(kb) / 1e3);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // Not available on this platform
+        }
+        return "n/a";
+    }
+}
@@ -0,0 +1,8 @@
+package com.coolioasjulio.rpc.benchmarks;
+
+/**
+ * How a benchmark client is connected to the server.
+ */
+public enum Transport {
+    PIPED, SOCKET
+}
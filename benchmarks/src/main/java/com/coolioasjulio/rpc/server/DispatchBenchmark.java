@@ -0,0 +1,82 @@
+package com.coolioasjulio.rpc.server;
+
+import com.coolioasjulio.rpc.RPCRequest;
+import com.coolioasjulio.rpc.RPCResponse;
+import com.coolioasjulio.rpc.benchmarks.BenchmarkTargets;
+import com.coolioasjulio.rpc.server.invokers.InvocationMode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Dispatch of already decoded requests, with no serialization or I/O. This lives in the server package, since
+ * requests are handled through package-private methods of <code>RPCServer</code>.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DispatchBenchmark {
+    @Param({"REFLECTIVE", "METHOD_HANDLE", "GENERATED"})
+    public InvocationMode invocationMode;
+
+    private final RPCServer server = RPCServer.getInstance();
+    private final SessionObjectRegistry variables = new SessionObjectRegistry();
+
+    private RPCRequest staticMethod;
+    private RPCRequest remoteMethod;
+    private RPCRequest staticObjectMethod;
+    private RPCRequest instantiation;
+
+    @Setup
+    public void setup() {
+        server.setInvocationMode(invocationMode);
+        variables.put("sb", new StringBuilder("hello"));
+
+        staticMethod = typed(new RPCRequest(0, false, BenchmarkTargets.CLASS_NAME, "", "add",
+                new String[]{"java.lang.Integer", "java.lang.Integer"}, new Object[]{1, 2}));
+        remoteMethod = typed(new RPCRequest(1, false, "", "sb", "length", new String[0], new Object[0]));
+        staticObjectMethod = typed(new RPCRequest(2, false, "java.math.BigInteger", "ONE", "signum",
+                new String[0], new Object[0]));
+        instantiation = typed(new RPCRequest(3, true, "java.lang.StringBuilder", "created", "",
+                new String[]{"java.lang.String"}, new Object[]{"hello"}));
+    }
+
+    private static RPCRequest typed(RPCRequest request) {
+        // Requests read by the decoders already have typed arguments
+        request.setArgsTyped(true);
+        return request;
+    }
+
+    @Benchmark
+    public RPCResponse<?> staticMethod() {
+        return server.handleRequest(staticMethod, variables);
+    }
+
+    @Benchmark
+    public RPCResponse<?> remoteObjectMethod() {
+        return server.handleRequest(remoteMethod, variables);
+    }
+
+    @Benchmark
+    public RPCResponse<?> staticObjectMethod() {
+        return server.handleRequest(staticObjectMethod, variables);
+    }
+
+    @Benchmark
+    public RPCResponse<?> instantiateObject() {
+        return server.handleRequest(instantiation, variables);
+    }
+}
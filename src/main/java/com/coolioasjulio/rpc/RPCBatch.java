@@ -0,0 +1,41 @@
+package com.coolioasjulio.rpc;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A batch of RPC requests sent in a single message. The server handles the requests in order, and answers with a
+ * single response whose value is the list of responses to each request, in the same order.
+ */
+public class RPCBatch {
+    private long id = 0;
+    private boolean stopOnError = false;
+    private List<RPCRequest> requests = new ArrayList<>();
+
+    public RPCBatch() {
+        // Empty constructor
+    }
+
+    public RPCBatch(long id, boolean stopOnError, List<RPCRequest> requests) {
+        this.id = id;
+        this.stopOnError = stopOnError;
+        this.requests = requests == null ? new ArrayList<>() : requests;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * Should the rest of the batch be skipped once a request fails? Skipped requests are answered with an exception.
+     *
+     * @return True to stop on the first error, false to handle every request regardless.
+     */
+    public boolean isStopOnError() {
+        return stopOnError;
+    }
+
+    public List<RPCRequest> getRequests() {
+        return requests;
+    }
+}
@@ -7,8 +7,14 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.IntFunction;
 
 public class RPCRequest {
+    // Cancel and demand requests start with one of these in the JSON wire format, so they can be told apart by the
+    // start of the line, without decoding it
+    private static final String CANCEL_PREFIX = "{\"cancel\":";
+    private static final String DEMAND_PREFIX = "{\"demand\":";
+
     private long id = 0;
     private boolean instantiate = false;
     private String className = "";
@@ -16,6 +22,18 @@ public class RPCRequest {
     private String methodName = "";
     private List<String> argClassNames = new ArrayList<>();
     private List<Object> args = new ArrayList<>();
+    private String resultName = null;
+    // Null instead of false or 0, so they're left out of the JSON unless they're used
+    private Boolean release = null;
+    private Integer objectHandle = null;
+    private Boolean returnHandle = null;
+    private Boolean stream = null;
+    private Boolean attachResult = null;
+    private Long timeoutMillis = null;
+    private Boolean cancel = null;
+    private Integer demand = null;
+    private transient boolean argsTyped = false;
+    private transient boolean argsCopied = false;
 
     public RPCRequest() {
         // Empty constructor
@@ -51,10 +69,246 @@ public class RPCRequest {
         return methodName;
     }
 
+    public List<String> getArgClassNames() {
+        return argClassNames;
+    }
+
+    public List<Object> getArgs() {
+        return args;
+    }
+
+    /**
+     * Replace an argument and its class name. The argument lists are copied the first time, since they may be
+     * backed by the arrays the request was created with.
+     *
+     * @param index        The index of the argument.
+     * @param argClassName The new class name of the argument.
+     * @param arg          The new argument.
+     */
+    public void setArg(int index, String argClassName, Object arg) {
+        if (!argsCopied) {
+            argClassNames = new ArrayList<>(argClassNames);
+            args = new ArrayList<>(args);
+            argsCopied = true;
+        }
+        argClassNames.set(index, argClassName);
+        args.set(index, arg);
+    }
+
+    /**
+     * Get the name that the result of this request is stored under in the session variables. If set, the result is
+     * kept on the server as a remote object instead of being sent back, and the response value is null.
+     * Instantiations ignore this, since they're always stored under the object name.
+     *
+     * @return The name of the result, or null if the result is sent back.
+     */
+    public String getResultName() {
+        return resultName;
+    }
+
+    public void setResultName(String resultName) {
+        this.resultName = resultName == null || resultName.isEmpty() ? null : resultName;
+    }
+
+    /**
+     * Is this a request to release a remote object? If so, the object named by <code>objectName</code> is removed
+     * from the session variables, and every other field is ignored. The response value is true if there was an
+     * object to release.
+     *
+     * @return True if this is a release request, false otherwise.
+     */
+    public boolean isRelease() {
+        return release != null && release;
+    }
+
+    public void setRelease(boolean release) {
+        this.release = release ? Boolean.TRUE : null;
+    }
+
+    /**
+     * Get the handle of the remote object this request is addressed to. If set, it's used instead of
+     * <code>objectName</code>, to invoke a method on the object or release it.
+     *
+     * @return The handle of the remote object, or 0 if the object is addressed by name.
+     */
+    public int getObjectHandle() {
+        return objectHandle == null ? 0 : objectHandle;
+    }
+
+    public void setObjectHandle(int objectHandle) {
+        this.objectHandle = objectHandle == 0 ? null : objectHandle;
+    }
+
+    /**
+     * Should the instantiated object be stored under a new handle? If so, <code>objectName</code> is ignored, and
+     * the response value is the handle instead of the object.
+     *
+     * @return True if the instantiated object is stored under a handle, false otherwise.
+     */
+    public boolean isReturnHandle() {
+        return returnHandle != null && returnHandle;
+    }
+
+    public void setReturnHandle(boolean returnHandle) {
+        this.returnHandle = returnHandle ? Boolean.TRUE : null;
+    }
+
+    /**
+     * Should the result be streamed? If so, and the result is an <code>Iterable</code>, <code>Stream</code>,
+     * <code>Iterator</code>, or array, its elements are sent in chunks as they're produced, instead of all at once.
+     * Each chunk is a response whose value is a list of elements. Any other result is sent as a single chunk with
+     * one element, or none if it's null.
+     *
+     * @return True if the result is streamed, false otherwise.
+     */
+    public boolean isStream() {
+        return stream != null && stream;
+    }
+
+    public void setStream(boolean stream) {
+        this.stream = stream ? Boolean.TRUE : null;
+    }
+
+    /**
+     * Should a primitive array or <code>ByteBuffer</code> result be sent as a binary attachment? This only affects
+     * the JSON wire format, since the binary wire format always sends them as raw bytes.
+     *
+     * @return True if the result is sent as an attachment if it can be, false otherwise.
+     */
+    public boolean isAttachResult() {
+        return attachResult != null && attachResult;
+    }
+
+    public void setAttachResult(boolean attachResult) {
+        this.attachResult = attachResult ? Boolean.TRUE : null;
+    }
+
+    /**
+     * Get the time the server has to answer this request, counted from when it receives it. If the request is still
+     * waiting to run when the time is up, it's skipped, and if it's running, its thread is interrupted. Either way it's
+     * answered with a <code>DEADLINE_EXCEEDED</code> exception response. Requests in a batch ignore this.
+     *
+     * @return The timeout in milliseconds, or 0 if the request has no deadline.
+     */
+    public long getTimeoutMillis() {
+        return timeoutMillis == null ? 0 : timeoutMillis;
+    }
+
+    public void setTimeoutMillis(long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis > 0 ? timeoutMillis : null;
+    }
+
+    /**
+     * Is this a request to cancel an earlier request? If so, the request or batch with the same id is cancelled, and
+     * every other field is ignored. A request that's still waiting to run is skipped, and one that's running has its
+     * thread interrupted. Either way it's answered with a <code>CANCELLED</code> exception response. The cancel
+     * request itself isn't answered, and does nothing if the request it names has already been answered.
+     *
+     * @return True if this is a cancel request, false otherwise.
+     */
+    public boolean isCancel() {
+        return cancel != null && cancel;
+    }
+
+    public void setCancel(boolean cancel) {
+        this.cancel = cancel ? Boolean.TRUE : null;
+    }
+
+    /**
+     * Get the number of chunks of a streamed result that the client is ready for. On a streaming request, this is
+     * how many chunks the server may send before it waits for more demand, or 0 if it never waits. On a demand
+     * request, it's how many more chunks the server may send.
+     *
+     * @return The number of chunks.
+     */
+    public int getDemand() {
+        return demand == null ? 0 : demand;
+    }
+
+    public void setDemand(int demand) {
+        this.demand = demand > 0 ? demand : null;
+    }
+
+    /**
+     * Is this a request for more chunks of a streamed result? If so, the server may send <code>getDemand</code>
+     * more chunks of the streaming request with the same id, and every other field is ignored. The client sends one
+     * as it consumes chunks, so that the server doesn't send more than the client has room for, and a slow consumer
+     * doesn't hold up the responses to other calls. Demand requests aren't answered.
+     *
+     * @return True if this is a demand request, false otherwise.
+     */
+    public boolean isDemand() {
+        return demand != null && !isStream();
+    }
+
+    /**
+     * Encode a cancel or demand request as JSON, with the field that makes it one first. Decoding it gives the same
+     * request as Gson's encoding does, but <code>isControlJson</code> can recognize it without decoding it.
+     *
+     * @return The JSON-encoded request, without a newline.
+     * @throws IllegalStateException If this isn't a cancel or demand request.
+     */
+    public String toControlJson() {
+        if (isCancel()) {
+            return CANCEL_PREFIX + "true,\"id\":" + id + "}";
+        } else if (isDemand()) {
+            return DEMAND_PREFIX + demand + ",\"id\":" + id + "}";
+        }
+        throw new IllegalStateException("Not a cancel or demand request!");
+    }
+
+    /**
+     * Is the specified line a cancel or demand request, as encoded by <code>toControlJson</code>? This only looks at
+     * the start of the line, so it's cheap enough to check every line with. Control requests encoded some other way
+     * aren't recognized, but they're still handled once they're decoded.
+     *
+     * @param line The line read from the stream.
+     * @return True if the line is a cancel or demand request, false otherwise.
+     */
+    public static boolean isControlJson(String line) {
+        return line != null && (line.startsWith(CANCEL_PREFIX) || line.startsWith(DEMAND_PREFIX));
+    }
+
+    /**
+     * Are the arguments already bound to the classes in argClassNames? This is the case for requests read by a
+     * decoder that binds the arguments while parsing. Remote object arguments are still the names of the objects.
+     *
+     * @return True if the arguments are already typed, false otherwise.
+     */
+    public boolean isArgsTyped() {
+        return argsTyped;
+    }
+
+    public void setArgsTyped(boolean argsTyped) {
+        this.argsTyped = argsTyped;
+    }
+
+    /**
+     * Do any of the arguments refer to remote objects of the session, by name or by handle?
+     *
+     * @return True if there are remote object arguments, false otherwise.
+     */
+    public boolean hasRemoteArgs() {
+        for (String className : argClassNames) {
+            if (isRemoteObject(className) || isRemoteHandle(className)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     private boolean isRemoteObject(String className) {
         return className.startsWith("REMOTE:");
     }
 
+    private boolean isRemoteHandle(String className) {
+        return className.startsWith("HANDLE:");
+    }
+
+    private boolean isAttachment(String className) {
+        return className.startsWith("ATTACHMENT:");
+    }
+
     /**
      * Get the argument classes.
      *
@@ -75,7 +329,7 @@ public class RPCRequest {
     public List<Class<?>> getClasses(Map<Class<?>, Class<?>> unboxMap) throws ClassNotFoundException {
         List<Class<?>> classes = new ArrayList<>();
         for (String className : argClassNames) {
-            if (isRemoteObject(className)) {
+            if (isRemoteObject(className) || isRemoteHandle(className) || isAttachment(className)) {
                 className = className.split(":", 2)[1];
             }
             Class<?> clazz = Class.forName(className);
@@ -92,23 +346,69 @@ public class RPCRequest {
      * @throws ClassNotFoundException If one of the classes specified in the array doesn't exist.
      */
     public Object[] getTypedArgs(Map<String, Object> sessionVariables) throws ClassNotFoundException {
-        List<Class<?>> classes = getClasses();
-        List<Object> typedArgs = new ArrayList<>();
-        Gson gson = new Gson();
+        return getTypedArgs(sessionVariables, getClasses().toArray(new Class<?>[0]));
+    }
+
+    /**
+     * Get the arguments of the RPCRequest casted to the supplied classes. This avoids looking up the argument
+     * classes by name if they have already been resolved.
+     *
+     * @param sessionVariables The remote objects present in the current RPC session. Used for remote objects.
+     * @param classes          The classes of the arguments, as named in argClassNames. (not unboxed)
+     * @return An array of objects representing the parameters.
+     */
+    public Object[] getTypedArgs(Map<String, Object> sessionVariables, Class<?>[] classes) {
+        return getTypedArgs(sessionVariables, classes, null);
+    }
+
+    /**
+     * Get the arguments of the RPCRequest casted to the supplied classes.
+     *
+     * @param sessionVariables The remote objects present in the current RPC session. Used for remote objects.
+     * @param classes          The classes of the arguments, as named in argClassNames. (not unboxed)
+     * @param gson             The Gson instance used to convert untyped arguments. If null, a new one is created.
+     * @return An array of objects representing the parameters.
+     */
+    public Object[] getTypedArgs(Map<String, Object> sessionVariables, Class<?>[] classes, Gson gson) {
+        return getTypedArgs(sessionVariables, null, classes, gson);
+    }
+
+    /**
+     * Get the arguments of the RPCRequest casted to the supplied classes.
+     *
+     * @param sessionVariables The remote objects present in the current RPC session. Used for remote objects.
+     * @param sessionHandles   Looks up the remote objects of the current RPC session by handle. Used for
+     *                         <code>HANDLE:</code> arguments. If null, those arguments are null.
+     * @param classes          The classes of the arguments, as named in argClassNames. (not unboxed)
+     * @param gson             The Gson instance used to convert untyped arguments. If null, a new one is created.
+     * @return An array of objects representing the parameters.
+     */
+    public Object[] getTypedArgs(Map<String, Object> sessionVariables, IntFunction<Object> sessionHandles,
+                                 Class<?>[] classes, Gson gson) {
+        Object[] typedArgs = new Object[classes.length];
+        if (!argsTyped && gson == null) {
+            gson = new Gson();
+        }
 
-        for (int i = 0; i < classes.size(); i++) {
+        for (int i = 0; i < classes.length; i++) {
             Object o = args.get(i);
             Object typedArg;
-            Class<?> clazz = classes.get(i);
-            if (isRemoteObject(argClassNames.get(i))) {
+            Class<?> clazz = classes[i];
+            String className = argClassNames.get(i);
+            if (isRemoteHandle(className)) {
+                int handle = o instanceof Number ? ((Number) o).intValue() : gson.fromJson(gson.toJson(o), int.class);
+                typedArg = sessionHandles == null ? null : sessionHandles.apply(handle);
+            } else if (argsTyped) {
+                typedArg = isRemoteObject(className) ? sessionVariables.get(o) : o;
+            } else if (isRemoteObject(className)) {
                 typedArg = sessionVariables.get(gson.fromJson(gson.toJson(o), String.class));
             } else {
                 typedArg = gson.fromJson(gson.toJson(o), clazz);
             }
-            typedArgs.add(typedArg);
-            assert clazz.isInstance(typedArg);
+            typedArgs[i] = typedArg;
+            assert typedArg == null || clazz.isInstance(typedArg);
         }
 
-        return typedArgs.toArray();
+        return typedArgs;
     }
 }
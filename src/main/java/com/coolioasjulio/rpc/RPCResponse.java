@@ -1,18 +1,46 @@
 package com.coolioasjulio.rpc;
 
 public class RPCResponse<T> {
+    /**
+     * Why a request wasn't answered with its result. Responses with an error code are exception responses, whose
+     * value describes the error.
+     */
+    public enum ErrorCode {
+        /**
+         * The request didn't finish before its deadline.
+         */
+        DEADLINE_EXCEEDED,
+        /**
+         * The client cancelled the request.
+         */
+        CANCELLED,
+        /**
+         * The server was too busy to take the request, so it wasn't run. It's safe to send it again later.
+         */
+        OVERLOADED
+    }
+
     private long id;
     private boolean isException;
     private T value;
+    // Null instead of false, so they're left out of the JSON unless they're used
+    private Boolean more = null;
+    private String attachment = null;
+    private ErrorCode errorCode = null;
 
     public RPCResponse(long id, T value) {
         this(id, value, false);
     }
 
     public RPCResponse(long id, T value, boolean isException) {
+        this(id, value, isException, false);
+    }
+
+    public RPCResponse(long id, T value, boolean isException, boolean more) {
         this.id = id;
         this.value = value;
         this.isException = isException;
+        this.more = more ? Boolean.TRUE : null;
     }
 
     public T getValue() {
@@ -26,4 +54,41 @@ public class RPCResponse<T> {
     public boolean isException() {
         return isException;
     }
+
+    /**
+     * Are there more responses to the same request? The result of a streaming request is sent as a series of
+     * responses, whose values are chunks of the result. Every chunk but the last has this set.
+     *
+     * @return True if more responses follow, false if this is the last one.
+     */
+    public boolean isMore() {
+        return more != null && more;
+    }
+
+    /**
+     * Get the class name of a value that's sent as a binary attachment in the JSON wire format, instead of in the
+     * <code>value</code> field. The attachment is sent right before the response.
+     *
+     * @return The class name of the attached value, such as <code>[D</code>, or null if the value isn't attached.
+     */
+    public String getAttachment() {
+        return attachment;
+    }
+
+    public void setAttachment(String attachment) {
+        this.attachment = attachment;
+    }
+
+    /**
+     * Get the reason the request wasn't answered with its result, if it was aborted by the server.
+     *
+     * @return The error code, or null if the request ran to completion, whether or not it threw.
+     */
+    public ErrorCode getErrorCode() {
+        return errorCode;
+    }
+
+    public void setErrorCode(ErrorCode errorCode) {
+        this.errorCode = errorCode;
+    }
 }
@@ -0,0 +1,240 @@
+package com.coolioasjulio.rpc.client;
+
+import com.coolioasjulio.rpc.RPCException;
+import com.coolioasjulio.rpc.RPCRequest;
+import com.coolioasjulio.rpc.RPCResponse;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Builds a batch of calls that are sent to the server in a single message, and answered with a single message. The
+ * server handles the calls in order. Create instances with <code>RPCClient.batch()</code>.
+ */
+public class BatchBuilder {
+    private final RPCClient client;
+    private final List<RPCRequest> requests = new ArrayList<>();
+    private boolean stopOnError = false;
+
+    BatchBuilder(RPCClient client) {
+        this.client = client;
+    }
+
+    /**
+     * Set whether the server should skip the rest of the batch once a call fails. Skipped calls are answered with an
+     * exception. By default, every call is made regardless of earlier failures.
+     *
+     * @param stopOnError True to stop on the first error, false to continue.
+     * @return This builder.
+     */
+    public BatchBuilder stopOnError(boolean stopOnError) {
+        this.stopOnError = stopOnError;
+        return this;
+    }
+
+    /**
+     * Add a static method call to the batch.
+     *
+     * @param className  The canonical name of the class which defines the static method.
+     * @param methodName The name of the static method to execute.
+     * @return This builder.
+     */
+    public BatchBuilder executeStaticMethod(String className, String methodName) {
+        return executeStaticMethod(className, methodName, new String[0], new Object[0]);
+    }
+
+    /**
+     * Add a static method call to the batch.
+     *
+     * @param className     The canonical name of the class which defines the static method.
+     * @param methodName    The name of the static method to execute.
+     * @param argClassNames The canonical names of the classes of the arguments. Prepend with REMOTE: for remote objects.
+     * @param args          The objects to pass as arguments to the method.
+     * @return This builder.
+     */
+    public BatchBuilder executeStaticMethod(String className, String methodName, String[] argClassNames, Object[] args) {
+        requests.add(client.createRequest(false, className, "", methodName, argClassNames, args));
+        return this;
+    }
+
+    /**
+     * Add a call to a method on a remote object to the batch.
+     *
+     * @param objectName The name of the remote object which defines the method to execute.
+     * @param methodName The name of the method to execute.
+     * @return This builder.
+     */
+    public BatchBuilder executeMethod(String objectName, String methodName) {
+        return executeMethod(objectName, methodName, new String[0], new Object[0]);
+    }
+
+    /**
+     * Add a call to a method on a remote object to the batch.
+     *
+     * @param objectName    The name of the remote object which defines the method to execute.
+     * @param methodName    The name of the method to execute.
+     * @param argClassNames The canonical names of the classes of the arguments. Prepend with REMOTE: for remote objects.
+     * @param args          The objects to pass as arguments to the method.
+     * @return This builder.
+     */
+    public BatchBuilder executeMethod(String objectName, String methodName, String[] argClassNames, Object[] args) {
+        requests.add(client.createRequest(false, "", objectName, methodName, argClassNames, args));
+        return this;
+    }
+
+    /**
+     * Add a call to a method on a static object to the batch.
+     *
+     * @param className     The canonical name of the class which defines the static object.
+     * @param objectName    The name of the static object which defines the method to execute.
+     * @param methodName    The name of the method to execute.
+     * @param argClassNames The canonical names of the classes of the arguments. Prepend with REMOTE: for remote objects.
+     * @param args          The objects to pass as arguments to the method.
+     * @return This builder.
+     */
+    public BatchBuilder executeMethodOnStaticObject(String className, String objectName, String methodName,
+                                                    String[] argClassNames, Object[] args) {
+        requests.add(client.createRequest(false, className, objectName, methodName, argClassNames, args));
+        return this;
+    }
+
+    /**
+     * Add an instantiation of a remote object to the batch.
+     *
+     * @param className  The canonical name of the class to instantiate.
+     * @param objectName The name of the remote object that's being instantiated.
+     * @return This builder.
+     */
+    public BatchBuilder instantiateObject(String className, String objectName) {
+        return instantiateObject(className, objectName, new String[0], new Object[0]);
+    }
+
+    /**
+     * Add an instantiation of a remote object to the batch.
+     *
+     * @param className     The canonical name of the class to instantiate.
+     * @param objectName    The name of the remote object that's being instantiated.
+     * @param argClassNames The canonical names of the classes of the arguments. Prepend with REMOTE: for remote objects.
+     * @param args          The objects to pass as arguments to the constructor.
+     * @return This builder.
+     */
+    public BatchBuilder instantiateObject(String className, String objectName, String[] argClassNames, Object[] args) {
+        requests.add(client.createRequest(true, className, objectName, "", argClassNames, args));
+        return this;
+    }
+
+    /**
+     * Add a method call on a remote object that's stored under a handle to the batch.
+     *
+     * @param objectHandle The handle of the remote object.
+     * @param methodName   The name of the method to execute.
+     * @return This builder.
+     */
+    public BatchBuilder executeMethod(int objectHandle, String methodName) {
+        return executeMethod(objectHandle, methodName, new String[0], new Object[0]);
+    }
+
+    /**
+     * Add a method call on a remote object that's stored under a handle to the batch.
+     *
+     * @param objectHandle  The handle of the remote object.
+     * @param methodName    The name of the method to execute.
+     * @param argClassNames The canonical names of the classes of the arguments. Prepend with REMOTE: or HANDLE: for
+     *                      remote objects.
+     * @param args          The objects to pass as arguments to the method.
+     * @return This builder.
+     */
+    public BatchBuilder executeMethod(int objectHandle, String methodName, String[] argClassNames, Object[] args) {
+        requests.add(client.createRequest(objectHandle, methodName, argClassNames, args));
+        return this;
+    }
+
+    /**
+     * Add the release of a remote object that's stored under a handle to the batch.
+     *
+     * @param objectHandle The handle of the remote object.
+     * @return This builder.
+     */
+    public BatchBuilder releaseObject(int objectHandle) {
+        requests.add(client.createReleaseRequest(objectHandle));
+        return this;
+    }
+
+    /**
+     * Add the release of a remote object to the batch. The response value is true if the object was released, or
+     * false if there was no object with that name.
+     *
+     * @param objectName The name of the remote object.
+     * @return This builder.
+     */
+    public BatchBuilder releaseObject(String objectName) {
+        requests.add(client.createReleaseRequest(objectName));
+        return this;
+    }
+
+    /**
+     * Store the result of the last call added to the batch on the server, as a remote object with the specified name.
+     * Later calls in the batch, or later calls on the client, can pass it as a <code>REMOTE:</code> argument or call
+     * methods on it. The response to the call has a null value.
+     *
+     * @param resultName The name to store the result under.
+     * @return This builder.
+     */
+    public BatchBuilder storeResultAs(String resultName) {
+        if (requests.isEmpty()) {
+            throw new IllegalStateException("No calls have been added to the batch!");
+        }
+        requests.get(requests.size() - 1).setResultName(resultName);
+        return this;
+    }
+
+    /**
+     * Get the number of calls in the batch.
+     *
+     * @return The number of calls added so far.
+     */
+    public int size() {
+        return requests.size();
+    }
+
+    /**
+     * Send the batch and wait for the responses.
+     *
+     * @return The responses to each call, in the order they were added. Failed calls are marked as exceptions.
+     */
+    public List<RPCResponse<Object>> send() {
+        try {
+            return sendAsync().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RPCException("Interrupted while waiting for the RPC response.");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new RPCException(cause.toString());
+        }
+    }
+
+    /**
+     * Send the batch asynchronously.
+     *
+     * @return A future that completes with the responses to each call, in the order they were added.
+     */
+    public CompletableFuture<List<RPCResponse<Object>>> sendAsync() {
+        return sendAsync(CallOptions.DEFAULT);
+    }
+
+    /**
+     * Send the batch asynchronously.
+     *
+     * @param options The timeout and completion executor of the batch.
+     * @return A future that completes with the responses to each call, in the order they were added.
+     */
+    public CompletableFuture<List<RPCResponse<Object>>> sendAsync(CallOptions options) {
+        return client.sendBatchAsync(stopOnError, new ArrayList<>(requests), options);
+    }
+}
@@ -0,0 +1,88 @@
+package com.coolioasjulio.rpc.client;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Options for an asynchronous RPC call. Instances are immutable, so they can be shared between calls.
+ */
+public class CallOptions {
+    /**
+     * No timeout, and completions run on the common fork-join pool.
+     */
+    public static final CallOptions DEFAULT = new CallOptions(0, null, null);
+
+    private final long timeoutMillis;
+    private final Executor executor;
+    private final String resultName;
+
+    private CallOptions(long timeoutMillis, Executor executor, String resultName) {
+        this.timeoutMillis = timeoutMillis;
+        this.executor = executor;
+        this.resultName = resultName;
+    }
+
+    /**
+     * Get a copy of these options with a timeout. If the response doesn't arrive in time, the call fails with a
+     * <code>TimeoutException</code>. The timeout is sent to the server as the deadline of the request, so the server
+     * stops working on it too, and the client cancels it on the server if it's still pending when it times out.
+     *
+     * @param timeout The timeout. If not positive, the call never times out.
+     * @param unit    The unit of the timeout.
+     * @return The new options.
+     */
+    public CallOptions withTimeout(long timeout, TimeUnit unit) {
+        return new CallOptions(Math.max(0, unit.toMillis(timeout)), executor, resultName);
+    }
+
+    /**
+     * Get a copy of these options with an executor for completions. Dependent stages of the returned future run on
+     * this executor.
+     *
+     * @param executor The executor to complete the call on. If null, the common fork-join pool is used.
+     * @return The new options.
+     */
+    public CallOptions withExecutor(Executor executor) {
+        return new CallOptions(timeoutMillis, executor, resultName);
+    }
+
+    /**
+     * Get a copy of these options that stores the result of the call on the server, as a remote object with the
+     * specified name. Later calls can pass it as a <code>REMOTE:</code> argument, or call methods on it, without the
+     * result being sent to the client. The call itself completes with null. Ignored for instantiations, which are
+     * always stored under the object name.
+     *
+     * @param resultName The name to store the result under. If null, the result is sent to the client as usual.
+     * @return The new options.
+     */
+    public CallOptions withResultName(String resultName) {
+        return new CallOptions(timeoutMillis, executor, resultName);
+    }
+
+    /**
+     * Get the timeout in milliseconds.
+     *
+     * @return The timeout, or 0 if the call never times out.
+     */
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    /**
+     * Get the executor that completions run on.
+     *
+     * @return The executor, or null to use the common fork-join pool.
+     */
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Get the name the result of the call is stored under on the server.
+     *
+     * @return The name of the result, or null if the result is sent to the client.
+     */
+    public String getResultName() {
+        return resultName;
+    }
+}
@@ -1,23 +1,74 @@
 package com.coolioasjulio.rpc.client;
 
+import com.coolioasjulio.rpc.RPCBatch;
 import com.coolioasjulio.rpc.RPCException;
 import com.coolioasjulio.rpc.RPCRequest;
 import com.coolioasjulio.rpc.RPCResponse;
+import com.coolioasjulio.rpc.codec.Attachments;
+import com.coolioasjulio.rpc.codec.BinaryCodec;
+import com.coolioasjulio.rpc.codec.Compression;
+import com.coolioasjulio.rpc.codec.DeflatingOutputStream;
+import com.coolioasjulio.rpc.codec.Handshake;
+import com.coolioasjulio.rpc.codec.InflatingInputStream;
+import com.coolioasjulio.rpc.codec.LineInputStream;
+import com.coolioasjulio.rpc.codec.WireFormat;
 import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
 import com.google.gson.reflect.TypeToken;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.PrintStream;
+import java.lang.reflect.Proxy;
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
+/**
+ * An RPC client. Calls are pipelined over a single connection: any number of threads may share a client, and each
+ * call blocks only until its own response arrives. Responses are read by a dedicated thread and matched to their
+ * calls by id, so the server may answer them in any order.
+ */
 public class RPCClient implements AutoCloseable {
+    private static final Type BATCH_RESPONSE_TYPE = new TypeToken<List<RPCResponse<Object>>>() {}.getType();
+    private static final int STREAM_WINDOW_CHUNKS = 4;
+
     private Gson gson;
-    private BufferedReader in;
+    private RPCResponseDecoder responseDecoder;
+    private InputStream inputStream;
+    private OutputStream outputStream;
+    private LineInputStream in;
     private PrintStream out;
-    private long id;
+    private BinaryCodec binaryCodec; // Null unless the server accepted the binary wire format
+    private final Object writeLock = new Object();
+    private final AtomicLong id = new AtomicLong();
+    private final Map<Long, PendingCall> pendingCalls = new ConcurrentHashMap<>();
+    private volatile boolean closed = false;
+    private volatile int attachmentThreshold = -1; // Off, since attachments aren't negotiated
+    private volatile RetryPolicy retryPolicy = RetryPolicy.DEFAULT;
+    private Thread reader;
+    private ScheduledExecutorService timer; // Created when the first call with a timeout or retry is made
 
     /**
      * Create an RPC client.
@@ -26,42 +77,540 @@ public class RPCClient implements AutoCloseable {
      * @param out OutputStream going to the RPC server.
      */
     public RPCClient(InputStream in, OutputStream out) {
+        this(in, out, WireFormat.JSON);
+    }
+
+    /**
+     * Create an RPC client, and negotiate the wire format with the server. If the server doesn't accept the requested
+     * format, JSON is used instead.
+     *
+     * @param in     InputStream coming from the RPC server.
+     * @param out    OutputStream going to the RPC server.
+     * @param format The wire format to request.
+     * @throws RPCException If an error occurs during the handshake.
+     */
+    public RPCClient(InputStream in, OutputStream out, WireFormat format) {
+        this(in, out, format, false);
+    }
+
+    /**
+     * Create an RPC client, and negotiate the wire format and compression with the server. If the server doesn't
+     * accept the requested format, JSON is used instead, and if it doesn't accept compression, messages are sent
+     * uncompressed. Compression helps most on slow links, since messages repeat the same field and class names.
+     *
+     * @param in       InputStream coming from the RPC server.
+     * @param out      OutputStream going to the RPC server.
+     * @param format   The wire format to request.
+     * @param compress True to request compression, false otherwise.
+     * @throws RPCException If an error occurs during the handshake.
+     */
+    public RPCClient(InputStream in, OutputStream out, WireFormat format, boolean compress) {
         gson = new Gson();
-        this.in = new BufferedReader(new InputStreamReader(in));
+        responseDecoder = new RPCResponseDecoder(gson);
+        this.inputStream = in;
+        this.outputStream = out;
+        this.in = new LineInputStream(in, Charset.defaultCharset());
         this.out = new PrintStream(out);
+
+        if (format != WireFormat.JSON || compress) {
+            negotiate(format, compress);
+        }
+
+        reader = new Thread(this::readResponses, "RPCClient-reader");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    private void negotiate(WireFormat format, boolean compress) {
+        this.out.println(Handshake.create(format, compress));
+        this.out.flush();
+        String reply;
+        try {
+            reply = in.readLine();
+        } catch (IOException e) {
+            throw new RPCException("Handshake failed: " + e);
+        }
+        if (!Handshake.isHandshake(reply)) {
+            throw new RPCException("Invalid handshake reply: " + reply);
+        }
+        if (Handshake.parseFormat(reply) == WireFormat.BINARY) {
+            binaryCodec = new BinaryCodec(gson);
+        }
+        if (compress && Handshake.isCompressed(reply)) {
+            // The server sends nothing past its reply until we send a request, so nothing else has been buffered
+            in = new LineInputStream(new InflatingInputStream(inputStream), Charset.defaultCharset());
+            outputStream = new DeflatingOutputStream(outputStream, Compression.DEFAULT_THRESHOLD);
+            out = new PrintStream(outputStream);
+        }
+    }
+
+    /**
+     * Get the wire format negotiated with the server.
+     *
+     * @return The wire format used by this client.
+     */
+    public WireFormat getWireFormat() {
+        return binaryCodec != null ? WireFormat.BINARY : WireFormat.JSON;
+    }
+
+    /**
+     * Is this session compressed? This is only the case if compression was requested, and the server accepted it.
+     *
+     * @return True if messages are compressed, false otherwise.
+     */
+    public boolean isCompressed() {
+        return outputStream instanceof DeflatingOutputStream;
+    }
+
+    /**
+     * Set the size from which primitive array and <code>ByteBuffer</code> arguments are sent as binary attachments,
+     * instead of as JSON. Results are sent as attachments whenever the expected result type is a primitive array or
+     * <code>ByteBuffer</code>. This only affects the JSON wire format, since the binary wire format always sends
+     * them as raw bytes. Attachments aren't negotiated, so they're off by default, and should only be turned on for
+     * servers that support them.
+     *
+     * @param bytes The smallest argument, in bytes, that's sent as an attachment. If negative, attachments aren't
+     *              used at all, which is the default.
+     */
+    public void setAttachmentThreshold(int bytes) {
+        this.attachmentThreshold = bytes;
+    }
+
+    public int getAttachmentThreshold() {
+        return attachmentThreshold;
+    }
+
+    /**
+     * Set how calls are retried when the server rejects them because it's overloaded. Those calls never ran on the
+     * server, so they're sent again as they are, after a randomized backoff. Timeouts still count from when the
+     * call was first made.
+     *
+     * @param retryPolicy The retry policy. Use <code>RetryPolicy.NONE</code> to fail rejected calls right away.
+     */
+    public void setRetryPolicy(RetryPolicy retryPolicy) {
+        if (retryPolicy == null) {
+            throw new IllegalArgumentException("retryPolicy cannot be null!");
+        }
+        this.retryPolicy = retryPolicy;
     }
 
-    private <T> T sendRPCRequest(boolean instantiate, String className, String objectName, String methodName, String[] argClassNames, Object[] args) {
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    /**
+     * Get the number of calls that have been sent but not yet answered.
+     *
+     * @return The number of calls in flight.
+     */
+    public int getPendingCallCount() {
+        return pendingCalls.size();
+    }
+
+    private void readResponses() {
+        String reason = "The connection to the RPC server was closed.";
+        ByteBuffer attachment = null; // Sent before the next response
+        try {
+            while (!closed) {
+                RPCResponse<Object> response;
+                if (binaryCodec != null) {
+                    response = binaryCodec.readResponse(in, this::getResponseType);
+                    if (response == null) break; // The server has closed.
+                } else {
+                    String line = in.readLine();
+                    if (line == null) break; // The server has closed.
+                    else if (line.length() == 0) continue;
+                    if (Attachments.isHeader(line)) {
+                        attachment = Attachments.read(in, Attachments.parseLength(line));
+                        continue;
+                    }
+                    response = responseDecoder.decode(line, this::getResponseType);
+                    if (response.getAttachment() != null) {
+                        response = bindAttachment(response, attachment);
+                    }
+                    attachment = null;
+                }
+
+                // The call stays pending until the last chunk of a streamed result
+                PendingCall call = response.isMore()
+                        ? pendingCalls.get(response.getId())
+                        : pendingCalls.remove(response.getId());
+                if (call == null) continue; // Nobody is waiting for this response
+                if (response.getErrorCode() == RPCResponse.ErrorCode.OVERLOADED && retry(call)) continue;
+                if (call.stream != null) {
+                    call.stream.accept(response); // Never waits, since the server only sends what was asked for
+                } else if (response.isException()) {
+                    call.future.completeExceptionally(toException(response));
+                } else {
+                    call.future.complete(response.getValue());
+                }
+            }
+        } catch (IOException | JsonParseException e) {
+            if (!closed) {
+                reason = "Error reading from the RPC server: " + e;
+            }
+        } finally {
+            closed = true;
+            for (Long callId : pendingCalls.keySet()) {
+                failCall(callId, new RPCException(reason));
+            }
+        }
+    }
+
+    private RPCResponse<Object> bindAttachment(RPCResponse<Object> response, ByteBuffer attachment) {
+        Type type = getResponseType(response.getId());
+        try {
+            if (attachment == null) {
+                throw new IllegalArgumentException("The attachment is missing!");
+            }
+            Object value = Attachments.decode(attachment, response.getAttachment());
+            if (type instanceof Class && !((Class<?>) type).isInstance(value)) {
+                // The result has a different type than the call expected, such as an int[] for a long[]
+                value = gson.fromJson(gson.toJsonTree(value), type);
+            }
+            return new RPCResponse<>(response.getId(), value, false, response.isMore());
+        } catch (RuntimeException e) {
+            return new RPCResponse<>(response.getId(), "Unable to decode the attachment as "
+                    + (type == null ? response.getAttachment() : type.getTypeName()) + ": " + e, true);
+        }
+    }
+
+    /**
+     * Get the exception an exception response fails its call with. Calls that timed out on the server fail with a
+     * <code>TimeoutException</code>, calls that were cancelled with a <code>CancellationException</code>, and calls
+     * that the server was too busy to take with a <code>RejectedExecutionException</code>.
+     *
+     * @param response The exception response.
+     * @return The exception.
+     */
+    static Exception toException(RPCResponse<?> response) {
+        String message = (String) response.getValue();
+        if (response.getErrorCode() == RPCResponse.ErrorCode.DEADLINE_EXCEEDED) {
+            return new TimeoutException(message);
+        } else if (response.getErrorCode() == RPCResponse.ErrorCode.CANCELLED) {
+            return new CancellationException(message);
+        } else if (response.getErrorCode() == RPCResponse.ErrorCode.OVERLOADED) {
+            return new RejectedExecutionException(message);
+        }
+        return new RuntimeException(message);
+    }
+
+    private Type getResponseType(long callId) {
+        PendingCall call = pendingCalls.get(callId);
+        return call == null ? null : call.type;
+    }
+
+    RPCRequest createRequest(boolean instantiate, String className, String objectName, String methodName,
+                             String[] argClassNames, Object[] args) {
         if (argClassNames.length != args.length) {
             throw new IllegalArgumentException("argClassNames and args must have same length!");
         }
 
-        RPCRequest request = new RPCRequest(id++, instantiate, className, objectName, methodName, argClassNames, args);
-        String jsonRequest = gson.toJson(request);
-        out.println(jsonRequest);
-        out.flush();
+        return new RPCRequest(id.getAndIncrement(), instantiate, className, objectName, methodName, argClassNames,
+                args);
+    }
+
+    RPCRequest createRequest(int objectHandle, String methodName, String[] argClassNames, Object[] args) {
+        RPCRequest request = createRequest(false, "", "", methodName, argClassNames, args);
+        request.setObjectHandle(objectHandle);
+        return request;
+    }
+
+    RPCRequest createReleaseRequest(String objectName) {
+        RPCRequest request = new RPCRequest(id.getAndIncrement(), false, "", objectName, "", null, null);
+        request.setRelease(true);
+        return request;
+    }
+
+    RPCRequest createReleaseRequest(int objectHandle) {
+        RPCRequest request = createReleaseRequest("");
+        request.setObjectHandle(objectHandle);
+        return request;
+    }
+
+    /**
+     * Send a batch of requests as a single message.
+     *
+     * @param stopOnError If true, the server skips the rest of the batch once a request fails.
+     * @param requests    The requests in the batch, created with <code>createRequest</code>.
+     * @param options     The timeout and completion executor of the batch.
+     * @return A future that completes with the responses to each request, in order.
+     */
+    CompletableFuture<List<RPCResponse<Object>>> sendBatchAsync(boolean stopOnError, List<RPCRequest> requests,
+                                                                 CallOptions options) {
+        RPCBatch batch = new RPCBatch(id.getAndIncrement(), stopOnError, requests);
+        return complete(send(batch.getId(), batch, BATCH_RESPONSE_TYPE), options);
+    }
+
+    /**
+     * Send a request, and wait for the response.
+     *
+     * @param request The request, created with <code>createRequest</code>.
+     * @param type    The type the response value is decoded to.
+     * @param options The timeout of the call. The executor is only used if there's a timeout.
+     * @param <T>     The type of the response value.
+     * @return The response value.
+     */
+    <T> T sendRequest(RPCRequest request, Type type, CallOptions options) {
+        request.setTimeoutMillis(options.getTimeoutMillis());
+        PendingCall call = send(request.getId(), request, type);
+        return options.getTimeoutMillis() > 0 ? await(complete(call, options)) : await(call);
+    }
+
+    /**
+     * Send a request asynchronously.
+     *
+     * @param request The request, created with <code>createRequest</code>.
+     * @param type    The type the response value is decoded to.
+     * @param options The timeout and completion executor of the call.
+     * @param <T>     The type of the response value.
+     * @return A future that completes with the response value.
+     */
+    <T> CompletableFuture<T> sendRequestAsync(RPCRequest request, Type type, CallOptions options) {
+        request.setTimeoutMillis(options.getTimeoutMillis());
+        return complete(send(request.getId(), request, type), options);
+    }
+
+    /**
+     * Send a streaming request. The elements of the result can be iterated as they arrive.
+     *
+     * @param request     The request, created with <code>createRequest</code>.
+     * @param elementType The type the elements are decoded to.
+     * @param <T>         The type of the elements.
+     * @return The elements of the result. Close it to discard the rest of the result, which also cancels the call
+     *         on the server if it's still sending.
+     */
+    <T> ResponseStream<T> sendStreamRequest(RPCRequest request, Type elementType) {
+        request.setStream(true);
+        request.setDemand(STREAM_WINDOW_CHUNKS);
+        long callId = request.getId();
+        ResponseStream<T> stream = new ResponseStream<>(STREAM_WINDOW_CHUNKS, chunks -> sendDemand(callId, chunks),
+                () -> {
+                    if (pendingCalls.remove(callId) != null) {
+                        sendCancel(callId);
+                    }
+                });
+        // Each chunk is a list of elements
+        send(new PendingCall(callId, TypeToken.getParameterized(List.class, elementType).getType(), stream), request);
+        return stream;
+    }
+
+    <T> Stream<T> toStream(ResponseStream<T> elements) {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(elements, Spliterator.ORDERED), false)
+                .onClose(elements::close);
+    }
+
+    private PendingCall send(long callId, Object message, Type type) {
+        return send(new PendingCall(callId, type, null), message);
+    }
+
+    private PendingCall send(PendingCall call, Object message) {
+        List<ByteBuffer> attachments = Collections.emptyList();
+        if (binaryCodec == null && attachmentThreshold >= 0) {
+            try {
+                attachments = Attachments.extract(message, attachmentThreshold);
+            } catch (RuntimeException e) {
+                // The call was never registered, so just fail it
+                call.future.completeExceptionally(new RPCException(e.toString()));
+                return call;
+            }
+            if (message instanceof RPCRequest && Attachments.isAttachableType(call.type)) {
+                ((RPCRequest) message).setAttachResult(true);
+            }
+        }
+        call.message = message;
+        call.attachments = attachments;
+        pendingCalls.put(call.id, call);
+        write(call);
+        return call;
+    }
+
+    private void write(PendingCall call) {
+        if (closed) {
+            // The reader may have already failed the pending calls, so make sure this one isn't left hanging
+            failCall(call.id, new RPCException("The RPC client is closed."));
+            return;
+        }
 
-        String jsonResponse;
         try {
-            jsonResponse = in.readLine();
-        } catch (IOException e) {
-            e.printStackTrace();
-            return null;
+            synchronized (writeLock) {
+                if (binaryCodec != null) {
+                    if (call.message instanceof RPCBatch) {
+                        binaryCodec.writeBatch(outputStream, (RPCBatch) call.message);
+                    } else {
+                        binaryCodec.writeRequest(outputStream, (RPCRequest) call.message);
+                    }
+                    outputStream.flush();
+                } else {
+                    // Encode the message first, so nothing is written if it can't be encoded
+                    String json = gson.toJson(call.message);
+                    for (ByteBuffer attachment : call.attachments) {
+                        Attachments.write(out, attachment);
+                    }
+                    out.println(json);
+                    out.flush();
+                    if (out.checkError()) {
+                        throw new IOException("Unable to write to the RPC server.");
+                    }
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // The message couldn't be sent, or couldn't be encoded, so no response will ever come
+            failCall(call.id, new RPCException(e.toString()));
+        }
+    }
+
+    /**
+     * Send a call the server rejected again later, if the retry policy allows it. Called on the reader thread, once
+     * the call has been removed from the pending calls.
+     *
+     * @param call The rejected call.
+     * @return True if the call will be retried, false if it should fail.
+     */
+    private boolean retry(PendingCall call) {
+        RetryPolicy policy = retryPolicy;
+        if (call.retries >= policy.getMaxRetries()) return false;
+        long backoff = policy.getBackoffMillis(call.retries++);
+        pendingCalls.put(call.id, call);
+        getTimer().schedule(() -> {
+            // Skip it if it timed out or was cancelled while waiting
+            if (pendingCalls.get(call.id) == call) {
+                write(call);
+            }
+        }, backoff, TimeUnit.MILLISECONDS);
+        return true;
+    }
+
+    private boolean failCall(long callId, Throwable cause) {
+        PendingCall call = pendingCalls.remove(callId);
+        if (call != null) {
+            if (call.stream != null) {
+                call.stream.fail(cause);
+            }
+            call.future.completeExceptionally(cause);
         }
+        return call != null;
+    }
+
+    /**
+     * Ask the server to cancel a call that's no longer wanted, so it stops using capacity on the server. The server
+     * doesn't answer this, and ignores it if the call has already been answered.
+     *
+     * @param callId The id of the call.
+     */
+    private void sendCancel(long callId) {
+        RPCRequest cancel = new RPCRequest(callId, false, "", "", "", null, null);
+        cancel.setCancel(true);
+        sendControl(cancel);
+    }
 
-        RPCResponse tempResponse = gson.fromJson(jsonResponse, RPCResponse.class);
+    /**
+     * Ask the server for more chunks of a streamed result, as the consumer takes them. The server doesn't answer
+     * this, and ignores it if the stream has ended.
+     *
+     * @param callId The id of the streaming call.
+     * @param chunks The number of chunks more the client is ready for.
+     */
+    private void sendDemand(long callId, int chunks) {
+        if (!pendingCalls.containsKey(callId)) return; // The stream has ended
+        RPCRequest demand = new RPCRequest(callId, false, "", "", "", null, null);
+        demand.setDemand(chunks);
+        sendControl(demand);
+    }
 
-        if (request.getId() != tempResponse.getId()) {
-            throw new RPCException("Somehow the calls are out of sync! Are you using multithreading?");
+    private void sendControl(RPCRequest request) {
+        if (closed) return;
+        try {
+            synchronized (writeLock) {
+                if (binaryCodec != null) {
+                    binaryCodec.writeRequest(outputStream, request);
+                    outputStream.flush();
+                } else {
+                    out.println(request.toControlJson());
+                    out.flush();
+                }
+            }
+        } catch (IOException e) {
+            // The reader fails the pending calls if the connection is lost
         }
+    }
 
-        if (tempResponse.isException()) {
-            RPCResponse<String> exception = gson.fromJson(jsonResponse, (new TypeToken<RPCResponse<String>>() {}).getType());
-            throw new RuntimeException(exception.getValue());
+    private synchronized ScheduledExecutorService getTimer() {
+        if (timer == null) {
+            ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, r -> {
+                Thread t = new Thread(r, "RPCClient-timer");
+                t.setDaemon(true);
+                return t;
+            });
+            executor.setRemoveOnCancelPolicy(true);
+            timer = executor;
         }
+        return timer;
+    }
+
+    private <T> CompletableFuture<T> sendRPCRequestAsync(boolean instantiate, String className, String objectName,
+                                                         String methodName, String[] argClassNames, Object[] args,
+                                                         Type type, CallOptions options) {
+        RPCRequest request = createRequest(instantiate, className, objectName, methodName, argClassNames, args);
+        request.setResultName(options.getResultName());
+        request.setTimeoutMillis(options.getTimeoutMillis());
+        return complete(send(request.getId(), request, type), options);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> CompletableFuture<T> complete(PendingCall call, CallOptions options) {
+        long timeoutMillis = options.getTimeoutMillis();
+        if (timeoutMillis > 0 && !call.future.isDone()) {
+            ScheduledFuture<?> timeout = getTimer().schedule(() -> {
+                if (failCall(call.id, new TimeoutException("No response after " + timeoutMillis + " ms"))) {
+                    // The server may measure the deadline from later on, or not know about it at all, as in batches
+                    sendCancel(call.id);
+                }
+            }, timeoutMillis, TimeUnit.MILLISECONDS);
+            call.future.whenComplete((v, t) -> timeout.cancel(false));
+        }
+
+        Executor executor = options.getExecutor() != null ? options.getExecutor() : ForkJoinPool.commonPool();
+        CompletableFuture<T> future = new CompletableFuture<>();
+        call.future.whenCompleteAsync((value, t) -> {
+            if (t != null) {
+                future.completeExceptionally(t);
+            } else {
+                future.complete((T) value);
+            }
+        }, executor);
+        future.whenComplete((value, t) -> {
+            if (future.isCancelled() && failCall(call.id, new CancellationException())) {
+                sendCancel(call.id);
+            }
+        });
+        return future;
+    }
 
-        RPCResponse<T> response = gson.fromJson(jsonResponse, (new TypeToken<RPCResponse<T>>() {}).getType());
-        return response.getValue();
+    private <T> T sendRPCRequest(boolean instantiate, String className, String objectName, String methodName,
+                                 String[] argClassNames, Object[] args, Type type) {
+        RPCRequest request = createRequest(instantiate, className, objectName, methodName, argClassNames, args);
+        return await(send(request.getId(), request, type));
+    }
+
+    private <T> T await(PendingCall call) {
+        return await(call.future);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T await(CompletableFuture<?> future) {
+        try {
+            return (T) future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RPCException("Interrupted while waiting for the RPC response.");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new RPCException(cause.toString());
+        }
     }
 
     /**
@@ -90,7 +639,25 @@ public class RPCClient implements AutoCloseable {
      * @return The result of the static method.
      */
     public <T> T executeStaticMethod(String className, String methodName, String[] argClassNames, Object[] args) {
-        return sendRPCRequest(false, className, "", methodName, argClassNames, args);
+        return executeStaticMethod(className, methodName, argClassNames, args, Object.class);
+    }
+
+    /**
+     * Execute a static method, and decode the result to a specific type. Without a type, results are decoded to
+     * generic objects, such as a <code>Double</code> for every number, or a <code>Map</code> for every object.
+     *
+     * @param className     The canonical name of the class which defines the static method.
+     * @param methodName    The name of the static method to execute.
+     * @param argClassNames The canonical names of the classes of the arguments to the method call. Corresponds to <code>args.</code>
+     *                      Prepend with REMOTE: to pass a remote object as an argument.
+     * @param args          The objects to pass as arguments to the method.
+     * @param returnType    The type to decode the result to, such as a class or a <code>TypeToken</code> type.
+     * @param <T>           The return type.
+     * @return The result of the static method.
+     */
+    public <T> T executeStaticMethod(String className, String methodName, String[] argClassNames, Object[] args,
+                                     Type returnType) {
+        return sendRPCRequest(false, className, "", methodName, argClassNames, args, returnType);
     }
 
     /**
@@ -119,7 +686,24 @@ public class RPCClient implements AutoCloseable {
      * @return The result of the method.
      */
     public <T> T executeMethod(String objectName, String methodName, String[] argClassNames, Object[] args) {
-        return sendRPCRequest(false, "", objectName, methodName, argClassNames, args);
+        return executeMethod(objectName, methodName, argClassNames, args, Object.class);
+    }
+
+    /**
+     * Execute a method on a remote object, and decode the result to a specific type.
+     *
+     * @param objectName    The name of the remote object which defines the method to execute.
+     * @param methodName    The name of the method to execute.
+     * @param argClassNames The canonical names of the classes of the arguments to the method call. Corresponds to <code>args.</code>
+     *                      Prepend with REMOTE: to pass a remote object as an argument.
+     * @param args          The objects to pass as arguments to the method.
+     * @param returnType    The type to decode the result to, such as a class or a <code>TypeToken</code> type.
+     * @param <T>           The return type.
+     * @return The result of the method.
+     */
+    public <T> T executeMethod(String objectName, String methodName, String[] argClassNames, Object[] args,
+                               Type returnType) {
+        return sendRPCRequest(false, "", objectName, methodName, argClassNames, args, returnType);
     }
 
     /**
@@ -150,7 +734,25 @@ public class RPCClient implements AutoCloseable {
      * @return The result of the method.
      */
     public <T> T executeMethodOnStaticObject(String className, String objectName, String methodName, String[] argClassNames, Object[] args) {
-        return sendRPCRequest(false, className, objectName, methodName, argClassNames, args);
+        return executeMethodOnStaticObject(className, objectName, methodName, argClassNames, args, Object.class);
+    }
+
+    /**
+     * Execute a method on a static object, and decode the result to a specific type.
+     *
+     * @param className     The canonical name of the class which defines the static object.
+     * @param objectName    The name of the static object which defines the method to execute.
+     * @param methodName    The name of the method to execute.
+     * @param argClassNames The canonical names of the classes of the arguments to the method call. Corresponds to <code>args.</code>
+     *                      Prepend with REMOTE: to pass a remote object as an argument.
+     * @param args          The objects to pass as arguments to the method.
+     * @param returnType    The type to decode the result to, such as a class or a <code>TypeToken</code> type.
+     * @param <T>           The return type.
+     * @return The result of the method.
+     */
+    public <T> T executeMethodOnStaticObject(String className, String objectName, String methodName, String[] argClassNames,
+                                             Object[] args, Type returnType) {
+        return sendRPCRequest(false, className, objectName, methodName, argClassNames, args, returnType);
     }
 
     /**
@@ -179,7 +781,643 @@ public class RPCClient implements AutoCloseable {
      * @return The instantiated object.
      */
     public <T> T instantiateObject(String className, String objectName, String[] argClassNames, Object[] args) {
-        return sendRPCRequest(true, className, objectName, "", argClassNames, args);
+        return sendRPCRequest(true, className, objectName, "", argClassNames, args, Object.class);
+    }
+
+    /**
+     * Asynchronously execute a static method.
+     *
+     * @param className  The canonical name of the class which defines the static method.
+     * @param methodName The name of the static method to execute.
+     * @param <T>        The return type.
+     * @return A future that completes with the result of the static method.
+     */
+    public <T> CompletableFuture<T> executeStaticMethodAsync(String className, String methodName) {
+        return executeStaticMethodAsync(className, methodName, new String[0], new Object[0]);
+    }
+
+    /**
+     * Asynchronously execute a static method.
+     *
+     * @param className     The canonical name of the class which defines the static method.
+     * @param methodName    The name of the static method to execute.
+     * @param argClassNames The canonical names of the classes of the arguments to the method call. Corresponds to <code>args.</code>
+     *                      Prepend with REMOTE: to pass a remote object as an argument.
+     * @param args          The objects to pass as arguments to the method.
+     * @param <T>           The return type.
+     * @return A future that completes with the result of the static method.
+     */
+    public <T> CompletableFuture<T> executeStaticMethodAsync(String className, String methodName, String[] argClassNames, Object[] args) {
+        return executeStaticMethodAsync(className, methodName, argClassNames, args, CallOptions.DEFAULT);
+    }
+
+    /**
+     * Asynchronously execute a static method.
+     *
+     * @param className     The canonical name of the class which defines the static method.
+     * @param methodName    The name of the static method to execute.
+     * @param argClassNames The canonical names of the classes of the arguments to the method call. Corresponds to <code>args.</code>
+     *                      Prepend with REMOTE: to pass a remote object as an argument.
+     * @param args          The objects to pass as arguments to the method.
+     * @param options       The timeout and completion executor of the call.
+     * @param <T>           The return type.
+     * @return A future that completes with the result of the static method.
+     */
+    public <T> CompletableFuture<T> executeStaticMethodAsync(String className, String methodName, String[] argClassNames, Object[] args,
+                                                             CallOptions options) {
+        return executeStaticMethodAsync(className, methodName, argClassNames, args, Object.class, options);
+    }
+
+    /**
+     * Asynchronously execute a static method, and decode the result to a specific type.
+     *
+     * @param className     The canonical name of the class which defines the static method.
+     * @param methodName    The name of the static method to execute.
+     * @param argClassNames The canonical names of the classes of the arguments to the method call. Corresponds to <code>args.</code>
+     *                      Prepend with REMOTE: to pass a remote object as an argument.
+     * @param args          The objects to pass as arguments to the method.
+     * @param returnType    The type to decode the result to, such as a class or a <code>TypeToken</code> type.
+     * @param options       The timeout and completion executor of the call.
+     * @param <T>           The return type.
+     * @return A future that completes with the result of the static method.
+     */
+    public <T> CompletableFuture<T> executeStaticMethodAsync(String className, String methodName, String[] argClassNames, Object[] args,
+                                                             Type returnType, CallOptions options) {
+        return sendRPCRequestAsync(false, className, "", methodName, argClassNames, args, returnType, options);
+    }
+
+    /**
+     * Asynchronously execute a method on a remote object.
+     *
+     * @param objectName The name of the remote object which defines the method to execute.
+     * @param methodName The name of the method to execute.
+     * @param <T>        The return type.
+     * @return A future that completes with the result of the method.
+     */
+    public <T> CompletableFuture<T> executeMethodAsync(String objectName, String methodName) {
+        return executeMethodAsync(objectName, methodName, new String[0], new Object[0]);
+    }
+
+    /**
+     * Asynchronously execute a method on a remote object.
+     *
+     * @param objectName    The name of the remote object which defines the method to execute.
+     * @param methodName    The name of the method to execute.
+     * @param argClassNames The canonical names of the classes of the arguments to the method call. Corresponds to <code>args.</code>
+     *                      Prepend with REMOTE: to pass a remote object as an argument.
+     * @param args          The objects to pass as arguments to the method.
+     * @param <T>           The return type.
+     * @return A future that completes with the result of the method.
+     */
+    public <T> CompletableFuture<T> executeMethodAsync(String objectName, String methodName, String[] argClassNames, Object[] args) {
+        return executeMethodAsync(objectName, methodName, argClassNames, args, CallOptions.DEFAULT);
+    }
+
+    /**
+     * Asynchronously execute a method on a remote object.
+     *
+     * @param objectName    The name of the remote object which defines the method to execute.
+     * @param methodName    The name of the method to execute.
+     * @param argClassNames The canonical names of the classes of the arguments to the method call. Corresponds to <code>args.</code>
+     *                      Prepend with REMOTE: to pass a remote object as an argument.
+     * @param args          The objects to pass as arguments to the method.
+     * @param options       The timeout and completion executor of the call.
+     * @param <T>           The return type.
+     * @return A future that completes with the result of the method.
+     */
+    public <T> CompletableFuture<T> executeMethodAsync(String objectName, String methodName, String[] argClassNames, Object[] args,
+                                                       CallOptions options) {
+        return executeMethodAsync(objectName, methodName, argClassNames, args, Object.class, options);
+    }
+
+    /**
+     * Asynchronously execute a method on a remote object, and decode the result to a specific type.
+     *
+     * @param objectName    The name of the remote object which defines the method to execute.
+     * @param methodName    The name of the method to execute.
+     * @param argClassNames The canonical names of the classes of the arguments to the method call. Corresponds to <code>args.</code>
+     *                      Prepend with REMOTE: to pass a remote object as an argument.
+     * @param args          The objects to pass as arguments to the method.
+     * @param returnType    The type to decode the result to, such as a class or a <code>TypeToken</code> type.
+     * @param options       The timeout and completion executor of the call.
+     * @param <T>           The return type.
+     * @return A future that completes with the result of the method.
+     */
+    public <T> CompletableFuture<T> executeMethodAsync(String objectName, String methodName, String[] argClassNames, Object[] args,
+                                                       Type returnType, CallOptions options) {
+        return sendRPCRequestAsync(false, "", objectName, methodName, argClassNames, args, returnType, options);
+    }
+
+    /**
+     * Asynchronously execute a method on a static object.
+     *
+     * @param className  The canonical name of the class which defines the static object.
+     * @param objectName The name of the static object which defines the method to execute.
+     * @param methodName The name of the method to execute.
+     * @param <T>        The return type.
+     * @return A future that completes with the result of the method.
+     */
+    public <T> CompletableFuture<T> executeMethodOnStaticObjectAsync(String className, String objectName, String methodName) {
+        return executeMethodOnStaticObjectAsync(className, objectName, methodName, new String[0], new Object[0]);
+    }
+
+    /**
+     * Asynchronously execute a method on a static object.
+     *
+     * @param className     The canonical name of the class which defines the static object.
+     * @param objectName    The name of the static object which defines the method to execute.
+     * @param methodName    The name of the method to execute.
+     * @param argClassNames The canonical names of the classes of the arguments to the method call. Corresponds to <code>args.</code>
+     *                      Prepend with REMOTE: to pass a remote object as an argument.
+     * @param args          The objects to pass as arguments to the method.
+     * @param <T>           The return type.
+     * @return A future that completes with the result of the method.
+     */
+    public <T> CompletableFuture<T> executeMethodOnStaticObjectAsync(String className, String objectName, String methodName,
+                                                                     String[] argClassNames, Object[] args) {
+        return executeMethodOnStaticObjectAsync(className, objectName, methodName, argClassNames, args, CallOptions.DEFAULT);
+    }
+
+    /**
+     * Asynchronously execute a method on a static object.
+     *
+     * @param className     The canonical name of the class which defines the static object.
+     * @param objectName    The name of the static object which defines the method to execute.
+     * @param methodName    The name of the method to execute.
+     * @param argClassNames The canonical names of the classes of the arguments to the method call. Corresponds to <code>args.</code>
+     *                      Prepend with REMOTE: to pass a remote object as an argument.
+     * @param args          The objects to pass as arguments to the method.
+     * @param options       The timeout and completion executor of the call.
+     * @param <T>           The return type.
+     * @return A future that completes with the result of the method.
+     */
+    public <T> CompletableFuture<T> executeMethodOnStaticObjectAsync(String className, String objectName, String methodName,
+                                                                     String[] argClassNames, Object[] args, CallOptions options) {
+        return executeMethodOnStaticObjectAsync(className, objectName, methodName, argClassNames, args, Object.class, options);
+    }
+
+    /**
+     * Asynchronously execute a method on a static object, and decode the result to a specific type.
+     *
+     * @param className     The canonical name of the class which defines the static object.
+     * @param objectName    The name of the static object which defines the method to execute.
+     * @param methodName    The name of the method to execute.
+     * @param argClassNames The canonical names of the classes of the arguments to the method call. Corresponds to <code>args.</code>
+     *                      Prepend with REMOTE: to pass a remote object as an argument.
+     * @param args          The objects to pass as arguments to the method.
+     * @param returnType    The type to decode the result to, such as a class or a <code>TypeToken</code> type.
+     * @param options       The timeout and completion executor of the call.
+     * @param <T>           The return type.
+     * @return A future that completes with the result of the method.
+     */
+    public <T> CompletableFuture<T> executeMethodOnStaticObjectAsync(String className, String objectName, String methodName,
+                                                                     String[] argClassNames, Object[] args, Type returnType,
+                                                                     CallOptions options) {
+        return sendRPCRequestAsync(false, className, objectName, methodName, argClassNames, args, returnType, options);
+    }
+
+    /**
+     * Asynchronously instantiate a remote object.
+     *
+     * @param className  The canonical name of the class to instantiate.
+     * @param objectName The name of the remote object that's being instantiated.
+     * @param <T>        The return type.
+     * @return A future that completes with the instantiated object.
+     */
+    public <T> CompletableFuture<T> instantiateObjectAsync(String className, String objectName) {
+        return instantiateObjectAsync(className, objectName, new String[0], new Object[0]);
+    }
+
+    /**
+     * Asynchronously instantiate a remote object.
+     *
+     * @param className     The canonical name of the class to instantiate.
+     * @param objectName    The name of the remote object that's being instantiated.
+     * @param argClassNames The canonical names of the classes of the arguments to the constructor. Corresponds to <code>args.</code>
+     *                      Prepend with REMOTE: to pass a remote object as an argument.
+     * @param args          The objects to pass as arguments to the constructor.
+     * @param <T>           The return type.
+     * @return A future that completes with the instantiated object.
+     */
+    public <T> CompletableFuture<T> instantiateObjectAsync(String className, String objectName, String[] argClassNames, Object[] args) {
+        return instantiateObjectAsync(className, objectName, argClassNames, args, CallOptions.DEFAULT);
+    }
+
+    /**
+     * Asynchronously instantiate a remote object.
+     *
+     * @param className     The canonical name of the class to instantiate.
+     * @param objectName    The name of the remote object that's being instantiated.
+     * @param argClassNames The canonical names of the classes of the arguments to the constructor. Corresponds to <code>args.</code>
+     *                      Prepend with REMOTE: to pass a remote object as an argument.
+     * @param args          The objects to pass as arguments to the constructor.
+     * @param options       The timeout and completion executor of the call.
+     * @param <T>           The return type.
+     * @return A future that completes with the instantiated object.
+     */
+    public <T> CompletableFuture<T> instantiateObjectAsync(String className, String objectName, String[] argClassNames, Object[] args,
+                                                           CallOptions options) {
+        return sendRPCRequestAsync(true, className, objectName, "", argClassNames, args, Object.class, options);
+    }
+
+    /**
+     * Release a remote object, so that the server no longer holds on to it.
+     *
+     * @param objectName The name of the remote object.
+     * @return True if the object was released, false if there was no object with that name.
+     */
+    public boolean releaseObject(String objectName) {
+        RPCRequest request = createReleaseRequest(objectName);
+        Boolean released = await(send(request.getId(), request, Boolean.class));
+        return released != null && released;
+    }
+
+    /**
+     * Asynchronously release a remote object, so that the server no longer holds on to it.
+     *
+     * @param objectName The name of the remote object.
+     * @param options    The timeout and completion executor of the call.
+     * @return A future that completes with true if the object was released, or false if there was no object with
+     * that name.
+     */
+    public CompletableFuture<Boolean> releaseObjectAsync(String objectName, CallOptions options) {
+        RPCRequest request = createReleaseRequest(objectName);
+        return complete(send(request.getId(), request, Boolean.class), options);
+    }
+
+    /**
+     * Asynchronously release a remote object, so that the server no longer holds on to it.
+     *
+     * @param objectName The name of the remote object.
+     * @return A future that completes with true if the object was released, or false if there was no object with
+     * that name.
+     */
+    public CompletableFuture<Boolean> releaseObjectAsync(String objectName) {
+        return releaseObjectAsync(objectName, CallOptions.DEFAULT);
+    }
+
+    /**
+     * Instantiate a remote object, and store it under a numeric handle instead of a name. Calls on the object can
+     * pass the handle instead of a name, which is cheaper to send and to look up.
+     *
+     * @param className The canonical name of the class to instantiate.
+     * @return The handle of the remote object.
+     */
+    public int instantiateObjectHandle(String className) {
+        return instantiateObjectHandle(className, new String[0], new Object[0]);
+    }
+
+    /**
+     * Instantiate a remote object, and store it under a numeric handle instead of a name. Calls on the object can
+     * pass the handle instead of a name, which is cheaper to send and to look up.
+     *
+     * @param className     The canonical name of the class to instantiate.
+     * @param argClassNames The canonical names of the classes of the arguments to the constructor. Corresponds to <code>args.</code>
+     *                      Prepend with REMOTE: or HANDLE: to pass a remote object as an argument.
+     * @param args          The objects to pass as arguments to the constructor.
+     * @return The handle of the remote object.
+     */
+    public int instantiateObjectHandle(String className, String[] argClassNames, Object[] args) {
+        RPCRequest request = createRequest(true, className, "", "", argClassNames, args);
+        request.setReturnHandle(true);
+        Integer handle = await(send(request.getId(), request, Integer.class));
+        if (handle == null) {
+            throw new RPCException("The server didn't return a handle for the new " + className + ".");
+        }
+        return handle;
+    }
+
+    /**
+     * Asynchronously instantiate a remote object, and store it under a numeric handle instead of a name.
+     *
+     * @param className     The canonical name of the class to instantiate.
+     * @param argClassNames The canonical names of the classes of the arguments to the constructor. Corresponds to <code>args.</code>
+     *                      Prepend with REMOTE: or HANDLE: to pass a remote object as an argument.
+     * @param args          The objects to pass as arguments to the constructor.
+     * @param options       The timeout and completion executor of the call.
+     * @return A future that completes with the handle of the remote object.
+     */
+    public CompletableFuture<Integer> instantiateObjectHandleAsync(String className, String[] argClassNames, Object[] args,
+                                                                   CallOptions options) {
+        RPCRequest request = createRequest(true, className, "", "", argClassNames, args);
+        request.setReturnHandle(true);
+        return complete(send(request.getId(), request, Integer.class), options);
+    }
+
+    /**
+     * Asynchronously instantiate a remote object, and store it under a numeric handle instead of a name.
+     *
+     * @param className     The canonical name of the class to instantiate.
+     * @param argClassNames The canonical names of the classes of the arguments to the constructor. Corresponds to <code>args.</code>
+     *                      Prepend with REMOTE: or HANDLE: to pass a remote object as an argument.
+     * @param args          The objects to pass as arguments to the constructor.
+     * @return A future that completes with the handle of the remote object.
+     */
+    public CompletableFuture<Integer> instantiateObjectHandleAsync(String className, String[] argClassNames, Object[] args) {
+        return instantiateObjectHandleAsync(className, argClassNames, args, CallOptions.DEFAULT);
+    }
+
+    /**
+     * Execute a method on a remote object that's stored under a handle.
+     *
+     * @param objectHandle The handle of the remote object.
+     * @param methodName   The name of the method to execute.
+     * @param <T>          The return type.
+     * @return The result of the method.
+     */
+    public <T> T executeMethod(int objectHandle, String methodName) {
+        return executeMethod(objectHandle, methodName, new String[0], new Object[0]);
+    }
+
+    /**
+     * Execute a method on a remote object that's stored under a handle.
+     *
+     * @param objectHandle  The handle of the remote object.
+     * @param methodName    The name of the method to execute.
+     * @param argClassNames The canonical names of the classes of the arguments to the method call. Corresponds to <code>args.</code>
+     *                      Prepend with REMOTE: or HANDLE: to pass a remote object as an argument.
+     * @param args          The objects to pass as arguments to the method.
+     * @param <T>           The return type.
+     * @return The result of the method.
+     */
+    public <T> T executeMethod(int objectHandle, String methodName, String[] argClassNames, Object[] args) {
+        return executeMethod(objectHandle, methodName, argClassNames, args, Object.class);
+    }
+
+    /**
+     * Execute a method on a remote object that's stored under a handle, and decode the result to a specific type.
+     *
+     * @param objectHandle  The handle of the remote object.
+     * @param methodName    The name of the method to execute.
+     * @param argClassNames The canonical names of the classes of the arguments to the method call. Corresponds to <code>args.</code>
+     *                      Prepend with REMOTE: or HANDLE: to pass a remote object as an argument.
+     * @param args          The objects to pass as arguments to the method.
+     * @param returnType    The type to decode the result to, such as a class or a <code>TypeToken</code> type.
+     * @param <T>           The return type.
+     * @return The result of the method.
+     */
+    public <T> T executeMethod(int objectHandle, String methodName, String[] argClassNames, Object[] args, Type returnType) {
+        RPCRequest request = createRequest(objectHandle, methodName, argClassNames, args);
+        return await(send(request.getId(), request, returnType));
+    }
+
+    /**
+     * Asynchronously execute a method on a remote object that's stored under a handle.
+     *
+     * @param objectHandle  The handle of the remote object.
+     * @param methodName    The name of the method to execute.
+     * @param argClassNames The canonical names of the classes of the arguments to the method call. Corresponds to <code>args.</code>
+     *                      Prepend with REMOTE: or HANDLE: to pass a remote object as an argument.
+     * @param args          The objects to pass as arguments to the method.
+     * @param options       The timeout and completion executor of the call.
+     * @param <T>           The return type.
+     * @return A future that completes with the result of the method.
+     */
+    public <T> CompletableFuture<T> executeMethodAsync(int objectHandle, String methodName, String[] argClassNames, Object[] args,
+                                                       CallOptions options) {
+        return executeMethodAsync(objectHandle, methodName, argClassNames, args, Object.class, options);
+    }
+
+    /**
+     * Asynchronously execute a method on a remote object that's stored under a handle, and decode the result to a
+     * specific type.
+     *
+     * @param objectHandle  The handle of the remote object.
+     * @param methodName    The name of the method to execute.
+     * @param argClassNames The canonical names of the classes of the arguments to the method call. Corresponds to <code>args.</code>
+     *                      Prepend with REMOTE: or HANDLE: to pass a remote object as an argument.
+     * @param args          The objects to pass as arguments to the method.
+     * @param returnType    The type to decode the result to, such as a class or a <code>TypeToken</code> type.
+     * @param options       The timeout and completion executor of the call.
+     * @param <T>           The return type.
+     * @return A future that completes with the result of the method.
+     */
+    public <T> CompletableFuture<T> executeMethodAsync(int objectHandle, String methodName, String[] argClassNames, Object[] args,
+                                                       Type returnType, CallOptions options) {
+        RPCRequest request = createRequest(objectHandle, methodName, argClassNames, args);
+        request.setResultName(options.getResultName());
+        return sendRequestAsync(request, returnType, options);
+    }
+
+    /**
+     * Asynchronously execute a method on a remote object that's stored under a handle.
+     *
+     * @param objectHandle  The handle of the remote object.
+     * @param methodName    The name of the method to execute.
+     * @param argClassNames The canonical names of the classes of the arguments to the method call. Corresponds to <code>args.</code>
+     *                      Prepend with REMOTE: or HANDLE: to pass a remote object as an argument.
+     * @param args          The objects to pass as arguments to the method.
+     * @param <T>           The return type.
+     * @return A future that completes with the result of the method.
+     */
+    public <T> CompletableFuture<T> executeMethodAsync(int objectHandle, String methodName, String[] argClassNames, Object[] args) {
+        return executeMethodAsync(objectHandle, methodName, argClassNames, args, CallOptions.DEFAULT);
+    }
+
+    /**
+     * Release a remote object that's stored under a handle. The server may reuse the handle for a later object.
+     *
+     * @param objectHandle The handle of the remote object.
+     * @return True if the object was released, false if there was no object with that handle.
+     */
+    public boolean releaseObject(int objectHandle) {
+        RPCRequest request = createReleaseRequest(objectHandle);
+        Boolean released = await(send(request.getId(), request, Boolean.class));
+        return released != null && released;
+    }
+
+    /**
+     * Asynchronously release a remote object that's stored under a handle.
+     *
+     * @param objectHandle The handle of the remote object.
+     * @param options      The timeout and completion executor of the call.
+     * @return A future that completes with true if the object was released, or false if there was no object with
+     * that handle.
+     */
+    public CompletableFuture<Boolean> releaseObjectAsync(int objectHandle, CallOptions options) {
+        RPCRequest request = createReleaseRequest(objectHandle);
+        return complete(send(request.getId(), request, Boolean.class), options);
+    }
+
+    /**
+     * Execute a static method, and stream its result. If the method returns an <code>Iterable</code>,
+     * <code>Stream</code>, <code>Iterator</code>, or array, the server sends its elements in chunks as they're
+     * produced, and they can be consumed as they arrive. The server only sends a few chunks more than the consumer
+     * has taken, so a slow consumer holds back the server instead of buffering the result, without holding up the
+     * responses to other calls. Close the stream to discard the rest of the result.
+     *
+     * @param className     The canonical name of the class which defines the static method.
+     * @param methodName    The name of the static method to execute.
+     * @param argClassNames The canonical names of the classes of the arguments to the method call. Corresponds to <code>args.</code>
+     *                      Prepend with REMOTE: or HANDLE: to pass a remote object as an argument.
+     * @param args          The objects to pass as arguments to the method.
+     * @param elementType   The type to decode each element to, such as a class or a <code>TypeToken</code> type.
+     * @param <T>           The type of the elements.
+     * @return The elements of the result. If an error occurs, it's thrown when the stream reaches it.
+     */
+    public <T> Stream<T> streamStaticMethod(String className, String methodName, String[] argClassNames, Object[] args,
+                                            Type elementType) {
+        RPCRequest request = createRequest(false, className, "", methodName, argClassNames, args);
+        return toStream(sendStreamRequest(request, elementType));
+    }
+
+    /**
+     * Execute a method on a remote object, and stream its result.
+     *
+     * @param objectName    The name of the remote object.
+     * @param methodName    The name of the method to execute.
+     * @param argClassNames The canonical names of the classes of the arguments to the method call. Corresponds to <code>args.</code>
+     *                      Prepend with REMOTE: or HANDLE: to pass a remote object as an argument.
+     * @param args          The objects to pass as arguments to the method.
+     * @param elementType   The type to decode each element to, such as a class or a <code>TypeToken</code> type.
+     * @param <T>           The type of the elements.
+     * @return The elements of the result. If an error occurs, it's thrown when the stream reaches it.
+     * @see #streamStaticMethod(String, String, String[], Object[], Type)
+     */
+    public <T> Stream<T> streamMethod(String objectName, String methodName, String[] argClassNames, Object[] args,
+                                      Type elementType) {
+        RPCRequest request = createRequest(false, "", objectName, methodName, argClassNames, args);
+        return toStream(sendStreamRequest(request, elementType));
+    }
+
+    /**
+     * Execute a method on a remote object that's stored under a handle, and stream its result.
+     *
+     * @param objectHandle  The handle of the remote object.
+     * @param methodName    The name of the method to execute.
+     * @param argClassNames The canonical names of the classes of the arguments to the method call. Corresponds to <code>args.</code>
+     *                      Prepend with REMOTE: or HANDLE: to pass a remote object as an argument.
+     * @param args          The objects to pass as arguments to the method.
+     * @param elementType   The type to decode each element to, such as a class or a <code>TypeToken</code> type.
+     * @param <T>           The type of the elements.
+     * @return The elements of the result. If an error occurs, it's thrown when the stream reaches it.
+     * @see #streamStaticMethod(String, String, String[], Object[], Type)
+     */
+    public <T> Stream<T> streamMethod(int objectHandle, String methodName, String[] argClassNames, Object[] args,
+                                      Type elementType) {
+        RPCRequest request = createRequest(objectHandle, methodName, argClassNames, args);
+        return toStream(sendStreamRequest(request, elementType));
+    }
+
+    /**
+     * Execute a method on a static object, and stream its result.
+     *
+     * @param className     The canonical name of the class which defines the static object.
+     * @param objectName    The name of the static object.
+     * @param methodName    The name of the method to execute.
+     * @param argClassNames The canonical names of the classes of the arguments to the method call. Corresponds to <code>args.</code>
+     *                      Prepend with REMOTE: or HANDLE: to pass a remote object as an argument.
+     * @param args          The objects to pass as arguments to the method.
+     * @param elementType   The type to decode each element to, such as a class or a <code>TypeToken</code> type.
+     * @param <T>           The type of the elements.
+     * @return The elements of the result. If an error occurs, it's thrown when the stream reaches it.
+     * @see #streamStaticMethod(String, String, String[], Object[], Type)
+     */
+    public <T> Stream<T> streamMethodOnStaticObject(String className, String objectName, String methodName,
+                                                    String[] argClassNames, Object[] args, Type elementType) {
+        RPCRequest request = createRequest(false, className, objectName, methodName, argClassNames, args);
+        return toStream(sendStreamRequest(request, elementType));
+    }
+
+    /**
+     * Create a stub that calls the methods of a remote object. Each method of the interface calls the method with the
+     * same name and parameter types on the remote object, and decodes the result to the method's return type.
+     * Methods that return a <code>CompletableFuture</code> are called asynchronously, and methods that return a
+     * <code>Stream</code> or <code>Iterator</code> stream the result. Stubs of remote objects can be
+     * passed as arguments to other stubs, and are sent as references to the remote object.
+     *
+     * @param type       The interface to implement. The remote object doesn't have to implement it.
+     * @param objectName The name of the remote object.
+     * @param <T>        The type of the interface.
+     * @return The stub.
+     */
+    public <T> T createStub(Class<T> type, String objectName) {
+        return createStub(type, objectName, CallOptions.DEFAULT);
+    }
+
+    /**
+     * Create a stub that calls the methods of a remote object.
+     *
+     * @param type       The interface to implement. The remote object doesn't have to implement it.
+     * @param objectName The name of the remote object.
+     * @param options    The timeout and completion executor of every call.
+     * @param <T>        The type of the interface.
+     * @return The stub.
+     * @see #createStub(Class, String)
+     */
+    public <T> T createStub(Class<T> type, String objectName, CallOptions options) {
+        return createStub(type, new StubInvocationHandler(this, type, "", objectName, 0, options));
+    }
+
+    /**
+     * Create a stub that calls the methods of a remote object that's stored under a handle.
+     *
+     * @param type         The interface to implement. The remote object doesn't have to implement it.
+     * @param objectHandle The handle of the remote object.
+     * @param <T>          The type of the interface.
+     * @return The stub.
+     * @see #createStub(Class, String)
+     */
+    public <T> T createStub(Class<T> type, int objectHandle) {
+        return createStub(type, objectHandle, CallOptions.DEFAULT);
+    }
+
+    /**
+     * Create a stub that calls the methods of a remote object that's stored under a handle.
+     *
+     * @param type         The interface to implement. The remote object doesn't have to implement it.
+     * @param objectHandle The handle of the remote object.
+     * @param options      The timeout and completion executor of every call.
+     * @param <T>          The type of the interface.
+     * @return The stub.
+     * @see #createStub(Class, String)
+     */
+    public <T> T createStub(Class<T> type, int objectHandle, CallOptions options) {
+        return createStub(type, new StubInvocationHandler(this, type, "", "", objectHandle, options));
+    }
+
+    /**
+     * Create a stub that calls the static methods of a class. Each method of the interface calls the static method
+     * with the same name and parameter types.
+     *
+     * @param type      The interface to implement.
+     * @param className The canonical name of the class which defines the static methods.
+     * @param <T>       The type of the interface.
+     * @return The stub.
+     * @see #createStub(Class, String)
+     */
+    public <T> T createStaticStub(Class<T> type, String className) {
+        return createStaticStub(type, className, CallOptions.DEFAULT);
+    }
+
+    /**
+     * Create a stub that calls the static methods of a class.
+     *
+     * @param type      The interface to implement.
+     * @param className The canonical name of the class which defines the static methods.
+     * @param options   The timeout and completion executor of every call.
+     * @param <T>       The type of the interface.
+     * @return The stub.
+     * @see #createStaticStub(Class, String)
+     */
+    public <T> T createStaticStub(Class<T> type, String className, CallOptions options) {
+        return createStub(type, new StubInvocationHandler(this, type, className, "", 0, options));
+    }
+
+    private <T> T createStub(Class<T> type, StubInvocationHandler handler) {
+        if (!type.isInterface()) {
+            throw new IllegalArgumentException(type.getName() + " is not an interface!");
+        }
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, handler));
+    }
+
+    /**
+     * Start building a batch of calls, which are sent to the server in a single message.
+     *
+     * @return A builder for the batch.
+     */
+    public BatchBuilder batch() {
+        return new BatchBuilder(this);
     }
 
     /**
@@ -189,7 +1427,39 @@ public class RPCClient implements AutoCloseable {
      */
     @Override
     public void close() throws Exception {
-        in.close();
-        out.close();
+        closed = true;
+        // End the streams first, so their consumers stop waiting for chunks that will never come
+        for (Long callId : pendingCalls.keySet()) {
+            PendingCall call = pendingCalls.get(callId);
+            if (call != null && call.stream != null) {
+                failCall(callId, new RPCException("The RPC client is closed."));
+            }
+        }
+        synchronized (this) {
+            if (timer != null) {
+                timer.shutdownNow();
+            }
+        }
+        synchronized (writeLock) {
+            out.close();
+        }
+        // Close the underlying stream instead of the reader, since the reader thread holds its lock while reading
+        inputStream.close();
+    }
+
+    private static class PendingCall {
+        private final CompletableFuture<Object> future = new CompletableFuture<>();
+        private final long id;
+        private final Type type;
+        private final ResponseStream<?> stream; // Null unless the result is streamed
+        private Object message; // Kept until the call is answered, in case it has to be sent again
+        private List<ByteBuffer> attachments;
+        private int retries = 0;
+
+        private PendingCall(long id, Type type, ResponseStream<?> stream) {
+            this.id = id;
+            this.type = type;
+            this.stream = stream;
+        }
     }
 }
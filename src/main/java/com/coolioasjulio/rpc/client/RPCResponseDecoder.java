@@ -0,0 +1,178 @@
+package com.coolioasjulio.rpc.client;
+
+import com.coolioasjulio.rpc.RPCResponse;
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.lang.reflect.Type;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongFunction;
+
+/**
+ * Decodes JSON-encoded RPC responses in a single pass. The id and exception flag are read first, so the value can be
+ * bound straight to the type expected by the call with that id, instead of being parsed into a generic object and
+ * converted afterwards.
+ */
+public class RPCResponseDecoder {
+    private final TypeAdapter<JsonElement> elementAdapter;
+    private final TypeAdapter<String> stringAdapter;
+    private final Gson gson;
+    private final Map<Type, TypeAdapter<?>> adapters = new ConcurrentHashMap<>();
+
+    /**
+     * Create a response decoder.
+     *
+     * @param gson The Gson instance whose type adapters are used to bind values.
+     */
+    public RPCResponseDecoder(Gson gson) {
+        this.gson = gson;
+        this.elementAdapter = gson.getAdapter(JsonElement.class);
+        this.stringAdapter = gson.getAdapter(String.class);
+    }
+
+    /**
+     * Decode an RPC response.
+     *
+     * @param json The JSON-encoded RPC response.
+     * @param type The type of the value.
+     * @param <T>  The type of the value.
+     * @return The decoded response.
+     * @throws JsonSyntaxException If the response is not valid JSON.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> RPCResponse<T> decode(String json, Type type) {
+        return (RPCResponse<T>) decode(json, id -> type);
+    }
+
+    /**
+     * Decode an RPC response, whose value type depends on the id of the response. If the value can't be bound to
+     * its type, the response is turned into an exception response that describes the problem, so that only the
+     * call it belongs to fails.
+     *
+     * @param json  The JSON-encoded RPC response.
+     * @param types Gets the type of the value from the id of the response. If it returns null, the value is skipped.
+     * @return The decoded response.
+     * @throws JsonSyntaxException If the response is not valid JSON.
+     */
+    public RPCResponse<Object> decode(String json, LongFunction<Type> types) {
+        JsonReader reader = new JsonReader(new StringReader(json));
+        reader.setLenient(true);
+        try {
+            return readResponse(reader, types);
+        } catch (IOException | IllegalStateException | NumberFormatException e) {
+            throw new JsonSyntaxException(e);
+        }
+    }
+
+    private RPCResponse<Object> readResponse(JsonReader reader, LongFunction<Type> types) throws IOException {
+        long id = 0;
+        boolean isException = false;
+        boolean idRead = false;
+        boolean isExceptionRead = false;
+        boolean more = false;
+        String attachment = null;
+        RPCResponse.ErrorCode errorCode = null;
+        Object value = null;
+        JsonElement tree = null; // The value, if it came before the header
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "id":
+                    id = reader.nextLong();
+                    idRead = true;
+                    break;
+
+                case "isException":
+                    isException = reader.nextBoolean();
+                    isExceptionRead = true;
+                    break;
+
+                case "more":
+                    more = reader.nextBoolean();
+                    break;
+
+                case "attachment":
+                    attachment = reader.nextString();
+                    break;
+
+                case "errorCode":
+                    errorCode = parseErrorCode(reader.nextString());
+                    break;
+
+                case "value":
+                    if (idRead && isExceptionRead) {
+                        if (isException) {
+                            value = stringAdapter.read(reader);
+                            break;
+                        }
+                        Type type = types.apply(id);
+                        if (type == null) {
+                            reader.skipValue();
+                            break;
+                        }
+                        try {
+                            value = getAdapter(type).read(reader);
+                        } catch (RuntimeException e) {
+                            // The rest of the response doesn't matter, since the call fails anyway
+                            return bindingFailure(id, type, e);
+                        }
+                    } else {
+                        // The header hasn't been read yet, so hold on to the parse tree for now
+                        tree = elementAdapter.read(reader);
+                    }
+                    break;
+
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+
+        if (tree != null) {
+            if (isException) {
+                value = stringAdapter.fromJsonTree(tree);
+            } else {
+                Type type = types.apply(id);
+                try {
+                    value = type == null ? null : getAdapter(type).fromJsonTree(tree);
+                } catch (RuntimeException e) {
+                    return bindingFailure(id, type, e);
+                }
+            }
+        }
+        RPCResponse<Object> response = new RPCResponse<>(id, value, isException, more);
+        response.setAttachment(attachment); // The value is bound by the caller, which has read the attachment
+        response.setErrorCode(errorCode);
+        return response;
+    }
+
+    private static RPCResponse.ErrorCode parseErrorCode(String name) {
+        try {
+            return RPCResponse.ErrorCode.valueOf(name);
+        } catch (IllegalArgumentException e) {
+            return null; // A newer server may send codes this client doesn't know, which are plain exceptions
+        }
+    }
+
+    private RPCResponse<Object> bindingFailure(long id, Type type, RuntimeException e) {
+        return new RPCResponse<>(id, "Unable to decode the response as " + type.getTypeName() + ": " + e, true);
+    }
+
+    private TypeAdapter<?> getAdapter(Type type) {
+        TypeAdapter<?> adapter = adapters.get(type);
+        if (adapter == null) {
+            adapter = gson.getAdapter(TypeToken.get(type));
+            adapters.put(type, adapter);
+        }
+        return adapter;
+    }
+}
@@ -0,0 +1,134 @@
+package com.coolioasjulio.rpc.client;
+
+import com.coolioasjulio.rpc.RPCException;
+import com.coolioasjulio.rpc.RPCResponse;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.IntConsumer;
+
+/**
+ * The client end of a streamed result. The reader thread hands over chunks of the result as they arrive, and the
+ * consumer iterates over their elements. The server only sends as many chunks as the client has asked for, starting
+ * with a window of a few, and the consumer asks for more as it takes them. So only a few chunks are ever buffered,
+ * and the reader thread never waits for the consumer, which would hold up the responses to every other call on the
+ * same client, including any the consumer makes while it iterates.
+ * <p>
+ * Closing the stream before it's done discards the rest of the result as it arrives.
+ *
+ * @param <T> The type of the elements.
+ */
+class ResponseStream<T> implements Iterator<T>, AutoCloseable {
+    private static final Object END = new Object();
+
+    // Lists of elements, then END or the Throwable that ended the stream. The window bounds it, not its capacity.
+    private final BlockingQueue<Object> chunks = new LinkedBlockingQueue<>();
+    private final int window;
+    private final IntConsumer demand;
+    private final Runnable onClose;
+    private volatile boolean abandoned = false; // Set once nothing more will be taken from the buffer
+    private Iterator<T> current = Collections.emptyIterator();
+    private boolean done = false;
+    private int taken = 0; // Chunks taken since more were last asked for
+
+    /**
+     * Create a response stream.
+     *
+     * @param window  The number of chunks the server may send before it waits for more demand.
+     * @param demand  Asks the server for the given number of chunks more.
+     * @param onClose Called when the consumer closes the stream.
+     */
+    ResponseStream(int window, IntConsumer demand, Runnable onClose) {
+        this.window = window;
+        this.demand = demand;
+        this.onClose = onClose;
+    }
+
+    /**
+     * Hand over a response to the streaming request. Called on the reader thread, and never waits.
+     *
+     * @param response The response, whose value is a list of elements, or the message of the exception that ended
+     *                 the stream.
+     */
+    void accept(RPCResponse<Object> response) {
+        if (response.isException()) {
+            put(RPCClient.toException(response));
+        } else {
+            put(response.getValue() == null ? Collections.emptyList() : response.getValue());
+            if (!response.isMore()) {
+                put(END);
+            }
+        }
+    }
+
+    /**
+     * End the stream with an error, such as when the connection is lost. Anything still buffered is discarded.
+     * This never waits.
+     *
+     * @param cause The error the consumer gets.
+     */
+    void fail(Throwable cause) {
+        abandoned = true;
+        chunks.clear();
+        chunks.offer(cause);
+    }
+
+    private void put(Object item) {
+        if (!abandoned) {
+            chunks.add(item);
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean hasNext() {
+        while (!current.hasNext()) {
+            if (done) return false;
+            Object item;
+            try {
+                item = chunks.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RPCException("Interrupted while waiting for the stream.");
+            }
+
+            if (item == END) {
+                done = true;
+            } else if (item instanceof Throwable) {
+                done = true;
+                Throwable cause = (Throwable) item;
+                throw cause instanceof RuntimeException ? (RuntimeException) cause : new RPCException(cause.toString());
+            } else {
+                current = ((List<T>) item).iterator();
+                // Ask for more once half the window has been taken, so the server rarely has to wait
+                if (++taken >= Math.max(window / 2, 1)) {
+                    demand.accept(taken);
+                    taken = 0;
+                }
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return current.next();
+    }
+
+    @Override
+    public void close() {
+        if (done && abandoned) return;
+        done = true;
+        abandoned = true;
+        current = Collections.emptyIterator();
+        chunks.clear();
+        onClose.run();
+    }
+}
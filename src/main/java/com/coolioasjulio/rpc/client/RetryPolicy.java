@@ -0,0 +1,86 @@
+package com.coolioasjulio.rpc.client;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How a client retries calls that the server rejected because it was overloaded. Those calls never ran, so they're
+ * always safe to send again. Each retry waits longer than the last, up to a maximum, and the wait is randomized so
+ * that clients rejected at the same time don't all come back at once. Instances are immutable, so they can be shared
+ * between clients.
+ */
+public class RetryPolicy {
+    /**
+     * Up to 3 retries, waiting around 50 ms before the first, and doubling each time up to 2 seconds.
+     */
+    public static final RetryPolicy DEFAULT = new RetryPolicy(3, 50, 2000);
+
+    /**
+     * Never retry. Rejected calls fail with a <code>RejectedExecutionException</code>.
+     */
+    public static final RetryPolicy NONE = new RetryPolicy(0, 0, 0);
+
+    private final int maxRetries;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+
+    private RetryPolicy(int maxRetries, long initialBackoffMillis, long maxBackoffMillis) {
+        this.maxRetries = maxRetries;
+        this.initialBackoffMillis = initialBackoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+    }
+
+    /**
+     * Get a copy of this policy with a different number of retries.
+     *
+     * @param maxRetries The number of times a call is sent again before it fails. If 0, calls aren't retried.
+     * @return The new policy.
+     */
+    public RetryPolicy withMaxRetries(int maxRetries) {
+        if (maxRetries < 0) {
+            throw new IllegalArgumentException("maxRetries cannot be negative!");
+        }
+        return new RetryPolicy(maxRetries, initialBackoffMillis, maxBackoffMillis);
+    }
+
+    /**
+     * Get a copy of this policy with a different backoff. The wait before each retry is twice as long as the wait
+     * before the last one, up to the maximum.
+     *
+     * @param initial The wait before the first retry.
+     * @param max     The longest wait before a retry.
+     * @param unit    The unit of the waits.
+     * @return The new policy.
+     */
+    public RetryPolicy withBackoff(long initial, long max, TimeUnit unit) {
+        long initialMillis = Math.max(0, unit.toMillis(initial));
+        return new RetryPolicy(maxRetries, initialMillis, Math.max(initialMillis, unit.toMillis(max)));
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    public long getInitialBackoffMillis() {
+        return initialBackoffMillis;
+    }
+
+    public long getMaxBackoffMillis() {
+        return maxBackoffMillis;
+    }
+
+    /**
+     * Get how long to wait before a retry. This is between half of and the full backoff for that retry, chosen at
+     * random.
+     *
+     * @param retry The number of retries made so far.
+     * @return The wait in milliseconds.
+     */
+    public long getBackoffMillis(int retry) {
+        long backoff = initialBackoffMillis;
+        for (int i = 0; i < retry && backoff < maxBackoffMillis; i++) {
+            backoff = Math.min(backoff * 2, maxBackoffMillis);
+        }
+        return backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+    }
+}
@@ -0,0 +1,176 @@
+package com.coolioasjulio.rpc.client;
+
+import com.coolioasjulio.rpc.RPCRequest;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Proxy;
+import java.lang.reflect.Type;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+
+/**
+ * Backs a stub created by <code>RPCClient.createStub</code>. Each method of the interface is called on the remote
+ * target with the same name. The argument class names and response type of every method are worked out once per
+ * interface, so a call only has to encode its arguments.
+ */
+class StubInvocationHandler implements InvocationHandler {
+    private static final ClassValue<Map<Method, StubMethod>> STUB_METHODS = new ClassValue<Map<Method, StubMethod>>() {
+        @Override
+        protected Map<Method, StubMethod> computeValue(Class<?> type) {
+            Map<Method, StubMethod> methods = new HashMap<>();
+            for (Method method : type.getMethods()) {
+                if (method.getDeclaringClass() != Object.class) {
+                    methods.put(method, new StubMethod(method));
+                }
+            }
+            return methods;
+        }
+    };
+
+    private static class StubMethod {
+        private final String name;
+        private final String[] argClassNames;
+        private final boolean[] mayBeStub; // Interface parameters, which may be passed a stub of a remote object
+        private final boolean hasStubParameters;
+        private final Type type;
+        private final boolean async;
+        private final boolean stream; // Returns a Stream or Iterator, so the result is streamed
+
+        private StubMethod(Method method) {
+            name = method.getName();
+            Class<?>[] parameterTypes = method.getParameterTypes();
+            argClassNames = new String[parameterTypes.length];
+            mayBeStub = new boolean[parameterTypes.length];
+            boolean hasStubParameters = false;
+            for (int i = 0; i < parameterTypes.length; i++) {
+                // The server unboxes argument classes when looking up methods, so primitives are sent boxed
+                argClassNames[i] = box(parameterTypes[i]).getName();
+                mayBeStub[i] = parameterTypes[i].isInterface();
+                hasStubParameters |= mayBeStub[i];
+            }
+            this.hasStubParameters = hasStubParameters;
+
+            async = method.getReturnType() == CompletableFuture.class;
+            stream = method.getReturnType() == Stream.class || method.getReturnType() == Iterator.class;
+            if (async || stream) {
+                // The type of the future's value, or of each element
+                Type returnType = method.getGenericReturnType();
+                type = returnType instanceof ParameterizedType
+                        ? ((ParameterizedType) returnType).getActualTypeArguments()[0]
+                        : Object.class;
+            } else if (method.getReturnType() == void.class) {
+                type = Object.class; // The result is ignored
+            } else if (method.getReturnType().isPrimitive()) {
+                type = box(method.getReturnType());
+            } else {
+                type = method.getGenericReturnType();
+            }
+        }
+    }
+
+    private final RPCClient client;
+    private final Class<?> type;
+    private final String className;
+    private final String objectName;
+    private final int objectHandle;
+    private final CallOptions options;
+    private final Map<Method, StubMethod> methods;
+
+    /**
+     * Create a stub handler.
+     *
+     * @param client       The client that calls are sent through.
+     * @param type         The interface implemented by the stub.
+     * @param className    The class defining the static methods that are called, or "" to call a remote object.
+     * @param objectName   The name of the remote object that's called, or "".
+     * @param objectHandle The handle of the remote object that's called, or 0.
+     * @param options      The options of every call.
+     */
+    StubInvocationHandler(RPCClient client, Class<?> type, String className, String objectName, int objectHandle,
+                          CallOptions options) {
+        this.client = client;
+        this.type = type;
+        this.className = className;
+        this.objectName = objectName;
+        this.objectHandle = objectHandle;
+        this.options = options;
+        this.methods = STUB_METHODS.get(type);
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) {
+        StubMethod stubMethod = methods.get(method);
+        if (stubMethod == null) {
+            // Methods of Object are handled locally
+            switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    return toString();
+            }
+        }
+
+        String[] argClassNames = stubMethod.argClassNames;
+        if (args == null) {
+            args = new Object[0];
+        } else if (stubMethod.hasStubParameters) {
+            // Stubs of remote objects are passed as references to the remote object
+            for (int i = 0; i < args.length; i++) {
+                StubInvocationHandler stub = stubMethod.mayBeStub[i] ? getStub(args[i]) : null;
+                if (stub == null || !stub.className.isEmpty()) continue;
+                if (argClassNames == stubMethod.argClassNames) {
+                    argClassNames = argClassNames.clone();
+                    args = args.clone();
+                }
+                if (stub.objectHandle != 0) {
+                    argClassNames[i] = "HANDLE:" + stubMethod.argClassNames[i];
+                    args[i] = stub.objectHandle;
+                } else {
+                    argClassNames[i] = "REMOTE:" + stubMethod.argClassNames[i];
+                    args[i] = stub.objectName;
+                }
+            }
+        }
+
+        RPCRequest request = client.createRequest(false, className, objectName, stubMethod.name, argClassNames, args);
+        request.setObjectHandle(objectHandle);
+        if (stubMethod.stream) {
+            ResponseStream<Object> elements = client.sendStreamRequest(request, stubMethod.type);
+            return method.getReturnType() == Stream.class ? client.toStream(elements) : elements;
+        } else if (stubMethod.async) {
+            return client.sendRequestAsync(request, stubMethod.type, options);
+        }
+        return client.sendRequest(request, stubMethod.type, options);
+    }
+
+    @Override
+    public String toString() {
+        String target = !className.isEmpty() ? className : objectHandle != 0 ? "#" + objectHandle : objectName;
+        return type.getName() + " stub of " + target;
+    }
+
+    private static StubInvocationHandler getStub(Object object) {
+        if (object == null || !Proxy.isProxyClass(object.getClass())) return null;
+        InvocationHandler handler = Proxy.getInvocationHandler(object);
+        return handler instanceof StubInvocationHandler ? (StubInvocationHandler) handler : null;
+    }
+
+    private static Class<?> box(Class<?> clazz) {
+        if (!clazz.isPrimitive()) return clazz;
+        if (clazz == int.class) return Integer.class;
+        if (clazz == long.class) return Long.class;
+        if (clazz == double.class) return Double.class;
+        if (clazz == float.class) return Float.class;
+        if (clazz == boolean.class) return Boolean.class;
+        if (clazz == char.class) return Character.class;
+        if (clazz == byte.class) return Byte.class;
+        return Short.class;
+    }
+}
@@ -0,0 +1,345 @@
+package com.coolioasjulio.rpc.codec;
+
+import com.coolioasjulio.rpc.RPCBatch;
+import com.coolioasjulio.rpc.RPCRequest;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Binary attachments of the JSON wire format. Primitive arrays and <code>ByteBuffer</code>s are sent next to a message
+ * as raw bytes, instead of as JSON text. An attachment is a header line holding the length of the payload in bytes,
+ * followed by the payload itself, and it comes right before the message it belongs to.
+ * <p>
+ * A request refers to its attachments by index, in the order they were sent: an argument whose class name is
+ * prefixed with <code>ATTACHMENT:</code> has the index of an attachment as its value. A response whose
+ * <code>attachment</code> is set has the class name of its value there, and the value itself is the attachment sent
+ * before it. Multi-byte elements are big-endian, and booleans are one byte each.
+ */
+public class Attachments {
+    public static final String PREFIX = "RPC-ATTACHMENT ";
+    public static final String ARG_PREFIX = "ATTACHMENT:";
+    public static final String BYTE_BUFFER = "java.nio.ByteBuffer";
+
+    private Attachments() {
+        // Static helper
+    }
+
+    /**
+     * Is the specified line the header of an attachment?
+     *
+     * @param line The line read from the stream.
+     * @return True if the line is an attachment header, false otherwise.
+     */
+    public static boolean isHeader(String line) {
+        return line != null && line.startsWith(PREFIX);
+    }
+
+    /**
+     * Create the header of an attachment.
+     *
+     * @param length The length of the payload in bytes.
+     * @return The header line, without the newline.
+     */
+    public static String createHeader(int length) {
+        return PREFIX + length;
+    }
+
+    /**
+     * Parse the length of the payload from an attachment header.
+     *
+     * @param line The header line.
+     * @return The length of the payload in bytes.
+     * @throws IOException If the header is malformed.
+     */
+    public static int parseLength(String line) throws IOException {
+        try {
+            int length = Integer.parseInt(line.substring(PREFIX.length()).trim());
+            if (length < 0) throw new NumberFormatException();
+            return length;
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid attachment header: " + line);
+        }
+    }
+
+    /**
+     * Can the specified value be sent as an attachment?
+     *
+     * @param value The value.
+     * @return True if the value is a primitive array or a <code>ByteBuffer</code>, false otherwise.
+     */
+    public static boolean isAttachable(Object value) {
+        return value != null && isAttachableType(value.getClass());
+    }
+
+    /**
+     * Can values of the specified type be sent as attachments?
+     *
+     * @param type The type.
+     * @return True if it's a primitive array type or a <code>ByteBuffer</code> type, false otherwise.
+     */
+    public static boolean isAttachableType(Object type) {
+        if (!(type instanceof Class)) return false;
+        Class<?> clazz = (Class<?>) type;
+        return ByteBuffer.class.isAssignableFrom(clazz)
+                || (clazz.isArray() && clazz.getComponentType().isPrimitive());
+    }
+
+    /**
+     * Get the class name an attached value is described by.
+     *
+     * @param value The value, which must be attachable.
+     * @return The name of the array class, such as <code>[D</code>, or <code>java.nio.ByteBuffer</code>.
+     */
+    public static String getTypeName(Object value) {
+        return value instanceof ByteBuffer ? BYTE_BUFFER : value.getClass().getName();
+    }
+
+    /**
+     * Encode a value as the payload of an attachment. Byte arrays and buffers are wrapped or duplicated instead of
+     * copied, so they must not be modified until the payload has been written.
+     *
+     * @param value The value, which must be attachable.
+     * @return The payload, from its position to its limit.
+     */
+    public static ByteBuffer encode(Object value) {
+        if (value instanceof ByteBuffer) {
+            return ((ByteBuffer) value).duplicate();
+        } else if (value instanceof byte[]) {
+            return ByteBuffer.wrap((byte[]) value);
+        } else if (value instanceof short[]) {
+            short[] array = (short[]) value;
+            ByteBuffer payload = ByteBuffer.allocate(array.length * 2);
+            payload.asShortBuffer().put(array);
+            return payload;
+        } else if (value instanceof char[]) {
+            char[] array = (char[]) value;
+            ByteBuffer payload = ByteBuffer.allocate(array.length * 2);
+            payload.asCharBuffer().put(array);
+            return payload;
+        } else if (value instanceof int[]) {
+            int[] array = (int[]) value;
+            ByteBuffer payload = ByteBuffer.allocate(array.length * 4);
+            payload.asIntBuffer().put(array);
+            return payload;
+        } else if (value instanceof long[]) {
+            long[] array = (long[]) value;
+            ByteBuffer payload = ByteBuffer.allocate(array.length * 8);
+            payload.asLongBuffer().put(array);
+            return payload;
+        } else if (value instanceof float[]) {
+            float[] array = (float[]) value;
+            ByteBuffer payload = ByteBuffer.allocate(array.length * 4);
+            payload.asFloatBuffer().put(array);
+            return payload;
+        } else if (value instanceof double[]) {
+            double[] array = (double[]) value;
+            ByteBuffer payload = ByteBuffer.allocate(array.length * 8);
+            payload.asDoubleBuffer().put(array);
+            return payload;
+        } else if (value instanceof boolean[]) {
+            boolean[] array = (boolean[]) value;
+            byte[] bytes = new byte[array.length];
+            for (int i = 0; i < array.length; i++) {
+                bytes[i] = (byte) (array[i] ? 1 : 0);
+            }
+            return ByteBuffer.wrap(bytes);
+        }
+        throw new IllegalArgumentException(value.getClass().getName() + " can't be sent as an attachment!");
+    }
+
+    /**
+     * Decode the payload of an attachment.
+     *
+     * @param payload  The payload, from its position to its limit. A <code>ByteBuffer</code> value is the payload
+     *                 itself.
+     * @param typeName The class name of the value, as given by <code>getTypeName</code>.
+     * @return The value.
+     * @throws IllegalArgumentException If the type isn't attachable, or the payload isn't a whole number of elements.
+     */
+    public static Object decode(ByteBuffer payload, String typeName) {
+        switch (typeName) {
+            case BYTE_BUFFER:
+                return payload;
+
+            case "[B": {
+                byte[] array = new byte[payload.remaining()];
+                payload.duplicate().get(array);
+                return array;
+            }
+
+            case "[S": {
+                short[] array = new short[elements(payload, 2, typeName)];
+                payload.duplicate().asShortBuffer().get(array);
+                return array;
+            }
+
+            case "[C": {
+                char[] array = new char[elements(payload, 2, typeName)];
+                payload.duplicate().asCharBuffer().get(array);
+                return array;
+            }
+
+            case "[I": {
+                int[] array = new int[elements(payload, 4, typeName)];
+                payload.duplicate().asIntBuffer().get(array);
+                return array;
+            }
+
+            case "[J": {
+                long[] array = new long[elements(payload, 8, typeName)];
+                payload.duplicate().asLongBuffer().get(array);
+                return array;
+            }
+
+            case "[F": {
+                float[] array = new float[elements(payload, 4, typeName)];
+                payload.duplicate().asFloatBuffer().get(array);
+                return array;
+            }
+
+            case "[D": {
+                double[] array = new double[elements(payload, 8, typeName)];
+                payload.duplicate().asDoubleBuffer().get(array);
+                return array;
+            }
+
+            case "[Z": {
+                boolean[] array = new boolean[payload.remaining()];
+                for (int i = 0; i < array.length; i++) {
+                    array[i] = payload.get(payload.position() + i) != 0;
+                }
+                return array;
+            }
+
+            default:
+                throw new IllegalArgumentException(typeName + " can't be sent as an attachment!");
+        }
+    }
+
+    /**
+     * Write an attachment: its header line, and then its payload. Heap buffers are written straight from their
+     * backing array. This does not flush the stream.
+     *
+     * @param out     The stream to write to.
+     * @param payload The payload, from its position to its limit. Its position is left unchanged.
+     * @throws IOException If an error occurs while writing.
+     */
+    public static void write(OutputStream out, ByteBuffer payload) throws IOException {
+        out.write((createHeader(payload.remaining()) + "\n").getBytes(StandardCharsets.UTF_8));
+        if (payload.hasArray()) {
+            out.write(payload.array(), payload.arrayOffset() + payload.position(), payload.remaining());
+        } else {
+            ByteBuffer source = payload.duplicate();
+            byte[] chunk = new byte[Math.min(source.remaining(), 8192)];
+            while (source.hasRemaining()) {
+                int n = Math.min(source.remaining(), chunk.length);
+                source.get(chunk, 0, n);
+                out.write(chunk, 0, n);
+            }
+        }
+    }
+
+    /**
+     * Read the payload of an attachment, whose header has already been read.
+     *
+     * @param in     The stream to read from.
+     * @param length The length of the payload, from the header.
+     * @return The payload, in a new heap buffer.
+     * @throws IOException If an error occurs while reading, or the stream ends first.
+     */
+    public static ByteBuffer read(LineInputStream in, int length) throws IOException {
+        ByteBuffer payload = ByteBuffer.allocate(length);
+        in.readFully(payload);
+        payload.flip();
+        return payload;
+    }
+
+    /**
+     * Move the large attachable arguments of a message into attachments. Each one is replaced by its index, and its
+     * class name is prefixed with <code>ATTACHMENT:</code>. Only arguments whose class name is the name of their own
+     * type are moved, since the class name is also the type the attachment is decoded to.
+     *
+     * @param message   The <code>RPCRequest</code> or <code>RPCBatch</code> to send.
+     * @param threshold The smallest payload, in bytes, that's sent as an attachment.
+     * @return The payloads of the attachments, in order. Empty if there are none.
+     */
+    public static List<ByteBuffer> extract(Object message, int threshold) {
+        List<ByteBuffer> attachments = new ArrayList<>(0);
+        if (message instanceof RPCBatch) {
+            for (RPCRequest request : ((RPCBatch) message).getRequests()) {
+                extract(request, threshold, attachments);
+            }
+        } else {
+            extract((RPCRequest) message, threshold, attachments);
+        }
+        return attachments;
+    }
+
+    private static void extract(RPCRequest request, int threshold, List<ByteBuffer> attachments) {
+        for (int i = 0; i < request.getArgs().size() && i < request.getArgClassNames().size(); i++) {
+            Object arg = request.getArgs().get(i);
+            String argClassName = request.getArgClassNames().get(i);
+            if (!isAttachable(arg) || !argClassName.equals(getTypeName(arg)) || getLength(arg) < threshold) continue;
+            request.setArg(i, ARG_PREFIX + argClassName, attachments.size());
+            attachments.add(encode(arg));
+        }
+    }
+
+    /**
+     * Replace the <code>ATTACHMENT:</code> arguments of a message with the values of the attachments they refer to.
+     *
+     * @param message     The <code>RPCRequest</code> or <code>RPCBatch</code> that was received.
+     * @param attachments The payloads of the attachments that were sent before the message, in order.
+     * @throws IllegalArgumentException If an argument refers to an attachment that wasn't sent, or an attachment
+     *                                  can't be decoded to the class of its argument.
+     */
+    public static void bind(Object message, List<ByteBuffer> attachments) {
+        if (message instanceof RPCBatch) {
+            for (RPCRequest request : ((RPCBatch) message).getRequests()) {
+                bind(request, attachments);
+            }
+        } else {
+            bind((RPCRequest) message, attachments);
+        }
+    }
+
+    private static void bind(RPCRequest request, List<ByteBuffer> attachments) {
+        for (int i = 0; i < request.getArgs().size() && i < request.getArgClassNames().size(); i++) {
+            String argClassName = request.getArgClassNames().get(i);
+            if (!argClassName.startsWith(ARG_PREFIX)) continue;
+            Object index = request.getArgs().get(i);
+            int n = index instanceof Number ? ((Number) index).intValue() : -1;
+            if (n < 0 || n >= attachments.size()) {
+                throw new IllegalArgumentException("There is no attachment " + index + "!");
+            }
+            String typeName = argClassName.substring(ARG_PREFIX.length());
+            request.setArg(i, typeName, decode(attachments.get(n), typeName));
+        }
+    }
+
+    private static long getLength(Object value) {
+        if (value instanceof ByteBuffer) {
+            return ((ByteBuffer) value).remaining();
+        }
+        Class<?> componentType = value.getClass().getComponentType();
+        long elementSize = componentType == long.class || componentType == double.class ? 8
+                : componentType == int.class || componentType == float.class ? 4
+                : componentType == short.class || componentType == char.class ? 2
+                : 1;
+        return Array.getLength(value) * elementSize;
+    }
+
+    private static int elements(ByteBuffer payload, int size, String typeName) {
+        if (payload.remaining() % size != 0) {
+            throw new IllegalArgumentException("An attachment of " + payload.remaining() + " bytes isn't a "
+                    + typeName + "!");
+        }
+        return payload.remaining() / size;
+    }
+}
@@ -0,0 +1,769 @@
+package com.coolioasjulio.rpc.codec;
+
+import com.coolioasjulio.rpc.RPCBatch;
+import com.coolioasjulio.rpc.RPCRequest;
+import com.coolioasjulio.rpc.RPCResponse;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongFunction;
+
+/**
+ * A compact binary encoding of RPC requests and responses. Every message is a frame prefixed by its length in bytes.
+ * Primitives, strings, primitive arrays, and <code>ByteBuffer</code>s are written directly, and anything else is
+ * written as JSON. Class, object, and method names are interned per session, so after the first use they're sent as
+ * a small index.
+ * <p>
+ * A codec holds the intern tables of one end of one session, so each session needs its own codec. Writes are
+ * locked, so multiple threads can share a codec for writing, but only one thread may read. The lock isn't a monitor,
+ * so a virtual thread that blocks on the stream while writing doesn't hold on to its carrier thread.
+ */
+public class BinaryCodec {
+    public static final int MAX_INTERNED_STRINGS = 4096;
+    public static final int MAX_FRAME_LENGTH = Integer.MAX_VALUE - 8;
+    // Frames up to this long are read into a buffer that's kept for the next frame, and longer ones into their own
+    private static final int MAX_RETAINED_READ_BUFFER = 64 * 1024;
+
+    private static final byte NULL = 0;
+    private static final byte TRUE = 1;
+    private static final byte FALSE = 2;
+    private static final byte BYTE = 3;
+    private static final byte SHORT = 4;
+    private static final byte CHAR = 5;
+    private static final byte INT = 6;
+    private static final byte LONG = 7;
+    private static final byte FLOAT = 8;
+    private static final byte DOUBLE = 9;
+    private static final byte STRING = 10;
+    private static final byte BYTE_ARRAY = 11;
+    private static final byte SHORT_ARRAY = 12;
+    private static final byte CHAR_ARRAY = 13;
+    private static final byte INT_ARRAY = 14;
+    private static final byte LONG_ARRAY = 15;
+    private static final byte FLOAT_ARRAY = 16;
+    private static final byte DOUBLE_ARRAY = 17;
+    private static final byte BOOLEAN_ARRAY = 18;
+    private static final byte JSON = 19;
+    private static final byte RESPONSE_LIST = 20;
+    private static final byte BYTE_BUFFER = 21;
+
+    private static final byte KIND_REQUEST = 0;
+    private static final byte KIND_BATCH = 1;
+
+    private static final int FLAG_INSTANTIATE = 1;
+    private static final int FLAG_RELEASE = 2;
+    private static final int FLAG_RETURN_HANDLE = 4;
+    private static final int FLAG_OBJECT_HANDLE = 8; // Followed by the handle
+    private static final int FLAG_STREAM = 16;
+    private static final int FLAG_TIMEOUT = 32; // Followed by the timeout in milliseconds
+    private static final int FLAG_CANCEL = 64;
+    private static final int FLAG_DEMAND = 128; // Followed by the number of chunks
+
+    private static final int RESPONSE_EXCEPTION = 1;
+    private static final int RESPONSE_MORE = 2;
+    private static final int RESPONSE_DEADLINE_EXCEEDED = 4;
+    private static final int RESPONSE_CANCELLED = 8;
+    private static final int RESPONSE_OVERLOADED = 16;
+
+    private final Gson gson;
+    private final ClassResolver classResolver;
+
+    private final ReentrantLock writeLock = new ReentrantLock(); // Guards the frame being written and the intern tables
+    private final FrameBuffer frame = new FrameBuffer();
+    private final DataOutputStream frameOut = new DataOutputStream(frame);
+    private final Map<String, Integer> writeTable = new HashMap<>();
+    // Strings interned by the frame being written, only added to writeTable once the frame has been sent
+    private final Map<String, Integer> pendingWrites = new HashMap<>();
+    private final List<String> readTable = new ArrayList<>();
+    private byte[] readBuffer = new byte[256];
+    private long lastFrameNanos;
+    private int maxFrameLength = MAX_FRAME_LENGTH;
+
+    /**
+     * Create a binary codec for the client end of a session.
+     *
+     * @param gson The Gson instance used to encode and decode values that don't have a direct encoding.
+     */
+    public BinaryCodec(Gson gson) {
+        this(gson, Class::forName);
+    }
+
+    /**
+     * Create a binary codec.
+     *
+     * @param gson          The Gson instance used to encode and decode values that don't have a direct encoding.
+     * @param classResolver Used to resolve the argument classes of requests while decoding.
+     */
+    public BinaryCodec(Gson gson, ClassResolver classResolver) {
+        this.gson = gson;
+        this.classResolver = classResolver;
+    }
+
+    /**
+     * Write an RPC request as a single frame. This does not flush the stream.
+     *
+     * @param out     The stream to write to.
+     * @param request The request to write.
+     * @throws IOException If an error occurs while writing.
+     */
+    public void writeRequest(OutputStream out, RPCRequest request) throws IOException {
+        writeLock.lock();
+        try {
+            frame.reset();
+            pendingWrites.clear();
+            frameOut.writeByte(KIND_REQUEST);
+            writeRequestBody(request);
+            frame.writeFrameTo(out);
+            commitInterned();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Write a batch of RPC requests as a single frame. This does not flush the stream.
+     *
+     * @param out   The stream to write to.
+     * @param batch The batch to write.
+     * @throws IOException If an error occurs while writing.
+     */
+    public void writeBatch(OutputStream out, RPCBatch batch) throws IOException {
+        writeLock.lock();
+        try {
+            frame.reset();
+            pendingWrites.clear();
+            frameOut.writeByte(KIND_BATCH);
+            frameOut.writeLong(batch.getId());
+            frameOut.writeBoolean(batch.isStopOnError());
+            writeVarInt(frameOut, batch.getRequests().size());
+            for (RPCRequest request : batch.getRequests()) {
+                writeRequestBody(request);
+            }
+            frame.writeFrameTo(out);
+            commitInterned();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void writeRequestBody(RPCRequest request) throws IOException {
+        frameOut.writeLong(request.getId());
+        int objectHandle = request.getObjectHandle();
+        long timeoutMillis = request.getTimeoutMillis();
+        frameOut.writeByte((request.isInstantiate() ? FLAG_INSTANTIATE : 0)
+                | (request.isRelease() ? FLAG_RELEASE : 0)
+                | (request.isReturnHandle() ? FLAG_RETURN_HANDLE : 0)
+                | (objectHandle != 0 ? FLAG_OBJECT_HANDLE : 0)
+                | (request.isStream() ? FLAG_STREAM : 0)
+                | (timeoutMillis != 0 ? FLAG_TIMEOUT : 0)
+                | (request.isCancel() ? FLAG_CANCEL : 0)
+                | (request.getDemand() != 0 ? FLAG_DEMAND : 0));
+        if (objectHandle != 0) {
+            writeVarInt(frameOut, objectHandle);
+        }
+        if (timeoutMillis != 0) {
+            writeVarInt(frameOut, clampTimeout(timeoutMillis));
+        }
+        if (request.getDemand() != 0) {
+            writeVarInt(frameOut, request.getDemand());
+        }
+        writeInterned(request.getClassName());
+        writeInterned(request.getObjectName());
+        writeInterned(request.getMethodName());
+        writeInterned(request.getResultName() == null ? "" : request.getResultName());
+        List<String> argClassNames = request.getArgClassNames();
+        List<Object> args = request.getArgs();
+        writeVarInt(frameOut, argClassNames.size());
+        for (int i = 0; i < argClassNames.size(); i++) {
+            writeInterned(argClassNames.get(i));
+            writeValue(args.get(i));
+        }
+    }
+
+    /**
+     * Write an RPC response as a single frame. This does not flush the stream.
+     *
+     * @param out      The stream to write to.
+     * @param response The response to write.
+     * @throws IOException If an error occurs while writing.
+     */
+    public void writeResponse(OutputStream out, RPCResponse<?> response) throws IOException {
+        writeLock.lock();
+        try {
+            frame.reset();
+            frameOut.writeLong(response.getId());
+            frameOut.writeByte((response.isException() ? RESPONSE_EXCEPTION : 0)
+                    | (response.isMore() ? RESPONSE_MORE : 0)
+                    | (response.getErrorCode() == RPCResponse.ErrorCode.DEADLINE_EXCEEDED
+                    ? RESPONSE_DEADLINE_EXCEEDED : 0)
+                    | (response.getErrorCode() == RPCResponse.ErrorCode.CANCELLED ? RESPONSE_CANCELLED : 0)
+                    | (response.getErrorCode() == RPCResponse.ErrorCode.OVERLOADED ? RESPONSE_OVERLOADED : 0));
+            writeValue(response.getValue());
+            frame.writeFrameTo(out);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Read an RPC request. If every argument class could be resolved, the arguments of the request will already be
+     * typed.
+     *
+     * @param in The stream to read from.
+     * @return The request, or null if the end of the stream has been reached.
+     * @throws IOException If an error occurs while reading, or the frame is malformed or a batch.
+     */
+    public RPCRequest readRequest(InputStream in) throws IOException {
+        Object message = readMessage(in);
+        if (message != null && !(message instanceof RPCRequest)) {
+            throw new IOException("Expected a single request, but got a batch!");
+        }
+        return (RPCRequest) message;
+    }
+
+    /**
+     * Read an RPC request or a batch of RPC requests.
+     *
+     * @param in The stream to read from.
+     * @return The <code>RPCRequest</code> or <code>RPCBatch</code>, or null if the end of the stream has been reached.
+     * @throws IOException If an error occurs while reading, or the frame is malformed.
+     */
+    public Object readMessage(InputStream in) throws IOException {
+        DataInputStream data = readFrame(in);
+        if (data == null) return null;
+
+        byte kind = data.readByte();
+        switch (kind) {
+            case KIND_REQUEST:
+                return readRequestBody(data);
+
+            case KIND_BATCH: {
+                long id = data.readLong();
+                boolean stopOnError = data.readBoolean();
+                int size = readLength(data);
+                List<RPCRequest> requests = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    requests.add(readRequestBody(data));
+                }
+                return new RPCBatch(id, stopOnError, requests);
+            }
+
+            default:
+                throw new IOException("Unknown message kind: " + kind);
+        }
+    }
+
+    private RPCRequest readRequestBody(DataInputStream data) throws IOException {
+        long id = data.readLong();
+        int flags = data.readUnsignedByte();
+        boolean instantiate = (flags & FLAG_INSTANTIATE) != 0;
+        int objectHandle = (flags & FLAG_OBJECT_HANDLE) != 0 ? readVarInt(data) : 0;
+        // Read as unsigned, so that a long timeout from another implementation doesn't come out negative
+        long timeoutMillis = (flags & FLAG_TIMEOUT) != 0 ? readVarInt(data) & 0xFFFFFFFFL : 0;
+        int demand = (flags & FLAG_DEMAND) != 0 ? readVarInt(data) : 0;
+        String className = readInterned(data);
+        String objectName = readInterned(data);
+        String methodName = readInterned(data);
+        String resultName = readInterned(data);
+        int argc = readLength(data);
+        String[] argClassNames = new String[argc];
+        Object[] args = new Object[argc];
+        boolean argsTyped = true;
+        for (int i = 0; i < argc; i++) {
+            argClassNames[i] = readInterned(data);
+            Class<?> clazz = null;
+            if (argClassNames[i].startsWith("REMOTE:")) {
+                clazz = String.class;
+            } else if (argClassNames[i].startsWith("HANDLE:")) {
+                clazz = Integer.class;
+            } else {
+                try {
+                    clazz = classResolver.resolve(argClassNames[i]);
+                } catch (ClassNotFoundException e) {
+                    // Let dispatching report the error
+                    argsTyped = false;
+                }
+            }
+            args[i] = readValue(data, clazz == null ? Object.class : clazz);
+            if (clazz != null && args[i] != null && !clazz.isInstance(args[i])) {
+                // The client sent a different type, such as an int for a double, so convert it
+                args[i] = gson.fromJson(gson.toJsonTree(args[i]), clazz);
+            }
+        }
+
+        RPCRequest request = new RPCRequest(id, instantiate, className, objectName, methodName, argClassNames, args);
+        request.setResultName(resultName);
+        request.setRelease((flags & FLAG_RELEASE) != 0);
+        request.setReturnHandle((flags & FLAG_RETURN_HANDLE) != 0);
+        request.setStream((flags & FLAG_STREAM) != 0);
+        request.setObjectHandle(objectHandle);
+        request.setTimeoutMillis(timeoutMillis);
+        request.setCancel((flags & FLAG_CANCEL) != 0);
+        request.setDemand(demand);
+        request.setArgsTyped(argsTyped);
+        return request;
+    }
+
+    /**
+     * Read an RPC response.
+     *
+     * @param in   The stream to read from.
+     * @param type The type of the value of the response. Values sent as JSON are decoded to this type.
+     * @param <T>  The type of the value.
+     * @return The response, or null if the end of the stream has been reached.
+     * @throws IOException If an error occurs while reading, or the frame is malformed.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> RPCResponse<T> readResponse(InputStream in, Type type) throws IOException {
+        return (RPCResponse<T>) readResponse(in, id -> type);
+    }
+
+    /**
+     * Read an RPC response, whose value type depends on the id of the response. Values are decoded to that type as
+     * they're read. If the value can't be converted to its type, the response is turned into an exception response
+     * that describes the problem, so that only the call it belongs to fails.
+     *
+     * @param in    The stream to read from.
+     * @param types Gets the type of the value from the id of the response. If it returns null, the value is decoded
+     *              without a type.
+     * @return The response, or null if the end of the stream has been reached.
+     * @throws IOException If an error occurs while reading, or the frame is malformed.
+     */
+    public RPCResponse<Object> readResponse(InputStream in, LongFunction<Type> types) throws IOException {
+        DataInputStream data = readFrame(in);
+        if (data == null) return null;
+
+        long id = data.readLong();
+        int flags = data.readUnsignedByte();
+        if ((flags & RESPONSE_EXCEPTION) != 0) {
+            RPCResponse<Object> response = new RPCResponse<>(id, readValue(data, String.class), true);
+            if ((flags & RESPONSE_DEADLINE_EXCEEDED) != 0) {
+                response.setErrorCode(RPCResponse.ErrorCode.DEADLINE_EXCEEDED);
+            } else if ((flags & RESPONSE_CANCELLED) != 0) {
+                response.setErrorCode(RPCResponse.ErrorCode.CANCELLED);
+            } else if ((flags & RESPONSE_OVERLOADED) != 0) {
+                response.setErrorCode(RPCResponse.ErrorCode.OVERLOADED);
+            }
+            return response;
+        }
+        boolean more = (flags & RESPONSE_MORE) != 0;
+        Type type = types.apply(id);
+        if (type == null) type = Object.class;
+        try {
+            return new RPCResponse<>(id, convert(readValue(data, type), type), false, more);
+        } catch (RuntimeException e) {
+            return new RPCResponse<>(id, "Unable to decode the response as " + type.getTypeName() + ": " + e, true);
+        }
+    }
+
+    /**
+     * Set the length of the largest frame that's read. Longer frames are rejected before they're buffered, so a
+     * misbehaving peer can't make this end allocate more than this.
+     *
+     * @param maxFrameLength The largest frame length in bytes.
+     */
+    public void setMaxFrameLength(int maxFrameLength) {
+        this.maxFrameLength = Math.min(Math.max(maxFrameLength, 0), MAX_FRAME_LENGTH);
+    }
+
+    public int getMaxFrameLength() {
+        return maxFrameLength;
+    }
+
+    /**
+     * Get the time at which the last frame was fully read. Decoding starts then, so this is used to time decoding
+     * separately from waiting for the frame to arrive.
+     *
+     * @return The value of <code>System.nanoTime()</code> when the last frame was read.
+     */
+    public long getLastFrameNanos() {
+        return lastFrameNanos;
+    }
+
+    private DataInputStream readFrame(InputStream in) throws IOException {
+        int b0 = in.read();
+        if (b0 < 0) return null;
+        int b1 = in.read(), b2 = in.read(), b3 = in.read();
+        if ((b1 | b2 | b3) < 0) throw new EOFException();
+        int length = (b0 << 24) | (b1 << 16) | (b2 << 8) | b3;
+        if (length < 0 || length > maxFrameLength) {
+            throw new IOException("Invalid frame length: " + length);
+        }
+        byte[] buffer;
+        if (length > MAX_RETAINED_READ_BUFFER) {
+            // Don't hold on to the memory of one large frame for the rest of the session
+            buffer = new byte[length];
+        } else {
+            if (readBuffer.length < length) {
+                readBuffer = new byte[Math.min(Math.max(length, readBuffer.length * 2), MAX_RETAINED_READ_BUFFER)];
+            }
+            buffer = readBuffer;
+        }
+        int read = 0;
+        while (read < length) {
+            int n = in.read(buffer, read, length - read);
+            if (n < 0) throw new EOFException();
+            read += n;
+        }
+        lastFrameNanos = System.nanoTime();
+        return new DataInputStream(new ByteArrayInputStream(buffer, 0, length));
+    }
+
+    /**
+     * Get the size of the buffer that's kept for reading frames.
+     *
+     * @return The length of the buffer in bytes.
+     */
+    int getReadBufferSize() {
+        return readBuffer.length;
+    }
+
+    private void writeInterned(String s) throws IOException {
+        Integer index = writeTable.get(s);
+        if (index == null) {
+            index = pendingWrites.get(s);
+        }
+        if (index != null) {
+            writeVarInt(frameOut, index + 1);
+        } else {
+            writeVarInt(frameOut, 0);
+            writeString(s);
+            int size = writeTable.size() + pendingWrites.size();
+            if (size < MAX_INTERNED_STRINGS) {
+                pendingWrites.put(s, size);
+            }
+        }
+    }
+
+    /**
+     * Add the strings interned by the frame that was just written to the table. If the frame couldn't be encoded,
+     * the peer never saw them, so they're discarded when the next frame starts instead.
+     */
+    private void commitInterned() {
+        writeTable.putAll(pendingWrites);
+        pendingWrites.clear();
+    }
+
+    private String readInterned(DataInputStream in) throws IOException {
+        int ref = readVarInt(in);
+        if (ref > 0) {
+            if (ref > readTable.size()) throw new IOException("Unknown interned string: " + ref);
+            return readTable.get(ref - 1);
+        }
+        String s = readString(in);
+        if (readTable.size() < MAX_INTERNED_STRINGS) {
+            readTable.add(s);
+        }
+        return s;
+    }
+
+    private void writeString(String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(frameOut, bytes.length);
+        frameOut.write(bytes);
+    }
+
+    private String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[readLength(in)];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private void writeValue(Object value) throws IOException {
+        DataOutputStream out = frameOut;
+        if (value == null) {
+            out.writeByte(NULL);
+        } else if (value instanceof Boolean) {
+            out.writeByte((Boolean) value ? TRUE : FALSE);
+        } else if (value instanceof Byte) {
+            out.writeByte(BYTE);
+            out.writeByte((Byte) value);
+        } else if (value instanceof Short) {
+            out.writeByte(SHORT);
+            out.writeShort((Short) value);
+        } else if (value instanceof Character) {
+            out.writeByte(CHAR);
+            out.writeChar((Character) value);
+        } else if (value instanceof Integer) {
+            out.writeByte(INT);
+            out.writeInt((Integer) value);
+        } else if (value instanceof Long) {
+            out.writeByte(LONG);
+            out.writeLong((Long) value);
+        } else if (value instanceof Float) {
+            out.writeByte(FLOAT);
+            out.writeFloat((Float) value);
+        } else if (value instanceof Double) {
+            out.writeByte(DOUBLE);
+            out.writeDouble((Double) value);
+        } else if (value instanceof String) {
+            out.writeByte(STRING);
+            writeString((String) value);
+        } else if (value instanceof byte[]) {
+            byte[] array = (byte[]) value;
+            out.writeByte(BYTE_ARRAY);
+            writeVarInt(out, array.length);
+            out.write(array);
+        } else if (value instanceof short[]) {
+            out.writeByte(SHORT_ARRAY);
+            writeVarInt(out, ((short[]) value).length);
+            writePayload(out, value);
+        } else if (value instanceof char[]) {
+            out.writeByte(CHAR_ARRAY);
+            writeVarInt(out, ((char[]) value).length);
+            writePayload(out, value);
+        } else if (value instanceof int[]) {
+            out.writeByte(INT_ARRAY);
+            writeVarInt(out, ((int[]) value).length);
+            writePayload(out, value);
+        } else if (value instanceof long[]) {
+            out.writeByte(LONG_ARRAY);
+            writeVarInt(out, ((long[]) value).length);
+            writePayload(out, value);
+        } else if (value instanceof float[]) {
+            out.writeByte(FLOAT_ARRAY);
+            writeVarInt(out, ((float[]) value).length);
+            writePayload(out, value);
+        } else if (value instanceof double[]) {
+            out.writeByte(DOUBLE_ARRAY);
+            writeVarInt(out, ((double[]) value).length);
+            writePayload(out, value);
+        } else if (value instanceof boolean[]) {
+            out.writeByte(BOOLEAN_ARRAY);
+            writeVarInt(out, ((boolean[]) value).length);
+            writePayload(out, value);
+        } else if (value instanceof ByteBuffer) {
+            ByteBuffer buffer = (ByteBuffer) value;
+            out.writeByte(BYTE_BUFFER);
+            writeVarInt(out, buffer.remaining());
+            writePayload(out, buffer);
+        } else if (value instanceof List && isResponseList((List<?>) value)) {
+            List<?> responses = (List<?>) value;
+            out.writeByte(RESPONSE_LIST);
+            writeVarInt(out, responses.size());
+            for (Object o : responses) {
+                RPCResponse<?> response = (RPCResponse<?>) o;
+                out.writeLong(response.getId());
+                out.writeBoolean(response.isException());
+                writeValue(response.getValue());
+            }
+        } else {
+            out.writeByte(JSON);
+            writeString(gson.toJson(value));
+        }
+    }
+
+    private Object readValue(DataInputStream in, Type type) throws IOException {
+        byte tag = in.readByte();
+        switch (tag) {
+            case NULL:
+                return null;
+            case TRUE:
+                return true;
+            case FALSE:
+                return false;
+            case BYTE:
+                return in.readByte();
+            case SHORT:
+                return in.readShort();
+            case CHAR:
+                return in.readChar();
+            case INT:
+                return in.readInt();
+            case LONG:
+                return in.readLong();
+            case FLOAT:
+                return in.readFloat();
+            case DOUBLE:
+                return in.readDouble();
+            case STRING:
+                return readString(in);
+            case BYTE_ARRAY: {
+                byte[] array = new byte[readLength(in)];
+                in.readFully(array);
+                return array;
+            }
+            case SHORT_ARRAY:
+                return readArray(in, 2, "[S");
+            case CHAR_ARRAY:
+                return readArray(in, 2, "[C");
+            case INT_ARRAY:
+                return readArray(in, 4, "[I");
+            case LONG_ARRAY:
+                return readArray(in, 8, "[J");
+            case FLOAT_ARRAY:
+                return readArray(in, 4, "[F");
+            case DOUBLE_ARRAY:
+                return readArray(in, 8, "[D");
+            case BOOLEAN_ARRAY:
+                return readArray(in, 1, "[Z");
+            case BYTE_BUFFER: {
+                byte[] bytes = new byte[readLength(in)];
+                in.readFully(bytes);
+                return ByteBuffer.wrap(bytes);
+            }
+            case JSON:
+                return gson.fromJson(readString(in), type);
+            case RESPONSE_LIST: {
+                int size = readLength(in);
+                List<RPCResponse<Object>> responses = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    long id = in.readLong();
+                    boolean isException = in.readBoolean();
+                    responses.add(new RPCResponse<>(id, readValue(in, isException ? String.class : Object.class),
+                            isException));
+                }
+                return responses;
+            }
+            default:
+                throw new IOException("Unknown value tag: " + tag);
+        }
+    }
+
+    /**
+     * Write the elements of a primitive array or buffer in bulk, in the same layout as the attachments of the JSON
+     * wire format.
+     */
+    private static void writePayload(DataOutputStream out, Object value) throws IOException {
+        ByteBuffer payload = Attachments.encode(value);
+        if (payload.hasArray()) {
+            out.write(payload.array(), payload.arrayOffset() + payload.position(), payload.remaining());
+        } else {
+            byte[] bytes = new byte[payload.remaining()];
+            payload.get(bytes);
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Read the length of a string, byte array, or list. Every element takes at least a byte, so it can't be longer
+     * than the rest of the frame.
+     */
+    private static int readLength(DataInputStream in) throws IOException {
+        int length = readVarInt(in);
+        if (length < 0 || length > in.available()) {
+            throw new IOException("Invalid length: " + length);
+        }
+        return length;
+    }
+
+    /**
+     * Read the elements of a primitive array in bulk.
+     */
+    private static Object readArray(DataInputStream in, int elementSize, String typeName) throws IOException {
+        int length = readVarInt(in);
+        if (length < 0 || length > in.available() / elementSize) {
+            throw new IOException("Invalid array length: " + length);
+        }
+        byte[] bytes = new byte[length * elementSize];
+        in.readFully(bytes);
+        return Attachments.decode(ByteBuffer.wrap(bytes), typeName);
+    }
+
+    /**
+     * Convert a value that was read without knowing its type, such as a number of a different width, or a primitive
+     * array where a list is expected.
+     */
+    private Object convert(Object value, Type type) {
+        if (value == null || type == Object.class) return value;
+        Class<?> rawType = wrap(TypeToken.get(type).getRawType());
+        if (rawType.isInstance(value)) return value;
+
+        if (value instanceof Number) {
+            Number n = (Number) value;
+            if (rawType == Long.class) return n.longValue();
+            if (rawType == Integer.class) return n.intValue();
+            if (rawType == Double.class) return n.doubleValue();
+            if (rawType == Float.class) return n.floatValue();
+            if (rawType == Short.class) return n.shortValue();
+            if (rawType == Byte.class) return n.byteValue();
+        }
+        return gson.fromJson(gson.toJsonTree(value), type);
+    }
+
+    private static Class<?> wrap(Class<?> clazz) {
+        if (!clazz.isPrimitive()) return clazz;
+        if (clazz == int.class) return Integer.class;
+        if (clazz == long.class) return Long.class;
+        if (clazz == double.class) return Double.class;
+        if (clazz == float.class) return Float.class;
+        if (clazz == boolean.class) return Boolean.class;
+        if (clazz == char.class) return Character.class;
+        if (clazz == byte.class) return Byte.class;
+        if (clazz == short.class) return Short.class;
+        return Void.class;
+    }
+
+    private static boolean isResponseList(List<?> list) {
+        for (Object o : list) {
+            if (!(o instanceof RPCResponse)) return false;
+        }
+        return !list.isEmpty();
+    }
+
+    /**
+     * Clamp a timeout to the range of an int. A timeout longer than that, about 24 days, is sent as the longest one
+     * that fits, rather than being truncated to a shorter or negative one.
+     */
+    private static int clampTimeout(long timeoutMillis) {
+        return (int) Math.max(0, Math.min(timeoutMillis, Integer.MAX_VALUE));
+    }
+
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    /**
+     * A byte buffer that reserves room for the length prefix, so the frame can be written out in one call.
+     */
+    private static class FrameBuffer extends ByteArrayOutputStream {
+        FrameBuffer() {
+            super(256);
+            reset();
+        }
+
+        @Override
+        public synchronized void reset() {
+            count = 4;
+        }
+
+        void writeFrameTo(OutputStream out) throws IOException {
+            int length = count - 4;
+            buf[0] = (byte) (length >>> 24);
+            buf[1] = (byte) (length >>> 16);
+            buf[2] = (byte) (length >>> 8);
+            buf[3] = (byte) length;
+            out.write(buf, 0, count);
+        }
+    }
+}
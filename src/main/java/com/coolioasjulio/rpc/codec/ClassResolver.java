@@ -0,0 +1,12 @@
+package com.coolioasjulio.rpc.codec;
+
+public interface ClassResolver {
+    /**
+     * Resolve a class by name.
+     *
+     * @param className The name of the class.
+     * @return The class with the specified name.
+     * @throws ClassNotFoundException If the class doesn't exist.
+     */
+    Class<?> resolve(String className) throws ClassNotFoundException;
+}
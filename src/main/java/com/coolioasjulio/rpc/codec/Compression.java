@@ -0,0 +1,54 @@
+package com.coolioasjulio.rpc.codec;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Stream compression of a session, negotiated in the handshake. Once both sides have agreed on it, everything after
+ * the handshake is sent in frames. Each flush of the stream is one frame: a header, which is a varint (7 bits per
+ * byte, least significant first) of the length of the payload shifted left by one, with the lowest bit set if the
+ * payload is compressed, followed by the payload. Small frames are sent as they are. Larger frames are compressed with raw
+ * deflate, and all of them are part of one deflate stream per direction, so each frame can refer back to earlier
+ * ones. Both ends start that stream with the same preset dictionary of strings that are common in RPC messages, so
+ * even the first small messages of a session compress well.
+ * <p>
+ * Compression works with any wire format, and over any <code>InputStream</code> and <code>OutputStream</code>.
+ */
+public class Compression {
+    public static final String HANDSHAKE_OPTION = "deflate";
+    public static final int DEFAULT_THRESHOLD = 32;
+
+    static final int FRAME_RAW = 0;
+    static final int FRAME_DEFLATED = 1;
+
+    // The most common strings go last, since deflate encodes close matches more cheaply
+    private static final byte[] DICTIONARY = (
+            "java.util.ArrayList" + "java.util.List" + "java.util.Map" + "java.lang.Object" + "java.lang.Character"
+                    + "java.lang.Byte" + "java.lang.Short" + "java.lang.Float" + "java.lang.Boolean"
+                    + "java.lang.Long" + "[Ljava.lang.Object;" + "[I" + "[D" + "java.lang.Double"
+                    + "java.lang.Integer" + "java.lang.String" + "REMOTE:" + "HANDLE:" + "ATTACHMENT:"
+                    + "{\"id\":0,\"requests\":[],\"stopOnError\":false}"
+                    + ",\"release\":true,\"objectHandle\":1,\"returnHandle\":true,\"stream\":true"
+                    + ",\"attachResult\":true,\"resultName\":\"\""
+                    + "{\"id\":0,\"instantiate\":false,\"className\":\"\",\"objectName\":\"\",\"methodName\":\"\""
+                    + ",\"argClassNames\":[\"java.lang.\"],\"args\":[]}"
+                    + "{\"id\":0,\"isException\":true,\"value\":\"java.lang.Exception: \"}"
+                    + "{\"id\":0,\"isException\":false,\"value\":[],\"more\":true,\"attachment\":\"\"}"
+                    + "{\"id\":0,\"isException\":false,\"value\":{\"\":\"\"}}").getBytes(StandardCharsets.UTF_8);
+
+    private Compression() {
+        // Static helper
+    }
+
+    /**
+     * Get the preset dictionary that both ends start their deflate streams with.
+     *
+     * @return A copy of the dictionary.
+     */
+    public static byte[] getDictionary() {
+        return DICTIONARY.clone();
+    }
+
+    static byte[] dictionary() {
+        return DICTIONARY;
+    }
+}
@@ -0,0 +1,156 @@
+package com.coolioasjulio.rpc.codec;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+/**
+ * The sending end of a compressed session. Everything written is buffered until the stream is flushed, and then sent
+ * as one frame, which is compressed if it's at least as large as the threshold. See {@link Compression} for the
+ * frame layout.
+ * <p>
+ * The threshold adapts to the data: while frames hardly shrink, such as when they're mostly binary attachments, it's
+ * raised so that less time is spent compressing them, and it drops back down once frames compress well again.
+ * <p>
+ * This isn't thread safe. Writers must hold a lock from the first write of a message until it's flushed.
+ */
+public class DeflatingOutputStream extends FilterOutputStream {
+    private static final int MAX_THRESHOLD = 1 << 20;
+
+    private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    private final int minThreshold;
+    private int threshold;
+    private byte[] buffer = new byte[8192];
+    private int count = 0;
+    private byte[] compressed = new byte[8192];
+    private final byte[] headerBuffer = new byte[5];
+    private long bytesIn = 0;
+    private long bytesOut = 0;
+
+    /**
+     * Create a deflating output stream.
+     *
+     * @param out       The stream that frames are written to.
+     * @param threshold The size, in bytes, from which frames are compressed. It's never lowered past this.
+     */
+    public DeflatingOutputStream(OutputStream out, int threshold) {
+        super(out);
+        this.minThreshold = Math.max(threshold, 0);
+        this.threshold = minThreshold;
+        deflater.setDictionary(Compression.dictionary());
+    }
+
+    /**
+     * Get the size from which frames are currently compressed.
+     *
+     * @return The current threshold in bytes.
+     */
+    public int getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * Get the number of bytes written to this stream, before compression.
+     *
+     * @return The number of bytes written.
+     */
+    public long getBytesIn() {
+        return bytesIn;
+    }
+
+    /**
+     * Get the number of bytes sent to the underlying stream, including frame headers.
+     *
+     * @return The number of bytes sent.
+     */
+    public long getBytesOut() {
+        return bytesOut;
+    }
+
+    @Override
+    public void write(int b) {
+        ensureCapacity(1);
+        buffer[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        ensureCapacity(len);
+        System.arraycopy(b, off, buffer, count, len);
+        count += len;
+    }
+
+    /**
+     * Send everything written since the last flush as one frame, and flush the underlying stream.
+     *
+     * @throws IOException If an error occurs while writing.
+     */
+    @Override
+    public void flush() throws IOException {
+        if (count > 0) {
+            bytesIn += count;
+            if (count < threshold) {
+                writeFrame(Compression.FRAME_RAW, buffer, count);
+            } else {
+                int length = deflate();
+                writeFrame(Compression.FRAME_DEFLATED, compressed, length);
+                adapt(count, length);
+            }
+            count = 0;
+        }
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            deflater.end();
+            out.close();
+        }
+    }
+
+    private int deflate() {
+        deflater.setInput(buffer, 0, count);
+        int length = 0;
+        while (true) {
+            // A sync flush ends the frame on a byte boundary, while keeping the history for the next frame
+            length += deflater.deflate(compressed, length, compressed.length - length, Deflater.SYNC_FLUSH);
+            if (length < compressed.length) break;
+            compressed = Arrays.copyOf(compressed, compressed.length * 2);
+        }
+        return length;
+    }
+
+    private void adapt(int rawLength, int compressedLength) {
+        if (compressedLength * 10L > rawLength * 9L) {
+            // Saved less than 10%, so only bother with larger frames
+            threshold = (int) Math.min(Math.max(threshold, 64) * 2L, MAX_THRESHOLD);
+        } else if (compressedLength * 2L < rawLength) {
+            threshold = Math.max(threshold / 2, minThreshold);
+        }
+    }
+
+    private void writeFrame(int type, byte[] payload, int length) throws IOException {
+        // The header is a varint of the length and type, so small frames only cost one extra byte
+        long header = ((long) length << 1) | type;
+        int n = 0;
+        while ((header & ~0x7FL) != 0) {
+            headerBuffer[n++] = (byte) ((header & 0x7F) | 0x80);
+            header >>>= 7;
+        }
+        headerBuffer[n++] = (byte) header;
+        out.write(headerBuffer, 0, n);
+        out.write(payload, 0, length);
+        bytesOut += n + length;
+    }
+
+    private void ensureCapacity(int extra) {
+        if (count + extra > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, count + extra));
+        }
+    }
+}
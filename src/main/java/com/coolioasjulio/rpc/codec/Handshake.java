@@ -0,0 +1,83 @@
+package com.coolioasjulio.rpc.codec;
+
+/**
+ * The handshake used to negotiate the wire format of a session. A client that wants something other than JSON sends
+ * a single handshake line before its first request, and waits for the server to reply with a handshake line naming
+ * the wire format it accepted. Clients that never send a handshake keep using JSON.
+ * <p>
+ * A client may also ask for the session to be compressed, by adding the <code>deflate</code> option after the wire
+ * format. The server repeats the option in its reply if it accepted it, and from then on both directions are
+ * compressed, as described in {@link Compression}.
+ */
+public class Handshake {
+    public static final String PREFIX = "RPC-HANDSHAKE ";
+
+    private Handshake() {
+        // Static helper
+    }
+
+    /**
+     * Is the specified line a handshake?
+     *
+     * @param line The line read from the stream.
+     * @return True if the line is a handshake, false otherwise.
+     */
+    public static boolean isHandshake(String line) {
+        return line != null && line.startsWith(PREFIX);
+    }
+
+    /**
+     * Create a handshake line requesting or accepting a wire format.
+     *
+     * @param format The wire format.
+     * @return The handshake line, without the newline.
+     */
+    public static String create(WireFormat format) {
+        return PREFIX + format.name().toLowerCase();
+    }
+
+    /**
+     * Create a handshake line requesting or accepting a wire format, and optionally compression.
+     *
+     * @param format     The wire format.
+     * @param compressed True to request or accept compression, false otherwise.
+     * @return The handshake line, without the newline.
+     */
+    public static String create(WireFormat format, boolean compressed) {
+        return compressed ? create(format) + " " + Compression.HANDSHAKE_OPTION : create(format);
+    }
+
+    /**
+     * Parse whether compression was requested or accepted in a handshake line.
+     *
+     * @param line The handshake line.
+     * @return True if the handshake has the <code>deflate</code> option, false otherwise.
+     */
+    public static boolean isCompressed(String line) {
+        if (!isHandshake(line)) return false;
+        String[] tokens = line.substring(PREFIX.length()).trim().split("\\s+");
+        for (int i = 1; i < tokens.length; i++) {
+            if (Compression.HANDSHAKE_OPTION.equalsIgnoreCase(tokens[i])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Parse the wire format from a handshake line.
+     *
+     * @param line The handshake line.
+     * @return The wire format named in the handshake, or JSON if it's not recognized.
+     */
+    public static WireFormat parseFormat(String line) {
+        if (!isHandshake(line)) return WireFormat.JSON;
+        String[] tokens = line.substring(PREFIX.length()).trim().split("\\s+");
+        for (WireFormat format : WireFormat.values()) {
+            if (format.name().equalsIgnoreCase(tokens[0])) {
+                return format;
+            }
+        }
+        return WireFormat.JSON;
+    }
+}
@@ -0,0 +1,151 @@
+package com.coolioasjulio.rpc.codec;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * The receiving end of a compressed session. Frames are read from the underlying stream one at a time, and
+ * decompressed if they need to be. See {@link Compression} for the frame layout.
+ * <p>
+ * This isn't thread safe, since each stream is only read by one thread.
+ */
+public class InflatingInputStream extends InputStream {
+    private final InputStream in;
+    private final Inflater inflater = new Inflater(true);
+    private final int maxFrameLength;
+    private byte[] frame = new byte[8192];
+    private byte[] buffer = new byte[8192];
+    private int position = 0;
+    private int count = 0;
+
+    /**
+     * Create an inflating input stream.
+     *
+     * @param in The stream that frames are read from.
+     */
+    public InflatingInputStream(InputStream in) {
+        this(in, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Create an inflating input stream that rejects large frames. Both the compressed and the decompressed size of
+     * a frame are limited, so a small frame can't decompress into a huge one.
+     *
+     * @param in             The stream that frames are read from.
+     * @param maxFrameLength The largest frame, in bytes, before or after decompression.
+     */
+    public InflatingInputStream(InputStream in, int maxFrameLength) {
+        this.in = in;
+        this.maxFrameLength = Math.max(maxFrameLength, 0);
+        inflater.setDictionary(Compression.dictionary());
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (position == count && !nextFrame()) return -1;
+        return buffer[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) return 0;
+        if (position == count && !nextFrame()) return -1;
+        int n = Math.min(len, count - position);
+        System.arraycopy(buffer, position, b, off, n);
+        position += n;
+        return n;
+    }
+
+    @Override
+    public int available() {
+        return count - position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        inflater.end();
+        in.close();
+    }
+
+    /**
+     * Read frames until one has data in it.
+     *
+     * @return True if a frame was read, false if the end of the stream has been reached.
+     */
+    private boolean nextFrame() throws IOException {
+        do {
+            long header = 0;
+            int shift = 0;
+            while (true) {
+                int b = in.read();
+                if (b < 0) {
+                    if (shift == 0) return false;
+                    throw new EOFException();
+                }
+                header |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) break;
+                shift += 7;
+                if (shift > 28) throw new IOException("Invalid frame header.");
+            }
+            int type = (int) (header & 1);
+            if ((header >>> 1) > maxFrameLength) {
+                throw new IOException("Invalid frame length: " + (header >>> 1));
+            }
+            int length = (int) (header >>> 1);
+
+            if (type == Compression.FRAME_RAW) {
+                if (buffer.length < length) buffer = new byte[length];
+                readFully(buffer, length);
+                count = length;
+            } else {
+                if (frame.length < length) frame = new byte[Math.max(length, frame.length * 2)];
+                readFully(frame, length);
+                count = inflate(length);
+            }
+            position = 0;
+        } while (count == 0);
+        return true;
+    }
+
+    private int inflate(int length) throws IOException {
+        inflater.setInput(frame, 0, length);
+        int n = 0;
+        try {
+            while (true) {
+                if (n == buffer.length) {
+                    if (n >= maxFrameLength) {
+                        throw new IOException("The frame decompresses to more than " + maxFrameLength + " bytes.");
+                    }
+                    buffer = Arrays.copyOf(buffer, (int) Math.min(buffer.length * 2L, maxFrameLength));
+                }
+                int inflated = inflater.inflate(buffer, n, buffer.length - n);
+                n += inflated;
+                if (inflated == 0) {
+                    if (inflater.needsInput()) break;
+                    if (n < buffer.length) {
+                        throw new IOException("Corrupt compressed frame.");
+                    }
+                }
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt compressed frame: " + e.getMessage());
+        }
+        if (n > maxFrameLength) {
+            throw new IOException("The frame decompresses to more than " + maxFrameLength + " bytes.");
+        }
+        return n;
+    }
+
+    private void readFully(byte[] b, int length) throws IOException {
+        int read = 0;
+        while (read < length) {
+            int n = in.read(b, read, length - read);
+            if (n < 0) throw new EOFException();
+            read += n;
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package com.coolioasjulio.rpc.codec;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * A buffered stream that can read both lines of text and raw bytes, so that newline delimited messages can be mixed
+ * with binary payloads on the same stream. Reads of raw bytes that are larger than the buffer go straight to the
+ * underlying stream, without being copied through the buffer.
+ * <p>
+ * This isn't thread safe, since each stream is only read by one thread.
+ */
+public class LineInputStream extends FilterInputStream {
+    private static final int BUFFER_SIZE = 8192;
+
+    private final Charset charset;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position = 0;
+    private int count = 0;
+    private ByteArrayOutputStream lineBuffer; // Holds the start of a line that's longer than the buffer
+    private int maxLineLength = Integer.MAX_VALUE;
+
+    /**
+     * Create a line input stream.
+     *
+     * @param in      The stream to read from.
+     * @param charset The charset the lines are encoded with.
+     */
+    public LineInputStream(InputStream in, Charset charset) {
+        super(in);
+        this.charset = charset;
+    }
+
+    /**
+     * Set the length of the longest line that's read. Reading a longer line fails once it's that long, instead of
+     * buffering all of it.
+     *
+     * @param maxLineLength The longest line, in bytes.
+     */
+    public void setMaxLineLength(int maxLineLength) {
+        this.maxLineLength = Math.max(maxLineLength, 0);
+    }
+
+    public int getMaxLineLength() {
+        return maxLineLength;
+    }
+
+    /**
+     * Read a line of text, terminated by a newline or a carriage return followed by a newline.
+     *
+     * @return The line, without the line terminator, or null if the end of the stream has been reached.
+     * @throws IOException If an error occurs while reading, or the line is longer than the maximum length.
+     */
+    public String readLine() throws IOException {
+        if (lineBuffer != null) {
+            lineBuffer.reset();
+        }
+        while (true) {
+            if (position == count && !fill()) {
+                // The stream ended, so the rest of the line is the last line
+                if (lineBuffer == null || lineBuffer.size() == 0) return null;
+                return decode(lineBuffer.toByteArray(), 0, lineBuffer.size());
+            }
+            for (int i = position; i < count; i++) {
+                if (buffer[i] == '\n') {
+                    checkLength(i - position);
+                    String line;
+                    if (lineBuffer == null || lineBuffer.size() == 0) {
+                        line = decode(buffer, position, i - position);
+                    } else {
+                        lineBuffer.write(buffer, position, i - position);
+                        line = decode(lineBuffer.toByteArray(), 0, lineBuffer.size());
+                    }
+                    position = i + 1;
+                    return line;
+                }
+            }
+            checkLength(count - position);
+            if (lineBuffer == null) {
+                lineBuffer = new ByteArrayOutputStream();
+            }
+            lineBuffer.write(buffer, position, count - position);
+            position = count;
+        }
+    }
+
+    /**
+     * Read exactly enough bytes to fill the remaining space of a buffer.
+     *
+     * @param dst The buffer to read into. Heap buffers are read into directly.
+     * @throws IOException If an error occurs while reading, or the stream ends first.
+     */
+    public void readFully(ByteBuffer dst) throws IOException {
+        byte[] chunk = null;
+        while (dst.hasRemaining()) {
+            if (dst.hasArray()) {
+                int n = read(dst.array(), dst.arrayOffset() + dst.position(), dst.remaining());
+                if (n < 0) throw new EOFException();
+                dst.position(dst.position() + n);
+            } else {
+                if (chunk == null) chunk = new byte[Math.min(dst.remaining(), BUFFER_SIZE)];
+                int n = read(chunk, 0, Math.min(dst.remaining(), chunk.length));
+                if (n < 0) throw new EOFException();
+                dst.put(chunk, 0, n);
+            }
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (position == count && !fill()) return -1;
+        return buffer[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) return 0;
+        if (position == count) {
+            if (len >= buffer.length) {
+                // Nothing is buffered, so skip the copy
+                return in.read(b, off, len);
+            }
+            if (!fill()) return -1;
+        }
+        int n = Math.min(len, count - position);
+        System.arraycopy(buffer, position, b, off, n);
+        position += n;
+        return n;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return (count - position) + in.available();
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        if (position < count) {
+            int skipped = (int) Math.min(n, count - position);
+            position += skipped;
+            return skipped;
+        }
+        return in.skip(n);
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    private boolean fill() throws IOException {
+        int n = in.read(buffer, 0, buffer.length);
+        if (n <= 0) return false;
+        position = 0;
+        count = n;
+        return true;
+    }
+
+    private void checkLength(int unbuffered) throws IOException {
+        long length = (lineBuffer == null ? 0 : lineBuffer.size()) + (long) unbuffered;
+        if (length > maxLineLength) {
+            throw new IOException("The line is longer than " + maxLineLength + " bytes.");
+        }
+    }
+
+    private String decode(byte[] bytes, int offset, int length) {
+        if (length > 0 && bytes[offset + length - 1] == '\r') {
+            length--;
+        }
+        return new String(bytes, offset, length, charset);
+    }
+}
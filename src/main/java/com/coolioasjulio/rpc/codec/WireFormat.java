@@ -0,0 +1,12 @@
+package com.coolioasjulio.rpc.codec;
+
+public enum WireFormat {
+    /**
+     * Newline delimited JSON. This is the default, and is understood by every client.
+     */
+    JSON,
+    /**
+     * Length-prefixed binary frames. Must be negotiated with a handshake when the session starts.
+     */
+    BINARY
+}
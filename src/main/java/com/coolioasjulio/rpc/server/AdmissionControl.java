@@ -0,0 +1,198 @@
+package com.coolioasjulio.rpc.server;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Counts the sessions and requests in flight of a server, and admits new ones according to its
+ * <code>AdmissionPolicy</code>. Changing the policy takes effect right away, and wakes up anything that's waiting.
+ * The counts are guarded by a lock rather than a monitor, so that session threads waiting for room don't hold on to
+ * their carrier threads when they're virtual.
+ */
+class AdmissionControl {
+    private final List<Runnable> sessionListeners = new CopyOnWriteArrayList<>();
+    private final List<Runnable> requestListeners = new CopyOnWriteArrayList<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition(); // Signalled whenever there might be room
+    private volatile AdmissionPolicy policy = AdmissionPolicy.DEFAULT;
+    private int sessions = 0;
+    private int requests = 0;
+
+    AdmissionPolicy getPolicy() {
+        return policy;
+    }
+
+    void setPolicy(AdmissionPolicy policy) {
+        lock.lock();
+        try {
+            this.policy = policy;
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        fireSessionListeners();
+        fireRequestListeners();
+    }
+
+    /**
+     * Admit a new session. If the server is at its session limit, this waits for a session to close, unless the
+     * policy rejects instead.
+     *
+     * @return True if the session was admitted, false if it was rejected.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    boolean acquireSession() throws InterruptedException {
+        lock.lock();
+        try {
+            while (sessions >= policy.getMaxSessions()) {
+                if (policy.getOverloadAction() == AdmissionPolicy.OverloadAction.REJECT) return false;
+                changed.await();
+            }
+            sessions++;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Admit a new session, without waiting.
+     *
+     * @return True if the session was admitted, false if the server is at its session limit.
+     */
+    boolean tryAcquireSession() {
+        lock.lock();
+        try {
+            if (sessions >= policy.getMaxSessions()) return false;
+            sessions++;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Release a session that was admitted, once it has closed.
+     */
+    void releaseSession() {
+        lock.lock();
+        try {
+            sessions--;
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        fireSessionListeners();
+    }
+
+    /**
+     * Admit a new request. If the server is at its request limit, this waits for a request to be answered, unless
+     * the policy rejects instead.
+     *
+     * @return True if the request was admitted, false if it was rejected.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    boolean acquireRequest() throws InterruptedException {
+        lock.lock();
+        try {
+            while (requests >= policy.getMaxInFlightRequests()) {
+                if (policy.getOverloadAction() == AdmissionPolicy.OverloadAction.REJECT) return false;
+                changed.await();
+            }
+            requests++;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Admit a new request, without waiting.
+     *
+     * @return True if the request was admitted, false if the server is at its request limit.
+     */
+    boolean tryAcquireRequest() {
+        lock.lock();
+        try {
+            if (requests >= policy.getMaxInFlightRequests()) return false;
+            requests++;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Release a request that was admitted, once it has been answered.
+     */
+    void releaseRequest() {
+        lock.lock();
+        try {
+            requests--;
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        fireRequestListeners();
+    }
+
+    /**
+     * Add a listener that's called whenever a session might be admitted again, such as after a session closes. It's
+     * called on whichever thread freed up the room, so it must not block.
+     *
+     * @param listener The listener.
+     */
+    void addSessionListener(Runnable listener) {
+        sessionListeners.add(listener);
+    }
+
+    void removeSessionListener(Runnable listener) {
+        sessionListeners.remove(listener);
+    }
+
+    /**
+     * Add a listener that's called whenever a request might be admitted again, such as after a request is answered.
+     * It's called on whichever thread freed up the room, so it must not block.
+     *
+     * @param listener The listener.
+     */
+    void addRequestListener(Runnable listener) {
+        requestListeners.add(listener);
+    }
+
+    void removeRequestListener(Runnable listener) {
+        requestListeners.remove(listener);
+    }
+
+    int getSessionCount() {
+        lock.lock();
+        try {
+            return sessions;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int getInFlightRequestCount() {
+        lock.lock();
+        try {
+            return requests;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void fireSessionListeners() {
+        for (Runnable listener : sessionListeners) {
+            listener.run();
+        }
+    }
+
+    private void fireRequestListeners() {
+        for (Runnable listener : requestListeners) {
+            listener.run();
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package com.coolioasjulio.rpc.server;
+
+/**
+ * Limits on how much work a server takes on at once: the number of sessions, the number of requests in flight, and
+ * the size of each message. A request is in flight from when it's read until it's answered. Instances are immutable,
+ * so they can be shared between servers.
+ * <p>
+ * Messages larger than the limit end their session, since the rest of the stream can't be read without them. The
+ * other limits either make the server wait, or make it reject the work, depending on the overload action.
+ */
+public class AdmissionPolicy {
+    /**
+     * What a server does when the session or request limit is reached.
+     */
+    public enum OverloadAction {
+        /**
+         * Stop reading until there's room again. New connections wait in the accept backlog, and new requests wait in
+         * the socket buffers, so TCP flow control slows the clients down.
+         */
+        WAIT,
+        /**
+         * Answer new requests right away with an exception whose error code is <code>OVERLOADED</code>, without
+         * running them, and close new connections. Clients can retry the requests later.
+         */
+        REJECT
+    }
+
+    /**
+     * No limits at all, so every client that worked without an admission policy still does. Limits are opted into
+     * with the <code>with</code> methods. The server waits when it's at a limit.
+     */
+    public static final AdmissionPolicy DEFAULT = new AdmissionPolicy(Integer.MAX_VALUE, Integer.MAX_VALUE,
+            Integer.MAX_VALUE, Integer.MAX_VALUE, OverloadAction.WAIT);
+    // How many requests a session reads ahead of the ones it has answered, when there's no lower limit. Reading
+    // ahead only saves waiting on the socket, so without a limit it's still bounded, to bound the memory it takes.
+    private static final int MAX_READ_AHEAD = 64;
+
+    private final int maxSessions;
+    private final int maxInFlightRequests;
+    private final int maxRequestsPerSession;
+    private final int maxMessageSize;
+    private final OverloadAction overloadAction;
+
+    private AdmissionPolicy(int maxSessions, int maxInFlightRequests, int maxRequestsPerSession, int maxMessageSize,
+                            OverloadAction overloadAction) {
+        this.maxSessions = maxSessions;
+        this.maxInFlightRequests = maxInFlightRequests;
+        this.maxRequestsPerSession = maxRequestsPerSession;
+        this.maxMessageSize = maxMessageSize;
+        this.overloadAction = overloadAction;
+    }
+
+    /**
+     * Get a copy of this policy with a limit on the number of open sessions, counting both sessions created with
+     * <code>createRPCSession</code> and connections to listeners.
+     *
+     * @param maxSessions The maximum number of sessions. Must be positive.
+     * @return The new policy.
+     */
+    public AdmissionPolicy withMaxSessions(int maxSessions) {
+        if (maxSessions <= 0) {
+            throw new IllegalArgumentException("maxSessions must be positive!");
+        }
+        return new AdmissionPolicy(maxSessions, maxInFlightRequests, maxRequestsPerSession, maxMessageSize,
+                overloadAction);
+    }
+
+    /**
+     * Get a copy of this policy with a limit on the number of requests in flight across all sessions. A batch counts
+     * as one request.
+     *
+     * @param maxInFlightRequests The maximum number of requests. Must be positive.
+     * @return The new policy.
+     */
+    public AdmissionPolicy withMaxInFlightRequests(int maxInFlightRequests) {
+        if (maxInFlightRequests <= 0) {
+            throw new IllegalArgumentException("maxInFlightRequests must be positive!");
+        }
+        return new AdmissionPolicy(maxSessions, maxInFlightRequests, maxRequestsPerSession, maxMessageSize,
+                overloadAction);
+    }
+
+    /**
+     * Get a copy of this policy with a limit on the number of requests each session may have in flight. Past this,
+     * the server stops reading from the session until one of them is answered, whatever the overload action. This
+     * only matters for sessions that run their requests concurrently, and for connections to listeners, which queue
+     * up requests while an earlier one runs. It only affects sessions created after it's set.
+     *
+     * @param maxRequestsPerSession The maximum number of requests. Must be positive.
+     * @return The new policy.
+     */
+    public AdmissionPolicy withMaxRequestsPerSession(int maxRequestsPerSession) {
+        if (maxRequestsPerSession <= 0) {
+            throw new IllegalArgumentException("maxRequestsPerSession must be positive!");
+        }
+        return new AdmissionPolicy(maxSessions, maxInFlightRequests, maxRequestsPerSession, maxMessageSize,
+                overloadAction);
+    }
+
+    /**
+     * Get a copy of this policy with a limit on the size of each message: a JSON line, an attachment, a binary frame,
+     * or a compressed frame once it's decompressed. A session that sends a larger message is closed. It only affects
+     * sessions created after it's set.
+     *
+     * @param maxMessageSize The maximum size in bytes. Must be positive.
+     * @return The new policy.
+     */
+    public AdmissionPolicy withMaxMessageSize(int maxMessageSize) {
+        if (maxMessageSize <= 0) {
+            throw new IllegalArgumentException("maxMessageSize must be positive!");
+        }
+        return new AdmissionPolicy(maxSessions, maxInFlightRequests, maxRequestsPerSession, maxMessageSize,
+                overloadAction);
+    }
+
+    /**
+     * Get a copy of this policy that handles reaching the session or request limit differently.
+     *
+     * @param overloadAction What to do when a limit is reached.
+     * @return The new policy.
+     */
+    public AdmissionPolicy withOverloadAction(OverloadAction overloadAction) {
+        if (overloadAction == null) {
+            throw new IllegalArgumentException("overloadAction cannot be null!");
+        }
+        return new AdmissionPolicy(maxSessions, maxInFlightRequests, maxRequestsPerSession, maxMessageSize,
+                overloadAction);
+    }
+
+    public int getMaxSessions() {
+        return maxSessions;
+    }
+
+    public int getMaxInFlightRequests() {
+        return maxInFlightRequests;
+    }
+
+    public int getMaxRequestsPerSession() {
+        return maxRequestsPerSession;
+    }
+
+    public int getMaxMessageSize() {
+        return maxMessageSize;
+    }
+
+    /**
+     * Get how many requests a session may have in flight before the server stops reading from it: the per-session
+     * limit, but no more than the server would read ahead anyway.
+     */
+    int getReadAhead() {
+        return Math.min(maxRequestsPerSession, MAX_READ_AHEAD);
+    }
+
+    public OverloadAction getOverloadAction() {
+        return overloadAction;
+    }
+}
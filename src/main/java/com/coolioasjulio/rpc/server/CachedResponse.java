@@ -0,0 +1,32 @@
+package com.coolioasjulio.rpc.server;
+
+import com.coolioasjulio.rpc.RPCResponse;
+
+/**
+ * A response whose value came from the <code>ResultCache</code>. It carries the cached JSON encoding of the value,
+ * so JSON sessions can send it without encoding the value again.
+ */
+class CachedResponse extends RPCResponse<Object> {
+    private final transient String json; // Transient, so Gson encodes this like any other response
+
+    CachedResponse(long id, ResultCache.Entry entry) {
+        super(id, entry.getValue());
+        this.json = entry.getJson();
+    }
+
+    /**
+     * Get the JSON-encoded form of this response, the same as Gson would encode it.
+     *
+     * @return The JSON-encoded response, or null if it has been changed since it was created and must be encoded
+     * by Gson.
+     */
+    String toJson() {
+        if (getAttachment() != null || getErrorCode() != null || isMore()) {
+            return null;
+        }
+        // Gson leaves out null fields
+        return "null".equals(json)
+                ? "{\"id\":" + getId() + ",\"isException\":false}"
+                : "{\"id\":" + getId() + ",\"isException\":false,\"value\":" + json + "}";
+    }
+}
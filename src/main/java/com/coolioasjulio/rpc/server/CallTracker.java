@@ -0,0 +1,413 @@
+package com.coolioasjulio.rpc.server;
+
+import com.coolioasjulio.rpc.RPCBatch;
+import com.coolioasjulio.rpc.RPCRequest;
+import com.coolioasjulio.rpc.RPCResponse;
+import com.coolioasjulio.rpc.server.invokers.Invoker;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.reflect.InvocationTargetException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Tracks the calls of one session that haven't been answered yet, so that they can time out or be cancelled by the
+ * client. A call that's aborted before it starts is skipped. A call that's aborted while it's invoking a method has
+ * its thread interrupted, but only while the method runs, since the thread may be shared and go on to other work.
+ * Either way, it's answered right away with an exception response that has an error code, so the client isn't held
+ * up by a method that ignores interrupts. Anything the call would send after that is dropped.
+ * <p>
+ * Calls are tracked from when they're received, so time spent waiting behind other calls counts towards their
+ * deadline.
+ * <p>
+ * A streaming request can also limit how many chunks of its result are sent before the client asks for more, so a
+ * client that's slow to consume one stream doesn't have to stop reading the responses to its other calls. Until the
+ * demand arrives, the stream either waits on its thread, or, if the tracker resumes streams, gives the thread back and
+ * is picked up again on the tracker's executor once it arrives.
+ */
+class CallTracker {
+    private static final int MAX_EARLY_CANCELS = 64;
+    // The call whose message the current thread is handling, so that the methods it invokes can be interrupted
+    private static final ThreadLocal<Call> handling = new ThreadLocal<>();
+
+    private final Map<Long, Call> calls = new ConcurrentHashMap<>();
+    // Cancels of calls that weren't tracked yet, in case they're still queued. Stale ones are evicted eventually.
+    private final Set<Long> earlyCancels = Collections.newSetFromMap(new LinkedHashMap<Long, Boolean>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Boolean> eldest) {
+            return size() > MAX_EARLY_CANCELS;
+        }
+    });
+    private final Supplier<ScheduledExecutorService> timer;
+    private final RPCServer.ResponseSink abortSink;
+    private final Executor abortExecutor;
+    private final boolean resumeStreams;
+
+    /**
+     * A call that's been received and not yet answered. Its state is guarded by a lock rather than a monitor, so that
+     * a virtual thread waiting for demand doesn't hold on to its carrier thread.
+     */
+    static final class Call {
+        private final long id;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition demanded = lock.newCondition(); // Signalled on demand, and when the call is aborted
+        private Thread thread; // The thread invoking a method for the call, or null if none is
+        private RPCResponse<?> abortResponse; // Set once the call has been aborted
+        private boolean answered; // Set once the call has started sending its final response, or has finished
+        private boolean interrupted; // Set if aborting the call interrupted the thread
+        private ScheduledFuture<?> timeout;
+        private int credits = -1; // The chunks the call may send before it waits, or -1 if it never waits
+        private Runnable resume; // Continues a stream that gave its thread back while waiting for demand
+
+        private Call(long id) {
+            this.id = id;
+        }
+    }
+
+    /**
+     * Thrown by a guarded sink when the call it belongs to has been aborted, to stop a streamed result.
+     */
+    static final class AbortedException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        private AbortedException() {
+            super("The call was aborted.");
+        }
+    }
+
+    /**
+     * Create a call tracker.
+     *
+     * @param timer         Gets the timer that deadlines are scheduled on. Only called once a call has a deadline.
+     * @param abortSink     Sends the responses of aborted calls.
+     * @param abortExecutor Runs <code>abortSink</code>, so that a sink that blocks doesn't hold up the thread that
+     *                      aborted the call.
+     */
+    CallTracker(Supplier<ScheduledExecutorService> timer, RPCServer.ResponseSink abortSink, Executor abortExecutor) {
+        this(timer, abortSink, abortExecutor, false);
+    }
+
+    /**
+     * Create a call tracker.
+     *
+     * @param timer         Gets the timer that deadlines are scheduled on. Only called once a call has a deadline.
+     * @param abortSink     Sends the responses of aborted calls.
+     * @param abortExecutor Runs <code>abortSink</code>, so that a sink that blocks doesn't hold up the thread that
+     *                      aborted the call. Streams that are resumed run here too.
+     * @param resumeStreams If true, a stream that's waiting for demand gives its thread back, and is resumed on
+     *                      <code>abortExecutor</code> once the demand arrives or the call is aborted. If false, it
+     *                      waits on its thread.
+     */
+    CallTracker(Supplier<ScheduledExecutorService> timer, RPCServer.ResponseSink abortSink, Executor abortExecutor,
+                boolean resumeStreams) {
+        this.timer = timer;
+        this.abortSink = abortSink;
+        this.abortExecutor = abortExecutor;
+        this.resumeStreams = resumeStreams;
+    }
+
+    /**
+     * Start tracking a message that was just received.
+     *
+     * @param message       The <code>RPCRequest</code> or <code>RPCBatch</code>.
+     * @param receivedNanos The value of <code>System.nanoTime()</code> when it was received.
+     * @return The call, which must be passed to <code>start</code> and <code>finish</code>.
+     */
+    Call track(Object message, long receivedNanos) {
+        long id;
+        long timeoutMillis = 0;
+        if (message instanceof RPCBatch) {
+            id = ((RPCBatch) message).getId();
+        } else {
+            RPCRequest request = (RPCRequest) message;
+            id = request.getId();
+            timeoutMillis = request.getTimeoutMillis();
+        }
+
+        Call call = new Call(id);
+        if (message instanceof RPCRequest && ((RPCRequest) message).isStream()
+                && ((RPCRequest) message).getDemand() > 0) {
+            call.credits = ((RPCRequest) message).getDemand();
+        }
+        calls.put(id, call);
+        boolean cancelled;
+        synchronized (earlyCancels) {
+            cancelled = !earlyCancels.isEmpty() && earlyCancels.remove(id);
+        }
+        if (cancelled) {
+            abort(call, RPCResponse.ErrorCode.CANCELLED);
+        } else if (timeoutMillis > 0) {
+            long delay = receivedNanos + TimeUnit.MILLISECONDS.toNanos(timeoutMillis) - System.nanoTime();
+            if (delay <= 0) {
+                abort(call, RPCResponse.ErrorCode.DEADLINE_EXCEEDED);
+            } else {
+                long timeout = timeoutMillis;
+                call.timeout = timer.get().schedule(() -> abort(call, RPCResponse.ErrorCode.DEADLINE_EXCEEDED,
+                        "No response after " + timeout + " ms"), delay, TimeUnit.NANOSECONDS);
+            }
+        }
+        return call;
+    }
+
+    /**
+     * Cancel a call, if it hasn't been answered yet. If the call isn't tracked yet, it's cancelled as soon as it is.
+     *
+     * @param id The id of the request or batch to cancel.
+     */
+    void cancel(long id) {
+        Call call = calls.get(id);
+        if (call != null) {
+            abort(call, RPCResponse.ErrorCode.CANCELLED);
+        } else {
+            synchronized (earlyCancels) {
+                earlyCancels.add(id);
+            }
+        }
+    }
+
+    /**
+     * Let a streaming call send more chunks of its result. Does nothing if the call has been answered, or doesn't
+     * wait for demand.
+     *
+     * @param id     The id of the streaming request.
+     * @param chunks The number of chunks the client is ready for.
+     */
+    void demand(long id, int chunks) {
+        Call call = calls.get(id);
+        if (call == null) return;
+        Runnable resume;
+        call.lock.lock();
+        try {
+            if (call.credits < 0) return;
+            call.credits = (int) Math.min((long) call.credits + chunks, Integer.MAX_VALUE);
+            call.demanded.signalAll();
+            resume = call.resume;
+            call.resume = null;
+        } finally {
+            call.lock.unlock();
+        }
+        resume(resume);
+    }
+
+    /**
+     * Cancel every call that hasn't been answered yet, such as when the session closes. Streams that are waiting for
+     * demand are resumed, so that they end.
+     */
+    void cancelAll() {
+        for (Call call : calls.values()) {
+            abort(call, RPCResponse.ErrorCode.CANCELLED);
+        }
+    }
+
+    /**
+     * Start handling the message of a call on the current thread. Methods invoked with <code>invoke</code> on this
+     * thread belong to the call until <code>handled</code> is called.
+     *
+     * @param call The call.
+     * @return True if the call should run, or false if it has already been aborted and answered.
+     */
+    boolean start(Call call) {
+        call.lock.lock();
+        try {
+            if (call.abortResponse != null) return false;
+        } finally {
+            call.lock.unlock();
+        }
+        handling.set(call);
+        return true;
+    }
+
+    /**
+     * Stop handling the message of a call on the current thread, once the methods it invokes have returned. Its
+     * response may still be sent afterwards, even from another thread.
+     */
+    void handled() {
+        handling.remove();
+    }
+
+    /**
+     * Invoke a method or constructor for the call whose message the current thread is handling, if there is one. If
+     * the call is aborted while the method runs, or was aborted before, the thread is interrupted. The interrupt is
+     * cleared once the method returns, so it doesn't leak into whatever the thread does next, but one that came from
+     * anywhere else is left alone.
+     *
+     * @param invoker The invoker of the method or constructor.
+     * @param target  The object to invoke the method on. Ignored for static methods and constructors.
+     * @param args    The arguments to the method or constructor.
+     * @return The result of the invocation.
+     * @throws InvocationTargetException If the invoked method or constructor threw an exception.
+     * @throws IllegalAccessException    If the method or constructor is not accessible.
+     * @throws InstantiationException    If the constructor belongs to an abstract class.
+     */
+    static Object invoke(Invoker invoker, Object target, Object[] args)
+            throws InvocationTargetException, IllegalAccessException, InstantiationException {
+        Call call = handling.get();
+        if (call == null) return invoker.invoke(target, args);
+        call.lock.lock();
+        try {
+            call.thread = Thread.currentThread();
+            if (call.abortResponse != null && !call.interrupted) {
+                call.interrupted = true;
+                call.thread.interrupt();
+            }
+        } finally {
+            call.lock.unlock();
+        }
+        try {
+            return invoker.invoke(target, args);
+        } finally {
+            boolean interrupted;
+            call.lock.lock();
+            try {
+                // Aborting the call can't interrupt the thread after this
+                call.thread = null;
+                interrupted = call.interrupted;
+                call.interrupted = false;
+            } finally {
+                call.lock.unlock();
+            }
+            if (interrupted) {
+                Thread.interrupted();
+            }
+        }
+    }
+
+    /**
+     * Stop tracking a call, whether or not it ran.
+     *
+     * @param call The call.
+     * @return The response the call was aborted with, or null if it wasn't aborted.
+     */
+    RPCResponse<?> finish(Call call) {
+        RPCResponse<?> abortResponse;
+        call.lock.lock();
+        try {
+            call.answered = true;
+            abortResponse = call.abortResponse;
+        } finally {
+            call.lock.unlock();
+        }
+        calls.remove(call.id, call);
+        if (call.timeout != null) {
+            call.timeout.cancel(false);
+        }
+        return abortResponse;
+    }
+
+    /**
+     * Wrap a sink so that it drops the responses of a call once it has been aborted. A streamed result stops at the
+     * next chunk, since the sink throws <code>AbortedException</code>.
+     *
+     * @param call The call.
+     * @param sink The sink to send the responses of the call to.
+     * @return The guarded sink.
+     */
+    RPCServer.ResponseSink guard(Call call, RPCServer.ResponseSink sink) {
+        return response -> {
+            call.lock.lock();
+            try {
+                if (call.abortResponse != null) throw new AbortedException();
+                if (!response.isMore()) {
+                    // The call can't be aborted anymore, so it's never answered twice
+                    call.answered = true;
+                }
+            } finally {
+                call.lock.unlock();
+            }
+            sink.send(response);
+        };
+    }
+
+    /**
+     * Take the demand for the next chunk of a streamed result. If the client isn't ready for it yet and this tracker
+     * resumes streams, the call stops running on this thread, and <code>resume</code> is run on the executor once
+     * the demand arrives or the call is aborted. Otherwise, this waits for it.
+     *
+     * @param call   The call.
+     * @param resume Sends the rest of the stream, starting with this chunk.
+     * @return True if the chunk may be sent now, or false if the stream will be resumed.
+     * @throws AbortedException If the call has been aborted.
+     * @throws IOException      If interrupted while waiting.
+     */
+    boolean awaitDemand(Call call, Runnable resume) throws IOException {
+        call.lock.lock();
+        try {
+            if (call.credits == 0 && call.abortResponse == null && resumeStreams) {
+                call.resume = resume;
+                return false;
+            }
+            try {
+                while (call.credits == 0 && call.abortResponse == null) {
+                    call.demanded.await();
+                }
+            } catch (InterruptedException e) {
+                if (call.abortResponse != null) throw new AbortedException();
+                // The session is closing
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for demand.");
+            }
+            if (call.abortResponse != null) throw new AbortedException();
+            if (call.credits > 0) {
+                call.credits--;
+            }
+            return true;
+        } finally {
+            call.lock.unlock();
+        }
+    }
+
+    private void resume(Runnable resume) {
+        if (resume == null) return;
+        try {
+            abortExecutor.execute(resume);
+        } catch (RejectedExecutionException e) {
+            // The server is shutting down
+        }
+    }
+
+    private void abort(Call call, RPCResponse.ErrorCode errorCode) {
+        abort(call, errorCode, errorCode == RPCResponse.ErrorCode.CANCELLED
+                ? "The call was cancelled." : "The deadline passed before the call ran.");
+    }
+
+    private void abort(Call call, RPCResponse.ErrorCode errorCode, String message) {
+        RPCResponse<Object> response = new RPCResponse<>(call.id, errorCode + ": " + message, true);
+        response.setErrorCode(errorCode);
+        Runnable resume;
+        call.lock.lock();
+        try {
+            if (call.answered || call.abortResponse != null) return;
+            call.abortResponse = response;
+            call.demanded.signalAll(); // Stop waiting for demand
+            if (call.thread != null) {
+                call.interrupted = true;
+                call.thread.interrupt();
+            }
+            resume = call.resume;
+            call.resume = null;
+        } finally {
+            call.lock.unlock();
+        }
+        calls.remove(call.id, call);
+        resume(resume); // The stream ends as soon as it sees that it was aborted
+        abortExecutor.execute(() -> {
+            try {
+                abortSink.send(response);
+            } catch (IOException e) {
+                // The session has closed, so nobody is waiting for the response
+            }
+        });
+    }
+}
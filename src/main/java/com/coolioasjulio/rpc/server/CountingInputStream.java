@@ -0,0 +1,46 @@
+package com.coolioasjulio.rpc.server;
+
+import com.coolioasjulio.rpc.server.metrics.SessionMetrics;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Records the number of bytes read from a session's input stream.
+ */
+class CountingInputStream extends FilterInputStream {
+    private final SessionMetrics metrics;
+
+    CountingInputStream(InputStream in, SessionMetrics metrics) {
+        super(in);
+        this.metrics = metrics;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = in.read();
+        if (b >= 0) {
+            metrics.recordBytesIn(1);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int n = in.read(b, off, len);
+        if (n > 0) {
+            metrics.recordBytesIn(n);
+        }
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = in.skip(n);
+        if (skipped > 0) {
+            metrics.recordBytesIn(skipped);
+        }
+        return skipped;
+    }
+}
@@ -0,0 +1,32 @@
+package com.coolioasjulio.rpc.server;
+
+import com.coolioasjulio.rpc.server.metrics.SessionMetrics;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Records the number of bytes written to a session's output stream.
+ */
+class CountingOutputStream extends FilterOutputStream {
+    private final SessionMetrics metrics;
+
+    CountingOutputStream(OutputStream out, SessionMetrics metrics) {
+        super(out);
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        out.write(b);
+        metrics.recordBytesOut(1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        // Write the whole array at once, instead of a byte at a time like FilterOutputStream
+        out.write(b, off, len);
+        metrics.recordBytesOut(len);
+    }
+}
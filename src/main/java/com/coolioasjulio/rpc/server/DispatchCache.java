@@ -0,0 +1,346 @@
+package com.coolioasjulio.rpc.server;
+
+import com.coolioasjulio.rpc.server.invokers.Invoker;
+import com.coolioasjulio.rpc.server.metrics.MethodMetrics;
+
+import java.lang.reflect.Executable;
+import java.lang.reflect.Field;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded, concurrent cache of resolved reflective lookups used by the RPC server to dispatch requests.
+ * Entries are keyed by the request target (class name, static object name, or the class of a remote object), the
+ * method name, and the argument class names. Resolved classes are cached alongside them, up to the same size. Once
+ * the cache is full, the oldest entries are evicted first.
+ * <p>
+ * Lookups don't lock. Changes are made under the cache's lock, so the size and counters always match the entries.
+ */
+public class DispatchCache {
+    public static final int DEFAULT_MAXIMUM_SIZE = 4096;
+
+    private final Map<Key, Entry> entries = new ConcurrentHashMap<>();
+    private final Queue<Key> insertionOrder = new ArrayDeque<>(); // Guarded by this
+    private final Map<String, Class<?>> classes = new ConcurrentHashMap<>();
+    private final Queue<String> classOrder = new ArrayDeque<>(); // Guarded by this
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+    private volatile int maximumSize;
+
+    /**
+     * Create a dispatch cache with the default maximum size.
+     */
+    public DispatchCache() {
+        this(DEFAULT_MAXIMUM_SIZE);
+    }
+
+    /**
+     * Create a dispatch cache.
+     *
+     * @param maximumSize The maximum number of resolved signatures to hold.
+     */
+    public DispatchCache(int maximumSize) {
+        setMaximumSize(maximumSize);
+    }
+
+    /**
+     * Set the maximum number of resolved signatures, and of resolved classes, to hold. If the cache is currently
+     * larger, it will shrink on the next insertion.
+     *
+     * @param maximumSize The maximum number of resolved signatures. Must be positive.
+     */
+    public void setMaximumSize(int maximumSize) {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("maximumSize must be positive!");
+        }
+        this.maximumSize = maximumSize;
+    }
+
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+
+    /**
+     * Resolve a class by name, caching the result.
+     *
+     * @param className The name of the class, as accepted by <code>Class.forName</code>.
+     * @return The class with the specified name.
+     * @throws ClassNotFoundException If the class doesn't exist.
+     */
+    public Class<?> resolveClass(String className) throws ClassNotFoundException {
+        Class<?> clazz = classes.get(className);
+        if (clazz == null) {
+            clazz = Class.forName(className);
+            synchronized (this) {
+                if (classes.put(className, clazz) == null) {
+                    classOrder.add(className);
+                }
+                while (classes.size() > maximumSize) {
+                    String eldest = classOrder.poll();
+                    if (eldest == null) break;
+                    classes.remove(eldest);
+                }
+            }
+        }
+        return clazz;
+    }
+
+    /**
+     * Get a cached entry.
+     *
+     * @param key The key of the entry.
+     * @return The entry, or null if it's not cached.
+     */
+    public Entry get(Key key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return entry;
+    }
+
+    /**
+     * Add an entry to the cache, evicting the oldest entries if the cache is full.
+     *
+     * @param key   The key of the entry.
+     * @param entry The resolved entry.
+     */
+    public synchronized void put(Key key, Entry entry) {
+        if (entries.put(key, entry) == null) {
+            insertionOrder.add(key);
+        }
+        while (entries.size() > maximumSize) {
+            Key eldest = insertionOrder.poll();
+            if (eldest == null) break;
+            if (entries.remove(eldest) != null) {
+                evictions.increment();
+            }
+        }
+    }
+
+    /**
+     * Remove all cached entries and classes. The removed entries are counted as invalidations, not evictions.
+     */
+    public synchronized void invalidateAll() {
+        invalidations.add(entries.size());
+        entries.clear();
+        insertionOrder.clear();
+        classes.clear();
+        classOrder.clear();
+    }
+
+    /**
+     * Remove all cached entries and classes that were loaded by the specified class loader. Use this when a class
+     * loader is discarded or replaced, so that stale classes aren't dispatched to. The removed entries are counted as
+     * invalidations, not evictions.
+     *
+     * @param classLoader The class loader whose classes should be forgotten.
+     */
+    public synchronized void invalidate(ClassLoader classLoader) {
+        for (Iterator<String> it = classOrder.iterator(); it.hasNext(); ) {
+            String className = it.next();
+            if (classes.get(className).getClassLoader() == classLoader) {
+                classes.remove(className);
+                it.remove();
+            }
+        }
+        for (Iterator<Key> it = insertionOrder.iterator(); it.hasNext(); ) {
+            Key key = it.next();
+            if (entries.get(key).isLoadedBy(classLoader)) {
+                entries.remove(key);
+                it.remove();
+                invalidations.increment();
+            }
+        }
+    }
+
+    /**
+     * Get the number of resolved signatures that are cached.
+     *
+     * @return The number of entries.
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Get the number of resolved classes that are cached.
+     *
+     * @return The number of classes.
+     */
+    public int getClassCount() {
+        return classes.size();
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * Get the number of entries that were removed to make room for others. Entries removed by invalidation aren't
+     * counted here, since they don't mean the cache is too small.
+     *
+     * @return The number of evictions.
+     */
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * Get the number of entries that were removed by <code>invalidateAll</code> or <code>invalidate</code>.
+     *
+     * @return The number of invalidated entries.
+     */
+    public long getInvalidationCount() {
+        return invalidations.sum();
+    }
+
+    /**
+     * The key of a dispatch cache entry.
+     */
+    public static final class Key {
+        private final boolean instantiate;
+        private final String className;
+        private final String objectName;
+        private final Class<?> targetClass;
+        private final String methodName;
+        private final List<String> argClassNames;
+        private final int hash;
+
+        /**
+         * Create a dispatch key.
+         *
+         * @param instantiate   True if this is an instantiation.
+         * @param className     The name of the class that defines the constructor, static method, or static object.
+         * @param objectName    The name of the static object, or an empty string.
+         * @param targetClass   The class of the remote object, or null if this isn't a remote object invocation.
+         * @param methodName    The name of the method, or an empty string for instantiations.
+         * @param argClassNames The argument class names, as sent in the request.
+         */
+        public Key(boolean instantiate, String className, String objectName, Class<?> targetClass, String methodName,
+                   List<String> argClassNames) {
+            this.instantiate = instantiate;
+            this.className = className;
+            this.objectName = objectName;
+            this.targetClass = targetClass;
+            this.methodName = methodName;
+            this.argClassNames = argClassNames;
+
+            int h = Boolean.hashCode(instantiate);
+            h = 31 * h + className.hashCode();
+            h = 31 * h + objectName.hashCode();
+            h = 31 * h + (targetClass == null ? 0 : targetClass.hashCode());
+            h = 31 * h + methodName.hashCode();
+            h = 31 * h + argClassNames.hashCode();
+            this.hash = h;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return hash == key.hash &&
+                    instantiate == key.instantiate &&
+                    targetClass == key.targetClass &&
+                    className.equals(key.className) &&
+                    objectName.equals(key.objectName) &&
+                    methodName.equals(key.methodName) &&
+                    argClassNames.equals(key.argClassNames);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * A resolved request target.
+     */
+    public static final class Entry {
+        private final Field staticObject;
+        private final Executable member;
+        private final Class<?>[] argClasses;
+        private final Invoker invoker;
+        private final MethodMetrics metrics;
+
+        /**
+         * Create a resolved entry.
+         *
+         * @param staticObject The static field holding the target object, or null if there isn't one.
+         * @param member       The resolved method or constructor.
+         * @param argClasses   The argument classes, as named in the request. (not unboxed)
+         * @param invoker      The invoker used to call the member.
+         */
+        public Entry(Field staticObject, Executable member, Class<?>[] argClasses, Invoker invoker) {
+            this(staticObject, member, argClasses, invoker, null);
+        }
+
+        /**
+         * Create a resolved entry.
+         *
+         * @param staticObject The static field holding the target object, or null if there isn't one.
+         * @param member       The resolved method or constructor.
+         * @param argClasses   The argument classes, as named in the request. (not unboxed)
+         * @param invoker      The invoker used to call the member.
+         * @param metrics      The metrics that calls to the member are recorded in, or null if they aren't recorded.
+         */
+        public Entry(Field staticObject, Executable member, Class<?>[] argClasses, Invoker invoker,
+                     MethodMetrics metrics) {
+            this.staticObject = staticObject;
+            this.member = member;
+            this.argClasses = argClasses;
+            this.invoker = invoker;
+            this.metrics = metrics;
+        }
+
+        /**
+         * Get the static field holding the target object. The field is stored instead of its value, since
+         * non-final static fields may be reassigned.
+         *
+         * @return The static field, or null if this isn't an invocation on a static object.
+         */
+        public Field getStaticObject() {
+            return staticObject;
+        }
+
+        public Executable getMember() {
+            return member;
+        }
+
+        public Class<?>[] getArgClasses() {
+            return argClasses;
+        }
+
+        public Invoker getInvoker() {
+            return invoker;
+        }
+
+        public MethodMetrics getMetrics() {
+            return metrics;
+        }
+
+        private boolean isLoadedBy(ClassLoader classLoader) {
+            if (member.getDeclaringClass().getClassLoader() == classLoader) return true;
+            if (staticObject != null && staticObject.getDeclaringClass().getClassLoader() == classLoader) return true;
+            for (Class<?> clazz : argClasses) {
+                if (clazz.getClassLoader() == classLoader) return true;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.coolioasjulio.rpc.server;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a public static method as pure, so its results can be kept in the server's <code>ResultCache</code> and
+ * reused for calls with the same arguments. On a class, it marks every public static method of the class.
+ * <p>
+ * Only annotate methods whose result depends on nothing but their arguments, and that never mutate their result
+ * afterwards, since cached results are shared between calls and sessions.
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.METHOD, ElementType.TYPE})
+public @interface Memoize {
+}
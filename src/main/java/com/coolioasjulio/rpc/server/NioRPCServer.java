@@ -0,0 +1,633 @@
+package com.coolioasjulio.rpc.server;
+
+import com.coolioasjulio.rpc.RPCRequest;
+import com.coolioasjulio.rpc.codec.Attachments;
+import com.coolioasjulio.rpc.codec.Handshake;
+import com.coolioasjulio.rpc.codec.WireFormat;
+import com.coolioasjulio.rpc.server.metrics.SessionMetrics;
+import com.google.gson.JsonParseException;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An RPC server that serves TCP connections with a single selector thread and a fixed pool of worker threads,
+ * instead of a thread per session. The selector thread reads newline delimited JSON requests, and their attachments,
+ * from non-blocking channels, and the workers handle them. Each connection is its own RPC session with its own
+ * remote objects, and its requests are handled one at a time, in order. Cancel and demand requests, which are told
+ * apart by the start of the line, are also decoded on a separate control thread as soon as they're read, so they can
+ * act on the request that's running, or one that's still queued, even while every worker is busy.
+ * <p>
+ * A streamed result that's waiting for the client to ask for more doesn't hold on to its worker. The connection goes
+ * on to its next request, and the rest of the stream is sent on a worker once the demand arrives, so clients that are
+ * slow to read their streams can't take up the workers of the others.
+ * <p>
+ * The server's <code>AdmissionPolicy</code> applies to connections too. A connection that has too many requests
+ * queued isn't read from until its worker catches up, and neither is one whose client isn't reading its responses.
+ * At the session limit, new connections are left in the accept backlog, or closed if the policy rejects. At the
+ * request limit, a connection's next request is set aside until another request is answered, rather than waiting on
+ * a worker, since the streams holding the room need the workers to finish. Its cancel and demand requests are still
+ * read in the meantime, until its queue is full.
+ * <p>
+ * Only the JSON wire format is supported, without compression. Clients that ask for another format or for
+ * compression in a handshake are told to use uncompressed JSON.
+ * Create instances with <code>RPCServer.listen</code>.
+ */
+public class NioRPCServer implements AutoCloseable {
+    private static final int INITIAL_BUFFER_SIZE = 8192;
+    private static final int MAX_BUFFER_SIZE = Integer.MAX_VALUE - 8; // The largest array most VMs can allocate
+    // Once this much is waiting to be written to a connection, it isn't read from, and its queued requests are left
+    // until the client catches up
+    private static final long MAX_QUEUED_BYTES = 1 << 20;
+
+    private final RPCServer server;
+    private final ServerSocketChannel serverChannel;
+    private final Selector selector;
+    private final ExecutorService workers;
+    private final ExecutorService control; // Handles cancel and demand requests, and never blocks
+    private final Thread selectorThread;
+    private final Queue<Connection> pendingUpdates = new ConcurrentLinkedQueue<>();
+    private final Set<Connection> connections = ConcurrentHashMap.newKeySet();
+    private final Runnable sessionListener = this::requestAccept;
+    private final Set<Connection> awaitingAdmission = ConcurrentHashMap.newKeySet();
+    private final Runnable requestListener = this::resumeAwaitingAdmission;
+    private final AtomicBoolean acceptRequested = new AtomicBoolean();
+    private SelectionKey serverKey;
+    private boolean acceptPaused = false; // Only touched by the selector thread
+    private volatile boolean running = true;
+
+    NioRPCServer(RPCServer server, SocketAddress address, int workerThreads) throws IOException {
+        if (workerThreads <= 0) {
+            throw new IllegalArgumentException("workerThreads must be positive!");
+        }
+        this.server = server;
+
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        try {
+            serverChannel.bind(address);
+            serverChannel.configureBlocking(false);
+            serverKey = serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            serverChannel.close();
+            selector.close();
+            throw e;
+        }
+
+        AtomicInteger workerCount = new AtomicInteger();
+        workers = new ThreadPoolExecutor(workerThreads, workerThreads, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), r -> {
+            Thread t = new Thread(r, "NioRPCServer-worker-" + workerCount.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        });
+        control = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "NioRPCServer-control");
+            t.setDaemon(true);
+            return t;
+        });
+
+        server.getAdmissionControl().addSessionListener(sessionListener);
+        server.getAdmissionControl().addRequestListener(requestListener);
+        selectorThread = new Thread(this::runSelector, "NioRPCServer-selector");
+        selectorThread.setDaemon(true);
+        selectorThread.start();
+    }
+
+    /**
+     * Get the address this server is listening on.
+     *
+     * @return The local address of the server socket.
+     * @throws IOException If an error occurs while getting the address.
+     */
+    public SocketAddress getLocalAddress() throws IOException {
+        return serverChannel.getLocalAddress();
+    }
+
+    /**
+     * Get the number of open connections.
+     *
+     * @return The number of clients currently connected.
+     */
+    public int getConnectionCount() {
+        return connections.size();
+    }
+
+    /**
+     * Is this server still accepting connections?
+     *
+     * @return True if the server is running, false if it has been closed.
+     */
+    public boolean isActive() {
+        return running;
+    }
+
+    /**
+     * Stop accepting connections, close all open connections, and wait for the selector thread to stop.
+     */
+    @Override
+    public void close() {
+        if (!running) return;
+        running = false;
+        selector.wakeup();
+        try {
+            selectorThread.join();
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        }
+        workers.shutdownNow();
+        control.shutdownNow();
+        server.getAdmissionControl().removeSessionListener(sessionListener);
+        server.getAdmissionControl().removeRequestListener(requestListener);
+        server.removeListener(this);
+    }
+
+    private void runSelector() {
+        try {
+            while (running) {
+                selector.select();
+
+                if (acceptPaused && acceptRequested.getAndSet(false)) {
+                    acceptPaused = false;
+                    serverKey.interestOps(SelectionKey.OP_ACCEPT);
+                }
+
+                Connection connection;
+                while ((connection = pendingUpdates.poll()) != null) {
+                    connection.updatePending.set(false);
+                    connection.updateInterest();
+                }
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) continue;
+
+                    if (key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+
+                    connection = (Connection) key.attachment();
+                    try {
+                        if (key.isReadable()) {
+                            connection.read();
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            connection.write();
+                        }
+                    } catch (IOException e) {
+                        connection.close();
+                    }
+                }
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            e.printStackTrace();
+        } finally {
+            running = false;
+            for (Connection connection : connections) {
+                connection.close();
+            }
+            try {
+                serverChannel.close();
+                selector.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        AdmissionControl admission = server.getAdmissionControl();
+        if (!admission.tryAcquireSession()) {
+            if (admission.getPolicy().getOverloadAction() == AdmissionPolicy.OverloadAction.WAIT) {
+                // Leave new connections in the backlog until a session closes
+                acceptPaused = true;
+                acceptRequested.set(false);
+                serverKey.interestOps(0);
+                if (admission.getSessionCount() < admission.getPolicy().getMaxSessions()) {
+                    requestAccept(); // A session closed in the meantime
+                }
+            } else {
+                SocketChannel channel = serverChannel.accept();
+                if (channel != null) {
+                    channel.close();
+                }
+            }
+            return;
+        }
+
+        SocketChannel channel = null;
+        try {
+            channel = serverChannel.accept();
+            if (channel == null) {
+                admission.releaseSession();
+                return;
+            }
+            channel.configureBlocking(false);
+            Connection connection = new Connection(channel);
+            connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+            connections.add(connection);
+        } catch (IOException e) {
+            admission.releaseSession();
+            if (channel != null) {
+                channel.close();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Ask the selector thread to start accepting connections again, if it stopped because of the session limit.
+     */
+    private void requestAccept() {
+        if (acceptRequested.compareAndSet(false, true)) {
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * Let the connections whose next request was set aside at the request limit try again. Every one of them is
+     * scheduled, and those that still don't fit set their request aside again.
+     */
+    private void resumeAwaitingAdmission() {
+        for (Connection connection : awaitingAdmission) {
+            if (awaitingAdmission.remove(connection)) {
+                connection.schedule();
+            }
+        }
+    }
+
+    private class Connection {
+        private final SocketChannel channel;
+        private SelectionKey key;
+        private ByteBuffer readBuffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+        private int scanned = 0; // Bytes at the start of readBuffer that are already known not to end a line
+        private int awaitedLength = 0; // Bytes of an attachment's header and payload at the start of readBuffer, or 0
+        private final Queue<Object> requests = new ConcurrentLinkedQueue<>(); // Lines, and attachment payloads
+        private final AtomicInteger queuedRequests = new AtomicInteger(); // Lines in requests
+        private final int maxQueuedRequests;
+        private final int maxMessageSize;
+        private final CallTracker calls;
+        private final RPCServer.ResponseSink sink;
+        private final List<ByteBuffer> attachments = new ArrayList<>(); // Only touched by the worker that's scheduled
+        private final Queue<ByteBuffer> responses = new ConcurrentLinkedQueue<>();
+        private final AtomicLong queuedBytes = new AtomicLong();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private final AtomicBoolean updatePending = new AtomicBoolean();
+        private final SessionObjectRegistry variables; // Only touched by the worker that's scheduled
+        // The next request, set aside because the server was at its request limit
+        private volatile ReceivedLine deferred;
+        private final SessionMetrics metrics;
+        private volatile boolean inputClosed = false;
+        private volatile boolean closed = false;
+
+        private Connection(SocketChannel channel) throws IOException {
+            this.channel = channel;
+            AdmissionPolicy policy = server.getAdmissionPolicy();
+            maxQueuedRequests = policy.getReadAhead();
+            maxMessageSize = policy.getMaxMessageSize();
+            metrics = server.getMetrics().openSession(String.valueOf(channel.getRemoteAddress()));
+            variables = server.createObjectRegistry(metrics);
+            RPCServer.ResponseSink jsonSink = server.createJsonSink(this::enqueue);
+            // Streams and aborted calls send from other workers, so the parts of a response are queued together
+            sink = response -> {
+                synchronized (responses) {
+                    jsonSink.send(response);
+                }
+            };
+            // Aborted calls are answered on the workers, so that a slow sink can't hold up the deadline timer, and
+            // streams waiting for demand are resumed there
+            calls = new CallTracker(server::getDeadlineTimer, sink, workers, true);
+        }
+
+        /**
+         * Read as much as is available, and queue up every complete line and attachment. Called on the selector
+         * thread. Reading stops once enough requests are queued, and resumes as the worker catches up.
+         */
+        private void read() throws IOException {
+            int n;
+            while ((n = channel.read(readBuffer)) > 0) {
+                metrics.recordBytesIn(n);
+                if (!readBuffer.hasRemaining()) {
+                    // Handle what's complete so far, and read the rest the next time the channel is readable
+                    if (readBuffer.capacity() >= getMaxBufferSize()) break;
+                    // Grow the buffer, since a single request may be larger than it
+                    grow((int) Math.min(readBuffer.capacity() * 2L, getMaxBufferSize()));
+                }
+            }
+            if (n < 0) {
+                inputClosed = true;
+            }
+
+            long receivedNanos = System.nanoTime();
+            readBuffer.flip();
+            byte[] array = readBuffer.array();
+            int limit = readBuffer.limit();
+            int start = 0;
+            boolean awaitingPayload = false;
+            for (int i = scanned; i < limit; i++) {
+                if (array[i] == '\n') {
+                    int end = i > start && array[i - 1] == '\r' ? i - 1 : i;
+                    if (end > start) {
+                        String line = new String(array, start, end - start, StandardCharsets.UTF_8);
+                        if (Attachments.isHeader(line)) {
+                            int length = Attachments.parseLength(line);
+                            if (length > maxMessageSize) {
+                                throw new IOException("The attachment is larger than " + maxMessageSize + " bytes.");
+                            }
+                            if (limit - (i + 1) < length) {
+                                // Wait for the rest of the payload, which may need more room than a line
+                                long needed = (long) i + 1 + length - start;
+                                if (needed > MAX_BUFFER_SIZE) {
+                                    throw new IOException("The attachment is too large to read.");
+                                }
+                                awaitingPayload = true;
+                                awaitedLength = (int) needed;
+                                break;
+                            }
+                            requests.add(ByteBuffer.wrap(Arrays.copyOfRange(array, i + 1, i + 1 + length)));
+                            i += length;
+                        } else {
+                            ReceivedLine received = new ReceivedLine(line, receivedNanos);
+                            requests.add(received);
+                            queuedRequests.incrementAndGet();
+                            if (RPCRequest.isControlJson(line)) {
+                                // The call it's for may be running or queued, so don't wait for it
+                                handleControlEarly(received);
+                            }
+                        }
+                    }
+                    start = i + 1;
+                }
+            }
+            if (!awaitingPayload) {
+                awaitedLength = 0;
+                // A line can't outgrow the buffer, even when messages aren't limited
+                int maxLineLength = Math.min(maxMessageSize, MAX_BUFFER_SIZE);
+                if (limit - start >= maxLineLength) {
+                    throw new IOException("The message is larger than " + maxLineLength + " bytes.");
+                }
+            }
+            // The header is read again once its payload is here, and everything else left has been scanned
+            scanned = awaitingPayload ? 0 : limit - start;
+            readBuffer.position(start);
+            readBuffer.compact();
+            if (readBuffer.capacity() < awaitedLength) {
+                grow(awaitedLength);
+            }
+
+            if (!requests.isEmpty()) {
+                schedule();
+            }
+            updateInterest();
+        }
+
+        /**
+         * Get the size the read buffer may grow to. A line may be as long as the largest message, and an attachment
+         * needs room for its header as well as its payload, which may be as large as the largest message too.
+         */
+        private int getMaxBufferSize() {
+            return Math.min(Math.max(maxMessageSize, awaitedLength), MAX_BUFFER_SIZE);
+        }
+
+        /**
+         * Move what's in the read buffer to a larger one.
+         */
+        private void grow(int capacity) {
+            ByteBuffer larger = ByteBuffer.allocate(capacity);
+            readBuffer.flip();
+            larger.put(readBuffer);
+            readBuffer = larger;
+        }
+
+        /**
+         * Decode a line that looks like a cancel or demand request on the control thread, and if it is one, handle it
+         * right away. Whichever of this and the connection's worker claims the line first handles it. Called on the
+         * selector thread.
+         */
+        private void handleControlEarly(ReceivedLine received) {
+            try {
+                control.execute(() -> {
+                    RPCRequest request = server.parseControl(received.line);
+                    if (request != null && received.claimed.compareAndSet(false, true)) {
+                        // It doesn't count against the queued requests, or a stream could block its own demand
+                        requests.remove(received);
+                        dequeued();
+                        RPCServer.handleControl(request, calls);
+                    }
+                });
+            } catch (RuntimeException e) {
+                // The server is shutting down
+            }
+        }
+
+        /**
+         * Count a line as no longer queued, and start reading again if reading stopped because too many were.
+         */
+        private void dequeued() {
+            if (queuedRequests.getAndDecrement() == maxQueuedRequests) {
+                requestUpdate();
+            }
+        }
+
+        /**
+         * Write as much of the queued responses as possible. Called on the selector thread.
+         */
+        private void write() throws IOException {
+            ByteBuffer buffer;
+            long written = 0;
+            while ((buffer = responses.peek()) != null) {
+                int n = channel.write(buffer);
+                metrics.recordBytesOut(n);
+                written += n;
+                if (buffer.hasRemaining()) break; // The socket buffer is full
+                responses.poll();
+            }
+            if (written > 0 && queuedBytes.addAndGet(-written) <= MAX_QUEUED_BYTES
+                    && (deferred != null || !requests.isEmpty())) {
+                schedule(); // Pick up the requests that were left while the client was behind
+            }
+            updateInterest();
+        }
+
+        /**
+         * Update the operations this connection is interested in, and close it if it's done. Called on the selector
+         * thread.
+         */
+        private void updateInterest() {
+            if (closed) return;
+            if (inputClosed && !scheduled.get() && deferred == null && requests.isEmpty() && responses.isEmpty()) {
+                close();
+                return;
+            }
+            int ops = inputClosed || queuedRequests.get() >= maxQueuedRequests || isBacklogged() ? 0
+                    : SelectionKey.OP_READ;
+            if (!responses.isEmpty()) {
+                ops |= SelectionKey.OP_WRITE;
+            }
+            key.interestOps(ops);
+        }
+
+        /**
+         * Is too much waiting to be written to the client? If so, the connection isn't read from, and no more of its
+         * requests are handled, until the selector thread has written enough of it.
+         */
+        private boolean isBacklogged() {
+            return queuedBytes.get() > MAX_QUEUED_BYTES;
+        }
+
+        /**
+         * Ask the selector thread to update this connection.
+         */
+        private void requestUpdate() {
+            if (updatePending.compareAndSet(false, true)) {
+                pendingUpdates.add(this);
+                selector.wakeup();
+            }
+        }
+
+        private void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                try {
+                    workers.execute(this::handleRequests);
+                } catch (RuntimeException e) {
+                    // The server is shutting down
+                    scheduled.set(false);
+                }
+            }
+        }
+
+        /**
+         * Handle queued requests until there are none left, or the client falls behind on reading the responses.
+         * Called on a worker thread.
+         */
+        private void handleRequests() {
+            try {
+                while (!closed && !isBacklogged()) {
+                    ReceivedLine received = deferred;
+                    deferred = null;
+                    if (received == null) {
+                        Object request = requests.poll();
+                        if (request == null) break;
+                        if (request instanceof ByteBuffer) {
+                            attachments.add((ByteBuffer) request); // Belongs to the next request
+                            continue;
+                        }
+                        received = (ReceivedLine) request;
+                        if (!received.claimed.compareAndSet(false, true)) {
+                            continue; // A cancel or demand request that's already been handled
+                        }
+                        dequeued();
+                        if (Handshake.isHandshake(received.line)) {
+                            enqueue(ByteBuffer.wrap((Handshake.create(WireFormat.JSON) + "\n")
+                                    .getBytes(StandardCharsets.UTF_8)));
+                            continue;
+                        }
+                    }
+                    try {
+                        if (!server.handleJsonRequest(received.line, attachments, variables, metrics, calls,
+                                received.receivedNanos, sink)) {
+                            deferred = received; // Try again once a request has been answered
+                            break;
+                        }
+                    } catch (JsonParseException e) {
+                        // The client sent garbage, so drop it
+                        e.printStackTrace();
+                        requests.clear();
+                        inputClosed = true;
+                        break;
+                    }
+                }
+            } finally {
+                scheduled.set(false);
+                // If the client is behind, the selector thread schedules the rest once it has written enough
+                if (!closed && !isBacklogged()) {
+                    if (deferred != null) {
+                        awaitAdmission();
+                    } else if (!requests.isEmpty()) {
+                        schedule();
+                    }
+                }
+                requestUpdate();
+            }
+        }
+
+        /**
+         * Wait for a request to be answered before trying the deferred request again, without holding on to a worker.
+         */
+        private void awaitAdmission() {
+            awaitingAdmission.add(this);
+            // A request may have been answered before this connection was added
+            AdmissionControl admission = server.getAdmissionControl();
+            if (admission.getInFlightRequestCount() < admission.getPolicy().getMaxInFlightRequests()
+                    && awaitingAdmission.remove(this)) {
+                schedule();
+            }
+        }
+
+        /**
+         * Queue up part of a response to be written. This never waits for the client, so a worker is never held up by
+         * a slow connection; while too much is queued, the connection stops reading and handling requests instead.
+         * A streamed result only sends what the client has asked for, so it can't queue up without bound either.
+         */
+        private void enqueue(ByteBuffer response) {
+            queuedBytes.addAndGet(response.remaining());
+            responses.add(response);
+            requestUpdate();
+        }
+
+        private void close() {
+            if (closed) return;
+            closed = true;
+            calls.cancelAll(); // Nobody is left to ask for the rest of a stream
+            connections.remove(this);
+            awaitingAdmission.remove(this);
+            server.getMetrics().closeSession(metrics);
+            server.getAdmissionControl().releaseSession();
+            if (key != null) {
+                key.cancel();
+            }
+            try {
+                channel.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private static final class ReceivedLine {
+        private final String line;
+        private final long receivedNanos; // Deadlines count from here, so time spent queued counts too
+        private final AtomicBoolean claimed = new AtomicBoolean();
+
+        private ReceivedLine(String line, long receivedNanos) {
+            this.line = line;
+            this.receivedNanos = receivedNanos;
+        }
+    }
+}
@@ -0,0 +1,303 @@
+package com.coolioasjulio.rpc.server;
+
+import com.coolioasjulio.rpc.RPCBatch;
+import com.coolioasjulio.rpc.RPCRequest;
+import com.coolioasjulio.rpc.codec.Attachments;
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Decodes JSON-encoded RPC requests in a single pass. Each argument is bound straight to the class named in
+ * <code>argClassNames</code> while the request is being read, instead of being parsed into a generic object and
+ * converted afterwards.
+ */
+public class RPCRequestDecoder {
+    private final Gson gson;
+    private final DispatchCache dispatchCache;
+    private final TypeAdapter<JsonElement> elementAdapter;
+    private final Map<Class<?>, TypeAdapter<?>> adapters = new ConcurrentHashMap<>();
+
+    /**
+     * Create a request decoder.
+     *
+     * @param gson          The Gson instance whose type adapters are used to bind arguments.
+     * @param dispatchCache The cache used to resolve argument classes.
+     */
+    public RPCRequestDecoder(Gson gson, DispatchCache dispatchCache) {
+        this.gson = gson;
+        this.dispatchCache = dispatchCache;
+        this.elementAdapter = gson.getAdapter(JsonElement.class);
+    }
+
+    /**
+     * Decode an RPC request.
+     *
+     * @param json The JSON-encoded RPC request.
+     * @return The decoded request. If every argument class could be resolved, the arguments are already typed.
+     * @throws JsonSyntaxException If the request is not valid JSON, or is a batch.
+     */
+    public RPCRequest decode(String json) {
+        Object message = decodeMessage(json);
+        if (!(message instanceof RPCRequest)) {
+            throw new JsonSyntaxException("Expected a single request, but got a batch!");
+        }
+        return (RPCRequest) message;
+    }
+
+    /**
+     * Decode an RPC request or a batch of RPC requests.
+     *
+     * @param json The JSON-encoded request or batch.
+     * @return The decoded <code>RPCRequest</code> or <code>RPCBatch</code>.
+     * @throws JsonSyntaxException If the message is not valid JSON.
+     */
+    public Object decodeMessage(String json) {
+        JsonReader reader = new JsonReader(new StringReader(json));
+        reader.setLenient(true);
+        try {
+            return readMessage(reader);
+        } catch (IOException | IllegalStateException | NumberFormatException e) {
+            throw new JsonSyntaxException(e);
+        }
+    }
+
+    private Object readMessage(JsonReader reader) throws IOException {
+        long id = 0;
+        boolean instantiate = false;
+        String className = "";
+        String objectName = "";
+        String methodName = "";
+        List<String> argClassNames = null;
+        List<Object> args = null;
+        String resultName = null;
+        boolean release = false;
+        int objectHandle = 0;
+        boolean returnHandle = false;
+        boolean stream = false;
+        boolean attachResult = false;
+        long timeoutMillis = 0;
+        boolean cancel = false;
+        int demand = 0;
+        boolean argsTyped = false;
+        boolean stopOnError = false;
+        List<RPCRequest> requests = null; // Only present in batches
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "id":
+                    id = reader.nextLong();
+                    break;
+
+                case "instantiate":
+                    instantiate = reader.nextBoolean();
+                    break;
+
+                case "className":
+                    className = nextString(reader);
+                    break;
+
+                case "objectName":
+                    objectName = nextString(reader);
+                    break;
+
+                case "methodName":
+                    methodName = nextString(reader);
+                    break;
+
+                case "argClassNames":
+                    argClassNames = readStrings(reader);
+                    break;
+
+                case "args":
+                    if (argClassNames != null) {
+                        args = new ArrayList<>();
+                        argsTyped = readTypedArgs(reader, argClassNames, args);
+                    } else {
+                        // The class names haven't been read yet, so hold on to the parse trees for now
+                        args = readElements(reader);
+                    }
+                    break;
+
+                case "resultName":
+                    resultName = nextString(reader);
+                    break;
+
+                case "release":
+                    release = reader.nextBoolean();
+                    break;
+
+                case "objectHandle":
+                    objectHandle = reader.nextInt();
+                    break;
+
+                case "returnHandle":
+                    returnHandle = reader.nextBoolean();
+                    break;
+
+                case "stream":
+                    stream = reader.nextBoolean();
+                    break;
+
+                case "attachResult":
+                    attachResult = reader.nextBoolean();
+                    break;
+
+                case "timeoutMillis":
+                    timeoutMillis = reader.nextLong();
+                    break;
+
+                case "cancel":
+                    cancel = reader.nextBoolean();
+                    break;
+
+                case "demand":
+                    demand = reader.nextInt();
+                    break;
+
+                case "stopOnError":
+                    stopOnError = reader.nextBoolean();
+                    break;
+
+                case "requests":
+                    requests = readRequests(reader);
+                    break;
+
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+
+        if (requests != null) {
+            return new RPCBatch(id, stopOnError, requests);
+        }
+
+        if (argClassNames == null) argClassNames = new ArrayList<>();
+        if (args == null) args = new ArrayList<>();
+        if (!argsTyped && args.size() == argClassNames.size()) {
+            argsTyped = bindElements(argClassNames, args);
+        }
+
+        RPCRequest request = new RPCRequest(id, instantiate, className, objectName, methodName,
+                argClassNames.toArray(new String[0]), args.toArray());
+        request.setResultName(resultName);
+        request.setRelease(release);
+        request.setObjectHandle(objectHandle);
+        request.setReturnHandle(returnHandle);
+        request.setStream(stream);
+        request.setAttachResult(attachResult);
+        request.setTimeoutMillis(timeoutMillis);
+        request.setCancel(cancel);
+        request.setDemand(demand);
+        request.setArgsTyped(argsTyped && args.size() == argClassNames.size());
+        return request;
+    }
+
+    private List<RPCRequest> readRequests(JsonReader reader) throws IOException {
+        List<RPCRequest> requests = new ArrayList<>();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            Object message = readMessage(reader);
+            if (!(message instanceof RPCRequest)) {
+                throw new IllegalStateException("Batches cannot be nested!");
+            }
+            requests.add((RPCRequest) message);
+        }
+        reader.endArray();
+        return requests;
+    }
+
+    private String nextString(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return "";
+        }
+        return reader.nextString();
+    }
+
+    private List<String> readStrings(JsonReader reader) throws IOException {
+        List<String> strings = new ArrayList<>();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            strings.add(nextString(reader));
+        }
+        reader.endArray();
+        return strings;
+    }
+
+    private List<Object> readElements(JsonReader reader) throws IOException {
+        List<Object> elements = new ArrayList<>();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            elements.add(elementAdapter.read(reader));
+        }
+        reader.endArray();
+        return elements;
+    }
+
+    private boolean readTypedArgs(JsonReader reader, List<String> argClassNames, List<Object> args)
+            throws IOException {
+        boolean typed = true;
+        reader.beginArray();
+        for (int i = 0; reader.hasNext(); i++) {
+            TypeAdapter<?> adapter = typed && i < argClassNames.size() ? getAdapter(argClassNames.get(i)) : null;
+            if (adapter == null) {
+                // The request is malformed, so keep the raw value and let dispatching report the error
+                typed = false;
+                args.add(elementAdapter.read(reader));
+            } else {
+                args.add(adapter.read(reader));
+            }
+        }
+        reader.endArray();
+        return typed;
+    }
+
+    private boolean bindElements(List<String> argClassNames, List<Object> args) {
+        for (int i = 0; i < args.size(); i++) {
+            TypeAdapter<?> adapter = getAdapter(argClassNames.get(i));
+            if (adapter == null) return false;
+        }
+        for (int i = 0; i < args.size(); i++) {
+            args.set(i, getAdapter(argClassNames.get(i)).fromJsonTree((JsonElement) args.get(i)));
+        }
+        return true;
+    }
+
+    private TypeAdapter<?> getAdapter(String argClassName) {
+        if (argClassName.startsWith("REMOTE:")) {
+            // Remote objects are passed by name
+            return getAdapter(String.class);
+        } else if (argClassName.startsWith("HANDLE:") || argClassName.startsWith(Attachments.ARG_PREFIX)) {
+            // Handles and attachments are passed by index
+            return getAdapter(Integer.class);
+        }
+        try {
+            return getAdapter(dispatchCache.resolveClass(argClassName));
+        } catch (ClassNotFoundException e) {
+            return null;
+        }
+    }
+
+    private TypeAdapter<?> getAdapter(Class<?> clazz) {
+        TypeAdapter<?> adapter = adapters.get(clazz);
+        if (adapter == null) {
+            adapter = gson.getAdapter(clazz);
+            adapters.put(clazz, adapter);
+        }
+        return adapter;
+    }
+}
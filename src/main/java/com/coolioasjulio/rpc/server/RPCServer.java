@@ -1,37 +1,88 @@
 package com.coolioasjulio.rpc.server;
 
+import com.coolioasjulio.rpc.RPCBatch;
 import com.coolioasjulio.rpc.RPCRequest;
 import com.coolioasjulio.rpc.RPCResponse;
+import com.coolioasjulio.rpc.codec.Attachments;
+import com.coolioasjulio.rpc.codec.BinaryCodec;
+import com.coolioasjulio.rpc.codec.Compression;
+import com.coolioasjulio.rpc.codec.DeflatingOutputStream;
+import com.coolioasjulio.rpc.codec.Handshake;
+import com.coolioasjulio.rpc.codec.InflatingInputStream;
+import com.coolioasjulio.rpc.codec.LineInputStream;
+import com.coolioasjulio.rpc.codec.WireFormat;
 import com.coolioasjulio.rpc.server.exclusionstrategies.SuperclassExclusionStrategy;
 import com.coolioasjulio.rpc.server.exclusionstrategies.WhitelistExclusionStrategy;
+import com.coolioasjulio.rpc.server.invokers.InvocationMode;
+import com.coolioasjulio.rpc.server.invokers.Invoker;
+import com.coolioasjulio.rpc.server.invokers.TieredInvoker;
+import com.coolioasjulio.rpc.server.logging.RequestEvent;
+import com.coolioasjulio.rpc.server.logging.RequestLogger;
+import com.coolioasjulio.rpc.server.metrics.MethodMetrics;
+import com.coolioasjulio.rpc.server.metrics.RPCMetrics;
+import com.coolioasjulio.rpc.server.metrics.SessionMetrics;
 import com.google.gson.ExclusionStrategy;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Array;
 import java.lang.reflect.Constructor;
+import java.lang.reflect.Executable;
+import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.stream.BaseStream;
+import java.util.stream.IntStream;
 
 public class RPCServer {
     public enum StrategyType {
         SERIALIZATION, DESERIALIZATION, BOTH
     }
 
+    private static final Gson PAYLOAD_GSON = new Gson();
+
+    /**
+     * Sends the responses of a session. The result of a streaming request is sent as several responses.
+     */
+    interface ResponseSink {
+        void send(RPCResponse<?> response) throws IOException;
+    }
+
     private static RPCServer instance;
 
     /**
@@ -48,9 +99,27 @@ public class RPCServer {
     }
 
     private Map<Class<?>, Class<?>> unboxMap;
-    private List<Thread> rpcSessions;
+    private Set<Thread> rpcSessions;
+    private ThreadFactory sessionThreadFactory;
+    private List<NioRPCServer> listeners;
     private Gson gson;
-    private boolean loggingEnabled = false;
+    private RPCRequestDecoder requestDecoder;
+    private DispatchCache dispatchCache;
+    private ResultCache resultCache;
+    private RPCMetrics metrics;
+    private final AtomicInteger sessionCounter = new AtomicInteger();
+    private InvocationMode invocationMode = InvocationMode.METHOD_HANDLE;
+    private int invocationThreshold = 100;
+    private RequestLogger requestLogger;
+    private boolean binaryWireFormatEnabled = true;
+    private boolean compressionEnabled = true;
+    private int compressionThreshold = Compression.DEFAULT_THRESHOLD;
+    private int streamChunkSize = 256;
+    private Executor requestExecutor; // Null unless the requests of a session may run concurrently
+    private ScheduledExecutorService deadlineTimer; // Created when the first call with a deadline is received
+    private ExecutorService abortExecutor; // Created when the first call of a sequential session is aborted
+    private SessionObjectPolicy sessionObjectPolicy = SessionObjectPolicy.DEFAULT;
+    private final AdmissionControl admission = new AdmissionControl();
     private List<ExclusionStrategy> serializationExclusionStrategies;
     private List<ExclusionStrategy> deserializationExclusionStrategies;
 
@@ -66,30 +135,269 @@ public class RPCServer {
         unboxMap.put(Short.class, short.class);
         this.unboxMap = Collections.unmodifiableMap(unboxMap);
 
-        rpcSessions = new ArrayList<>();
+        rpcSessions = ConcurrentHashMap.newKeySet();
+        listeners = new CopyOnWriteArrayList<>();
+        dispatchCache = new DispatchCache();
+        resultCache = new ResultCache();
+        metrics = new RPCMetrics();
+        requestLogger = new RequestLogger();
         serializationExclusionStrategies = new ArrayList<>();
         deserializationExclusionStrategies = new ArrayList<>();
 
         resetExclusionStrategies();
-        rebuildGson();
     }
 
+    /**
+     * Rebuild the Gson instance after the exclusion strategies change. Gson resolves the exclusion strategies once
+     * per class, when it first builds the adapter for the class, and keeps the adapter, so this must only be called
+     * when the strategies actually change.
+     */
     private void rebuildGson() {
         GsonBuilder builder = new GsonBuilder();
         serializationExclusionStrategies.forEach(builder::addSerializationExclusionStrategy);
         deserializationExclusionStrategies.forEach(builder::addDeserializationExclusionStrategy);
         this.gson = builder.create();
+        this.requestDecoder = new RPCRequestDecoder(gson, dispatchCache);
+        // Cached results were encoded with the old exclusion strategies
+        resultCache.invalidateAll();
     }
 
+    /**
+     * Set whether requests are logged. Requests are logged asynchronously by the request logger, which can also be
+     * configured to sample requests, capture payloads, or write somewhere other than standard out.
+     *
+     * @param enabled True to log requests, false otherwise.
+     */
     public void setLoggingEnabled(boolean enabled)
     {
-        this.loggingEnabled = enabled;
+        requestLogger.setEnabled(enabled);
+    }
+
+    /**
+     * Get the logger that requests, and errors raised while handling them, are logged to.
+     *
+     * @return The request logger of this server.
+     */
+    public RequestLogger getRequestLogger() {
+        return requestLogger;
+    }
+
+    /**
+     * Set whether clients may negotiate the binary wire format. If disabled, clients that ask for it are told to use
+     * JSON instead. Clients that don't send a handshake always use JSON.
+     *
+     * @param enabled True to accept the binary wire format, false otherwise.
+     */
+    public void setBinaryWireFormatEnabled(boolean enabled) {
+        this.binaryWireFormatEnabled = enabled;
+    }
+
+    /**
+     * Set whether clients may negotiate compression of their sessions. If disabled, clients that ask for it are told
+     * to send uncompressed messages instead.
+     *
+     * @param enabled True to accept compression, false otherwise.
+     */
+    public void setCompressionEnabled(boolean enabled) {
+        this.compressionEnabled = enabled;
+    }
+
+    /**
+     * Set the size from which responses of compressed sessions are compressed. Smaller responses are sent as they are,
+     * since compressing them saves too little to be worth it. Each session raises its own threshold while its responses
+     * compress poorly, but never lowers it past this.
+     *
+     * @param compressionThreshold The threshold in bytes.
+     */
+    public void setCompressionThreshold(int compressionThreshold) {
+        if (compressionThreshold < 0) {
+            throw new IllegalArgumentException("compressionThreshold must not be negative!");
+        }
+        this.compressionThreshold = compressionThreshold;
+    }
+
+    public int getCompressionThreshold() {
+        return compressionThreshold;
+    }
+
+    /**
+     * Set the number of elements sent in each chunk of a streamed result. Larger chunks have less overhead, but the
+     * client sees the first elements later, and buffers more of them.
+     *
+     * @param streamChunkSize The maximum number of elements per chunk.
+     */
+    public void setStreamChunkSize(int streamChunkSize) {
+        if (streamChunkSize <= 0) {
+            throw new IllegalArgumentException("streamChunkSize must be positive!");
+        }
+        this.streamChunkSize = streamChunkSize;
+    }
+
+    public int getStreamChunkSize() {
+        return streamChunkSize;
+    }
+
+    /**
+     * Set the limits on the remote objects each session may hold. Sessions that go over a limit evict their least
+     * recently used objects. This only affects sessions created after it's set.
+     *
+     * @param policy The limits on remote objects.
+     */
+    public void setSessionObjectPolicy(SessionObjectPolicy policy) {
+        if (policy == null) {
+            throw new IllegalArgumentException("policy cannot be null!");
+        }
+        this.sessionObjectPolicy = policy;
+    }
+
+    public SessionObjectPolicy getSessionObjectPolicy() {
+        return sessionObjectPolicy;
+    }
+
+    /**
+     * Create the registry that holds the remote objects of a session.
+     *
+     * @param session The metrics of the session, which are told about resident objects and evictions.
+     * @return The new registry.
+     */
+    SessionObjectRegistry createObjectRegistry(SessionMetrics session) {
+        return new SessionObjectRegistry(sessionObjectPolicy, session);
+    }
+
+    /**
+     * Set the limits on how much work this server takes on at once. By default, nothing is limited: there may be any
+     * number of sessions and requests in flight, and messages may be as large as the server can hold. Session and
+     * request limits apply right away, and the rest only affect sessions created after this is set.
+     *
+     * @param policy The admission policy.
+     */
+    public void setAdmissionPolicy(AdmissionPolicy policy) {
+        if (policy == null) {
+            throw new IllegalArgumentException("policy cannot be null!");
+        }
+        admission.setPolicy(policy);
+    }
+
+    public AdmissionPolicy getAdmissionPolicy() {
+        return admission.getPolicy();
+    }
+
+    /**
+     * Get the number of requests that have been read but not yet answered, across all sessions.
+     *
+     * @return The number of requests in flight.
+     */
+    public int getInFlightRequestCount() {
+        return admission.getInFlightRequestCount();
+    }
+
+    AdmissionControl getAdmissionControl() {
+        return admission;
+    }
+
+    /**
+     * Set the factory used to create the thread of each session created with <code>createRPCSession</code>. On JDK 21
+     * and later, use <code>SessionThreadFactories.virtualThreads()</code> to run each session on a virtual thread.
+     *
+     * @param factory The thread factory, or null to use a new platform thread per session.
+     */
+    public void setSessionThreadFactory(ThreadFactory factory) {
+        this.sessionThreadFactory = factory;
+    }
+
+    /**
+     * Set the executor that the requests of sessions created with <code>createRPCSession</code> run on. By default,
+     * each session handles its requests one at a time, in order, so one slow method holds up every later call. With an
+     * executor, a session's requests run concurrently, and their responses are sent as they complete, tagged with the
+     * id of their request. Requests that touch the same remote object still run in the order they were sent, and
+     * instantiations and batches wait for every earlier request. This only affects sessions created after it's set.
+     *
+     * @param executor The executor to run requests on, or null to handle the requests of each session in order.
+     */
+    public void setRequestExecutor(Executor executor) {
+        this.requestExecutor = executor;
+    }
+
+    public Executor getRequestExecutor() {
+        return requestExecutor;
+    }
+
+    /**
+     * Get the number of sessions created with <code>createRPCSession</code> that are still running.
+     *
+     * @return The number of running sessions.
+     */
+    public int getSessionCount() {
+        return rpcSessions.size();
+    }
+
+    /**
+     * Get the metrics of this server: call counts, errors, and latencies per method, request rates per session, and
+     * bytes in and out. Use <code>RPCMetrics.registerMBean()</code> to expose them over JMX.
+     *
+     * @return The metrics of this server.
+     */
+    public RPCMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Get the cache of resolved classes, methods, and constructors used to dispatch requests. Use this to inspect
+     * the hit/miss/eviction counters, change the size limit, or invalidate entries after class loaders change.
+     *
+     * @return The dispatch cache of this server.
+     */
+    public DispatchCache getDispatchCache() {
+        return dispatchCache;
+    }
+
+    /**
+     * Get the cache of the results of pure static methods. Nothing is cached until methods are allowed, either here
+     * or with the <code>Memoize</code> annotation. Use this to allow methods, change the limits, or inspect the
+     * hit rate.
+     *
+     * @return The result cache of this server.
+     */
+    public ResultCache getResultCache() {
+        return resultCache;
+    }
+
+    /**
+     * Set how methods and constructors are invoked once they're hot. Changing this invalidates the dispatch cache.
+     *
+     * @param invocationMode The invocation mode to use for hot methods.
+     */
+    public void setInvocationMode(InvocationMode invocationMode) {
+        this.invocationMode = invocationMode;
+        dispatchCache.invalidateAll();
+    }
+
+    public InvocationMode getInvocationMode() {
+        return invocationMode;
+    }
+
+    /**
+     * Set the number of times a method or constructor is invoked reflectively before switching to the faster
+     * invocation mode. Changing this invalidates the dispatch cache.
+     *
+     * @param invocationThreshold The number of reflective invocations. If not positive, switch immediately.
+     */
+    public void setInvocationThreshold(int invocationThreshold) {
+        this.invocationThreshold = invocationThreshold;
+        dispatchCache.invalidateAll();
+    }
+
+    public int getInvocationThreshold() {
+        return invocationThreshold;
     }
 
     /**
      * Reset the JSON exclusion strategies to the default strategies.
      */
     public void resetExclusionStrategies() {
+        serializationExclusionStrategies.clear();
+        deserializationExclusionStrategies.clear();
+
         Set<Class<?>> whiteList = new HashSet<>(unboxMap.keySet());
         whiteList.addAll(unboxMap.values());
         whiteList.add(RPCResponse.class);
@@ -97,6 +405,8 @@ public class RPCServer {
         serializationExclusionStrategies.add(new WhitelistExclusionStrategy(whiteList));
 
         deserializationExclusionStrategies.add(new SuperclassExclusionStrategy());
+
+        rebuildGson();
     }
 
     /**
@@ -106,18 +416,25 @@ public class RPCServer {
      * @param strategyType The type of strategy to reset.
      */
     public void clearExclusionStrategies(StrategyType strategyType) {
+        boolean changed = false;
         switch (strategyType) {
             case BOTH:
             case SERIALIZATION:
+                changed = !this.serializationExclusionStrategies.isEmpty();
                 this.serializationExclusionStrategies.clear();
                 if (strategyType != StrategyType.BOTH) {
                     break;
                 }
 
             case DESERIALIZATION:
+                changed |= !this.deserializationExclusionStrategies.isEmpty();
                 this.deserializationExclusionStrategies.clear();
                 break;
         }
+
+        if (changed) {
+            rebuildGson();
+        }
     }
 
     /**
@@ -144,6 +461,8 @@ public class RPCServer {
      * @param strategies   Exclusion strategies to apply.
      */
     public void addExclusionStrategies(StrategyType strategyType, Collection<ExclusionStrategy> strategies) {
+        if (strategies.isEmpty()) return;
+
         switch (strategyType) {
             case BOTH:
             case SERIALIZATION:
@@ -166,7 +485,7 @@ public class RPCServer {
      * @return True if the RPC server is running, false otherwise.
      */
     public boolean isActive() {
-        return rpcSessions.size() > 0;
+        return rpcSessions.size() > 0 || listeners.size() > 0;
     }
 
     /**
@@ -182,6 +501,10 @@ public class RPCServer {
      * @param returnImmediately If true, return without waiting for client sessions to end. Otherwise, wait for them.
      */
     public void close(boolean returnImmediately) {
+        for (NioRPCServer listener : listeners) {
+            listener.close();
+        }
+
         for (Thread t : rpcSessions) {
             t.interrupt();
         }
@@ -194,6 +517,8 @@ public class RPCServer {
                     e.printStackTrace();
                 }
             }
+            // Write out what the sessions logged before they closed
+            requestLogger.flush(1, TimeUnit.SECONDS);
         }
 
         rpcSessions.clear();
@@ -216,50 +541,233 @@ public class RPCServer {
      *
      * @param inputStream  The input stream from the RPC client
      * @param outputStream The output stream to the RPC client
-     * @param daemon       Should the request handler thread be a daemon thread?
+     * @param daemon       Should the request handler thread be a daemon thread? Ignored if a session thread factory
+     *                     has been set, since the factory decides.
+     * @throws RejectedExecutionException If the server is at its session limit, and the admission policy rejects
+     *                                    instead of waiting. The streams are closed. If the policy waits, this blocks
+     *                                    until a session closes.
      */
     public RPCSession createRPCSession(InputStream inputStream, OutputStream outputStream, boolean daemon) {
-        Thread t = new Thread(new RPCRunnable(inputStream, outputStream));
-        t.setDaemon(daemon);
-        t.start();
+        boolean admitted;
+        try {
+            admitted = admission.acquireSession();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            admitted = false;
+        }
+        if (!admitted) {
+            try {
+                inputStream.close();
+                outputStream.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            throw new RejectedExecutionException("The server is at its limit of "
+                    + admission.getPolicy().getMaxSessions() + " sessions.");
+        }
+
+        Thread t;
+        try {
+            if (sessionThreadFactory == null) {
+                t = new Thread(new RPCRunnable(inputStream, outputStream));
+                t.setDaemon(daemon);
+            } else {
+                t = sessionThreadFactory.newThread(new RPCRunnable(inputStream, outputStream));
+            }
+        } catch (RuntimeException e) {
+            admission.releaseSession();
+            throw e;
+        }
         rpcSessions.add(t);
+        t.start();
         return new RPCSession(t);
     }
 
-    private RPCResponse invokeMethod(RPCRequest request, Map<String, Object> sessionVariables) {
+    /**
+     * Listen for TCP connections on the specified port. Connections are served by a single selector thread and a
+     * fixed pool of worker threads, instead of a thread per connection. Each connection is its own RPC session.
+     *
+     * @param port          The port to listen on. If 0, an ephemeral port is chosen.
+     * @param workerThreads The number of threads that handle requests.
+     * @return The listening server, which can be closed to stop listening and close its connections.
+     * @throws IOException If the server socket can't be opened.
+     */
+    public NioRPCServer listen(int port, int workerThreads) throws IOException {
+        return listen(new InetSocketAddress(port), workerThreads);
+    }
+
+    /**
+     * Listen for TCP connections on the specified address. Connections are served by a single selector thread and a
+     * fixed pool of worker threads, instead of a thread per connection. Each connection is its own RPC session.
+     *
+     * @param address       The address to listen on.
+     * @param workerThreads The number of threads that handle requests.
+     * @return The listening server, which can be closed to stop listening and close its connections.
+     * @throws IOException If the server socket can't be opened.
+     */
+    public NioRPCServer listen(SocketAddress address, int workerThreads) throws IOException {
+        NioRPCServer listener = new NioRPCServer(this, address, workerThreads);
+        listeners.add(listener);
+        return listener;
+    }
+
+    void removeListener(NioRPCServer listener) {
+        listeners.remove(listener);
+    }
+
+    private Class<?>[] resolveArgClasses(RPCRequest request) throws ClassNotFoundException {
+        List<String> argClassNames = request.getArgClassNames();
+        Class<?>[] argClasses = new Class<?>[argClassNames.size()];
+        for (int i = 0; i < argClasses.length; i++) {
+            String className = argClassNames.get(i);
+            if (className.startsWith("REMOTE:") || className.startsWith("HANDLE:")) {
+                className = className.substring(className.indexOf(':') + 1);
+            }
+            argClasses[i] = dispatchCache.resolveClass(className);
+        }
+        return argClasses;
+    }
+
+    private Class<?>[] unbox(Class<?>[] classes) {
+        Class<?>[] unboxed = new Class<?>[classes.length];
+        for (int i = 0; i < classes.length; i++) {
+            unboxed[i] = unboxMap.getOrDefault(classes[i], classes[i]);
+        }
+        return unboxed;
+    }
+
+    private Invoker createInvoker(Executable member) {
+        return new TieredInvoker(member, invocationMode, invocationThreshold);
+    }
+
+    private DispatchCache.Entry createEntry(Field staticObject, Executable member, Class<?>[] argClasses) {
+        return new DispatchCache.Entry(staticObject, member, argClasses, createInvoker(member),
+                metrics.getMethodMetrics(describe(member)));
+    }
+
+    private static String describe(RPCRequest request) {
+        String objectName = request.getObjectHandle() != 0 ? "#" + request.getObjectHandle() : request.getObjectName();
+        if (request.isRelease()) {
+            return objectName + ".<release>";
+        } else if (request.isInstantiate()) {
+            return request.getClassName() + ".<init>";
+        } else if (request.getClassName().isEmpty()) {
+            return objectName + "." + request.getMethodName();
+        } else if (request.getObjectName().isEmpty()) {
+            return request.getClassName() + "." + request.getMethodName();
+        } else {
+            return request.getClassName() + "." + request.getObjectName() + "." + request.getMethodName();
+        }
+    }
+
+    private static String sessionName(SessionMetrics session) {
+        return session == null ? "" : session.getName();
+    }
+
+    private static String describe(Executable member) {
+        StringBuilder sb = new StringBuilder(member.getDeclaringClass().getName()).append('.');
+        sb.append(member instanceof Constructor ? "<init>" : member.getName()).append('(');
+        Class<?>[] parameterTypes = member.getParameterTypes();
+        for (int i = 0; i < parameterTypes.length; i++) {
+            if (i > 0) sb.append(',');
+            sb.append(parameterTypes[i].getTypeName());
+        }
+        return sb.append(')').toString();
+    }
+
+    private DispatchCache.Entry resolveMethod(RPCRequest request, Object object) throws Exception {
+        Class<?> clazz;
+        Field staticObject = null;
+        if (!request.getClassName().isEmpty() && !request.getObjectName().isEmpty()) {
+            // Both fields are not empty, so this is a method invocation on static object
+            Class<?> staticClass = dispatchCache.resolveClass(request.getClassName()); // Get the requested class
+            staticObject = staticClass.getField(request.getObjectName()); // Get the static object
+            clazz = staticObject.get(null).getClass();
+        } else if (!request.getClassName().isEmpty()) {
+            // This is a static method invocation
+            clazz = dispatchCache.resolveClass(request.getClassName());
+        } else {
+            // This is a method invocation on a remote object
+            clazz = object.getClass();
+        }
+        Class<?>[] argClasses = resolveArgClasses(request);
+        Method method = clazz.getMethod(request.getMethodName(), unbox(argClasses)); // Get the method to invoke
+        return createEntry(staticObject, method, argClasses);
+    }
+
+    private RPCResponse invokeMethod(RPCRequest request, SessionObjectRegistry sessionVariables,
+                                     SessionMetrics session) {
         if (request.isInstantiate())
             throw new IllegalArgumentException("RPCRequest cannot be an instantiation request!");
 
         Object result;
         boolean isException = false;
+        long start = System.nanoTime();
+        long invokeStart = 0;
+        MethodMetrics methodMetrics = null;
         try {
-            Class<?> clazz;
             Object object = null;
-            if (!request.getClassName().isEmpty() && !request.getObjectName().isEmpty()) {
-                // Both fields are not empty, so this is a method invocation on static object
-                Class<?> staticClass = Class.forName(request.getClassName()); // Get the requested class
-                object = staticClass.getField(request.getObjectName()).get(null); // Get the static object
-                clazz = object.getClass();
-            } else if (!request.getClassName().isEmpty()) {
-                // This is a static method invocation
-                clazz = Class.forName(request.getClassName());
+            DispatchCache.Key key;
+            if (!request.getClassName().isEmpty()) {
+                // This is a static method invocation, or a method invocation on a static object
+                key = new DispatchCache.Key(false, request.getClassName(), request.getObjectName(), null,
+                        request.getMethodName(), request.getArgClassNames());
+            } else if (request.getObjectHandle() != 0) {
+                // This is a method invocation on a remote object that's addressed by handle
+                object = sessionVariables.getHandle(request.getObjectHandle());
+                if (object == null) {
+                    throw new Exception("There is no remote object with handle " + request.getObjectHandle() + "!");
+                }
+                key = new DispatchCache.Key(false, "", "", object.getClass(),
+                        request.getMethodName(), request.getArgClassNames());
             } else if (!request.getObjectName().isEmpty()) {
-                // This is a method invocation on a remote object
+                // This is a method invocation on a remote object. Names can be reused, so key on the object's class.
                 object = sessionVariables.get(request.getObjectName());
-                clazz = object.getClass();
+                if (object == null) {
+                    // It was never created, or it was released or evicted
+                    throw new Exception("There is no remote object named " + request.getObjectName() + "!");
+                }
+                key = new DispatchCache.Key(false, "", "", object.getClass(),
+                        request.getMethodName(), request.getArgClassNames());
             } else {
                 // Invalid request
                 throw new Exception("Both className and objectName cannot be empty strings!");
             }
-            Class<?>[] argClasses = request.getClasses(unboxMap).toArray(new Class<?>[0]);
-            Method method = clazz.getMethod(request.getMethodName(), argClasses); // Get the method to invoke
+
+            DispatchCache.Entry entry = dispatchCache.get(key);
+            if (entry == null) {
+                entry = resolveMethod(request, object);
+                dispatchCache.put(key, entry);
+            }
+            if (entry.getStaticObject() != null) {
+                object = entry.getStaticObject().get(null);
+                if (!entry.getMember().getDeclaringClass().isInstance(object)) {
+                    // The static object was reassigned to an incompatible object, so resolve the method again
+                    entry = resolveMethod(request, null);
+                    dispatchCache.put(key, entry);
+                }
+            }
             // Invoke the method. If the method is static then object can be null.
-            result = method.invoke(object, request.getTypedArgs(sessionVariables));
+            Object[] args = request.getTypedArgs(sessionVariables, sessionVariables::getHandle, entry.getArgClasses(), gson);
+            methodMetrics = entry.getMetrics();
+            ResultCache.Key resultKey = getResultKey(request, entry, args);
+            if (resultKey != null) {
+                ResultCache.Entry cached = resultCache.get(resultKey);
+                if (cached != null) {
+                    recordDispatch(session, methodMetrics, start, System.nanoTime());
+                    return new CachedResponse(request.getId(), cached);
+                }
+            }
+            invokeStart = System.nanoTime();
+            result = CallTracker.invoke(entry.getInvoker(), object, args);
+            if (resultKey != null) {
+                cacheResult(resultKey, result);
+            }
         } catch (NullPointerException | NoSuchMethodException |
                 IllegalAccessException | InvocationTargetException |
                 ClassNotFoundException e) {
             // There was an exception caused by RPC server code.
-            e.printStackTrace();
+            requestLogger.logError(sessionName(session), request.getId(), describe(request), e);
             result = e.toString();
             isException = true;
         } catch (Exception e) {
@@ -267,24 +775,107 @@ public class RPCServer {
             result = e.toString();
             isException = true;
         }
+        recordDispatch(session, methodMetrics, start, invokeStart);
         return new RPCResponse<>(request.getId(), result, isException);
     }
 
-    private RPCResponse<?> instantiateObject(RPCRequest request, Map<String, Object> sessionVariables) {
+    /**
+     * Get the key of the result of a request in the result cache.
+     *
+     * @param request The request.
+     * @param entry   The resolved method of the request.
+     * @param args    The typed arguments of the request.
+     * @return The key, or null if the result can't be cached.
+     */
+    private ResultCache.Key getResultKey(RPCRequest request, DispatchCache.Entry entry, Object[] args) {
+        // Streamed and kept results are consumed or mutable, and remote objects aren't values
+        if (!(entry.getMember() instanceof Method) || request.isStream() || request.getResultName() != null
+                || request.hasRemoteArgs() || !resultCache.isCacheable((Method) entry.getMember())) {
+            return null;
+        }
+        for (Object arg : args) {
+            if (!isPlainValue(arg)) {
+                // Gson leaves out transient and excluded fields, so the encoding of other objects isn't a full key
+                return null;
+            }
+        }
+        try {
+            return new ResultCache.Key((Method) entry.getMember(), gson.toJson(args));
+        } catch (RuntimeException e) {
+            // The arguments can't be encoded, so they can't be compared
+            return null;
+        }
+    }
+
+    /**
+     * Is a value fully described by its JSON encoding? This is the case for nulls, primitives, strings, and arrays of
+     * them.
+     */
+    private boolean isPlainValue(Object value) {
+        if (value == null || value instanceof String || unboxMap.containsKey(value.getClass())) {
+            return true;
+        }
+        Class<?> componentType = value.getClass().getComponentType();
+        if (componentType == null) return false;
+        if (componentType.isPrimitive()) return true;
+        for (int i = 0; i < Array.getLength(value); i++) {
+            if (!isPlainValue(Array.get(value, i))) return false;
+        }
+        return true;
+    }
+
+    private void cacheResult(ResultCache.Key key, Object result) {
+        String json;
+        try {
+            json = gson.toJson(result);
+        } catch (RuntimeException e) {
+            // The result may still be sent some other way, such as in a binary session or as an attachment
+            return;
+        }
+        resultCache.put(key, result, json);
+    }
+
+    private void recordDispatch(SessionMetrics session, MethodMetrics methodMetrics, long start, long invokeStart) {
+        if (session == null) return;
+        long end = System.nanoTime();
+        if (invokeStart == 0) {
+            // The request failed before the method was called
+            session.recordDispatch(methodMetrics, end - start, 0);
+        } else {
+            session.recordDispatch(methodMetrics, invokeStart - start, end - invokeStart);
+        }
+    }
+
+    private RPCResponse<?> instantiateObject(RPCRequest request, SessionObjectRegistry sessionVariables,
+                                             SessionMetrics session) {
         if (!request.isInstantiate())
             throw new IllegalArgumentException("RPCRequest must be an instantiation request!");
         Object object;
         boolean isException = false;
+        long start = System.nanoTime();
+        long invokeStart = 0;
+        MethodMetrics methodMetrics = null;
         try {
-            // Get the class to instantiate
-            Class<?> clazz = Class.forName(request.getClassName());
-            Class<?>[] argClasses = request.getClasses(unboxMap).toArray(new Class<?>[0]); // Get the unboxed classes
-            Constructor<?> constructor = clazz.getConstructor(argClasses); // Get the appropriate constructor
-            object = constructor.newInstance(request.getTypedArgs(sessionVariables)); // Instantiate the object
+            DispatchCache.Key key = new DispatchCache.Key(true, request.getClassName(), "", null, "",
+                    request.getArgClassNames());
+            DispatchCache.Entry entry = dispatchCache.get(key);
+            if (entry == null) {
+                // Get the class to instantiate
+                Class<?> clazz = dispatchCache.resolveClass(request.getClassName());
+                Class<?>[] argClasses = resolveArgClasses(request);
+                Constructor<?> constructor = clazz.getConstructor(unbox(argClasses)); // Get the appropriate constructor
+                entry = createEntry(null, constructor, argClasses);
+                dispatchCache.put(key, entry);
+            }
+            // Instantiate the object
+            Object[] args = request.getTypedArgs(sessionVariables, sessionVariables::getHandle, entry.getArgClasses(), gson);
+            methodMetrics = entry.getMetrics();
+            invokeStart = System.nanoTime();
+            object = CallTracker.invoke(entry.getInvoker(), null, args);
         } catch (ClassNotFoundException | NoSuchMethodException | InvocationTargetException |
                 IllegalAccessException | InstantiationException e) {
             // There was an exception caused by RPC server code.
-            e.printStackTrace();
+            requestLogger.logError(sessionName(session), request.getId(), describe(request), e);
             object = e.toString();
             isException = true;
         } catch (Exception e) {
@@ -292,59 +883,791 @@ public class RPCServer {
             object = e.toString();
             isException = true;
         }
+        recordDispatch(session, methodMetrics, start, invokeStart);
         return new RPCResponse<>(request.getId(), object, isException);
     }
 
-    private void sendRPCResponse(PrintStream out, RPCResponse response) {
-        String jsonResponse = gson.toJson(response);
-        if (loggingEnabled)
-        {
-            System.out.println("Sending response: " + jsonResponse);
+    /**
+     * Handle an RPC request. Instantiated objects, and results of requests with a result name, are added to the
+     * session variables.
+     *
+     * @param request   The request to handle.
+     * @param variables The remote objects of the session.
+     * @return The response to the request.
+     */
+    RPCResponse<?> handleRequest(RPCRequest request, SessionObjectRegistry variables) {
+        return handleRequest(request, variables, null);
+    }
+
+    /**
+     * Handle an RPC request. Instantiated objects, and results of requests with a result name, are added to the
+     * session variables.
+     *
+     * @param request   The request to handle.
+     * @param variables The remote objects of the session.
+     * @param session   The metrics of the session, which the dispatch of the request is recorded on. May be null.
+     * @return The response to the request.
+     */
+    RPCResponse<?> handleRequest(RPCRequest request, SessionObjectRegistry variables, SessionMetrics session) {
+        if (request.isRelease()) {
+            long start = System.nanoTime();
+            // The response says whether there was an object to release
+            boolean released = request.getObjectHandle() != 0
+                    ? variables.releaseHandle(request.getObjectHandle())
+                    : variables.remove(request.getObjectName()) != null;
+            recordDispatch(session, metrics.getMethodMetrics("<release>"), start, start);
+            return new RPCResponse<>(request.getId(), released);
+        } else if (request.isInstantiate()) {
+            // If the request was an instantiation request, attempt to instantiate it.
+            RPCResponse<?> response = instantiateObject(request, variables, session);
+            // If it was successful, add the new remote object to the session variables map.
+            if (!response.isException()) {
+                if (request.isReturnHandle()) {
+                    // The client gets the handle instead of the object
+                    return new RPCResponse<>(response.getId(), variables.putHandle(response.getValue()));
+                }
+                variables.put(request.getObjectName(), response.getValue());
+            }
+            // The response contains the instantiated object.
+            return response;
+        } else {
+            // This request is either a method invocation, static method invocation, or method on static object invocation
+            RPCResponse<?> response = invokeMethod(request, variables, session);
+            // If the result was asked to be kept, store it as a remote object instead of sending it back
+            if (request.getResultName() != null && !response.isException()) {
+                variables.put(request.getResultName(), response.getValue());
+                return new RPCResponse<>(response.getId(), null);
+            }
+            return response;
+        }
+    }
+
+    /**
+     * Handle a batch of RPC requests in order.
+     *
+     * @param batch     The batch to handle.
+     * @param variables The remote objects of the session.
+     * @param session   The metrics of the session, which each request is recorded on. May be null.
+     * @return A response whose value is the list of responses to each request in the batch.
+     */
+    RPCResponse<?> handleBatch(RPCBatch batch, SessionObjectRegistry variables, SessionMetrics session) {
+        List<RPCResponse<?>> responses = new ArrayList<>(batch.getRequests().size());
+        boolean failed = false;
+        for (RPCRequest request : batch.getRequests()) {
+            if (failed) {
+                responses.add(new RPCResponse<>(request.getId(),
+                        "Skipped because an earlier request in the batch failed.", true));
+                continue;
+            }
+            RPCResponse<?> response = handleRequest(request, variables, session);
+            if (session != null) {
+                // The batch is parsed and serialized as a whole, so only the dispatch is the request's own
+                metrics.recordCall(session, response.isException(), -1, -1);
+            }
+            responses.add(response);
+            failed = batch.isStopOnError() && response.isException();
+        }
+        return new RPCResponse<>(batch.getId(), responses);
+    }
+
+    /**
+     * Handle an RPC request or a batch of RPC requests.
+     *
+     * @param message   The <code>RPCRequest</code> or <code>RPCBatch</code> to handle.
+     * @param variables The remote objects of the session.
+     * @param session   The metrics of the session. May be null.
+     * @return The response to the message.
+     */
+    RPCResponse<?> handleMessage(Object message, SessionObjectRegistry variables, SessionMetrics session) {
+        if (message instanceof RPCBatch) {
+            return handleBatch((RPCBatch) message, variables, session);
+        }
+        return handleRequest((RPCRequest) message, variables, session);
+    }
+
+    /**
+     * Handle a message received in the JSON wire format, along with the attachments that were sent before it.
+     *
+     * @param message     The <code>RPCRequest</code> or <code>RPCBatch</code> to handle.
+     * @param attachments The payloads of the attachments sent before the message. This is cleared once they're used.
+     * @param variables   The remote objects of the session.
+     * @param session     The metrics of the session. May be null.
+     * @return The response to the message.
+     */
+    RPCResponse<?> handleMessage(Object message, List<ByteBuffer> attachments, SessionObjectRegistry variables,
+                                 SessionMetrics session) {
+        try {
+            Attachments.bind(message, attachments);
+        } catch (IllegalArgumentException e) {
+            long id = message instanceof RPCBatch ? ((RPCBatch) message).getId() : ((RPCRequest) message).getId();
+            return new RPCResponse<>(id, e.toString(), true);
+        } finally {
+            attachments.clear();
+        }
+        return handleMessage(message, variables, session);
+    }
+
+    /**
+     * Send the response to a message that isn't streamed.
+     *
+     * @param message  The <code>RPCRequest</code> or <code>RPCBatch</code> that was handled.
+     * @param response The response to the message.
+     * @param sink     Where the response is sent.
+     * @return The response to record and log.
+     * @throws IOException If the sink fails.
+     */
+    RPCResponse<?> sendResponse(Object message, RPCResponse<?> response, ResponseSink sink) throws IOException {
+        if (message instanceof RPCRequest && ((RPCRequest) message).isAttachResult()
+                && Attachments.isAttachable(response.getValue())) {
+            response.setAttachment(Attachments.getTypeName(response.getValue()));
+        }
+        sink.send(response);
+        return response;
+    }
+
+    /**
+     * Is the response to a message sent as a stream of chunks?
+     */
+    private static boolean isStreamed(Object message, RPCResponse<?> response) {
+        return message instanceof RPCRequest && ((RPCRequest) message).isStream() && !response.isException();
+    }
+
+    /**
+     * A streamed result that's being sent. The result is iterated and sent in chunks as its elements are produced, so
+     * it never has to be held in memory as a whole. Each chunk is only produced once the previous one has been handed
+     * to the sink and the client has asked for it, so a sink that blocks or a slow client holds back the producer.
+     * If the call tracker resumes streams, a stream that's waiting for demand gives its thread back, and picks up
+     * where it left off once the demand arrives.
+     */
+    private final class ResultStream implements Runnable {
+        private final long id;
+        private final Object result;
+        private final CallTracker calls;
+        private final CallTracker.Call call;
+        private final ResponseSink sink;
+        private final Consumer<RPCResponse<?>> onEnd; // Finishes the call once the stream ends
+        private Iterator<?> elements;
+        private boolean hasNext;
+        private long count = 0;
+
+        private ResultStream(RPCResponse<?> response, CallTracker calls, CallTracker.Call call, ResponseSink sink,
+                             Consumer<RPCResponse<?>> onEnd) {
+            id = response.getId();
+            result = response.getValue();
+            this.calls = calls;
+            this.call = call;
+            this.sink = sink;
+            this.onEnd = onEnd;
+        }
+
+        /**
+         * Send chunks until the result ends, or the stream has to wait for demand and will be resumed.
+         *
+         * @return The response to record and log, or null if the stream will be resumed. Its value is the number of
+         * elements sent, or it's the exception that ended the stream.
+         * @throws IOException If the sink fails, or the call was aborted.
+         */
+        private RPCResponse<?> send() throws IOException {
+            boolean resumes = false;
+            try {
+                if (elements == null) {
+                    elements = iterate(result);
+                    hasNext = elements.hasNext();
+                }
+                do {
+                    if (!calls.awaitDemand(call, this)) {
+                        resumes = true;
+                        return null;
+                    }
+                    List<Object> chunk = new ArrayList<>(Math.min(streamChunkSize, 64));
+                    while (hasNext && chunk.size() < streamChunkSize) {
+                        chunk.add(elements.next());
+                        hasNext = elements.hasNext();
+                    }
+                    sink.send(new RPCResponse<>(id, chunk, false, hasNext));
+                    count += chunk.size();
+                } while (hasNext);
+            } catch (RuntimeException e) {
+                // The result failed partway through, so the stream ends with the exception
+                RPCResponse<?> failure = new RPCResponse<>(id, e.toString(), true);
+                sink.send(failure);
+                return failure;
+            } finally {
+                if (!resumes && result instanceof AutoCloseable) {
+                    try {
+                        ((AutoCloseable) result).close();
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                    }
+                }
+            }
+            return new RPCResponse<>(id, count);
+        }
+
+        /**
+         * Resume the stream once the client has asked for more, or the call has been aborted.
+         */
+        @Override
+        public void run() {
+            RPCResponse<?> response = null;
+            try {
+                response = send(); // If the call was aborted, sending throws right away
+                if (response == null) return; // Waiting for demand again
+            } catch (CallTracker.AbortedException e) {
+                // The call was answered when it was aborted
+            } catch (IOException | RuntimeException e) {
+                e.printStackTrace();
+            }
+            onEnd.accept(response);
+        }
+    }
+
+    /**
+     * Get the elements of a streamed result. Anything that isn't an <code>Iterable</code>, <code>Stream</code>,
+     * <code>Iterator</code>, or array is a single element, and null is no elements.
+     */
+    private static Iterator<?> iterate(Object result) {
+        if (result == null) {
+            return Collections.emptyIterator();
+        } else if (result instanceof Iterable) {
+            return ((Iterable<?>) result).iterator();
+        } else if (result instanceof BaseStream) {
+            return ((BaseStream<?, ?>) result).iterator();
+        } else if (result instanceof Iterator) {
+            return (Iterator<?>) result;
+        } else if (result instanceof Object[]) {
+            return Arrays.asList((Object[]) result).iterator();
+        } else if (result.getClass().isArray()) {
+            // Primitive arrays are boxed one element at a time
+            return IntStream.range(0, Array.getLength(result)).mapToObj(i -> Array.get(result, i)).iterator();
+        }
+        return Collections.singleton(result).iterator();
+    }
+
+    /**
+     * Get the JSON-encoded form of a response. A value that's sent as an attachment is left out, since the
+     * attachment is written separately, before the response.
+     *
+     * @param response The response to encode.
+     * @return The JSON-encoded response, without a newline.
+     */
+    private String toJson(RPCResponse<?> response) {
+        if (response instanceof CachedResponse) {
+            String json = ((CachedResponse) response).toJson();
+            if (json != null) {
+                return json;
+            }
+        }
+        if (response.getAttachment() == null) {
+            return gson.toJson(response);
+        }
+        RPCResponse<Object> envelope = new RPCResponse<>(response.getId(), null);
+        envelope.setAttachment(response.getAttachment());
+        return gson.toJson(envelope);
+    }
+
+    /**
+     * Record a handled message in the metrics.
+     *
+     * @param session        The metrics of the session the message came from.
+     * @param message        The <code>RPCRequest</code> or <code>RPCBatch</code> that was handled.
+     * @param response       The response to the message.
+     * @param parseNanos     The time taken to decode the message.
+     * @param serializeNanos The time taken to encode and send the response.
+     */
+    private void recordMessage(SessionMetrics session, Object message, RPCResponse<?> response,
+                               long parseNanos, long serializeNanos) {
+        if (message instanceof RPCBatch) {
+            metrics.recordBatch(parseNanos, serializeNanos);
+        } else {
+            metrics.recordCall(session, response.isException(), parseNanos, serializeNanos);
+        }
+    }
+
+    /**
+     * Log a handled message, if the request logger samples it.
+     *
+     * @param session       The metrics of the session the message came from.
+     * @param message       The <code>RPCRequest</code> or <code>RPCBatch</code> that was handled.
+     * @param response      The response to the message.
+     * @param durationNanos The time taken to parse, handle, and respond to the message.
+     */
+    private void logMessage(SessionMetrics session, Object message, RPCResponse<?> response, long durationNanos) {
+        if (!requestLogger.shouldLog()) return;
+
+        String method;
+        boolean isException = response.isException();
+        if (message instanceof RPCBatch) {
+            method = "<batch of " + ((RPCBatch) message).getRequests().size() + ">";
+            for (Object r : (List<?>) response.getValue()) {
+                isException |= ((RPCResponse<?>) r).isException();
+            }
+        } else {
+            method = describe((RPCRequest) message);
+        }
+        String requestPayload = null;
+        String responsePayload = null;
+        if (requestLogger.isPayloadCaptureEnabled()) {
+            // The exclusion strategies are meant for the objects being passed around, not the request itself
+            requestPayload = PAYLOAD_GSON.toJson(message);
+            responsePayload = gson.toJson(response);
+        }
+        requestLogger.log(new RequestEvent(System.currentTimeMillis(), sessionName(session), response.getId(), method,
+                durationNanos, isException ? RequestEvent.Outcome.EXCEPTION : RequestEvent.Outcome.SUCCESS,
+                requestPayload, responsePayload, null));
+    }
+
+    /**
+     * Handle a message and send its response, unless its call is aborted first, and then log and record it.
+     *
+     * @param message     The <code>RPCRequest</code> or <code>RPCBatch</code> to handle.
+     * @param attachments The payloads of the attachments sent before the message. This is cleared once they're used.
+     * @param variables   The remote objects of the session.
+     * @param session     The metrics of the session.
+     * @param calls       The calls of the session.
+     * @param call        The call of the message, which is finished once it has been answered.
+     * @param sink        Sends the response. A streamed result is sent as several responses.
+     * @param start       The value of <code>System.nanoTime()</code> when the message was received.
+     * @param parsed      The value of <code>System.nanoTime()</code> when the message was decoded.
+     * @throws IOException If an error occurs while sending the response.
+     */
+    private void respond(Object message, List<ByteBuffer> attachments, SessionObjectRegistry variables,
+                         SessionMetrics session, CallTracker calls, CallTracker.Call call, ResponseSink sink,
+                         long start, long parsed) throws IOException {
+        RPCResponse<?> response = null;
+        long handled = parsed;
+        boolean resumes = false;
+        try {
+            if (calls.start(call)) {
+                try {
+                    response = handleMessage(message, attachments, variables, session);
+                } finally {
+                    calls.handled();
+                }
+                handled = System.nanoTime();
+                if (isStreamed(message, response)) {
+                    long handledNanos = handled;
+                    ResultStream stream = new ResultStream(response, calls, call, calls.guard(call, sink),
+                            r -> finishCall(session, message, calls, call, r, start, parsed, handledNanos));
+                    response = stream.send();
+                    resumes = response == null;
+                } else {
+                    response = sendResponse(message, response, calls.guard(call, sink));
+                }
+            } else {
+                attachments.clear();
+            }
+        } catch (CallTracker.AbortedException e) {
+            // The call was answered when it was aborted
+        } finally {
+            if (!resumes) {
+                finishCall(session, message, calls, call, response, start, parsed, handled);
+            }
+        }
+    }
+
+    /**
+     * Stop tracking a call that has been answered, and then log and record it.
+     *
+     * @param session  The metrics of the session.
+     * @param message  The <code>RPCRequest</code> or <code>RPCBatch</code> that was handled.
+     * @param calls    The calls of the session.
+     * @param call     The call of the message.
+     * @param response The response to record, or null if it wasn't answered because the session failed.
+     * @param start    The value of <code>System.nanoTime()</code> when the message was received.
+     * @param parsed   The value of <code>System.nanoTime()</code> when the message was decoded.
+     * @param handled  The value of <code>System.nanoTime()</code> when the message was handled.
+     */
+    private void finishCall(SessionMetrics session, Object message, CallTracker calls, CallTracker.Call call,
+                            RPCResponse<?> response, long start, long parsed, long handled) {
+        RPCResponse<?> abortResponse = calls.finish(call);
+        if (abortResponse != null) {
+            response = abortResponse;
+        }
+        admission.releaseRequest();
+        if (response == null) return;
+        long end = System.nanoTime();
+        logMessage(session, message, response, end - start);
+        recordMessage(session, message, response, parsed - start, end - handled);
+    }
+
+    /**
+     * Admit a request, or reject it if the server is overloaded and the admission policy rejects instead of waiting.
+     * Admitted requests are released once they've been answered by <code>respond</code>.
+     *
+     * @param message     The <code>RPCRequest</code> or <code>RPCBatch</code>.
+     * @param attachments The payloads of the attachments sent before the message. These are dropped if it's
+     *                    rejected.
+     * @param sink        Sends the rejection.
+     * @return True if the request was admitted, false if it was rejected and answered.
+     * @throws IOException          If an error occurs while sending the rejection.
+     * @throws InterruptedException If interrupted while waiting for room.
+     */
+    private boolean admit(Object message, List<ByteBuffer> attachments, ResponseSink sink)
+            throws IOException, InterruptedException {
+        if (admission.acquireRequest()) return true;
+        reject(message, attachments, sink);
+        return false;
+    }
+
+    /**
+     * Answer a request that wasn't admitted with an <code>OVERLOADED</code> exception response.
+     *
+     * @param message     The <code>RPCRequest</code> or <code>RPCBatch</code>.
+     * @param attachments The payloads of the attachments sent before the message, which are dropped.
+     * @param sink        Sends the rejection.
+     * @throws IOException If an error occurs while sending the rejection.
+     */
+    private void reject(Object message, List<ByteBuffer> attachments, ResponseSink sink) throws IOException {
+        attachments.clear();
+        long id = message instanceof RPCBatch ? ((RPCBatch) message).getId() : ((RPCRequest) message).getId();
+        RPCResponse<Object> response = new RPCResponse<>(id, RPCResponse.ErrorCode.OVERLOADED + ": The server is at"
+                + " its limit of " + admission.getPolicy().getMaxInFlightRequests() + " requests in flight.", true);
+        response.setErrorCode(RPCResponse.ErrorCode.OVERLOADED);
+        metrics.recordRejection();
+        sink.send(response);
+    }
+
+    /**
+     * Get the timer that the deadlines of calls are scheduled on. It's created the first time a call has a deadline.
+     *
+     * @return The deadline timer.
+     */
+    synchronized ScheduledExecutorService getDeadlineTimer() {
+        if (deadlineTimer == null) {
+            ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, r -> {
+                Thread t = new Thread(r, "RPCServer-deadlines");
+                t.setDaemon(true);
+                return t;
+            });
+            timer.setRemoveOnCancelPolicy(true);
+            deadlineTimer = timer;
+        }
+        return deadlineTimer;
+    }
+
+    /**
+     * Get the executor that answers aborted calls when there's no request executor. Sending the answer may block on
+     * the socket, so it can't be sent on the deadline timer, which would hold up the deadlines of every session.
+     *
+     * @return The abort executor.
+     */
+    synchronized ExecutorService getAbortExecutor() {
+        if (abortExecutor == null) {
+            // One thread is kept, and more are only started while it's blocked
+            abortExecutor = new ThreadPoolExecutor(1, Integer.MAX_VALUE, 60, TimeUnit.SECONDS,
+                    new SynchronousQueue<>(), r -> {
+                Thread t = new Thread(r, "RPCServer-aborts");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        return abortExecutor;
+    }
+
+    /**
+     * Create a sink that sends responses in the JSON wire format.
+     *
+     * @param out Receives the bytes of each response in order: its attachment, if it has one, and then the newline
+     *            terminated JSON.
+     * @return The sink.
+     */
+    ResponseSink createJsonSink(Consumer<ByteBuffer> out) {
+        return r -> {
+            if (r.getAttachment() != null) {
+                ByteBuffer payload = Attachments.encode(r.getValue());
+                String header = Attachments.createHeader(payload.remaining()) + "\n";
+                out.accept(ByteBuffer.wrap(header.getBytes(StandardCharsets.UTF_8)));
+                out.accept(payload);
+            }
+            out.accept(ByteBuffer.wrap((toJson(r) + "\n").getBytes(StandardCharsets.UTF_8)));
+        };
+    }
+
+    /**
+     * Decode a JSON-encoded message if it's a cancel or demand request.
+     *
+     * @param line The JSON-encoded message.
+     * @return The request, or null if the message is something else.
+     */
+    RPCRequest parseControl(String line) {
+        try {
+            Object message = requestDecoder.decodeMessage(line);
+            if (message instanceof RPCRequest
+                    && (((RPCRequest) message).isCancel() || ((RPCRequest) message).isDemand())) {
+                return (RPCRequest) message;
+            }
+        } catch (RuntimeException e) {
+            // Let the worker report it
+        }
+        return null;
+    }
+
+    /**
+     * Handle a message if it's a cancel or demand request. These aren't answered, and act on a call that may still be
+     * queued or running, so they're handled as soon as they're read.
+     *
+     * @param message The <code>RPCRequest</code> or <code>RPCBatch</code>.
+     * @param calls   The calls of the session.
+     * @return True if the message was handled, or false if it's a request to answer.
+     */
+    static boolean handleControl(Object message, CallTracker calls) {
+        if (!(message instanceof RPCRequest)) return false;
+        RPCRequest request = (RPCRequest) message;
+        if (request.isCancel()) {
+            calls.cancel(request.getId());
+        } else if (request.isDemand()) {
+            calls.demand(request.getId(), request.getDemand());
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Handle a JSON-encoded RPC request or batch. Cancel and demand requests are handled by
+     * <code>handleControl</code>, and aren't answered.
+     * This never waits for room under the server's request limit, since the calls holding the room may need the
+     * calling thread to finish. If the admission policy rejects, the request is rejected; otherwise it's left for the
+     * caller to hand back once a request has been answered.
+     *
+     * @param line          The JSON-encoded request or batch.
+     * @param attachments   The payloads of the attachments sent before the request. This is cleared once they're
+     *                      used.
+     * @param variables     The remote objects of the session.
+     * @param session       The metrics of the session. Encoding the response is timed as its serialization.
+     * @param calls         The calls of the session, which the request is tracked in.
+     * @param receivedNanos The value of <code>System.nanoTime()</code> when the request was received.
+     * @param sink          Sends the response, as created by <code>createJsonSink</code>.
+     * @return True if the request was handled, or false if the server is at its request limit and it should be
+     * handled again later. Its attachments are left as they are.
+     * @see AdmissionControl#addRequestListener(Runnable)
+     */
+    boolean handleJsonRequest(String line, List<ByteBuffer> attachments, SessionObjectRegistry variables,
+                              SessionMetrics session, CallTracker calls, long receivedNanos, ResponseSink sink) {
+        Object message = requestDecoder.decodeMessage(line); // Deserialize the RPC request
+        long parsed = System.nanoTime();
+        if (handleControl(message, calls)) return true;
+        try {
+            if (!admission.tryAcquireRequest()) {
+                if (admission.getPolicy().getOverloadAction() == AdmissionPolicy.OverloadAction.WAIT) return false;
+                reject(message, attachments, sink);
+                return true;
+            }
+            CallTracker.Call call = calls.track(message, receivedNanos);
+            respond(message, attachments, variables, session, calls, call, sink, receivedNanos, parsed);
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // The consumer doesn't throw checked exceptions
         }
-        out.println(jsonResponse);
-        out.flush();
     }
 
     private class RPCRunnable implements Runnable {
-        private final BufferedReader in;
-        private final PrintStream out;
+        private final InputStream inputStream;
+        private OutputStream outputStream;
+        private LineInputStream in;
+        private PrintStream out;
+        private final List<ByteBuffer> attachments = new ArrayList<>(); // Sent before the next message
+        private final SessionMetrics session;
+        private BinaryCodec binaryCodec; // Null unless the client negotiated the binary wire format
+        private final RequestScheduler scheduler; // Null unless requests run concurrently
+        // Runs requests in order while a streamed result waits for demand, so demand can still be read
+        private ExecutorService ordered;
+        private final AtomicInteger queued = new AtomicInteger();
+        private final int maxMessageSize;
+        // Guards the output, and is a lock rather than a monitor so that a virtual thread that blocks on the socket
+        // while holding it doesn't hold on to its carrier thread
+        private final ReentrantLock writeLock = new ReentrantLock();
+        // Sending may block on the socket, so aborted calls are answered on the request pool or the abort executor
+        private final CallTracker calls = new CallTracker(RPCServer.this::getDeadlineTimer, this::sendRPCResponse,
+                command -> (requestExecutor != null ? requestExecutor : getAbortExecutor()).execute(command));
 
         public RPCRunnable(InputStream inputStream, OutputStream outputStream) {
-            in = new BufferedReader(new InputStreamReader(inputStream));
-            out = new PrintStream(outputStream);
+            session = metrics.openSession("RPCSession-" + sessionCounter.getAndIncrement());
+            AdmissionPolicy policy = admission.getPolicy();
+            maxMessageSize = policy.getMaxMessageSize();
+            scheduler = requestExecutor == null ? null
+                    : new RequestScheduler(requestExecutor, policy.getReadAhead());
+            this.inputStream = new CountingInputStream(inputStream, session);
+            this.outputStream = new CountingOutputStream(outputStream, session);
+            in = new LineInputStream(this.inputStream, Charset.defaultCharset());
+            in.setMaxLineLength(maxMessageSize);
+            out = new PrintStream(this.outputStream);
+        }
+
+        private void negotiate(String handshake) {
+            writeLock.lock();
+            try {
+                WireFormat format = Handshake.parseFormat(handshake);
+                if (format == WireFormat.BINARY && !binaryWireFormatEnabled) {
+                    format = WireFormat.JSON;
+                }
+                // The client waits for this reply before switching, so nothing past the handshake has been buffered
+                boolean compressed = compressionEnabled && Handshake.isCompressed(handshake);
+                out.println(Handshake.create(format, compressed));
+                out.flush();
+                if (compressed) {
+                    // Everything after the handshake reply is framed, in both directions
+                    in = new LineInputStream(new InflatingInputStream(inputStream, maxMessageSize),
+                            Charset.defaultCharset());
+                    in.setMaxLineLength(maxMessageSize);
+                    outputStream = new DeflatingOutputStream(outputStream, compressionThreshold);
+                    out = new PrintStream(outputStream);
+                }
+                if (format == WireFormat.BINARY) {
+                    binaryCodec = new BinaryCodec(gson, dispatchCache::resolveClass);
+                    binaryCodec.setMaxFrameLength(maxMessageSize);
+                }
+            } finally {
+                writeLock.unlock();
+            }
+        }
+
+        // Locked, since the responses of concurrent requests are sent from their own threads
+        private void sendRPCResponse(RPCResponse<?> response) throws IOException {
+            writeLock.lock();
+            try {
+                if (binaryCodec != null) {
+                    binaryCodec.writeResponse(outputStream, response);
+                    outputStream.flush();
+                    return;
+                }
+
+                if (response.getAttachment() != null) {
+                    Attachments.write(out, Attachments.encode(response.getValue()));
+                }
+                String jsonResponse = toJson(response);
+                out.println(jsonResponse);
+                out.flush();
+            } finally {
+                writeLock.unlock();
+            }
+        }
+
+        private void respond(Object message, List<ByteBuffer> attachments, SessionObjectRegistry variables,
+                             CallTracker.Call call, long start, long parsed) throws IOException {
+            RPCServer.this.respond(message, attachments, variables, session, calls, call, this::sendRPCResponse,
+                    start, parsed);
+        }
+
+        private void submit(Object message, SessionObjectRegistry variables, CallTracker.Call call, long start,
+                            long parsed) throws InterruptedException {
+            // The attachments belong to this message, and the next message starts a new list
+            List<ByteBuffer> bound = new ArrayList<>(attachments);
+            attachments.clear();
+            scheduler.submit(message, () -> {
+                try {
+                    respond(message, bound, variables, call, start, parsed);
+                } catch (IOException | RuntimeException e) {
+                    e.printStackTrace();
+                }
+            });
+        }
+
+        /**
+         * Run a request on this session's ordered worker. Once a streamed result waits for demand, it and the requests
+         * after it run there in order, so that this thread can keep reading the demand for it.
+         */
+        private void enqueue(Object message, SessionObjectRegistry variables, CallTracker.Call call, long start,
+                             long parsed) {
+            List<ByteBuffer> bound = new ArrayList<>(attachments);
+            attachments.clear();
+            if (ordered == null) {
+                // The worker lives as long as the session, like this thread, since a piped stream breaks when the
+                // last thread that wrote to it dies
+                ordered = sessionThreadFactory == null ? Executors.newSingleThreadExecutor()
+                        : Executors.newSingleThreadExecutor(sessionThreadFactory);
+            }
+            queued.incrementAndGet();
+            ordered.execute(() -> {
+                try {
+                    respond(message, bound, variables, call, start, parsed);
+                } catch (IOException | RuntimeException e) {
+                    e.printStackTrace();
+                } finally {
+                    queued.decrementAndGet();
+                }
+            });
+        }
+
+        private boolean waitsForDemand(Object message) {
+            return message instanceof RPCRequest && ((RPCRequest) message).isStream()
+                    && ((RPCRequest) message).getDemand() > 0;
+        }
+
+        private void awaitIdle() {
+            try {
+                // Let the requests that are still running send their responses before the streams are closed
+                scheduler.awaitIdle();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
         }
 
         @Override
         public void run() {
             try {
-                Map<String, Object> variables = new HashMap<>(); // All remote objects will be stored here
+                SessionObjectRegistry variables = createObjectRegistry(session); // All remote objects will be stored here
                 while (!Thread.interrupted()) {
-                    String line = in.readLine();
-                    if (line == null) break; // The client has closed.
-                    else if (line.length() == 0) continue; // For some reason, the client sent an empty line.
-                    if (loggingEnabled)
-                    {
-                        System.out.println("Received request: " + line);
-                    }
-                    RPCRequest request = gson.fromJson(line, RPCRequest.class); // Deserialize the RPC request
-                    if (request.isInstantiate()) {
-                        // If the request was an instantiation request, attempt to instantiate it.
-                        RPCResponse<?> response = instantiateObject(request, variables);
-                        // If it was successful, add the new remote object to the session variables map.
-                        if (!response.isException()) {
-                            variables.put(request.getObjectName(), response.getValue());
+                    Object message;
+                    long start;
+                    if (binaryCodec == null) {
+                        String line = in.readLine();
+                        if (line == null) break; // The client has closed.
+                        else if (line.length() == 0) continue; // For some reason, the client sent an empty line.
+                        if (Handshake.isHandshake(line)) {
+                            negotiate(line);
+                            continue;
+                        } else if (Attachments.isHeader(line)) {
+                            int length = Attachments.parseLength(line);
+                            if (length > maxMessageSize) {
+                                throw new IOException("The attachment is larger than " + maxMessageSize + " bytes.");
+                            }
+                            attachments.add(Attachments.read(in, length));
+                            continue;
                         }
-                        // Send back a response containing the instantiated object.
-                        sendRPCResponse(out, response);
+                        start = System.nanoTime();
+                        message = requestDecoder.decodeMessage(line); // Deserialize the RPC request
+                    } else {
+                        message = binaryCodec.readMessage(in);
+                        if (message == null) break; // The client has closed.
+                        start = binaryCodec.getLastFrameNanos();
+                    }
+                    long parsed = System.nanoTime();
+                    // Only calls that are still queued or running can be cancelled or streamed, so this isn't answered
+                    if (handleControl(message, calls)) continue;
+                    // Waiting here stops reading from the session, which pushes back on the client
+                    if (!admit(message, attachments, this::sendRPCResponse)) continue;
+                    CallTracker.Call call = calls.track(message, start);
+                    if (scheduler != null) {
+                        submit(message, variables, call, start, parsed);
+                    } else if (queued.get() > 0 || waitsForDemand(message)) {
+                        // Requests still run one at a time, after the ones that are queued
+                        enqueue(message, variables, call, start, parsed);
                     } else {
-                        // This request is either a method invocation, static method invocation, or method on static object invocation
-                        RPCResponse response = invokeMethod(request, variables);
-                        sendRPCResponse(out, response);
+                        respond(message, attachments, variables, call, start, parsed);
                     }
                 }
             } catch (IOException e) {
                 e.printStackTrace();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
             } finally {
+                if (scheduler != null) {
+                    awaitIdle();
+                }
+                if (ordered != null) {
+                    // Nobody is left to ask for the rest of a stream, so stop it along with what's queued behind it
+                    ordered.shutdownNow();
+                    try {
+                        ordered.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                rpcSessions.remove(Thread.currentThread());
+                metrics.closeSession(session);
+                admission.releaseSession();
                 try {
                     in.close();
                     out.close();
@@ -0,0 +1,153 @@
+package com.coolioasjulio.rpc.server;
+
+import com.coolioasjulio.rpc.RPCBatch;
+import com.coolioasjulio.rpc.RPCRequest;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Runs the messages of one session concurrently, while keeping messages that depend on each other in order. Each
+ * request is keyed by the remote objects it touches: the object it's invoked on or releases, the remote objects passed
+ * as arguments, and the name its result is stored under. A request only starts once every earlier request that shares
+ * a key with it has finished. Instantiations and batches are barriers: they wait for every earlier message, and every
+ * later message waits for them.
+ * <p>
+ * Messages are only submitted by the thread reading the session, which blocks once too many are in flight.
+ */
+class RequestScheduler {
+    private static final int PRUNE_THRESHOLD = 1024;
+
+    private final Executor executor;
+    private final Semaphore permits;
+    private final Map<String, CompletableFuture<Void>> tails = new HashMap<>(); // The last message with each key
+    private final Set<CompletableFuture<Void>> inFlight = ConcurrentHashMap.newKeySet();
+    private CompletableFuture<Void> barrier; // The last barrier, or null if there hasn't been one
+
+    /**
+     * Create a request scheduler.
+     *
+     * @param executor    The executor that runs the messages.
+     * @param maxInFlight The number of messages that may be submitted and not yet finished.
+     */
+    RequestScheduler(Executor executor, int maxInFlight) {
+        this.executor = executor;
+        this.permits = new Semaphore(maxInFlight);
+    }
+
+    /**
+     * Submit a message to run once the messages it depends on have finished. Blocks while too many messages are in
+     * flight.
+     *
+     * @param message The <code>RPCRequest</code> or <code>RPCBatch</code>, used to find its dependencies.
+     * @param task    Handles the message and sends the response. It must not throw.
+     * @throws InterruptedException If interrupted while waiting for a message to finish.
+     */
+    void submit(Object message, Runnable task) throws InterruptedException {
+        permits.acquire();
+        List<String> keys = getKeys(message);
+
+        List<CompletableFuture<Void>> dependencies = new ArrayList<>();
+        if (keys == null) {
+            dependencies.addAll(inFlight);
+        } else {
+            if (barrier != null && !barrier.isDone()) {
+                dependencies.add(barrier);
+            }
+            for (String key : keys) {
+                CompletableFuture<Void> tail = tails.get(key);
+                if (tail != null && !tail.isDone()) {
+                    dependencies.add(tail);
+                }
+            }
+        }
+
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        inFlight.add(done);
+        if (keys == null) {
+            barrier = done;
+            tails.clear(); // Everything later waits for the barrier anyway
+        } else {
+            if (tails.size() >= PRUNE_THRESHOLD) {
+                tails.values().removeIf(CompletableFuture::isDone);
+            }
+            for (String key : keys) {
+                tails.put(key, done);
+            }
+        }
+
+        Runnable run = () -> {
+            try {
+                task.run();
+            } finally {
+                inFlight.remove(done);
+                permits.release();
+                done.complete(null);
+            }
+        };
+        if (dependencies.isEmpty()) {
+            executor.execute(run);
+        } else {
+            CompletableFuture.allOf(dependencies.toArray(new CompletableFuture<?>[0]))
+                    .whenCompleteAsync((v, e) -> run.run(), executor);
+        }
+    }
+
+    /**
+     * Wait for every submitted message to finish.
+     *
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    void awaitIdle() throws InterruptedException {
+        try {
+            CompletableFuture.allOf(inFlight.toArray(new CompletableFuture<?>[0])).get();
+        } catch (ExecutionException e) {
+            // The tasks don't throw, so this never happens
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Get the keys of the remote objects a message touches.
+     *
+     * @param message The <code>RPCRequest</code> or <code>RPCBatch</code>.
+     * @return The keys, or null if the message is a barrier.
+     */
+    private static List<String> getKeys(Object message) {
+        if (message instanceof RPCBatch) return null;
+        RPCRequest request = (RPCRequest) message;
+        if (request.isInstantiate()) return null;
+
+        List<String> keys = new ArrayList<>(2);
+        if (request.getObjectHandle() != 0) {
+            keys.add("#" + request.getObjectHandle());
+        } else if (request.getObjectName() != null && !request.getObjectName().isEmpty()) {
+            // Static objects are keyed by their class, since their names are only unique within it
+            String className = request.getClassName() == null ? "" : request.getClassName();
+            keys.add(className.isEmpty() || request.isRelease()
+                    ? request.getObjectName()
+                    : className + "." + request.getObjectName());
+        }
+        if (request.getResultName() != null) {
+            keys.add(request.getResultName());
+        }
+        for (int i = 0; i < request.getArgs().size() && i < request.getArgClassNames().size(); i++) {
+            String argClassName = request.getArgClassNames().get(i);
+            Object arg = request.getArgs().get(i);
+            if (argClassName.startsWith("REMOTE:")) {
+                keys.add(String.valueOf(arg));
+            } else if (argClassName.startsWith("HANDLE:") && arg instanceof Number) {
+                keys.add("#" + ((Number) arg).intValue());
+            }
+        }
+        return keys;
+    }
+}
@@ -0,0 +1,321 @@
+package com.coolioasjulio.rpc.server;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded, concurrent cache of the results of pure static methods, so that calls with the same arguments aren't
+ * invoked and encoded again. Methods are only cached if they're allowed, either here or with the
+ * <code>Memoize</code> annotation. Entries are keyed by the method and the JSON encoding of its arguments, and hold
+ * the result along with its JSON encoding, which JSON sessions send as it is. Since that encoding leaves out
+ * transient and excluded fields, only calls whose arguments are all primitives, strings, or arrays of them are
+ * cached.
+ * <p>
+ * Once the cache holds too many entries or too many encoded bytes, the oldest entries are evicted first. Entries
+ * also expire once they're older than the time to live, if there is one.
+ * <p>
+ * Lookups don't lock, except to remove an expired entry. Changes are made under the cache's lock, so the size and
+ * byte count always match the entries.
+ */
+public class ResultCache {
+    public static final int DEFAULT_MAXIMUM_SIZE = 1024;
+    public static final long DEFAULT_MAXIMUM_BYTES = 16 * 1024 * 1024;
+
+    private final Map<Key, Entry> entries = new ConcurrentHashMap<>();
+    private final Queue<Key> insertionOrder = new ArrayDeque<>(); // Guarded by this
+    private final Set<Class<?>> allowedClasses = ConcurrentHashMap.newKeySet();
+    private final Set<String> allowedMethods = ConcurrentHashMap.newKeySet(); // Class name and method name
+    private final Map<Method, Boolean> cacheable = new ConcurrentHashMap<>();
+    private final AtomicLong bytes = new AtomicLong(); // Only changed under this, but read without locking
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+    private volatile int maximumSize = DEFAULT_MAXIMUM_SIZE;
+    private volatile long maximumBytes = DEFAULT_MAXIMUM_BYTES;
+    private volatile long timeToLiveNanos = 0;
+
+    /**
+     * Allow the results of every public static method of a class to be cached.
+     *
+     * @param clazz The class.
+     */
+    public void allow(Class<?> clazz) {
+        allowedClasses.add(clazz);
+        cacheable.clear();
+    }
+
+    /**
+     * Allow the results of a public static method to be cached. Every overload with this name is allowed.
+     *
+     * @param clazz      The class that declares the method.
+     * @param methodName The name of the method.
+     */
+    public void allow(Class<?> clazz, String methodName) {
+        allowedMethods.add(clazz.getName() + "#" + methodName);
+        cacheable.clear();
+    }
+
+    /**
+     * Stop caching the methods allowed with <code>allow</code>, and drop their cached results. Methods annotated with
+     * <code>Memoize</code> are still cached.
+     */
+    public void disallowAll() {
+        allowedClasses.clear();
+        allowedMethods.clear();
+        cacheable.clear();
+        invalidateAll();
+    }
+
+    /**
+     * Can the results of a method be cached?
+     *
+     * @param method The method.
+     * @return True if it's a static method that's allowed or annotated with <code>Memoize</code>, false otherwise.
+     */
+    public boolean isCacheable(Method method) {
+        Boolean allowed = cacheable.get(method);
+        if (allowed == null) {
+            Class<?> clazz = method.getDeclaringClass();
+            allowed = Modifier.isStatic(method.getModifiers()) && method.getReturnType() != void.class
+                    && (allowedClasses.contains(clazz)
+                    || allowedMethods.contains(clazz.getName() + "#" + method.getName())
+                    || method.isAnnotationPresent(Memoize.class)
+                    || clazz.isAnnotationPresent(Memoize.class));
+            cacheable.put(method, allowed);
+        }
+        return allowed;
+    }
+
+    /**
+     * Set the maximum number of results to hold. If the cache is currently larger, it will shrink on the next
+     * insertion.
+     *
+     * @param maximumSize The maximum number of results. Must be positive.
+     */
+    public void setMaximumSize(int maximumSize) {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("maximumSize must be positive!");
+        }
+        this.maximumSize = maximumSize;
+    }
+
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+
+    /**
+     * Set the maximum total length of the encoded results to hold. If the cache is currently larger, it will shrink
+     * on the next insertion. Results that are larger than this on their own aren't cached.
+     *
+     * @param maximumBytes The maximum length, in bytes of JSON. Must be positive.
+     */
+    public void setMaximumBytes(long maximumBytes) {
+        if (maximumBytes <= 0) {
+            throw new IllegalArgumentException("maximumBytes must be positive!");
+        }
+        this.maximumBytes = maximumBytes;
+    }
+
+    public long getMaximumBytes() {
+        return maximumBytes;
+    }
+
+    /**
+     * Set how long results are kept. This only affects results cached after it's set.
+     *
+     * @param timeToLive The time to live. If not positive, results never expire.
+     * @param unit       The unit of the time to live.
+     */
+    public void setTimeToLive(long timeToLive, TimeUnit unit) {
+        this.timeToLiveNanos = Math.max(0, unit.toNanos(timeToLive));
+    }
+
+    /**
+     * Get how long results are kept, in nanoseconds.
+     *
+     * @return The time to live, or 0 if results never expire.
+     */
+    public long getTimeToLiveNanos() {
+        return timeToLiveNanos;
+    }
+
+    /**
+     * Get a cached result.
+     *
+     * @param key The key of the result.
+     * @return The entry, or null if it's not cached or has expired.
+     */
+    public Entry get(Key key) {
+        Entry entry = entries.get(key);
+        if (entry != null && entry.expiresNanos != 0 && System.nanoTime() - entry.expiresNanos >= 0) {
+            synchronized (this) {
+                if (entries.remove(key, entry)) {
+                    // Otherwise the stale key could evict the entry if the result is cached again
+                    insertionOrder.remove(key);
+                    bytes.addAndGet(-entry.json.length());
+                    expirations.increment();
+                }
+            }
+            entry = null;
+        }
+        if (entry == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return entry;
+    }
+
+    /**
+     * Cache a result, evicting the oldest results if the cache is full.
+     *
+     * @param key   The key of the result.
+     * @param value The result.
+     * @param json  The JSON encoding of the result.
+     */
+    public void put(Key key, Object value, String json) {
+        if (json.length() > maximumBytes) return;
+        long ttl = timeToLiveNanos;
+        // 0 means no expiry, so a deadline that happens to land on 0 is nudged
+        long expiresNanos = ttl == 0 ? 0 : (System.nanoTime() + ttl) | 1;
+        Entry entry = new Entry(value, json, expiresNanos);
+        synchronized (this) {
+            Entry previous = entries.put(key, entry);
+            if (previous == null) {
+                insertionOrder.add(key);
+            } else {
+                bytes.addAndGet(-previous.json.length());
+            }
+            bytes.addAndGet(json.length());
+            while (entries.size() > maximumSize || bytes.get() > maximumBytes) {
+                Key eldest = insertionOrder.poll();
+                if (eldest == null) break;
+                Entry evicted = entries.remove(eldest);
+                if (evicted != null) {
+                    bytes.addAndGet(-evicted.json.length());
+                    evictions.increment();
+                }
+            }
+        }
+    }
+
+    /**
+     * Remove all cached results. The allowed methods are kept.
+     */
+    public synchronized void invalidateAll() {
+        entries.clear();
+        insertionOrder.clear();
+        bytes.set(0);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Get the total length of the encoded results that are cached.
+     *
+     * @return The length in bytes of JSON.
+     */
+    public long getBytes() {
+        return bytes.get();
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * Get the fraction of lookups that found a result.
+     *
+     * @return The hit rate, between 0 and 1, or 0 if nothing has been looked up.
+     */
+    public double getHitRate() {
+        long hits = getHitCount();
+        long lookups = hits + getMissCount();
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    public long getExpirationCount() {
+        return expirations.sum();
+    }
+
+    /**
+     * The key of a cached result.
+     */
+    public static final class Key {
+        private final Method method;
+        private final String args;
+        private final int hash;
+
+        /**
+         * Create a result key.
+         *
+         * @param method The method.
+         * @param args   The JSON encoding of the arguments, after they've been converted to the parameter types.
+         */
+        public Key(Method method, String args) {
+            this.method = method;
+            this.args = args;
+            this.hash = 31 * method.hashCode() + args.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return hash == key.hash && method.equals(key.method) && args.equals(key.args);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * A cached result.
+     */
+    public static final class Entry {
+        private final Object value;
+        private final String json;
+        private final long expiresNanos;
+
+        private Entry(Object value, String json, long expiresNanos) {
+            this.value = value;
+            this.json = json;
+            this.expiresNanos = expiresNanos;
+        }
+
+        public Object getValue() {
+            return value;
+        }
+
+        /**
+         * Get the JSON encoding of the result, as it was when it was cached.
+         *
+         * @return The JSON.
+         */
+        public String getJson() {
+            return json;
+        }
+    }
+}
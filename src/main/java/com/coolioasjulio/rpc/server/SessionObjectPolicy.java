@@ -0,0 +1,99 @@
+package com.coolioasjulio.rpc.server;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits on the remote objects each session may hold. When a session goes over a limit, its least recently used
+ * objects are evicted. Instances are immutable, so they can be shared between servers.
+ */
+public class SessionObjectPolicy {
+    /**
+     * No limits, and objects are never evicted.
+     */
+    public static final SessionObjectPolicy DEFAULT = new SessionObjectPolicy(Integer.MAX_VALUE, Long.MAX_VALUE, 0,
+            new ShallowSizeEstimator());
+
+    private final int maxObjects;
+    private final long maxBytes;
+    private final long idleTimeoutNanos;
+    private final SizeEstimator sizeEstimator;
+
+    private SessionObjectPolicy(int maxObjects, long maxBytes, long idleTimeoutNanos, SizeEstimator sizeEstimator) {
+        this.maxObjects = maxObjects;
+        this.maxBytes = maxBytes;
+        this.idleTimeoutNanos = idleTimeoutNanos;
+        this.sizeEstimator = sizeEstimator;
+    }
+
+    /**
+     * Get a copy of this policy with a limit on the number of objects per session.
+     *
+     * @param maxObjects The maximum number of objects. Must be positive.
+     * @return The new policy.
+     */
+    public SessionObjectPolicy withMaxObjects(int maxObjects) {
+        if (maxObjects <= 0) {
+            throw new IllegalArgumentException("maxObjects must be positive!");
+        }
+        return new SessionObjectPolicy(maxObjects, maxBytes, idleTimeoutNanos, sizeEstimator);
+    }
+
+    /**
+     * Get a copy of this policy with a limit on the estimated memory held by the objects of each session.
+     *
+     * @param maxBytes The maximum estimated size in bytes. Must be positive.
+     * @return The new policy.
+     */
+    public SessionObjectPolicy withMaxBytes(long maxBytes) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("maxBytes must be positive!");
+        }
+        return new SessionObjectPolicy(maxObjects, maxBytes, idleTimeoutNanos, sizeEstimator);
+    }
+
+    /**
+     * Get a copy of this policy with an idle timeout. Every use of an object renews its lease, and objects that
+     * haven't been used for this long are evicted the next time the session handles a request.
+     *
+     * @param timeout The idle timeout. If not positive, objects never expire.
+     * @param unit    The unit of the timeout.
+     * @return The new policy.
+     */
+    public SessionObjectPolicy withIdleTimeout(long timeout, TimeUnit unit) {
+        return new SessionObjectPolicy(maxObjects, maxBytes, Math.max(0, unit.toNanos(timeout)), sizeEstimator);
+    }
+
+    /**
+     * Get a copy of this policy that estimates the size of objects differently.
+     *
+     * @param sizeEstimator The size estimator.
+     * @return The new policy.
+     */
+    public SessionObjectPolicy withSizeEstimator(SizeEstimator sizeEstimator) {
+        if (sizeEstimator == null) {
+            throw new IllegalArgumentException("sizeEstimator cannot be null!");
+        }
+        return new SessionObjectPolicy(maxObjects, maxBytes, idleTimeoutNanos, sizeEstimator);
+    }
+
+    public int getMaxObjects() {
+        return maxObjects;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Get the idle timeout in nanoseconds.
+     *
+     * @return The idle timeout, or 0 if objects never expire.
+     */
+    public long getIdleTimeoutNanos() {
+        return idleTimeoutNanos;
+    }
+
+    public SizeEstimator getSizeEstimator() {
+        return sizeEstimator;
+    }
+}
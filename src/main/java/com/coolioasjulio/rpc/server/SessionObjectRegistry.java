@@ -0,0 +1,386 @@
+package com.coolioasjulio.rpc.server;
+
+import com.coolioasjulio.rpc.server.metrics.SessionMetrics;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Set;
+
+/**
+ * The remote objects of one RPC session. Objects are stored either by name, or under a numeric handle that's
+ * allocated by the registry. Handles index straight into a table, so looking them up doesn't hash anything. The map
+ * view of the registry only contains the named objects.
+ * <p>
+ * Objects are kept in order of use, so that when the session goes over the limits of its
+ * {@link SessionObjectPolicy}, the least recently used objects are evicted first. Every use of an object renews its
+ * lease, and objects whose lease has expired are evicted the next time the registry is used.
+ * <p>
+ * This is thread safe, since the requests of a session may be handled concurrently. Iterating over the map view must
+ * be done while synchronized on the registry.
+ */
+public class SessionObjectRegistry extends AbstractMap<String, Object> {
+    // A handle is the index of its slot followed by a generation, so that small handles stay small on the wire
+    private static final int GENERATION_BITS = 7;
+    private static final int GENERATION_MASK = (1 << GENERATION_BITS) - 1;
+    private static final int MAX_INDEX = (1 << 24) - 1; // Keeps handles positive
+
+    private static class Slot {
+        private String name; // Null if the object is stored under a handle
+        private int handle;
+        private Object value;
+        private long size;
+        private long lastAccessNanos;
+        private Slot prev;
+        private Slot next;
+    }
+
+    private final HashMap<String, Slot> names = new HashMap<>();
+    private Slot[] handles = new Slot[16];
+    private byte[] generations = new byte[16];
+    private int[] freeIndices = new int[16];
+    private int freeCount = 0;
+    private int nextIndex = 1; // 0 is never a valid handle
+    private int handleCount = 0;
+
+    // The least and most recently used objects, of both kinds
+    private Slot eldest;
+    private Slot youngest;
+
+    private final SessionObjectPolicy policy;
+    private final SessionMetrics metrics;
+    private final Set<Entry<String, Object>> entrySet = new EntrySet();
+    private long residentBytes = 0;
+    private long evictions = 0;
+
+    /**
+     * Create a registry with no limits.
+     */
+    public SessionObjectRegistry() {
+        this(SessionObjectPolicy.DEFAULT, null);
+    }
+
+    /**
+     * Create a registry.
+     *
+     * @param policy  The limits on the objects in the registry.
+     * @param metrics The metrics of the session, which are told about resident objects and evictions. May be null.
+     */
+    public SessionObjectRegistry(SessionObjectPolicy policy, SessionMetrics metrics) {
+        this.policy = policy;
+        this.metrics = metrics;
+    }
+
+    public SessionObjectPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Get the number of objects in the registry, both named and under handles.
+     *
+     * @return The number of objects.
+     */
+    public synchronized int getObjectCount() {
+        return names.size() + handleCount;
+    }
+
+    /**
+     * Get the estimated memory held by the objects in the registry.
+     *
+     * @return The estimated size in bytes.
+     */
+    public synchronized long getResidentBytes() {
+        return residentBytes;
+    }
+
+    /**
+     * Get the number of objects that were evicted because they were idle or the registry was over its limits.
+     * Objects that were released or replaced aren't counted.
+     *
+     * @return The number of evicted objects.
+     */
+    public synchronized long getEvictionCount() {
+        return evictions;
+    }
+
+    /**
+     * Store an object under a new handle.
+     *
+     * @param value The object to store.
+     * @return The handle of the object. Handles are always positive.
+     */
+    public synchronized int putHandle(Object value) {
+        evictExpired();
+        int index;
+        if (freeCount > 0) {
+            index = freeIndices[--freeCount];
+        } else {
+            if (nextIndex > MAX_INDEX) {
+                throw new IllegalStateException("Too many remote objects!");
+            }
+            index = nextIndex++;
+            if (index >= handles.length) {
+                handles = Arrays.copyOf(handles, handles.length * 2);
+                generations = Arrays.copyOf(generations, generations.length * 2);
+            }
+        }
+
+        // Bump the generation, so that stale copies of the last handle with this index don't find the new object
+        int generation = (generations[index] + 1) & GENERATION_MASK;
+        generations[index] = (byte) generation;
+        Slot slot = createSlot(null, value);
+        slot.handle = (index << GENERATION_BITS) | generation;
+        handles[index] = slot;
+        handleCount++;
+        enforceLimits();
+        return slot.handle;
+    }
+
+    /**
+     * Get the object stored under a handle.
+     *
+     * @param handle The handle of the object.
+     * @return The object, or null if there is no object with that handle.
+     */
+    public synchronized Object getHandle(int handle) {
+        evictExpired();
+        Slot slot = findHandle(handle);
+        if (slot == null) return null;
+        touch(slot);
+        return slot.value;
+    }
+
+    /**
+     * Does an object exist under a handle?
+     *
+     * @param handle The handle of the object.
+     * @return True if there is an object with that handle, false otherwise.
+     */
+    public synchronized boolean containsHandle(int handle) {
+        evictExpired();
+        return findHandle(handle) != null;
+    }
+
+    /**
+     * Release the object stored under a handle. The handle may be reused for a later object.
+     *
+     * @param handle The handle of the object.
+     * @return True if the object was released, false if there was no object with that handle.
+     */
+    public synchronized boolean releaseHandle(int handle) {
+        Slot slot = findHandle(handle);
+        if (slot == null) return false;
+        remove(slot);
+        report();
+        return true;
+    }
+
+    /**
+     * Evict the objects whose lease has expired. This is done automatically whenever the registry is used.
+     */
+    public synchronized void evictExpired() {
+        long timeout = policy.getIdleTimeoutNanos();
+        if (timeout <= 0 || eldest == null) return;
+
+        long now = System.nanoTime();
+        boolean evicted = false;
+        // Slots are in order of use, so stop at the first one that isn't expired
+        while (eldest != null && now - eldest.lastAccessNanos >= timeout) {
+            evict(eldest);
+            evicted = true;
+        }
+        if (evicted) {
+            report();
+        }
+    }
+
+    @Override
+    public synchronized Object get(Object key) {
+        evictExpired();
+        Slot slot = names.get(key);
+        if (slot == null) return null;
+        touch(slot);
+        return slot.value;
+    }
+
+    @Override
+    public synchronized boolean containsKey(Object key) {
+        evictExpired();
+        return names.containsKey(key);
+    }
+
+    @Override
+    public synchronized Object put(String key, Object value) {
+        evictExpired();
+        Slot slot = createSlot(key, value);
+        Slot old = names.put(key, slot);
+        if (old != null) {
+            unlink(old);
+            residentBytes -= old.size;
+        }
+        enforceLimits();
+        return old == null ? null : old.value;
+    }
+
+    @Override
+    public synchronized Object remove(Object key) {
+        Slot slot = names.get(key);
+        if (slot == null) return null;
+        remove(slot);
+        report();
+        return slot.value;
+    }
+
+    @Override
+    public synchronized int size() {
+        evictExpired();
+        return names.size();
+    }
+
+    /**
+     * Remove every object, both named and under handles.
+     */
+    @Override
+    public synchronized void clear() {
+        names.clear();
+        Arrays.fill(handles, null);
+        freeCount = 0;
+        nextIndex = 1;
+        handleCount = 0;
+        eldest = youngest = null;
+        residentBytes = 0;
+        report();
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        evictExpired();
+        return entrySet;
+    }
+
+    private Slot findHandle(int handle) {
+        int index = handle >>> GENERATION_BITS;
+        if (handle <= 0 || index >= nextIndex) return null;
+        Slot slot = handles[index];
+        return slot != null && slot.handle == handle ? slot : null;
+    }
+
+    private Slot createSlot(String name, Object value) {
+        Slot slot = new Slot();
+        slot.name = name;
+        slot.value = value;
+        slot.size = policy.getSizeEstimator().estimateSize(value);
+        slot.lastAccessNanos = System.nanoTime();
+        link(slot);
+        residentBytes += slot.size;
+        return slot;
+    }
+
+    private void enforceLimits() {
+        // Evict the least recently used objects, but never the one that was just stored
+        while ((getObjectCount() > policy.getMaxObjects() || residentBytes > policy.getMaxBytes())
+                && eldest != youngest) {
+            evict(eldest);
+        }
+        report();
+    }
+
+    private void evict(Slot slot) {
+        remove(slot);
+        evictions++;
+        if (metrics != null) {
+            metrics.recordEviction();
+        }
+    }
+
+    private void remove(Slot slot) {
+        if (slot.name != null) {
+            names.remove(slot.name);
+        } else {
+            int index = slot.handle >>> GENERATION_BITS;
+            handles[index] = null;
+            if (freeCount == freeIndices.length) {
+                freeIndices = Arrays.copyOf(freeIndices, freeIndices.length * 2);
+            }
+            freeIndices[freeCount++] = index;
+            handleCount--;
+        }
+        unlink(slot);
+        residentBytes -= slot.size;
+    }
+
+    private void touch(Slot slot) {
+        slot.lastAccessNanos = System.nanoTime();
+        if (slot != youngest) {
+            unlink(slot);
+            link(slot);
+        }
+    }
+
+    private void link(Slot slot) {
+        slot.prev = youngest;
+        slot.next = null;
+        if (youngest == null) {
+            eldest = slot;
+        } else {
+            youngest.next = slot;
+        }
+        youngest = slot;
+    }
+
+    private void unlink(Slot slot) {
+        if (slot.prev == null) {
+            eldest = slot.next;
+        } else {
+            slot.prev.next = slot.next;
+        }
+        if (slot.next == null) {
+            youngest = slot.prev;
+        } else {
+            slot.next.prev = slot.prev;
+        }
+        slot.prev = slot.next = null;
+    }
+
+    private void report() {
+        if (metrics != null) {
+            metrics.recordResidentObjects(getObjectCount(), residentBytes);
+        }
+    }
+
+    private class EntrySet extends AbstractSet<Entry<String, Object>> {
+        @Override
+        public Iterator<Entry<String, Object>> iterator() {
+            Iterator<Slot> iterator = names.values().iterator();
+            return new Iterator<Entry<String, Object>>() {
+                private Slot current;
+
+                @Override
+                public boolean hasNext() {
+                    return iterator.hasNext();
+                }
+
+                @Override
+                public Entry<String, Object> next() {
+                    current = iterator.next();
+                    return new SimpleImmutableEntry<>(current.name, current.value);
+                }
+
+                @Override
+                public void remove() {
+                    iterator.remove();
+                    unlink(current);
+                    residentBytes -= current.size;
+                    report();
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return SessionObjectRegistry.this.size();
+        }
+    }
+}
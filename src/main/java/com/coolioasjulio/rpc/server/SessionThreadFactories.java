@@ -0,0 +1,66 @@
+package com.coolioasjulio.rpc.server;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Thread factories for RPC sessions. Virtual threads are looked up reflectively, so this library still runs on
+ * Java 8, and only uses them when running on JDK 21 or later.
+ */
+public class SessionThreadFactories {
+    private SessionThreadFactories() {
+        // Static helper
+    }
+
+    /**
+     * Create a factory of platform threads.
+     *
+     * @param daemon Should the threads be daemon threads?
+     * @return A thread factory creating named platform threads.
+     */
+    public static ThreadFactory platformThreads(boolean daemon) {
+        AtomicLong count = new AtomicLong();
+        return r -> {
+            Thread t = new Thread(r, "RPCSession-" + count.getAndIncrement());
+            t.setDaemon(daemon);
+            return t;
+        };
+    }
+
+    /**
+     * Is this JVM able to create virtual threads?
+     *
+     * @return True if running on JDK 21 or later, false otherwise.
+     */
+    public static boolean isVirtualThreadSupported() {
+        try {
+            virtualThreads();
+            return true;
+        } catch (UnsupportedOperationException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Create a factory of virtual threads. Virtual threads are always daemon threads. Where a session blocks, such as
+     * on its socket, while waiting for demand, or while waiting for admission, it holds locks rather than monitors, so
+     * that it doesn't hold on to its carrier thread. Methods called by clients that block inside
+     * <code>synchronized</code> still do on JDK 21.
+     *
+     * @return A thread factory creating named virtual threads.
+     * @throws UnsupportedOperationException If virtual threads aren't supported by this JVM.
+     */
+    public static ThreadFactory virtualThreads() {
+        try {
+            // Equivalent to Thread.ofVirtual().name("RPCSession-", 0).factory()
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, "RPCSession-", 0L);
+            Method factory = builderClass.getMethod("factory");
+            return (ThreadFactory) factory.invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            throw new UnsupportedOperationException("Virtual threads require JDK 21 or later!");
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.coolioasjulio.rpc.server;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * A cheap estimate of the memory held by an object. Strings, arrays, and the contents of collections and maps are
+ * counted by their length, and other objects by the number of fields they declare. Objects referenced by fields
+ * aren't followed, so deep object graphs are underestimated.
+ */
+public class ShallowSizeEstimator implements SizeEstimator {
+    private static final long HEADER = 16;
+    private static final long REFERENCE = 8;
+
+    private static final ClassValue<Long> FIELD_SIZES = new ClassValue<Long>() {
+        @Override
+        protected Long computeValue(Class<?> type) {
+            long size = HEADER;
+            for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+                for (Field field : c.getDeclaredFields()) {
+                    if (!Modifier.isStatic(field.getModifiers())) {
+                        size += field.getType().isPrimitive() ? primitiveSize(field.getType()) : REFERENCE;
+                    }
+                }
+            }
+            return size;
+        }
+    };
+
+    private static long primitiveSize(Class<?> type) {
+        if (type == long.class || type == double.class) return 8;
+        if (type == int.class || type == float.class) return 4;
+        if (type == short.class || type == char.class) return 2;
+        return 1;
+    }
+
+    @Override
+    public long estimateSize(Object object) {
+        if (object == null) return 0;
+        if (object instanceof String) {
+            return HEADER + REFERENCE + HEADER + 2L * ((String) object).length();
+        }
+        Class<?> type = object.getClass();
+        if (type.isArray()) {
+            int length = java.lang.reflect.Array.getLength(object);
+            Class<?> component = type.getComponentType();
+            return HEADER + (long) length * (component.isPrimitive() ? primitiveSize(component) : REFERENCE);
+        }
+        long size = FIELD_SIZES.get(type);
+        if (object instanceof Collection) {
+            size += (long) ((Collection<?>) object).size() * (REFERENCE + HEADER);
+        } else if (object instanceof Map) {
+            size += (long) ((Map<?, ?>) object).size() * (2 * REFERENCE + 2 * HEADER);
+        }
+        return size;
+    }
+}
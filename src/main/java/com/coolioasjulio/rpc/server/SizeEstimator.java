@@ -0,0 +1,14 @@
+package com.coolioasjulio.rpc.server;
+
+/**
+ * Estimates how much memory a remote object holds, for enforcing the memory limit of a session's objects.
+ */
+public interface SizeEstimator {
+    /**
+     * Estimate the size of an object. This is called every time an object is stored, so it should be fast.
+     *
+     * @param object The object, which may be null.
+     * @return The estimated size in bytes.
+     */
+    long estimateSize(Object object);
+}
@@ -4,8 +4,15 @@ import com.google.gson.ExclusionStrategy;
 import com.google.gson.FieldAttributes;
 
 import java.lang.reflect.Field;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class SuperclassExclusionStrategy implements ExclusionStrategy {
+    // The names of the fields declared by the superclasses of each class seen so far
+    private final Map<Class<?>, Set<String>> superclassFields = new ConcurrentHashMap<>();
+
     @Override
     public boolean shouldSkipClass(Class<?> arg0) {
         return false;
@@ -20,26 +27,16 @@ public class SuperclassExclusionStrategy implements ExclusionStrategy {
     }
 
     private boolean isFieldInSuperclass(Class<?> subclass, String fieldName) {
-        Class<?> superclass = subclass.getSuperclass();
-        Field field;
-
-        while (superclass != null) {
-            field = getField(superclass, fieldName);
-
-            if (field != null)
-                return true;
-
-            superclass = superclass.getSuperclass();
-        }
-
-        return false;
+        return superclassFields.computeIfAbsent(subclass, this::getSuperclassFields).contains(fieldName);
     }
 
-    private Field getField(Class<?> theClass, String fieldName) {
-        try {
-            return theClass.getDeclaredField(fieldName);
-        } catch (Exception e) {
-            return null;
+    private Set<String> getSuperclassFields(Class<?> subclass) {
+        Set<String> fieldNames = new HashSet<>();
+        for (Class<?> superclass = subclass.getSuperclass(); superclass != null; superclass = superclass.getSuperclass()) {
+            for (Field field : superclass.getDeclaredFields()) {
+                fieldNames.add(field.getName());
+            }
         }
+        return fieldNames;
     }
 }
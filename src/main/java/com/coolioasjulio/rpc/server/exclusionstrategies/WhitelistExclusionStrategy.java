@@ -5,13 +5,23 @@ import com.google.gson.ExclusionStrategy;
 import com.google.gson.FieldAttributes;
 
 import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class WhitelistExclusionStrategy implements ExclusionStrategy {
     private Set<Class<?>> includeSet;
+    // Whether each declared class seen so far has a public field of a whitelisted type
+    private final Map<Class<?>, Boolean> hasIncludedField = new ConcurrentHashMap<>();
 
+    /**
+     * Create a whitelist exclusion strategy.
+     *
+     * @param includeSet The whitelisted classes. This is copied, since decisions are cached per class.
+     */
     public WhitelistExclusionStrategy(Set<Class<?>> includeSet) {
-        this.includeSet = includeSet;
+        this.includeSet = new HashSet<>(includeSet);
     }
 
     @Override
@@ -21,8 +31,8 @@ public class WhitelistExclusionStrategy implements ExclusionStrategy {
         if (declaredClass.isPrimitive() || declaredClass.isArray() || includeSet.contains(declaringClass) || declaringClass.equals(
                 RPCResponse.class))
             return false;
-        return Arrays.stream(declaredClass.getFields())
-                .noneMatch(e -> includeSet.contains(e.getType()));
+        return !hasIncludedField.computeIfAbsent(declaredClass, c -> Arrays.stream(c.getFields())
+                .anyMatch(e -> includeSet.contains(e.getType())));
     }
 
     @Override
@@ -0,0 +1,120 @@
+package com.coolioasjulio.rpc.server.invokers;
+
+import java.lang.reflect.Executable;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Checks the target and arguments of a call the way <code>Method.invoke</code> and
+ * <code>Constructor.newInstance</code> do, so that the faster invokers report a bad call with the same exception as
+ * reflection, and anything they catch afterwards must have been thrown by the method itself.
+ */
+final class Arguments {
+    private static final Map<Class<?>, Class<?>> wrappers = new HashMap<>();
+    private static final Map<Class<?>, Class<?>> primitives = new HashMap<>();
+
+    static {
+        Class<?>[][] pairs = {
+                {boolean.class, Boolean.class}, {byte.class, Byte.class}, {short.class, Short.class},
+                {char.class, Character.class}, {int.class, Integer.class}, {long.class, Long.class},
+                {float.class, Float.class}, {double.class, Double.class}
+        };
+        for (Class<?>[] pair : pairs) {
+            wrappers.put(pair[0], pair[1]);
+            primitives.put(pair[1], pair[0]);
+        }
+    }
+
+    private final Class<?> declaringClass;
+    private final boolean needsTarget;
+    private final Class<?>[] parameterTypes;
+
+    Arguments(Executable member) {
+        declaringClass = member.getDeclaringClass();
+        needsTarget = member instanceof Method && !Modifier.isStatic(member.getModifiers());
+        parameterTypes = member.getParameterTypes();
+    }
+
+    /**
+     * Check the target and arguments of a call.
+     *
+     * @param target The object the method is invoked on. Ignored for static methods and constructors.
+     * @param args   The arguments. May be null if there are none.
+     * @return The arguments, with any primitive values widened to the type of their parameter.
+     * @throws NullPointerException     If the method isn't static, and the target is null.
+     * @throws IllegalArgumentException If the target or any argument has the wrong type, or there are the wrong
+     *                                  number of arguments.
+     */
+    Object[] check(Object target, Object[] args) {
+        if (needsTarget) {
+            if (target == null) {
+                throw new NullPointerException();
+            }
+            if (!declaringClass.isInstance(target)) {
+                throw new IllegalArgumentException("object is not an instance of declaring class");
+            }
+        }
+        int length = args == null ? 0 : args.length;
+        if (length != parameterTypes.length) {
+            throw new IllegalArgumentException("wrong number of arguments");
+        }
+        Object[] checked = args;
+        for (int i = 0; i < length; i++) {
+            Class<?> type = parameterTypes[i];
+            Object arg = args[i];
+            if (!type.isPrimitive()) {
+                if (arg != null && !type.isInstance(arg)) {
+                    throw new IllegalArgumentException("argument type mismatch");
+                }
+            } else if (arg == null || !wrappers.get(type).isInstance(arg)) {
+                Object widened = widen(arg, type);
+                if (checked == args) {
+                    checked = args.clone();
+                }
+                checked[i] = widened;
+            }
+        }
+        return checked;
+    }
+
+    /**
+     * Widen a boxed primitive to a wider primitive type, as reflection does.
+     */
+    private static Object widen(Object arg, Class<?> type) {
+        Class<?> from = arg == null ? null : primitives.get(arg.getClass());
+        if (from == null || from == boolean.class || type == boolean.class
+                || type == char.class || type == byte.class) {
+            throw new IllegalArgumentException("argument type mismatch");
+        }
+        Number value;
+        if (from == char.class) {
+            if (type == short.class) {
+                throw new IllegalArgumentException("argument type mismatch");
+            }
+            // A char widens to the same types as a short, other than short itself
+            value = (int) (Character) arg;
+            from = short.class;
+        } else {
+            value = (Number) arg;
+        }
+        if (rank(from) >= rank(type)) {
+            throw new IllegalArgumentException("argument type mismatch");
+        }
+        if (type == short.class) return value.shortValue();
+        if (type == int.class) return value.intValue();
+        if (type == long.class) return value.longValue();
+        if (type == float.class) return value.floatValue();
+        return value.doubleValue();
+    }
+
+    private static int rank(Class<?> type) {
+        if (type == byte.class) return 0;
+        if (type == short.class) return 1;
+        if (type == int.class) return 2;
+        if (type == long.class) return 3;
+        if (type == float.class) return 4;
+        return 5;
+    }
+}
@@ -0,0 +1,179 @@
+package com.coolioasjulio.rpc.server.invokers;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaConversionException;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Executable;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+/**
+ * An invoker that calls the method through a functional interface implemented by <code>LambdaMetafactory</code>.
+ * The generated class calls the method directly, which lets the JIT inline it. Only methods with at most
+ * <code>MAX_ARITY</code> parameters (including the receiver) that don't return void can be adapted.
+ * <p>
+ * The adapter is generated next to this class, so it can only refer to classes that this class can see. Methods of
+ * classes that aren't public, or that were loaded by a class loader this class can't see, such as one that loads
+ * plugins, aren't supported, and are left to a <code>MethodHandleInvoker</code>.
+ */
+public class GeneratedInvoker implements Invoker {
+    public static final int MAX_ARITY = 5;
+
+    public interface Function0 {
+        Object apply();
+    }
+
+    public interface Function1 {
+        Object apply(Object a0);
+    }
+
+    public interface Function2 {
+        Object apply(Object a0, Object a1);
+    }
+
+    public interface Function3 {
+        Object apply(Object a0, Object a1, Object a2);
+    }
+
+    public interface Function4 {
+        Object apply(Object a0, Object a1, Object a2, Object a3);
+    }
+
+    public interface Function5 {
+        Object apply(Object a0, Object a1, Object a2, Object a3, Object a4);
+    }
+
+    private static final Class<?>[] FUNCTION_TYPES = {
+            Function0.class, Function1.class, Function2.class, Function3.class, Function4.class, Function5.class
+    };
+
+    /**
+     * Can the specified method or constructor be adapted by a generated invoker?
+     *
+     * @param member The method or constructor.
+     * @return True if it can be adapted, false otherwise.
+     */
+    public static boolean isSupported(Executable member) {
+        if (member.isVarArgs() || !isVisible(member.getDeclaringClass())) return false;
+        for (Class<?> type : member.getParameterTypes()) {
+            if (!isVisible(type)) return false;
+        }
+        if (member instanceof Method) {
+            Method method = (Method) member;
+            int receiver = Modifier.isStatic(method.getModifiers()) ? 0 : 1;
+            return method.getReturnType() != void.class && isVisible(method.getReturnType())
+                    && method.getParameterCount() + receiver <= MAX_ARITY;
+        }
+        return member.getParameterCount() <= MAX_ARITY;
+    }
+
+    /**
+     * Can the adapter refer to a type? It has to be public, and this class's loader has to find the same class by
+     * its name, or the adapter would fail to link, or link against a different class with the same name.
+     */
+    private static boolean isVisible(Class<?> type) {
+        while (type.isArray()) {
+            type = type.getComponentType();
+        }
+        if (type.isPrimitive()) return true;
+        if (!Modifier.isPublic(type.getModifiers())) return false;
+        try {
+            return Class.forName(type.getName(), false, GeneratedInvoker.class.getClassLoader()) == type;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    private final boolean isStatic;
+    private final int arity;
+    private final Object function;
+    private final Arguments arguments;
+
+    /**
+     * Create an invoker backed by a generated functional interface adapter.
+     *
+     * @param member The method or constructor to invoke. Must be supported according to <code>isSupported</code>.
+     * @throws IllegalAccessException If the method or constructor is not accessible, or can't be adapted.
+     */
+    public GeneratedInvoker(Executable member) throws IllegalAccessException {
+        if (!isSupported(member)) {
+            throw new IllegalArgumentException("Unsupported method: " + member);
+        }
+
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        MethodHandle implementation;
+        MethodType instantiatedType;
+        if (member instanceof Method) {
+            Method method = (Method) member;
+            implementation = lookup.unreflect(method);
+            isStatic = Modifier.isStatic(method.getModifiers());
+        } else {
+            implementation = lookup.unreflectConstructor((Constructor<?>) member);
+            isStatic = true;
+        }
+        // The functional interface takes and returns Objects, so use the boxed types to let the metafactory
+        // insert the casts and (un)boxing conversions.
+        instantiatedType = implementation.type().wrap();
+        arity = instantiatedType.parameterCount();
+
+        Class<?> functionType = FUNCTION_TYPES[arity];
+        MethodType samType = MethodType.genericMethodType(arity);
+        try {
+            CallSite site = LambdaMetafactory.metafactory(lookup, "apply", MethodType.methodType(functionType),
+                    samType, implementation, instantiatedType);
+            function = site.getTarget().invoke();
+        } catch (LambdaConversionException e) {
+            IllegalAccessException ex = new IllegalAccessException("Unable to adapt " + member);
+            ex.initCause(e);
+            throw ex;
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+        arguments = new Arguments(member);
+    }
+
+    @Override
+    public Object invoke(Object target, Object[] args) throws InvocationTargetException {
+        // Bad arguments are reported like reflection reports them, instead of failing the casts in the adapter
+        args = arguments.check(target, args);
+        try {
+            if (isStatic) {
+                switch (arity) {
+                    case 0:
+                        return ((Function0) function).apply();
+                    case 1:
+                        return ((Function1) function).apply(args[0]);
+                    case 2:
+                        return ((Function2) function).apply(args[0], args[1]);
+                    case 3:
+                        return ((Function3) function).apply(args[0], args[1], args[2]);
+                    case 4:
+                        return ((Function4) function).apply(args[0], args[1], args[2], args[3]);
+                    default:
+                        return ((Function5) function).apply(args[0], args[1], args[2], args[3], args[4]);
+                }
+            } else {
+                switch (arity) {
+                    case 1:
+                        return ((Function1) function).apply(target);
+                    case 2:
+                        return ((Function2) function).apply(target, args[0]);
+                    case 3:
+                        return ((Function3) function).apply(target, args[0], args[1]);
+                    case 4:
+                        return ((Function4) function).apply(target, args[0], args[1], args[2]);
+                    default:
+                        return ((Function5) function).apply(target, args[0], args[1], args[2], args[3]);
+                }
+            }
+        } catch (Throwable t) {
+            // The arguments already fit the adapter's casts, so this was thrown by the method itself
+            throw new InvocationTargetException(t);
+        }
+    }
+}
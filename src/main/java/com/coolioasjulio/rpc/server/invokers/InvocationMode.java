@@ -0,0 +1,17 @@
+package com.coolioasjulio.rpc.server.invokers;
+
+public enum InvocationMode {
+    /**
+     * Always use <code>Method.invoke</code> and <code>Constructor.newInstance</code>.
+     */
+    REFLECTIVE,
+    /**
+     * Switch to a cached <code>MethodHandle</code> once a method is hot.
+     */
+    METHOD_HANDLE,
+    /**
+     * Switch to an adapter generated by <code>LambdaMetafactory</code> once a method is hot. Methods that can't be
+     * adapted this way use a <code>MethodHandle</code> instead.
+     */
+    GENERATED
+}
@@ -0,0 +1,18 @@
+package com.coolioasjulio.rpc.server.invokers;
+
+import java.lang.reflect.InvocationTargetException;
+
+public interface Invoker {
+    /**
+     * Invoke the method or constructor.
+     *
+     * @param target The object to invoke the method on. Ignored for static methods and constructors.
+     * @param args   The arguments to the method or constructor.
+     * @return The result of the invocation. Null if the method returns void.
+     * @throws InvocationTargetException If the invoked method or constructor threw an exception.
+     * @throws IllegalAccessException    If the method or constructor is not accessible.
+     * @throws InstantiationException    If the constructor belongs to an abstract class.
+     */
+    Object invoke(Object target, Object[] args)
+            throws InvocationTargetException, IllegalAccessException, InstantiationException;
+}
@@ -0,0 +1,54 @@
+package com.coolioasjulio.rpc.server.invokers;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Executable;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+public class MethodHandleInvoker implements Invoker {
+    private static final MethodType INVOKER_TYPE = MethodType.methodType(Object.class, Object.class, Object[].class);
+
+    private final MethodHandle handle;
+    private final Arguments arguments;
+
+    /**
+     * Create an invoker backed by a method handle.
+     *
+     * @param member The method or constructor to invoke.
+     * @throws IllegalAccessException If the method or constructor is not accessible.
+     */
+    public MethodHandleInvoker(Executable member) throws IllegalAccessException {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        int arity = member.getParameterCount();
+        MethodHandle mh;
+        if (member instanceof Method) {
+            mh = lookup.unreflect((Method) member).asFixedArity();
+            // Spread the trailing arguments from an array, leaving the receiver (if any) in place
+            mh = mh.asSpreader(Object[].class, arity);
+            if (Modifier.isStatic(member.getModifiers())) {
+                mh = MethodHandles.dropArguments(mh, 0, Object.class);
+            }
+        } else {
+            mh = lookup.unreflectConstructor((Constructor<?>) member).asFixedArity();
+            mh = MethodHandles.dropArguments(mh.asSpreader(Object[].class, arity), 0, Object.class);
+        }
+        handle = mh.asType(INVOKER_TYPE);
+        arguments = new Arguments(member);
+    }
+
+    @Override
+    public Object invoke(Object target, Object[] args) throws InvocationTargetException {
+        // Bad arguments are reported like reflection reports them, instead of failing the conversions in the handle
+        Object[] checked = arguments.check(target, args);
+        try {
+            return (Object) handle.invokeExact(target, checked);
+        } catch (Throwable t) {
+            // The arguments already fit the handle's type, so this was thrown by the method itself
+            throw new InvocationTargetException(t);
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.coolioasjulio.rpc.server.invokers;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Executable;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+public class ReflectiveInvoker implements Invoker {
+    private final Method method;
+    private final Constructor<?> constructor;
+
+    public ReflectiveInvoker(Executable member) {
+        if (member instanceof Method) {
+            method = (Method) member;
+            constructor = null;
+        } else {
+            method = null;
+            constructor = (Constructor<?>) member;
+        }
+    }
+
+    @Override
+    public Object invoke(Object target, Object[] args)
+            throws InvocationTargetException, IllegalAccessException, InstantiationException {
+        if (method != null) {
+            return method.invoke(target, args);
+        } else {
+            return constructor.newInstance(args);
+        }
+    }
+}
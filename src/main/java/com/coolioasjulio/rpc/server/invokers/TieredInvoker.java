@@ -0,0 +1,73 @@
+package com.coolioasjulio.rpc.server.invokers;
+
+import java.lang.reflect.Executable;
+import java.lang.reflect.InvocationTargetException;
+
+/**
+ * An invoker that starts out using reflection, and switches to a faster invoker once the method has been called
+ * enough times. Creating a method handle or generated adapter is expensive, so it's only worth it for hot methods.
+ */
+public class TieredInvoker implements Invoker {
+    private final Executable member;
+    private final InvocationMode mode;
+    private final int threshold;
+    private volatile Invoker delegate;
+    private volatile boolean promoted;
+    private int calls; // Racy, but it only needs to be approximate
+
+    /**
+     * Create a tiered invoker.
+     *
+     * @param member    The method or constructor to invoke.
+     * @param mode      The invocation mode to switch to once the method is hot.
+     * @param threshold The number of calls after which to switch to the faster invoker.
+     */
+    public TieredInvoker(Executable member, InvocationMode mode, int threshold) {
+        this.member = member;
+        this.mode = mode;
+        this.threshold = threshold;
+        this.delegate = new ReflectiveInvoker(member);
+        this.promoted = mode == InvocationMode.REFLECTIVE;
+        if (!promoted && threshold <= 0) {
+            promote();
+        }
+    }
+
+    @Override
+    public Object invoke(Object target, Object[] args)
+            throws InvocationTargetException, IllegalAccessException, InstantiationException {
+        if (!promoted && ++calls >= threshold) {
+            promote();
+        }
+        return delegate.invoke(target, args);
+    }
+
+    /**
+     * Get the invoker currently in use.
+     *
+     * @return The invoker that calls are delegated to.
+     */
+    public Invoker getDelegate() {
+        return delegate;
+    }
+
+    private synchronized void promote() {
+        if (promoted) return;
+        promoted = true;
+
+        if (mode == InvocationMode.GENERATED && GeneratedInvoker.isSupported(member)) {
+            try {
+                delegate = new GeneratedInvoker(member);
+                return;
+            } catch (IllegalAccessException | RuntimeException e) {
+                // Fall back to a method handle
+            }
+        }
+
+        try {
+            delegate = new MethodHandleInvoker(member);
+        } catch (IllegalAccessException | RuntimeException e) {
+            // Keep using reflection
+        }
+    }
+}
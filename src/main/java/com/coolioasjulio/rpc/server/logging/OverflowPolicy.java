@@ -0,0 +1,15 @@
+package com.coolioasjulio.rpc.server.logging;
+
+/**
+ * What to do with an event when the logger's buffer is full.
+ */
+public enum OverflowPolicy {
+    /**
+     * Drop the event, and count it as dropped. Request handling is never slowed down by logging.
+     */
+    DROP,
+    /**
+     * Wait until the background writer makes room. No events are lost, but a slow writer slows down requests.
+     */
+    BLOCK
+}
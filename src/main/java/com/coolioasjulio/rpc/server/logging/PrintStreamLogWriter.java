@@ -0,0 +1,67 @@
+package com.coolioasjulio.rpc.server.logging;
+
+import java.io.PrintStream;
+import java.time.Instant;
+
+/**
+ * Writes each event as a line of space separated key=value pairs. Errors are followed by their stack trace.
+ */
+public class PrintStreamLogWriter implements RequestLogWriter {
+    private final PrintStream out;
+    private final PrintStream err;
+
+    /**
+     * Write events to standard out, and errors to standard error.
+     */
+    public PrintStreamLogWriter() {
+        this(System.out, System.err);
+    }
+
+    /**
+     * Create a writer.
+     *
+     * @param out The stream that events are written to.
+     * @param err The stream that errors are written to.
+     */
+    public PrintStreamLogWriter(PrintStream out, PrintStream err) {
+        this.out = out;
+        this.err = err;
+    }
+
+    @Override
+    public void write(RequestEvent event) {
+        StringBuilder sb = new StringBuilder(128)
+                .append(Instant.ofEpochMilli(event.getTimestampMillis()))
+                .append(" session=").append(event.getSession())
+                .append(" id=").append(event.getRequestId())
+                .append(" method=").append(event.getMethod())
+                .append(" outcome=").append(event.getOutcome());
+        if (event.getDurationNanos() >= 0) {
+            sb.append(" duration_us=").append(event.getDurationNanos() / 1000);
+        }
+        if (event.getRequestPayload() != null) {
+            sb.append(" request=").append(quote(event.getRequestPayload()));
+        }
+        if (event.getResponsePayload() != null) {
+            sb.append(" response=").append(quote(event.getResponsePayload()));
+        }
+
+        if (event.getError() != null) {
+            sb.append(" error=").append(quote(event.getError().toString()));
+            err.println(sb);
+            event.getError().printStackTrace(err);
+        } else {
+            out.println(sb);
+        }
+    }
+
+    @Override
+    public void flush() {
+        out.flush();
+        err.flush();
+    }
+
+    private static String quote(String s) {
+        return '"' + s.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n") + '"';
+    }
+}
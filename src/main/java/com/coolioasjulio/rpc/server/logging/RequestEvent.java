@@ -0,0 +1,82 @@
+package com.coolioasjulio.rpc.server.logging;
+
+/**
+ * A logged request, or an error raised while handling one. Events are immutable.
+ */
+public class RequestEvent {
+    public enum Outcome {
+        SUCCESS, EXCEPTION
+    }
+
+    private final long timestampMillis;
+    private final String session;
+    private final long requestId;
+    private final String method;
+    private final long durationNanos;
+    private final Outcome outcome;
+    private final String requestPayload;
+    private final String responsePayload;
+    private final Throwable error;
+
+    /**
+     * Create a request event.
+     *
+     * @param timestampMillis The time the request was handled, in milliseconds since the epoch.
+     * @param session         The name of the session the request came from.
+     * @param requestId       The id of the request.
+     * @param method          The method, constructor, or batch that was requested.
+     * @param durationNanos   The time taken to handle the request, or -1 if unknown.
+     * @param outcome         Whether the response was a value or an exception.
+     * @param requestPayload  The JSON-encoded request, or null if payloads aren't captured.
+     * @param responsePayload The JSON-encoded response, or null if payloads aren't captured.
+     * @param error           The exception raised by the server while handling the request, or null if there isn't one.
+     */
+    public RequestEvent(long timestampMillis, String session, long requestId, String method, long durationNanos,
+                        Outcome outcome, String requestPayload, String responsePayload, Throwable error) {
+        this.timestampMillis = timestampMillis;
+        this.session = session;
+        this.requestId = requestId;
+        this.method = method;
+        this.durationNanos = durationNanos;
+        this.outcome = outcome;
+        this.requestPayload = requestPayload;
+        this.responsePayload = responsePayload;
+        this.error = error;
+    }
+
+    public long getTimestampMillis() {
+        return timestampMillis;
+    }
+
+    public String getSession() {
+        return session;
+    }
+
+    public long getRequestId() {
+        return requestId;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public long getDurationNanos() {
+        return durationNanos;
+    }
+
+    public Outcome getOutcome() {
+        return outcome;
+    }
+
+    public String getRequestPayload() {
+        return requestPayload;
+    }
+
+    public String getResponsePayload() {
+        return responsePayload;
+    }
+
+    public Throwable getError() {
+        return error;
+    }
+}
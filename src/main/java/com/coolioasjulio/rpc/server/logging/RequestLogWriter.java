@@ -0,0 +1,15 @@
+package com.coolioasjulio.rpc.server.logging;
+
+/**
+ * Writes logged events somewhere. Writers are called on the logger's background thread, one event at a time.
+ */
+public interface RequestLogWriter {
+    void write(RequestEvent event);
+
+    /**
+     * Called when the logger has no more events to write for now, so buffered output can be flushed.
+     */
+    default void flush() {
+        // Nothing by default
+    }
+}
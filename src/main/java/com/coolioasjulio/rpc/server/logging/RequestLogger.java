@@ -0,0 +1,291 @@
+package com.coolioasjulio.rpc.server.logging;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Logs requests without blocking the threads that handle them. Events are put in a bounded ring buffer, and a
+ * background thread hands them to a <code>RequestLogWriter</code>. When the buffer is full, events are dropped or
+ * the caller waits, depending on the overflow policy.
+ * <p>
+ * Request logging is off by default, and can be sampled so that only a fraction of requests is logged. Errors raised
+ * by the server while handling a request are always logged, unless error logging is turned off. Request and response
+ * payloads are only captured if asked for, since that costs an extra serialization of each logged request.
+ */
+public class RequestLogger implements AutoCloseable {
+    public static final int DEFAULT_CAPACITY = 8192;
+
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final AtomicReferenceArray<RequestEvent> buffer;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong(); // The next slot to be claimed by a producer
+    private volatile long head = 0; // The next slot to be taken, only advanced by the writer thread
+    private volatile long completed = 0; // The number of events that have been taken and written
+    private final AtomicBoolean started = new AtomicBoolean();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder written = new LongAdder();
+    private volatile Thread writerThread;
+    private volatile boolean running = true;
+
+    private volatile RequestLogWriter writer = new PrintStreamLogWriter();
+    private volatile OverflowPolicy overflowPolicy = OverflowPolicy.DROP;
+    private volatile boolean enabled = false;
+    private volatile boolean errorLoggingEnabled = true;
+    private volatile boolean payloadCaptureEnabled = false;
+    private volatile double sampleRate = 1;
+
+    /**
+     * Create a logger with the default capacity.
+     */
+    public RequestLogger() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Create a logger.
+     *
+     * @param capacity The number of events the buffer can hold. Rounded up to a power of two.
+     */
+    public RequestLogger(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive!");
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) size <<= 1;
+        buffer = new AtomicReferenceArray<>(size);
+        mask = size - 1;
+    }
+
+    /**
+     * Set whether requests are logged.
+     *
+     * @param enabled True to log requests, false otherwise.
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Set whether errors raised by the server while handling requests are logged. On by default.
+     *
+     * @param enabled True to log errors, false otherwise.
+     */
+    public void setErrorLoggingEnabled(boolean enabled) {
+        this.errorLoggingEnabled = enabled;
+    }
+
+    public boolean isErrorLoggingEnabled() {
+        return errorLoggingEnabled;
+    }
+
+    /**
+     * Set whether the JSON-encoded request and response are included in logged events. Off by default.
+     *
+     * @param enabled True to capture payloads, false otherwise.
+     */
+    public void setPayloadCaptureEnabled(boolean enabled) {
+        this.payloadCaptureEnabled = enabled;
+    }
+
+    public boolean isPayloadCaptureEnabled() {
+        return payloadCaptureEnabled;
+    }
+
+    /**
+     * Set the fraction of requests that are logged. Errors aren't sampled.
+     *
+     * @param sampleRate The fraction of requests to log, between 0 and 1.
+     */
+    public void setSampleRate(double sampleRate) {
+        if (sampleRate < 0 || sampleRate > 1) {
+            throw new IllegalArgumentException("sampleRate must be between 0 and 1!");
+        }
+        this.sampleRate = sampleRate;
+    }
+
+    public double getSampleRate() {
+        return sampleRate;
+    }
+
+    public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    /**
+     * Set where events are written.
+     *
+     * @param writer The writer, which is called on the logger's background thread.
+     */
+    public void setWriter(RequestLogWriter writer) {
+        if (writer == null) {
+            throw new IllegalArgumentException("writer cannot be null!");
+        }
+        this.writer = writer;
+    }
+
+    /**
+     * Get the number of events that were dropped because the buffer was full.
+     *
+     * @return The number of dropped events.
+     */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    public long getWrittenCount() {
+        return written.sum();
+    }
+
+    /**
+     * Decide whether to log a request. Call this before building the event, so unsampled requests cost nothing.
+     *
+     * @return True if the request should be logged.
+     */
+    public boolean shouldLog() {
+        if (!enabled) return false;
+        double rate = sampleRate;
+        return rate >= 1 || ThreadLocalRandom.current().nextDouble() < rate;
+    }
+
+    /**
+     * Log a request. Use <code>shouldLog()</code> first to apply sampling.
+     *
+     * @param event The event to log.
+     * @return True if the event was queued, false if it was dropped.
+     */
+    public boolean log(RequestEvent event) {
+        if (!running) return false;
+        startWriter();
+        while (true) {
+            long t = tail.get();
+            if (t - head >= buffer.length()) {
+                if (overflowPolicy == OverflowPolicy.DROP) {
+                    dropped.increment();
+                    return false;
+                }
+                LockSupport.parkNanos(IDLE_PARK_NANOS / 10);
+                if (!running) return false;
+                continue;
+            }
+            if (tail.compareAndSet(t, t + 1)) {
+                buffer.set((int) t & mask, event);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Log an error raised by the server while handling a request.
+     *
+     * @param session   The name of the session the request came from.
+     * @param requestId The id of the request.
+     * @param method    The method, constructor, or batch that was requested.
+     * @param error     The error.
+     */
+    public void logError(String session, long requestId, String method, Throwable error) {
+        if (errorLoggingEnabled) {
+            log(new RequestEvent(System.currentTimeMillis(), session, requestId, method, -1,
+                    RequestEvent.Outcome.EXCEPTION, null, null, error));
+        }
+    }
+
+    /**
+     * Wait until every event queued before this call has been written.
+     *
+     * @param timeout The maximum time to wait.
+     * @param unit    The unit of the timeout.
+     * @return True if the events were written, false if the timeout elapsed first.
+     */
+    public boolean flush(long timeout, TimeUnit unit) {
+        long target = tail.get();
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (completed < target) {
+            if (System.nanoTime() - deadline >= 0 || writerThread == null) return completed >= target;
+            LockSupport.parkNanos(IDLE_PARK_NANOS / 10);
+        }
+        return true;
+    }
+
+    /**
+     * Write the queued events, and stop the background thread. Events logged afterwards are ignored.
+     */
+    @Override
+    public void close() {
+        running = false;
+        Thread thread = writerThread;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void startWriter() {
+        if (!started.get() && started.compareAndSet(false, true)) {
+            Thread thread = new Thread(this::drain, "RequestLogger-writer");
+            thread.setDaemon(true);
+            writerThread = thread;
+            thread.start();
+        }
+    }
+
+    private void drain() {
+        boolean flushed = true;
+        while (running || head < tail.get()) {
+            long h = head;
+            int index = (int) h & mask;
+            RequestEvent event = buffer.get(index);
+            if (event == null) {
+                if (h == tail.get()) {
+                    // Nothing to write, so flush and wait a bit
+                    if (!flushed) {
+                        flushWriter();
+                        flushed = true;
+                    }
+                    LockSupport.parkNanos(IDLE_PARK_NANOS);
+                } else {
+                    // The slot has been claimed, but the event hasn't been stored yet
+                    Thread.yield();
+                }
+                continue;
+            }
+
+            buffer.set(index, null);
+            head = h + 1;
+            try {
+                writer.write(event);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+            written.increment();
+            completed = h + 1;
+            flushed = false;
+        }
+        flushWriter();
+    }
+
+    private void flushWriter() {
+        try {
+            writer.flush();
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        }
+    }
+}
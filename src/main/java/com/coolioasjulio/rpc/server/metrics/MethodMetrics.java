@@ -0,0 +1,89 @@
+package com.coolioasjulio.rpc.server.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The call counts and latencies of one method or constructor.
+ */
+public class MethodMetrics {
+    private static final Phase[] PHASES = Phase.values();
+
+    private final String name;
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LatencyHistogram[] latencies = new LatencyHistogram[PHASES.length];
+
+    MethodMetrics(String name) {
+        this.name = name;
+        for (int i = 0; i < latencies.length; i++) {
+            latencies[i] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * Get the name of the method, such as <code>java.lang.Math.max(double,double)</code>.
+     *
+     * @return The name of the method.
+     */
+    public String getName() {
+        return name;
+    }
+
+    public long getCallCount() {
+        return calls.sum();
+    }
+
+    /**
+     * Get the number of calls that answered with an exception.
+     *
+     * @return The number of failed calls.
+     */
+    public long getErrorCount() {
+        return errors.sum();
+    }
+
+    /**
+     * Get the latencies of a phase of the calls to this method.
+     *
+     * @param phase The phase.
+     * @return The histogram of the latencies of the phase.
+     */
+    public LatencyHistogram getLatency(Phase phase) {
+        return latencies[phase.ordinal()];
+    }
+
+    void record(boolean isException, long parseNanos, long dispatchNanos, long invokeNanos, long serializeNanos) {
+        calls.increment();
+        if (isException) {
+            errors.increment();
+        }
+        latencies[Phase.DISPATCH.ordinal()].record(dispatchNanos);
+        latencies[Phase.INVOKE.ordinal()].record(invokeNanos);
+        if (parseNanos >= 0) {
+            // Requests in a batch are parsed and serialized with the batch, so those phases aren't their own
+            latencies[Phase.PARSE.ordinal()].record(parseNanos);
+            latencies[Phase.SERIALIZE.ordinal()].record(serializeNanos);
+        }
+    }
+
+    void reset() {
+        calls.reset();
+        errors.reset();
+        for (LatencyHistogram latency : latencies) {
+            latency.reset();
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(name)
+                .append(": calls=").append(getCallCount())
+                .append(", errors=").append(getErrorCount());
+        for (Phase phase : PHASES) {
+            LatencyHistogram latency = getLatency(phase);
+            sb.append(String.format(", %s mean=%.1fus p99=%.1fus", phase.name().toLowerCase(),
+                    latency.getMeanNanos() / 1000, latency.getValueAtPercentile(99) / 1000.0));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,32 @@
+package com.coolioasjulio.rpc.server.metrics;
+
+/**
+ * Receives the measurements of every request. Listeners are called on the thread that handled the request, so they
+ * should return quickly.
+ */
+public interface MetricsListener {
+    /**
+     * Called after the response to a request has been sent. For requests in a batch, the batch is parsed and
+     * serialized as a whole, so those phases are reported as -1.
+     *
+     * @param session        The session the request came from.
+     * @param method         The method or constructor that was called. Requests whose target couldn't be resolved
+     *                       are reported with <code>RPCMetrics.getUnresolvedMetrics()</code>.
+     * @param isException    True if the response was an exception.
+     * @param parseNanos     The time taken to decode the request.
+     * @param dispatchNanos  The time taken to resolve the method and convert the arguments.
+     * @param invokeNanos    The time taken by the method itself.
+     * @param serializeNanos The time taken to encode and send the response.
+     */
+    void onCall(SessionMetrics session, MethodMetrics method, boolean isException,
+                long parseNanos, long dispatchNanos, long invokeNanos, long serializeNanos);
+
+    /**
+     * Called when a session is closed.
+     *
+     * @param session The session that was closed.
+     */
+    default void onSessionClosed(SessionMetrics session) {
+        // Nothing by default
+    }
+}
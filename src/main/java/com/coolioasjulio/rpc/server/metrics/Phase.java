@@ -0,0 +1,23 @@
+package com.coolioasjulio.rpc.server.metrics;
+
+/**
+ * The phases of handling a request, which are timed separately.
+ */
+public enum Phase {
+    /**
+     * Decoding the request, once it has been received.
+     */
+    PARSE,
+    /**
+     * Resolving the method or constructor, and converting the arguments.
+     */
+    DISPATCH,
+    /**
+     * Running the method or constructor.
+     */
+    INVOKE,
+    /**
+     * Encoding and sending the response.
+     */
+    SERIALIZE
+}
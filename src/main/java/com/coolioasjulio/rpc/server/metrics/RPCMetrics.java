@@ -0,0 +1,313 @@
+package com.coolioasjulio.rpc.server.metrics;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The metrics of an RPC server: call counts, errors, and latencies per method, request rates per session, and bytes
+ * in and out. The latencies of parsing, dispatching, invoking, and serializing are recorded separately.
+ * <p>
+ * Metrics can be read directly, through a <code>MetricsListener</code>, or over JMX once <code>registerMBean()</code>
+ * has been called. Recording a request doesn't allocate once its method has been seen, so metrics can be left on.
+ */
+public class RPCMetrics implements RPCMetricsMBean {
+    public static final String OBJECT_NAME = "com.coolioasjulio.rpc:type=RPCMetrics";
+
+    private static final Phase[] PHASES = Phase.values();
+
+    private final Map<String, MethodMetrics> methods = new ConcurrentHashMap<>();
+    private final MethodMetrics unresolved = new MethodMetrics("<unresolved>");
+    private final Set<SessionMetrics> sessions = ConcurrentHashMap.newKeySet();
+    private final LatencyHistogram[] latencies = new LatencyHistogram[PHASES.length];
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+    private volatile boolean enabled = true;
+    private volatile MetricsListener[] listeners = new MetricsListener[0]; // An array, so iterating doesn't allocate
+
+    public RPCMetrics() {
+        for (int i = 0; i < latencies.length; i++) {
+            latencies[i] = new LatencyHistogram();
+        }
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Set whether requests are recorded. Sessions and traffic are always tracked.
+     *
+     * @param enabled True to record requests, false otherwise.
+     */
+    @Override
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public synchronized void addListener(MetricsListener listener) {
+        MetricsListener[] updated = Arrays.copyOf(listeners, listeners.length + 1);
+        updated[listeners.length] = listener;
+        listeners = updated;
+    }
+
+    public synchronized void removeListener(MetricsListener listener) {
+        List<MetricsListener> updated = new ArrayList<>(Arrays.asList(listeners));
+        if (updated.remove(listener)) {
+            listeners = updated.toArray(new MetricsListener[0]);
+        }
+    }
+
+    /**
+     * Get the metrics of a method, creating them if the method hasn't been seen before.
+     *
+     * @param name The name of the method.
+     * @return The metrics of the method.
+     */
+    public MethodMetrics getMethodMetrics(String name) {
+        return methods.computeIfAbsent(name, MethodMetrics::new);
+    }
+
+    /**
+     * Get the metrics of requests whose target couldn't be resolved, such as calls to methods that don't exist.
+     *
+     * @return The metrics of unresolved requests.
+     */
+    public MethodMetrics getUnresolvedMetrics() {
+        return unresolved;
+    }
+
+    public List<MethodMetrics> getMethods() {
+        return new ArrayList<>(methods.values());
+    }
+
+    public List<SessionMetrics> getSessions() {
+        return new ArrayList<>(sessions);
+    }
+
+    /**
+     * Get the latencies of a phase of all requests. Batches are parsed and serialized as a whole, and counted once.
+     *
+     * @param phase The phase.
+     * @return The histogram of the latencies of the phase.
+     */
+    public LatencyHistogram getLatency(Phase phase) {
+        return latencies[phase.ordinal()];
+    }
+
+    /**
+     * Start tracking a session.
+     *
+     * @param name The name of the session, such as the address of the client.
+     * @return The metrics of the session.
+     */
+    public SessionMetrics openSession(String name) {
+        SessionMetrics session = new SessionMetrics(this, name);
+        sessions.add(session);
+        return session;
+    }
+
+    /**
+     * Stop tracking a session.
+     *
+     * @param session The metrics of the session.
+     */
+    public void closeSession(SessionMetrics session) {
+        if (sessions.remove(session)) {
+            session.close();
+            for (MetricsListener listener : listeners) {
+                listener.onSessionClosed(session);
+            }
+        }
+    }
+
+    /**
+     * Record a request, using the dispatch recorded on the session. Called by the server once the response has been
+     * sent, or once the request has been handled if it's part of a batch.
+     *
+     * @param session        The session the request came from.
+     * @param isException    True if the response was an exception.
+     * @param parseNanos     The time taken to decode the request, or -1 if it's part of a batch.
+     * @param serializeNanos The time taken to encode and send the response, or -1 if it's part of a batch.
+     */
+    public void recordCall(SessionMetrics session, boolean isException, long parseNanos, long serializeNanos) {
+        if (enabled) {
+            MethodMetrics method = session.getMethod() != null ? session.getMethod() : unresolved;
+            long dispatchNanos = session.getDispatchNanos();
+            long invokeNanos = session.getInvokeNanos();
+            requests.increment();
+            if (isException) {
+                errors.increment();
+            }
+            method.record(isException, parseNanos, dispatchNanos, invokeNanos, serializeNanos);
+            latencies[Phase.DISPATCH.ordinal()].record(dispatchNanos);
+            latencies[Phase.INVOKE.ordinal()].record(invokeNanos);
+            if (parseNanos >= 0) {
+                latencies[Phase.PARSE.ordinal()].record(parseNanos);
+                latencies[Phase.SERIALIZE.ordinal()].record(serializeNanos);
+            }
+            for (MetricsListener listener : listeners) {
+                listener.onCall(session, method, isException, parseNanos, dispatchNanos, invokeNanos, serializeNanos);
+            }
+        }
+        session.completeRequest();
+    }
+
+    /**
+     * Record the parsing and serializing of a batch, whose requests have been recorded separately.
+     *
+     * @param parseNanos     The time taken to decode the batch.
+     * @param serializeNanos The time taken to encode and send the responses.
+     */
+    public void recordBatch(long parseNanos, long serializeNanos) {
+        if (enabled) {
+            latencies[Phase.PARSE.ordinal()].record(parseNanos);
+            latencies[Phase.SERIALIZE.ordinal()].record(serializeNanos);
+        }
+    }
+
+    /**
+     * Record a request that was rejected because the server was overloaded. It isn't counted as a request.
+     */
+    public void recordRejection() {
+        rejections.increment();
+    }
+
+    void recordBytesIn(long bytes) {
+        bytesIn.add(bytes);
+    }
+
+    void recordBytesOut(long bytes) {
+        bytesOut.add(bytes);
+    }
+
+    void recordEviction() {
+        evictions.increment();
+    }
+
+    @Override
+    public long getRequestCount() {
+        return requests.sum();
+    }
+
+    @Override
+    public long getErrorCount() {
+        return errors.sum();
+    }
+
+    @Override
+    public long getBytesIn() {
+        return bytesIn.sum();
+    }
+
+    @Override
+    public long getBytesOut() {
+        return bytesOut.sum();
+    }
+
+    @Override
+    public int getSessionCount() {
+        return sessions.size();
+    }
+
+    @Override
+    public long getResidentObjects() {
+        long objects = 0;
+        for (SessionMetrics session : sessions) {
+            objects += session.getResidentObjects();
+        }
+        return objects;
+    }
+
+    @Override
+    public long getResidentBytes() {
+        long bytes = 0;
+        for (SessionMetrics session : sessions) {
+            bytes += session.getResidentBytes();
+        }
+        return bytes;
+    }
+
+    @Override
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    @Override
+    public long getRejectedCount() {
+        return rejections.sum();
+    }
+
+    @Override
+    public String[] getMethodNames() {
+        return methods.keySet().toArray(new String[0]);
+    }
+
+    @Override
+    public double getLatencyMicros(String phase, double percentile) {
+        return getLatency(Phase.valueOf(phase.toUpperCase())).getValueAtPercentile(percentile) / 1000.0;
+    }
+
+    @Override
+    public String describeMethod(String method) {
+        MethodMetrics metrics = method.equals(unresolved.getName()) ? unresolved : methods.get(method);
+        return metrics == null ? null : metrics.toString();
+    }
+
+    @Override
+    public String[] describeSessions() {
+        return sessions.stream().map(SessionMetrics::toString).toArray(String[]::new);
+    }
+
+    /**
+     * Clear the recorded requests, latencies, and traffic. Open sessions are still tracked.
+     */
+    @Override
+    public void reset() {
+        for (MethodMetrics method : methods.values()) {
+            method.reset();
+        }
+        unresolved.reset();
+        for (LatencyHistogram latency : latencies) {
+            latency.reset();
+        }
+        requests.reset();
+        errors.reset();
+        bytesIn.reset();
+        bytesOut.reset();
+        evictions.reset();
+        rejections.reset();
+    }
+
+    /**
+     * Register these metrics with the platform MBean server, under <code>OBJECT_NAME</code>.
+     *
+     * @throws JMException If the metrics can't be registered, such as if another server's metrics already are.
+     */
+    public void registerMBean() throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        server.registerMBean(this, new ObjectName(OBJECT_NAME));
+    }
+
+    /**
+     * Unregister these metrics from the platform MBean server.
+     *
+     * @throws JMException If the metrics aren't registered.
+     */
+    public void unregisterMBean() throws JMException {
+        ManagementFactory.getPlatformMBeanServer().unregisterMBean(new ObjectName(OBJECT_NAME));
+    }
+}
@@ -0,0 +1,71 @@
+package com.coolioasjulio.rpc.server.metrics;
+
+/**
+ * The JMX management interface of <code>RPCMetrics</code>. Latencies are in microseconds.
+ */
+public interface RPCMetricsMBean {
+    boolean isEnabled();
+
+    void setEnabled(boolean enabled);
+
+    long getRequestCount();
+
+    long getErrorCount();
+
+    long getBytesIn();
+
+    long getBytesOut();
+
+    int getSessionCount();
+
+    /**
+     * Get the number of remote objects held by the open sessions.
+     *
+     * @return The number of objects.
+     */
+    long getResidentObjects();
+
+    /**
+     * Get the estimated memory held by the remote objects of the open sessions.
+     *
+     * @return The estimated size in bytes.
+     */
+    long getResidentBytes();
+
+    long getEvictionCount();
+
+    /**
+     * Get the number of requests that were rejected because the server was overloaded.
+     *
+     * @return The number of rejected requests.
+     */
+    long getRejectedCount();
+
+    String[] getMethodNames();
+
+    /**
+     * Get the latency of a phase of all requests at a percentile.
+     *
+     * @param phase      The name of the phase: PARSE, DISPATCH, INVOKE, or SERIALIZE.
+     * @param percentile The percentile, between 0 and 100.
+     * @return The latency in microseconds.
+     */
+    double getLatencyMicros(String phase, double percentile);
+
+    /**
+     * Describe the call counts and latencies of a method.
+     *
+     * @param method The name of the method, as returned by <code>getMethodNames()</code>.
+     * @return A summary of the method's metrics, or null if the method hasn't been called.
+     */
+    String describeMethod(String method);
+
+    /**
+     * Describe the request counts, rates, traffic, and remote objects of the open sessions.
+     *
+     * @return A summary of each open session.
+     */
+    String[] describeSessions();
+
+    void reset();
+}
@@ -0,0 +1,183 @@
+package com.coolioasjulio.rpc.server.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The request count and traffic of one RPC session.
+ */
+public class SessionMetrics {
+    private final RPCMetrics metrics;
+    private final String name;
+    private final long openedNanos = System.nanoTime();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private volatile int residentObjects = 0;
+    private volatile long residentBytes = 0;
+    private volatile long closedNanos = 0;
+
+    // The dispatch of the request being handled by each thread, since a session's requests may run concurrently
+    private final ThreadLocal<Dispatch> dispatch = ThreadLocal.withInitial(Dispatch::new);
+
+    private static class Dispatch {
+        private MethodMetrics method;
+        private long dispatchNanos;
+        private long invokeNanos;
+    }
+
+    SessionMetrics(RPCMetrics metrics, String name) {
+        this.metrics = metrics;
+        this.name = name;
+    }
+
+    /**
+     * Get the name of the session, such as the address of the client.
+     *
+     * @return The name of the session.
+     */
+    public String getName() {
+        return name;
+    }
+
+    public long getRequestCount() {
+        return requests.sum();
+    }
+
+    public long getBytesIn() {
+        return bytesIn.sum();
+    }
+
+    public long getBytesOut() {
+        return bytesOut.sum();
+    }
+
+    /**
+     * Get the number of remote objects held by the session.
+     *
+     * @return The number of objects.
+     */
+    public int getResidentObjects() {
+        return residentObjects;
+    }
+
+    /**
+     * Get the estimated memory held by the remote objects of the session.
+     *
+     * @return The estimated size in bytes.
+     */
+    public long getResidentBytes() {
+        return residentBytes;
+    }
+
+    /**
+     * Get the number of remote objects that were evicted from the session because they were idle or the session was
+     * over its limits.
+     *
+     * @return The number of evicted objects.
+     */
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    public boolean isClosed() {
+        return closedNanos != 0;
+    }
+
+    /**
+     * Get the average number of requests per second, from when the session was opened until now, or until it was
+     * closed.
+     *
+     * @return The request rate in requests per second.
+     */
+    public double getRequestRate() {
+        long end = isClosed() ? closedNanos : System.nanoTime();
+        double seconds = Math.max(end - openedNanos, 1) / 1e9;
+        return requests.sum() / seconds;
+    }
+
+    /**
+     * Record bytes received from the client.
+     *
+     * @param bytes The number of bytes.
+     */
+    public void recordBytesIn(long bytes) {
+        bytesIn.add(bytes);
+        metrics.recordBytesIn(bytes);
+    }
+
+    /**
+     * Record bytes sent to the client.
+     *
+     * @param bytes The number of bytes.
+     */
+    public void recordBytesOut(long bytes) {
+        bytesOut.add(bytes);
+        metrics.recordBytesOut(bytes);
+    }
+
+    /**
+     * Record the remote objects held by the session.
+     *
+     * @param objects The number of objects.
+     * @param bytes   The estimated size of the objects in bytes.
+     */
+    public void recordResidentObjects(int objects, long bytes) {
+        residentObjects = objects;
+        residentBytes = bytes;
+    }
+
+    /**
+     * Record a remote object being evicted from the session.
+     */
+    public void recordEviction() {
+        evictions.increment();
+        metrics.recordEviction();
+    }
+
+    /**
+     * Record the dispatch of the request being handled. Called by the server before the request is recorded with
+     * <code>RPCMetrics.recordCall</code>.
+     *
+     * @param method        The method or constructor that was called, or null if it couldn't be resolved.
+     * @param dispatchNanos The time taken to resolve the method and convert the arguments.
+     * @param invokeNanos   The time taken by the method itself.
+     */
+    public void recordDispatch(MethodMetrics method, long dispatchNanos, long invokeNanos) {
+        Dispatch d = dispatch.get();
+        d.method = method;
+        d.dispatchNanos = dispatchNanos;
+        d.invokeNanos = invokeNanos;
+    }
+
+    void completeRequest() {
+        requests.increment();
+        Dispatch d = dispatch.get();
+        d.method = null;
+        d.dispatchNanos = 0;
+        d.invokeNanos = 0;
+    }
+
+    MethodMetrics getMethod() {
+        return dispatch.get().method;
+    }
+
+    long getDispatchNanos() {
+        return dispatch.get().dispatchNanos;
+    }
+
+    long getInvokeNanos() {
+        return dispatch.get().invokeNanos;
+    }
+
+    void close() {
+        closedNanos = System.nanoTime();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: requests=%d, rate=%.1f/s, in=%dB, out=%dB, objects=%d (%dB), evictions=%d%s",
+                name, getRequestCount(), getRequestRate(), getBytesIn(), getBytesOut(), getResidentObjects(),
+                getResidentBytes(), getEvictionCount(), isClosed() ? ", closed" : "");
+    }
+}
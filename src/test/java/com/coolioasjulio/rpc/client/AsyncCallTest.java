@@ -0,0 +1,119 @@
+package com.coolioasjulio.rpc.client;
+
+import com.coolioasjulio.rpc.RPCRequest;
+import com.coolioasjulio.rpc.RPCResponse;
+import com.google.gson.Gson;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class AsyncCallTest extends LoopbackSessionTest {
+    public static class Source {
+        public static int fail() {
+            throw new IllegalStateException("Failed on purpose");
+        }
+    }
+
+    private final Gson gson = new Gson();
+    private ExecutorService completions;
+
+    @After
+    public void tearDown() {
+        if (completions != null) {
+            completions.shutdownNow();
+        }
+    }
+
+    private static Throwable causeOf(CompletableFuture<?> future) throws Exception {
+        try {
+            future.get(5, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            return e.getCause();
+        }
+        fail("The call should have failed");
+        return null;
+    }
+
+    @Test
+    public void callsFanOut() throws Exception {
+        connect();
+        List<CompletableFuture<Integer>> squares = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            squares.add(client.executeStaticMethodAsync(Arithmetic.class.getName(), "square", INT, new Object[]{i},
+                    Integer.class, CallOptions.DEFAULT));
+        }
+        CompletableFuture.allOf(squares.toArray(new CompletableFuture[0])).get(5, TimeUnit.SECONDS);
+        for (int i = 0; i < squares.size(); i++) {
+            assertEquals(i * i, (int) squares.get(i).join());
+        }
+    }
+
+    @Test
+    public void completionsRunOnTheExecutor() throws Exception {
+        BufferedReader in = connectToSelf();
+        completions = Executors.newSingleThreadExecutor(r -> new Thread(r, "completions"));
+        CompletableFuture<String> thread = client.executeStaticMethodAsync(Arithmetic.class.getName(), "square", INT,
+                new Object[]{3}, Integer.class, CallOptions.DEFAULT.withExecutor(completions))
+                .thenApply(square -> square + " on " + Thread.currentThread().getName());
+        // Answer only once the dependent stage is attached, so it doesn't just run on this thread
+        RPCRequest request = gson.fromJson(in.readLine(), RPCRequest.class);
+        PrintStream out = new PrintStream(serverSide.getOutputStream());
+        out.println(gson.toJson(new RPCResponse<>(request.getId(), 9)));
+        out.flush();
+        assertEquals("9 on completions", thread.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void remoteExceptionsFailTheFuture() throws Exception {
+        connect();
+        CompletableFuture<Integer> failed = client.executeStaticMethodAsync(Source.class.getName(), "fail",
+                new String[0], new Object[0], Integer.class, CallOptions.DEFAULT);
+        assertEquals(RuntimeException.class, causeOf(failed).getClass());
+        // The session is still usable afterwards
+        assertEquals(4, (int) client.executeStaticMethod(Arithmetic.class.getName(), "square", INT, new Object[]{2},
+                Integer.class));
+    }
+
+    @Test
+    public void timeoutFailsTheCallAndCancelsIt() throws Exception {
+        BufferedReader in = connectToSelf();
+        CompletableFuture<Integer> square = client.executeStaticMethodAsync(Arithmetic.class.getName(), "square", INT,
+                new Object[]{2}, Integer.class, CallOptions.DEFAULT.withTimeout(50, TimeUnit.MILLISECONDS));
+        RPCRequest request = gson.fromJson(in.readLine(), RPCRequest.class);
+        assertEquals(50, request.getTimeoutMillis());
+
+        assertTrue(causeOf(square) instanceof TimeoutException);
+        RPCRequest cancel = gson.fromJson(in.readLine(), RPCRequest.class);
+        assertTrue(cancel.isCancel());
+        assertEquals(request.getId(), cancel.getId());
+        assertEquals(0, client.getPendingCallCount());
+    }
+
+    @Test
+    public void cancellingTheFutureCancelsTheCall() throws Exception {
+        BufferedReader in = connectToSelf();
+        CompletableFuture<Integer> square = client.executeStaticMethodAsync(Arithmetic.class.getName(), "square", INT,
+                new Object[]{2}, Integer.class, CallOptions.DEFAULT);
+        RPCRequest request = gson.fromJson(in.readLine(), RPCRequest.class);
+
+        assertTrue(square.cancel(false));
+        RPCRequest cancel = gson.fromJson(in.readLine(), RPCRequest.class);
+        assertTrue(cancel.isCancel());
+        assertEquals(request.getId(), cancel.getId());
+        assertEquals(0, client.getPendingCallCount());
+    }
+}
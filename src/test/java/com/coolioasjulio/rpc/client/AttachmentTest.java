@@ -0,0 +1,92 @@
+package com.coolioasjulio.rpc.client;
+
+import com.coolioasjulio.rpc.RPCResponse;
+import com.coolioasjulio.rpc.codec.WireFormat;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class AttachmentTest extends LoopbackSessionTest {
+    public static class Source {
+        public static double[] scale(double[] samples, double factor) {
+            double[] scaled = new double[samples.length];
+            for (int i = 0; i < samples.length; i++) {
+                scaled[i] = samples[i] * factor;
+            }
+            return scaled;
+        }
+
+        public static int sum(byte[] bytes) {
+            int sum = 0;
+            for (byte b : bytes) {
+                sum += b;
+            }
+            return sum;
+        }
+
+        public static int remaining(ByteBuffer buffer) {
+            return buffer.remaining();
+        }
+
+        public static ByteBuffer wrap(int length) {
+            return ByteBuffer.wrap(new byte[length]);
+        }
+
+        public static long sumOf(Object numbers) {
+            // Declared as an Object, the array may arrive as a list of numbers
+            long sum = 0;
+            if (numbers instanceof int[]) {
+                for (int element : (int[]) numbers) {
+                    sum += element;
+                }
+            } else {
+                for (Object element : (List<?>) numbers) {
+                    sum += ((Number) element).longValue();
+                }
+            }
+            return sum;
+        }
+    }
+
+    private void roundTrip(WireFormat format) throws Exception {
+        connect(format);
+        client.setAttachmentThreshold(0);
+
+        double[] samples = {1.5, -2, 4};
+        assertArrayEquals(new double[]{3, -4, 8}, client.executeStaticMethod(Source.class.getName(), "scale",
+                new String[]{"[D", "java.lang.Double"}, new Object[]{samples, 2.0}, double[].class), 0);
+        assertEquals(6, (int) client.executeStaticMethod(Source.class.getName(), "sum", new String[]{"[B"},
+                new Object[]{new byte[]{1, 2, 3}}, Integer.class));
+        // Only the rest of a buffer is sent
+        assertEquals(3, (int) client.executeStaticMethod(Source.class.getName(), "remaining",
+                new String[]{"java.nio.ByteBuffer"}, new Object[]{ByteBuffer.wrap(new byte[8], 2, 3)}, Integer.class));
+        ByteBuffer wrapped = client.executeStaticMethod(Source.class.getName(), "wrap", INT, new Object[]{5},
+                ByteBuffer.class);
+        assertEquals(5, wrapped.remaining());
+        // Arguments declared as another class are sent the usual way
+        assertEquals(6, (long) client.executeStaticMethod(Source.class.getName(), "sumOf",
+                new String[]{"java.lang.Object"}, new Object[]{new int[]{1, 2, 3}}, Long.class));
+
+        // The indices of a batch's attachments count across all of its requests
+        List<RPCResponse<Object>> responses = client.batch()
+                .executeStaticMethod(Source.class.getName(), "sum", new String[]{"[B"}, new Object[]{new byte[]{1}})
+                .executeStaticMethod(Source.class.getName(), "sum", new String[]{"[B"}, new Object[]{new byte[]{2, 3}})
+                .send();
+        assertEquals(1, ((Number) responses.get(0).getValue()).intValue());
+        assertEquals(5, ((Number) responses.get(1).getValue()).intValue());
+    }
+
+    @Test
+    public void jsonRoundTrip() throws Exception {
+        roundTrip(WireFormat.JSON);
+    }
+
+    @Test
+    public void binaryRoundTrip() throws Exception {
+        roundTrip(WireFormat.BINARY);
+    }
+}
@@ -0,0 +1,102 @@
+package com.coolioasjulio.rpc.client;
+
+import com.coolioasjulio.rpc.RPCResponse;
+import com.coolioasjulio.rpc.codec.WireFormat;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BatchTest extends LoopbackSessionTest {
+    private static final String[] STRING = {"java.lang.String"};
+
+    public static class Source {
+        public static int fail() {
+            throw new IllegalStateException("Failed on purpose");
+        }
+    }
+
+    private static int intValue(RPCResponse<Object> response) {
+        assertFalse(String.valueOf(response.getValue()), response.isException());
+        return ((Number) response.getValue()).intValue();
+    }
+
+    private void responsesAreInOrder(WireFormat format) throws Exception {
+        connect(format);
+        List<RPCResponse<Object>> responses = client.batch()
+                .instantiateObject(StringBuilder.class.getName(), "builder")
+                .executeMethod("builder", "append", STRING, new Object[]{"ab"})
+                .executeMethod("builder", "append", STRING, new Object[]{"c"})
+                .executeMethod("builder", "length")
+                .executeStaticMethod(Arithmetic.class.getName(), "square", INT, new Object[]{7})
+                .send();
+        assertEquals(5, responses.size());
+        assertEquals(3, intValue(responses.get(3)));
+        assertEquals(49, intValue(responses.get(4)));
+        // The objects the batch made are still there afterwards
+        assertEquals("abc", client.executeMethod("builder", "toString", new String[0], new Object[0], String.class));
+    }
+
+    @Test
+    public void jsonResponsesAreInOrder() throws Exception {
+        responsesAreInOrder(WireFormat.JSON);
+    }
+
+    @Test
+    public void binaryResponsesAreInOrder() throws Exception {
+        responsesAreInOrder(WireFormat.BINARY);
+    }
+
+    @Test
+    public void continuesOnErrorByDefault() throws Exception {
+        connect();
+        List<RPCResponse<Object>> responses = client.batch()
+                .executeStaticMethod(Arithmetic.class.getName(), "square", INT, new Object[]{2})
+                .executeStaticMethod(Source.class.getName(), "fail")
+                .executeStaticMethod(Arithmetic.class.getName(), "square", INT, new Object[]{3})
+                .send();
+        assertEquals(4, intValue(responses.get(0)));
+        assertTrue(responses.get(1).isException());
+        assertEquals(9, intValue(responses.get(2)));
+    }
+
+    @Test
+    public void stopsOnError() throws Exception {
+        connect();
+        List<RPCResponse<Object>> responses = client.batch()
+                .stopOnError(true)
+                .executeStaticMethod(Arithmetic.class.getName(), "square", INT, new Object[]{2})
+                .executeStaticMethod(Source.class.getName(), "fail")
+                .executeStaticMethod(Arithmetic.class.getName(), "square", INT, new Object[]{3})
+                .send();
+        assertEquals(3, responses.size());
+        assertEquals(4, intValue(responses.get(0)));
+        assertTrue(responses.get(1).isException());
+        assertTrue(responses.get(2).isException());
+        assertTrue(String.valueOf(responses.get(2).getValue()).contains("Skipped"));
+    }
+
+    @Test
+    public void sentAsynchronously() throws Exception {
+        connect();
+        BatchBuilder batch = client.batch();
+        for (int i = 0; i < 30; i++) {
+            batch.executeStaticMethod(Arithmetic.class.getName(), "square", INT, new Object[]{i});
+        }
+        assertEquals(30, batch.size());
+        List<RPCResponse<Object>> responses = batch.sendAsync().get(5, TimeUnit.SECONDS);
+        for (int i = 0; i < responses.size(); i++) {
+            assertEquals(i * i, intValue(responses.get(i)));
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void storingWithoutACallFails() throws Exception {
+        connect();
+        client.batch().storeResultAs("nothing");
+    }
+}
@@ -0,0 +1,90 @@
+package com.coolioasjulio.rpc.client;
+
+import com.coolioasjulio.rpc.codec.WireFormat;
+import com.coolioasjulio.rpc.server.RPCServer;
+import org.junit.After;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Base class of the client tests that connect a client to a session of the server over a loopback socket, or to a
+ * socket the test answers on itself. The client and session are closed after each test, and the server's request
+ * executor is reset.
+ */
+public abstract class LoopbackSessionTest {
+    protected static final String[] INT = {"java.lang.Integer"};
+
+    public static class Arithmetic {
+        public static int square(int x) {
+            return x * x;
+        }
+    }
+
+    protected final RPCServer server = RPCServer.getInstance();
+    protected RPCClient client;
+    protected Socket serverSide; // Only when the test stands in for the server
+    private ExecutorService requestExecutor;
+
+    @After
+    public void closeSession() throws Exception {
+        if (client != null) {
+            client.close();
+        }
+        server.close();
+        server.setRequestExecutor(null);
+        if (requestExecutor != null) {
+            requestExecutor.shutdownNow();
+        }
+        if (serverSide != null) {
+            serverSide.close();
+        }
+    }
+
+    /**
+     * Run the requests of the sessions created after this concurrently, on a pool of threads.
+     *
+     * @param threads The number of threads in the pool.
+     */
+    protected void runRequestsConcurrently(int threads) {
+        requestExecutor = Executors.newFixedThreadPool(threads);
+        server.setRequestExecutor(requestExecutor);
+    }
+
+    protected void connect() throws IOException {
+        connect(WireFormat.JSON);
+    }
+
+    /**
+     * Connect the client to a new session of the server.
+     *
+     * @param format The wire format the client uses.
+     */
+    protected void connect(WireFormat format) throws IOException {
+        try (ServerSocket serverSocket = new ServerSocket(0)) {
+            Socket clientSocket = new Socket("127.0.0.1", serverSocket.getLocalPort());
+            Socket session = serverSocket.accept();
+            server.createRPCSession(session.getInputStream(), session.getOutputStream(), true);
+            client = new RPCClient(clientSocket.getInputStream(), clientSocket.getOutputStream(), format);
+        }
+    }
+
+    /**
+     * Connect the client to a socket that the test reads and answers on itself, instead of a server.
+     *
+     * @return Reads the requests the client sends. Answers are written to <code>serverSide</code>.
+     */
+    protected BufferedReader connectToSelf() throws IOException {
+        try (ServerSocket serverSocket = new ServerSocket(0)) {
+            Socket clientSocket = new Socket("127.0.0.1", serverSocket.getLocalPort());
+            serverSide = serverSocket.accept();
+            client = new RPCClient(clientSocket.getInputStream(), clientSocket.getOutputStream());
+        }
+        return new BufferedReader(new InputStreamReader(serverSide.getInputStream()));
+    }
+}
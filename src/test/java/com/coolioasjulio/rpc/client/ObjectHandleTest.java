@@ -0,0 +1,72 @@
+package com.coolioasjulio.rpc.client;
+
+import com.coolioasjulio.rpc.RPCException;
+import com.coolioasjulio.rpc.RPCRequest;
+import com.coolioasjulio.rpc.RPCResponse;
+import com.google.gson.Gson;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.PrintStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ObjectHandleTest extends LoopbackSessionTest {
+    public static class Sleeper {
+        public static volatile CountDownLatch interrupted;
+
+        public int sleep(int millis) {
+            try {
+                Thread.sleep(millis);
+                return millis;
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+                return -1;
+            }
+        }
+    }
+
+    @Test
+    public void asyncCallsSendTheirTimeout() throws Exception {
+        connect();
+        Sleeper.interrupted = new CountDownLatch(1);
+        int handle = client.instantiateObjectHandle(Sleeper.class.getName());
+        CompletableFuture<Integer> call = client.executeMethodAsync(handle, "sleep", INT, new Object[]{10000},
+                Integer.class, CallOptions.DEFAULT.withTimeout(100, TimeUnit.MILLISECONDS));
+        try {
+            call.get(5, TimeUnit.SECONDS);
+            fail("The call should have timed out");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+        }
+        // The server knew about the deadline too, so it stopped the method instead of letting it run out
+        assertTrue(Sleeper.interrupted.await(5, TimeUnit.SECONDS));
+        assertEquals(7, (int) client.executeMethod(handle, "sleep", INT, new Object[]{7}, Integer.class));
+    }
+
+    @Test
+    public void missingHandleFails() throws Exception {
+        // Stand in for a server that answers the instantiation without a handle
+        BufferedReader in = connectToSelf();
+        Gson gson = new Gson();
+        CompletableFuture<Integer> handle = CompletableFuture.supplyAsync(
+                () -> client.instantiateObjectHandle(StringBuilder.class.getName()));
+        RPCRequest request = gson.fromJson(in.readLine(), RPCRequest.class);
+        PrintStream out = new PrintStream(serverSide.getOutputStream());
+        out.println(gson.toJson(new RPCResponse<>(request.getId(), null)));
+        out.flush();
+        try {
+            handle.get(5, TimeUnit.SECONDS);
+            fail("Instantiating should have failed");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof RPCException);
+        }
+    }
+}
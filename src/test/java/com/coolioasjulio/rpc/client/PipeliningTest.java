@@ -0,0 +1,106 @@
+package com.coolioasjulio.rpc.client;
+
+import com.coolioasjulio.rpc.RPCException;
+import com.coolioasjulio.rpc.RPCRequest;
+import com.coolioasjulio.rpc.RPCResponse;
+import com.google.gson.Gson;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PipeliningTest extends LoopbackSessionTest {
+    private final Gson gson = new Gson();
+    private ExecutorService callers;
+
+    @After
+    public void tearDown() {
+        if (callers != null) {
+            callers.shutdownNow();
+        }
+    }
+
+    @Test
+    public void responsesAreMatchedById() throws Exception {
+        // Stand in for a server that answers the calls in the opposite order they were made in
+        BufferedReader in = connectToSelf();
+
+        List<CompletableFuture<Integer>> squares = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            squares.add(client.executeStaticMethodAsync(Arithmetic.class.getName(), "square", INT, new Object[]{i},
+                    Integer.class, CallOptions.DEFAULT));
+        }
+        assertEquals(3, client.getPendingCallCount());
+
+        List<RPCRequest> received = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            received.add(gson.fromJson(in.readLine(), RPCRequest.class));
+        }
+        PrintStream out = new PrintStream(serverSide.getOutputStream());
+        for (int i = received.size() - 1; i >= 0; i--) {
+            RPCRequest request = received.get(i);
+            int x = ((Number) request.getArgs().get(0)).intValue();
+            out.println(gson.toJson(new RPCResponse<>(request.getId(), x * x)));
+            out.flush();
+        }
+
+        for (int i = 0; i < squares.size(); i++) {
+            assertEquals(i * i, (int) squares.get(i).get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(0, client.getPendingCallCount());
+    }
+
+    @Test
+    public void sharedByManyThreads() throws Exception {
+        runRequestsConcurrently(4);
+        connect();
+
+        int threads = 8;
+        int calls = 50;
+        callers = Executors.newFixedThreadPool(threads);
+        List<Future<?>> results = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int offset = t * calls;
+            results.add(callers.submit(() -> {
+                for (int i = offset; i < offset + calls; i++) {
+                    int square = client.executeStaticMethod(Arithmetic.class.getName(), "square", INT,
+                            new Object[]{i}, Integer.class);
+                    assertEquals(i * i, square);
+                }
+                return null;
+            }));
+        }
+        for (Future<?> result : results) {
+            result.get(30, TimeUnit.SECONDS);
+        }
+        assertEquals(0, client.getPendingCallCount());
+    }
+
+    @Test
+    public void closingFailsPendingCalls() throws Exception {
+        connectToSelf();
+        CompletableFuture<Integer> square = client.executeStaticMethodAsync(Arithmetic.class.getName(), "square", INT,
+                new Object[]{2}, Integer.class, CallOptions.DEFAULT);
+        client.close();
+        try {
+            square.get(5, TimeUnit.SECONDS);
+            fail("The call should have failed");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof RPCException);
+        }
+        client = null;
+    }
+}
@@ -0,0 +1,98 @@
+package com.coolioasjulio.rpc.client;
+
+import com.coolioasjulio.rpc.RPCResponse;
+import com.google.gson.Gson;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.reflect.TypeToken;
+import org.junit.Test;
+
+import java.lang.reflect.Type;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class RPCResponseDecoderTest {
+    private static final Type INTEGERS = new TypeToken<List<Integer>>() {
+    }.getType();
+
+    private final Gson gson = new Gson();
+    private final RPCResponseDecoder decoder = new RPCResponseDecoder(gson);
+
+    @Test
+    public void valueIsBoundToItsType() {
+        RPCResponse<List<Integer>> response = decoder.decode("{\"id\":4,\"isException\":false,\"value\":[1,2,3]}",
+                INTEGERS);
+        assertEquals(4, response.getId());
+        assertFalse(response.isException());
+        assertEquals(Arrays.asList(1, 2, 3), response.getValue());
+    }
+
+    @Test
+    public void valueBeforeTheHeaderIsBoundAfterwards() {
+        RPCResponse<List<Integer>> response = decoder.decode("{\"value\":[1,2],\"isException\":false,\"id\":4}",
+                INTEGERS);
+        assertEquals(Arrays.asList(1, 2), response.getValue());
+    }
+
+    @Test
+    public void typeDependsOnTheId() {
+        RPCResponse<Object> response = decoder.decode("{\"id\":2,\"isException\":false,\"value\":5}",
+                id -> id == 2 ? Long.class : String.class);
+        assertEquals(5L, response.getValue());
+    }
+
+    @Test
+    public void unknownIdsAreSkipped() {
+        RPCResponse<Object> response = decoder.decode("{\"id\":2,\"isException\":false,\"value\":{\"a\":[1]},"
+                + "\"more\":true}", id -> null);
+        assertEquals(2, response.getId());
+        assertNull(response.getValue());
+        assertTrue(response.isMore());
+    }
+
+    @Test
+    public void exceptionsAreMessages() {
+        RPCResponse<Object> response = decoder.decode("{\"id\":1,\"isException\":true,"
+                + "\"value\":\"java.lang.IllegalStateException\",\"errorCode\":\"DEADLINE_EXCEEDED\"}", INTEGERS);
+        assertTrue(response.isException());
+        assertEquals("java.lang.IllegalStateException", response.getValue());
+        assertEquals(RPCResponse.ErrorCode.DEADLINE_EXCEEDED, response.getErrorCode());
+    }
+
+    @Test
+    public void unknownErrorCodesArePlainExceptions() {
+        RPCResponse<Object> response = decoder.decode("{\"id\":1,\"isException\":true,\"value\":\"oops\","
+                + "\"errorCode\":\"SOMETHING_NEW\"}", Object.class);
+        assertTrue(response.isException());
+        assertNull(response.getErrorCode());
+    }
+
+    @Test
+    public void valuesThatDontBindFailOnlyTheirCall() {
+        RPCResponse<Object> response = decoder.decode("{\"id\":3,\"isException\":false,\"value\":\"abc\"}",
+                Integer.class);
+        assertEquals(3, response.getId());
+        assertTrue(response.isException());
+        assertTrue(String.valueOf(response.getValue()).contains("java.lang.Integer"));
+    }
+
+    @Test
+    public void matchesGson() {
+        RPCResponse<String> expected = new RPCResponse<>(9, "value", false, true);
+        expected.setAttachment("java.lang.String");
+        RPCResponse<String> response = decoder.decode(gson.toJson(expected), String.class);
+        assertEquals(9, response.getId());
+        assertEquals("value", response.getValue());
+        assertTrue(response.isMore());
+        assertEquals("java.lang.String", response.getAttachment());
+    }
+
+    @Test(expected = JsonSyntaxException.class)
+    public void malformedJsonIsRejected() {
+        decoder.decode("{\"id\":", Object.class);
+    }
+}
@@ -0,0 +1,84 @@
+package com.coolioasjulio.rpc.client;
+
+import com.coolioasjulio.rpc.RPCResponse;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ResultNameTest extends LoopbackSessionTest {
+    private static final String[] LIST = {"REMOTE:java.util.List"};
+
+    public static class Source {
+        public static List<Integer> range(int n) {
+            List<Integer> elements = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                elements.add(i);
+            }
+            return elements;
+        }
+
+        public static long sum(List<Integer> elements) {
+            long sum = 0;
+            for (int element : elements) {
+                sum += element;
+            }
+            return sum;
+        }
+
+        public static List<Integer> fail() {
+            throw new IllegalStateException("Failed on purpose");
+        }
+    }
+
+    @Test
+    public void pipelinedCallsUseAStoredResult() throws Exception {
+        connect();
+        // The second call is sent before the first is answered, and the list never comes back to the client
+        CompletableFuture<Object> stored = client.executeStaticMethodAsync(Source.class.getName(), "range", INT,
+                new Object[]{1000}, CallOptions.DEFAULT.withResultName("elements"));
+        CompletableFuture<Long> sum = client.executeStaticMethodAsync(Source.class.getName(), "sum", LIST,
+                new Object[]{"elements"}, Long.class, CallOptions.DEFAULT);
+        assertNull(stored.get(5, TimeUnit.SECONDS));
+        assertEquals(1000 * 999L / 2, (long) sum.get(5, TimeUnit.SECONDS));
+
+        // Methods can be called on it like any other remote object, until it's released
+        assertEquals(1000, (int) client.executeMethod("elements", "size", new String[0], new Object[0],
+                Integer.class));
+        assertTrue(client.releaseObject("elements"));
+        assertFalse(client.releaseObject("elements"));
+    }
+
+    @Test
+    public void batchedCallsUseAStoredResult() throws Exception {
+        connect();
+        List<RPCResponse<Object>> responses = client.batch()
+                .executeStaticMethod(Source.class.getName(), "range", INT, new Object[]{10})
+                .storeResultAs("elements")
+                .executeStaticMethod(Source.class.getName(), "sum", LIST, new Object[]{"elements"})
+                .send();
+        assertFalse(responses.get(0).isException());
+        assertNull(responses.get(0).getValue());
+        assertEquals(45, ((Number) responses.get(1).getValue()).intValue());
+    }
+
+    @Test
+    public void failedCallsStoreNothing() throws Exception {
+        connect();
+        List<RPCResponse<Object>> responses = client.batch()
+                .executeStaticMethod(Source.class.getName(), "fail")
+                .storeResultAs("elements")
+                .executeStaticMethod(Source.class.getName(), "sum", LIST, new Object[]{"elements"})
+                .send();
+        assertTrue(responses.get(0).isException());
+        assertTrue(responses.get(1).isException());
+        assertFalse(client.releaseObject("elements"));
+    }
+}
@@ -0,0 +1,128 @@
+package com.coolioasjulio.rpc.client;
+
+import com.coolioasjulio.rpc.codec.WireFormat;
+import com.coolioasjulio.rpc.server.NioRPCServer;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class StreamingTest extends LoopbackSessionTest {
+    public static class Source {
+        public static final AtomicInteger produced = new AtomicInteger();
+
+        public static Iterator<Integer> count(int n) {
+            produced.set(0);
+            return new Iterator<Integer>() {
+                @Override
+                public boolean hasNext() {
+                    return produced.get() < n;
+                }
+
+                @Override
+                public Integer next() {
+                    return produced.getAndIncrement();
+                }
+            };
+        }
+    }
+
+    private NioRPCServer nio;
+
+    @After
+    public void tearDown() {
+        if (nio != null) {
+            nio.close();
+        }
+    }
+
+    private void connectNio() throws IOException {
+        nio = server.listen(new InetSocketAddress("127.0.0.1", 0), 1);
+        Socket socket = new Socket();
+        socket.connect(nio.getLocalAddress());
+        client = new RPCClient(socket.getInputStream(), socket.getOutputStream());
+    }
+
+    /**
+     * Take a few elements of a long stream, and check that the server only runs a little ahead of the consumer.
+     *
+     * @param otherCalls Whether to make other calls while the consumer is behind, from the consumer itself. Only
+     *                   sessions that run requests concurrently can answer them before the stream ends; the others
+     *                   answer a call made during the stream once it's done.
+     */
+    private void slowConsumer(boolean otherCalls) throws Exception {
+        int chunkSize = server.getStreamChunkSize();
+        CompletableFuture<Integer> behind;
+        try (Stream<Integer> stream = client.streamStaticMethod(Source.class.getName(), "count", INT,
+                new Object[]{Integer.MAX_VALUE}, Integer.class)) {
+            Iterator<Integer> elements = stream.iterator();
+            for (int i = 0; i < 3; i++) {
+                assertEquals(i, (int) elements.next());
+                if (otherCalls) {
+                    CompletableFuture<Integer> square = client.executeStaticMethodAsync(Arithmetic.class.getName(),
+                            "square", INT, new Object[]{i + 2}, Integer.class, CallOptions.DEFAULT);
+                    assertEquals((i + 2) * (i + 2), (int) square.get(5, TimeUnit.SECONDS));
+                }
+            }
+            // The server has to keep reading demand for the stream while this waits behind it
+            behind = client.executeStaticMethodAsync(Arithmetic.class.getName(), "square", INT, new Object[]{5},
+                    Integer.class, CallOptions.DEFAULT);
+            Thread.sleep(100);
+            // The server stopped once it had sent what the client asked for
+            assertTrue("Produced " + Source.produced.get(), Source.produced.get() <= 8 * chunkSize);
+
+            for (int i = 3; i < 20 * chunkSize; i++) {
+                assertEquals(i, (int) elements.next());
+            }
+        }
+        // Closing the stream cancelled the rest of it, so the calls after it aren't stuck behind it
+        assertEquals(25, (int) behind.get(5, TimeUnit.SECONDS));
+        assertEquals(1, (int) client.executeStaticMethod(Arithmetic.class.getName(), "square", INT, new Object[]{1},
+                Integer.class));
+    }
+
+    @Test
+    public void sequentialJsonSession() throws Exception {
+        connect();
+        slowConsumer(false);
+    }
+
+    @Test
+    public void sequentialBinarySession() throws Exception {
+        connect(WireFormat.BINARY);
+        slowConsumer(false);
+    }
+
+    @Test
+    public void concurrentSession() throws Exception {
+        runRequestsConcurrently(4);
+        connect();
+        slowConsumer(true);
+    }
+
+    @Test
+    public void nioSession() throws Exception {
+        connectNio();
+        slowConsumer(false);
+    }
+
+    @Test
+    public void wholeStreamArrives() throws Exception {
+        connect(WireFormat.BINARY);
+        try (Stream<Integer> stream = client.streamStaticMethod(Source.class.getName(), "count", INT,
+                new Object[]{10000}, Integer.class)) {
+            assertEquals(10000 * 9999L / 2, stream.mapToLong(Integer::longValue).sum());
+        }
+        assertEquals(0, client.getPendingCallCount());
+    }
+}
@@ -0,0 +1,136 @@
+package com.coolioasjulio.rpc.client;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class StubTest extends LoopbackSessionTest {
+    // The target of the stubs, so it has every method they call
+    public static class Source {
+        public static int square(int x) {
+            return x * x;
+        }
+
+        public static List<Integer> range(int n) {
+            List<Integer> elements = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                elements.add(i);
+            }
+            return elements;
+        }
+
+        public static Iterator<Integer> count(int n) {
+            return range(n).iterator();
+        }
+
+        public static int sizeOf(Collection<?> elements) {
+            return elements.size();
+        }
+    }
+
+    public interface Squares {
+        int square(int x);
+
+        List<Integer> range(int n);
+
+        Stream<Integer> count(int n);
+
+        int sizeOf(Collection<?> elements);
+    }
+
+    public interface AsyncSquares {
+        CompletableFuture<Integer> square(int x);
+    }
+
+    public interface Builder {
+        void append(String s);
+
+        int length();
+
+        String substring(int start);
+    }
+
+    @Test
+    public void staticStub() throws Exception {
+        connect();
+        Squares squares = client.createStaticStub(Squares.class, Source.class.getName());
+        assertEquals(49, squares.square(7));
+        // Generic return types are decoded to their element type
+        List<Integer> range = squares.range(3);
+        assertEquals(Integer.valueOf(2), range.get(2));
+        try (Stream<Integer> count = squares.count(100)) {
+            assertEquals(Source.range(100), count.collect(Collectors.toList()));
+        }
+    }
+
+    @Test
+    public void asyncStub() throws Exception {
+        connect();
+        AsyncSquares squares = client.createStaticStub(AsyncSquares.class, Source.class.getName());
+        List<CompletableFuture<Integer>> results = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            results.add(squares.square(i));
+        }
+        for (int i = 0; i < results.size(); i++) {
+            assertEquals(i * i, (int) results.get(i).get(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void remoteObjectStub() throws Exception {
+        connect();
+        client.instantiateObject(StringBuilder.class.getName(), "builder");
+        Builder builder = client.createStub(Builder.class, "builder");
+        builder.append("hello");
+        builder.append(" world");
+        assertEquals(11, builder.length());
+        assertEquals("world", builder.substring(6));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void stubsArePassedAsReferences() throws Exception {
+        connect();
+        Squares squares = client.createStaticStub(Squares.class, Source.class.getName());
+
+        int handle = client.instantiateObjectHandle(ArrayList.class.getName());
+        Collection<Object> byHandle = client.createStub(Collection.class, handle);
+        byHandle.add("a");
+        byHandle.add("b");
+        assertEquals(2, squares.sizeOf(byHandle));
+
+        client.instantiateObject(ArrayList.class.getName(), "list");
+        Collection<Object> byName = client.createStub(Collection.class, "list");
+        byName.add("a");
+        assertEquals(1, squares.sizeOf(byName));
+    }
+
+    @Test
+    public void objectMethodsAreLocal() throws Exception {
+        connect();
+        Squares first = client.createStaticStub(Squares.class, Source.class.getName());
+        Squares second = client.createStaticStub(Squares.class, Source.class.getName());
+        assertEquals(first, first);
+        assertNotEquals(first, second);
+        assertEquals(System.identityHashCode(first), first.hashCode());
+        assertTrue(first.toString().contains(Source.class.getName()));
+        assertEquals(0, client.getPendingCallCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void onlyInterfacesCanBeStubbed() throws Exception {
+        connect();
+        client.createStaticStub(Source.class, Source.class.getName());
+    }
+}
@@ -0,0 +1,157 @@
+package com.coolioasjulio.rpc.codec;
+
+import com.coolioasjulio.rpc.RPCBatch;
+import com.coolioasjulio.rpc.RPCRequest;
+import com.google.gson.Gson;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class AttachmentsTest {
+    private final Gson gson = new Gson();
+
+    /**
+     * Send a request the way the client does, and read it back the way the server does: extract its attachments,
+     * write them and the request to a stream, then read them back and bind them.
+     */
+    private RPCRequest roundTrip(RPCRequest request, int threshold) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (ByteBuffer payload : Attachments.extract(request, threshold)) {
+            Attachments.write(out, payload);
+        }
+        out.write((gson.toJson(request) + "\n").getBytes(StandardCharsets.UTF_8));
+
+        LineInputStream in = new LineInputStream(new ByteArrayInputStream(out.toByteArray()), StandardCharsets.UTF_8);
+        List<ByteBuffer> attachments = new ArrayList<>();
+        String line;
+        while (Attachments.isHeader(line = in.readLine())) {
+            attachments.add(Attachments.read(in, Attachments.parseLength(line)));
+        }
+        RPCRequest received = gson.fromJson(line, RPCRequest.class);
+        Attachments.bind(received, attachments);
+        return received;
+    }
+
+    private static RPCRequest request(String[] argClassNames, Object[] args) {
+        return new RPCRequest(1, false, "Foo", "", "bar", argClassNames, args);
+    }
+
+    @Test
+    public void primitiveArraysRoundTrip() throws IOException {
+        Object[] args = {
+                new byte[]{1, -2, 127},
+                new short[]{1, -2, Short.MAX_VALUE},
+                new char[]{'a', '\u00e9', Character.MAX_VALUE},
+                new int[]{1, -2, Integer.MIN_VALUE},
+                new long[]{1, -2, Long.MAX_VALUE},
+                new float[]{1.5f, -2, Float.NaN},
+                new double[]{1.5, -2, Double.NEGATIVE_INFINITY},
+                new boolean[]{true, false, true},
+        };
+        String[] argClassNames = new String[args.length];
+        for (int i = 0; i < args.length; i++) {
+            argClassNames[i] = args[i].getClass().getName();
+        }
+        RPCRequest received = roundTrip(request(argClassNames, args), 0);
+
+        assertEquals(Arrays.asList(argClassNames), received.getArgClassNames());
+        assertArrayEquals((byte[]) args[0], (byte[]) received.getArgs().get(0));
+        assertArrayEquals((short[]) args[1], (short[]) received.getArgs().get(1));
+        assertArrayEquals((char[]) args[2], (char[]) received.getArgs().get(2));
+        assertArrayEquals((int[]) args[3], (int[]) received.getArgs().get(3));
+        assertArrayEquals((long[]) args[4], (long[]) received.getArgs().get(4));
+        assertArrayEquals((float[]) args[5], (float[]) received.getArgs().get(5), 0);
+        assertArrayEquals((double[]) args[6], (double[]) received.getArgs().get(6), 0);
+        assertArrayEquals((boolean[]) args[7], (boolean[]) received.getArgs().get(7));
+    }
+
+    @Test
+    public void onlyTheRestOfABufferIsSent() throws IOException {
+        byte[] bytes = {0, 1, 2, 3, 4, 5, 6, 7, 8, 9};
+        ByteBuffer heap = ByteBuffer.wrap(bytes, 2, 5); // Position 2, limit 7
+        ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+        direct.put(bytes);
+        direct.position(3).limit(6);
+        RPCRequest received = roundTrip(request(new String[]{Attachments.BYTE_BUFFER, Attachments.BYTE_BUFFER},
+                new Object[]{heap, direct}), 0);
+
+        assertEquals(ByteBuffer.wrap(new byte[]{2, 3, 4, 5, 6}), received.getArgs().get(0));
+        assertEquals(ByteBuffer.wrap(new byte[]{3, 4, 5}), received.getArgs().get(1));
+        // Sending them didn't move them
+        assertEquals(2, heap.position());
+        assertEquals(3, direct.position());
+    }
+
+    @Test
+    public void onlySelfTypedArgumentsAreAttached() {
+        int[] ints = {1, 2, 3};
+        RPCRequest request = request(new String[]{"java.lang.Object", "[I", "[J", "java.lang.String"},
+                new Object[]{ints, ints, ints, "text"});
+        List<ByteBuffer> attachments = Attachments.extract(request, 0);
+
+        // The others are declared as something else, which an attachment would be decoded as on the server, so they
+        // have to stay JSON
+        assertEquals(1, attachments.size());
+        assertEquals(Arrays.asList("java.lang.Object", Attachments.ARG_PREFIX + "[I", "[J", "java.lang.String"),
+                request.getArgClassNames());
+        assertEquals(ints, request.getArgs().get(0));
+        assertEquals(0, request.getArgs().get(1));
+        assertEquals(ints, request.getArgs().get(2));
+    }
+
+    @Test
+    public void smallArgumentsStayJson() {
+        RPCRequest request = request(new String[]{"[B", "[D"}, new Object[]{new byte[8], new double[2]});
+        List<ByteBuffer> attachments = Attachments.extract(request, 16);
+        assertEquals(1, attachments.size());
+        assertEquals(16, attachments.get(0).remaining());
+        assertEquals(Arrays.asList("[B", Attachments.ARG_PREFIX + "[D"), request.getArgClassNames());
+    }
+
+    @Test
+    public void batchesShareTheIndices() throws IOException {
+        RPCBatch batch = new RPCBatch(1, false, Arrays.asList(
+                request(new String[]{"[I"}, new Object[]{new int[]{1}}),
+                request(new String[]{"[I"}, new Object[]{new int[]{2}})));
+        List<ByteBuffer> attachments = Attachments.extract(batch, 0);
+        assertEquals(2, attachments.size());
+        assertEquals(1, batch.getRequests().get(1).getArgs().get(0));
+
+        Attachments.bind(batch, attachments);
+        assertArrayEquals(new int[]{1}, (int[]) batch.getRequests().get(0).getArgs().get(0));
+        assertArrayEquals(new int[]{2}, (int[]) batch.getRequests().get(1).getArgs().get(0));
+    }
+
+    @Test
+    public void missingAttachmentFails() {
+        RPCRequest request = request(new String[]{Attachments.ARG_PREFIX + "[I"}, new Object[]{0});
+        try {
+            Attachments.bind(request, Collections.emptyList());
+            fail("Binding should have failed");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void partialElementsFail() {
+        Attachments.decode(ByteBuffer.allocate(6), "[I");
+    }
+
+    @Test(expected = IOException.class)
+    public void malformedHeaderFails() throws IOException {
+        Attachments.parseLength(Attachments.PREFIX + "-1");
+    }
+}
@@ -0,0 +1,231 @@
+package com.coolioasjulio.rpc.codec;
+
+import com.coolioasjulio.rpc.RPCBatch;
+import com.coolioasjulio.rpc.RPCRequest;
+import com.coolioasjulio.rpc.RPCResponse;
+import com.google.gson.Gson;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Optional;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BinaryCodecTest {
+    private final BinaryCodec writer = new BinaryCodec(new Gson());
+    private final BinaryCodec reader = new BinaryCodec(new Gson());
+
+    private static RPCRequest request(long id, String className, String methodName, String[] argClassNames,
+                                      Object[] args) {
+        return new RPCRequest(id, false, className, "", methodName, argClassNames, args);
+    }
+
+    @Test
+    public void requestRoundTrip() throws IOException {
+        RPCRequest request = request(7, "java.lang.Math", "max",
+                new String[]{"java.lang.Integer", "java.lang.String", "[D", "java.nio.ByteBuffer"},
+                new Object[]{42, "hello", new double[]{1.5, -2}, ByteBuffer.wrap(new byte[]{1, 2, 3})});
+        request.setTimeoutMillis(250);
+        request.setStream(true);
+        request.setResultName("result");
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writer.writeRequest(out, request);
+        RPCRequest read = reader.readRequest(new ByteArrayInputStream(out.toByteArray()));
+
+        assertEquals(7, read.getId());
+        assertEquals("java.lang.Math", read.getClassName());
+        assertEquals("max", read.getMethodName());
+        assertEquals("result", read.getResultName());
+        assertEquals(250, read.getTimeoutMillis());
+        assertTrue(read.isStream());
+        assertTrue(read.isArgsTyped());
+        assertEquals(request.getArgClassNames(), read.getArgClassNames());
+        assertEquals(42, read.getArgs().get(0));
+        assertEquals("hello", read.getArgs().get(1));
+        assertArrayEquals(new double[]{1.5, -2}, (double[]) read.getArgs().get(2), 0);
+        assertEquals(ByteBuffer.wrap(new byte[]{1, 2, 3}), read.getArgs().get(3));
+    }
+
+    @Test
+    public void longTimeoutIsClamped() throws IOException {
+        RPCRequest request = request(8, "Foo", "bar", new String[0], new Object[0]);
+        request.setTimeoutMillis(Long.MAX_VALUE);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writer.writeRequest(out, request);
+        RPCRequest read = reader.readRequest(new ByteArrayInputStream(out.toByteArray()));
+        // Still a deadline, just the longest one that fits
+        assertEquals(Integer.MAX_VALUE, read.getTimeoutMillis());
+    }
+
+    @Test
+    public void largeFramesDoNotGrowTheReadBuffer() throws IOException {
+        byte[] large = new byte[1 << 20];
+        Arrays.fill(large, (byte) 7);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writer.writeResponse(out, new RPCResponse<>(1, large));
+        writer.writeResponse(out, new RPCResponse<>(2, "small"));
+
+        ByteArrayInputStream in = new ByteArrayInputStream(out.toByteArray());
+        assertArrayEquals(large, (byte[]) reader.readResponse(in, byte[].class).getValue());
+        assertTrue(reader.getReadBufferSize() < large.length);
+        assertEquals("small", reader.readResponse(in, String.class).getValue());
+    }
+
+    @Test
+    public void batchRoundTripReusesInternedStrings() throws IOException {
+        RPCRequest first = request(1, "Foo", "bar", new String[]{"java.lang.String"}, new Object[]{"a"});
+        RPCRequest second = request(2, "Foo", "bar", new String[]{"java.lang.String"}, new Object[]{"b"});
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writer.writeBatch(out, new RPCBatch(3, true, Arrays.asList(first, second)));
+        int batchLength = out.size();
+        writer.writeRequest(out, request(4, "Foo", "bar", new String[]{"java.lang.String"}, new Object[]{"c"}));
+
+        ByteArrayInputStream in = new ByteArrayInputStream(out.toByteArray());
+        RPCBatch batch = (RPCBatch) reader.readMessage(in);
+        assertEquals(3, batch.getId());
+        assertTrue(batch.isStopOnError());
+        assertEquals(2, batch.getRequests().size());
+        assertEquals("b", batch.getRequests().get(1).getArgs().get(0));
+        RPCRequest third = reader.readRequest(in);
+        assertEquals("Foo", third.getClassName());
+        assertEquals("c", third.getArgs().get(0));
+        // The third frame only refers to the strings interned by the batch
+        assertTrue(out.size() - batchLength < batchLength / 2);
+    }
+
+    @Test
+    public void failedFrameDoesNotInternStrings() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            // Gson can't encode an Optional, so this frame is never written
+            writer.writeRequest(out, request(1, "Unsent", "method", new String[]{"java.util.Optional"},
+                    new Object[]{Optional.of(1)}));
+            fail("The request should not have been encoded");
+        } catch (RuntimeException e) {
+            // Expected
+        }
+        assertEquals(0, out.size());
+
+        writer.writeRequest(out, request(2, "Unsent", "method", new String[]{"java.lang.String"},
+                new Object[]{"x"}));
+        RPCRequest read = reader.readRequest(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals("Unsent", read.getClassName());
+        assertEquals("method", read.getMethodName());
+        assertEquals(Collections.singletonList("java.lang.String"), read.getArgClassNames());
+    }
+
+    @Test
+    public void failedBatchDoesNotInternStrings() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        RPCRequest sendable = request(1, "Unsent", "method", new String[]{"java.lang.String"}, new Object[]{"x"});
+        // The first request interns its strings, then the second fails to encode, so the frame is never written
+        RPCRequest unsendable = request(2, "AlsoUnsent", "other", new String[]{"java.util.Optional"},
+                new Object[]{Optional.of(1)});
+        try {
+            writer.writeBatch(out, new RPCBatch(3, false, Arrays.asList(sendable, unsendable)));
+            fail("The batch should not have been encoded");
+        } catch (RuntimeException e) {
+            // Expected
+        }
+        assertEquals(0, out.size());
+
+        RPCRequest third = request(4, "AlsoUnsent", "method", new String[]{"java.lang.String"}, new Object[]{"y"});
+        RPCRequest fourth = request(5, "Unsent", "other", new String[]{"java.lang.String"}, new Object[]{"z"});
+        writer.writeBatch(out, new RPCBatch(6, false, Arrays.asList(third, fourth)));
+        RPCBatch batch = (RPCBatch) reader.readMessage(new ByteArrayInputStream(out.toByteArray()));
+        RPCRequest first = batch.getRequests().get(0);
+        assertEquals("AlsoUnsent", first.getClassName());
+        assertEquals("method", first.getMethodName());
+        assertEquals("y", first.getArgs().get(0));
+        RPCRequest second = batch.getRequests().get(1);
+        assertEquals("Unsent", second.getClassName());
+        assertEquals("other", second.getMethodName());
+        assertEquals("z", second.getArgs().get(0));
+    }
+
+    @Test
+    public void responseRoundTrip() throws IOException {
+        RPCResponse<Object> response = new RPCResponse<>(9, "DEADLINE_EXCEEDED: late", true);
+        response.setErrorCode(RPCResponse.ErrorCode.DEADLINE_EXCEEDED);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writer.writeResponse(out, response);
+        writer.writeResponse(out, new RPCResponse<>(10, new int[]{1, 2, 3}, false, true));
+
+        ByteArrayInputStream in = new ByteArrayInputStream(out.toByteArray());
+        RPCResponse<Object> error = reader.readResponse(in, id -> String.class);
+        assertEquals(9, error.getId());
+        assertTrue(error.isException());
+        assertEquals(RPCResponse.ErrorCode.DEADLINE_EXCEEDED, error.getErrorCode());
+        assertEquals("DEADLINE_EXCEEDED: late", error.getValue());
+
+        RPCResponse<int[]> chunk = reader.readResponse(in, int[].class);
+        assertEquals(10, chunk.getId());
+        assertFalse(chunk.isException());
+        assertTrue(chunk.isMore());
+        assertArrayEquals(new int[]{1, 2, 3}, chunk.getValue());
+
+        assertNull(reader.readResponse(in, Object.class));
+    }
+
+    @Test(expected = EOFException.class)
+    public void truncatedFrame() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writer.writeRequest(out, request(1, "Foo", "bar", null, null));
+        byte[] frame = out.toByteArray();
+        reader.readRequest(new ByteArrayInputStream(Arrays.copyOf(frame, frame.length - 3)));
+    }
+
+    @Test
+    public void oversizedFrame() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writer.writeRequest(out, request(1, "Foo", "bar", new String[]{"java.lang.String"},
+                new Object[]{new String(new char[1000])}));
+        reader.setMaxFrameLength(100);
+        try {
+            reader.readRequest(new ByteArrayInputStream(out.toByteArray()));
+            fail("The frame should have been rejected");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().startsWith("Invalid frame length"));
+        }
+    }
+
+    @Test
+    public void stringLongerThanFrame() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writer.writeRequest(out, request(1, "Foo", "", null, null));
+        byte[] frame = out.toByteArray();
+        // The class name is the first string: a literal marker, then its length, which is made huge
+        int lengthOffset = 4 + 1 + 8 + 1 + 1;
+        assertEquals(3, frame[lengthOffset]);
+        byte[] corrupt = new byte[frame.length + 4];
+        System.arraycopy(frame, 0, corrupt, 0, lengthOffset);
+        byte[] hugeLength = {(byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07};
+        System.arraycopy(hugeLength, 0, corrupt, lengthOffset, hugeLength.length);
+        System.arraycopy(frame, lengthOffset + 1, corrupt, lengthOffset + hugeLength.length,
+                frame.length - lengthOffset - 1);
+        int length = corrupt.length - 4;
+        corrupt[0] = (byte) (length >>> 24);
+        corrupt[1] = (byte) (length >>> 16);
+        corrupt[2] = (byte) (length >>> 8);
+        corrupt[3] = (byte) length;
+
+        try {
+            reader.readRequest(new ByteArrayInputStream(corrupt));
+            fail("The string length should have been rejected");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().startsWith("Invalid length"));
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.coolioasjulio.rpc.codec;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CompressionTest {
+    private static final String SMALL = "{\"id\":0,\"isException\":false}";
+
+    private static String large(int id) {
+        StringBuilder sb = new StringBuilder("{\"id\":" + id + ",\"isException\":false,\"value\":[");
+        for (int i = 0; i < 500; i++) {
+            sb.append(i).append(',');
+        }
+        return sb.append("0]}").toString();
+    }
+
+    private static byte[] deflate(String... messages) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DeflatingOutputStream out = new DeflatingOutputStream(bytes, Compression.DEFAULT_THRESHOLD);
+        for (String message : messages) {
+            out.write((message + "\n").getBytes(StandardCharsets.UTF_8));
+            out.flush();
+        }
+        return bytes.toByteArray();
+    }
+
+    @Test
+    public void roundTrip() throws IOException {
+        String[] messages = {SMALL, large(1), SMALL, large(2), large(3)};
+        byte[] compressed = deflate(messages);
+        int uncompressed = 0;
+        for (String message : messages) {
+            uncompressed += message.length() + 1;
+        }
+        assertTrue(compressed.length < uncompressed / 4);
+
+        LineInputStream in = new LineInputStream(new InflatingInputStream(new ByteArrayInputStream(compressed)),
+                Charset.defaultCharset());
+        for (String message : messages) {
+            assertEquals(message, in.readLine());
+        }
+        assertNull(in.readLine());
+    }
+
+    @Test
+    public void inflatedFrameLargerThanMax() throws IOException {
+        String message = large(1);
+        byte[] compressed = deflate(message);
+        // The compressed frame fits, but it inflates to more than the limit
+        assertTrue(compressed.length < 1000);
+        InflatingInputStream in = new InflatingInputStream(new ByteArrayInputStream(compressed), 1000);
+        try {
+            in.read(new byte[message.length() + 1]);
+            fail("The frame should have been rejected");
+        } catch (IOException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void compressedFrameLargerThanMax() throws IOException {
+        byte[] compressed = deflate(large(1));
+        InflatingInputStream in = new InflatingInputStream(new ByteArrayInputStream(compressed), 10);
+        try {
+            in.read();
+            fail("The frame should have been rejected");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().startsWith("Invalid frame length"));
+        }
+    }
+
+    @Test(expected = EOFException.class)
+    public void truncatedFrame() throws IOException {
+        byte[] compressed = deflate(large(1));
+        InflatingInputStream in = new InflatingInputStream(
+                new ByteArrayInputStream(Arrays.copyOf(compressed, compressed.length / 2)));
+        byte[] buffer = new byte[8192];
+        while (in.read(buffer) >= 0) {
+            // Read until the frame runs out
+        }
+    }
+}
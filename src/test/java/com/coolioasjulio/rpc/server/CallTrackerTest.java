@@ -0,0 +1,207 @@
+package com.coolioasjulio.rpc.server;
+
+import com.coolioasjulio.rpc.RPCRequest;
+import com.coolioasjulio.rpc.RPCResponse;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CallTrackerTest {
+    private final ScheduledExecutorService timer = new ScheduledThreadPoolExecutor(1);
+    private final BlockingQueue<RPCResponse<?>> aborted = new LinkedBlockingQueue<>();
+    private final CallTracker tracker = new CallTracker(() -> timer, aborted::add, Runnable::run);
+
+    @After
+    public void shutdown() {
+        tracker.handled(); // In case a test didn't get that far
+        timer.shutdownNow();
+    }
+
+    private static Object sleep(Object target, Object[] args) {
+        try {
+            Thread.sleep(5000);
+            return false;
+        } catch (InterruptedException e) {
+            return true;
+        }
+    }
+
+    private static RPCRequest request(long id, long timeoutMillis) {
+        RPCRequest request = new RPCRequest(id, false, "Foo", "", "bar", null, null);
+        request.setTimeoutMillis(timeoutMillis);
+        return request;
+    }
+
+    @Test
+    public void callWithoutDeadlineRuns() {
+        CallTracker.Call call = tracker.track(request(1, 0), System.nanoTime());
+        assertTrue(tracker.start(call));
+        tracker.handled();
+        assertNull(tracker.finish(call));
+        assertTrue(aborted.isEmpty());
+    }
+
+    @Test
+    public void deadlinePassedWhileQueued() throws InterruptedException {
+        long receivedNanos = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(100);
+        CallTracker.Call call = tracker.track(request(2, 50), receivedNanos);
+
+        RPCResponse<?> response = aborted.poll(5, TimeUnit.SECONDS);
+        assertNotNull(response);
+        assertEquals(2, response.getId());
+        assertTrue(response.isException());
+        assertEquals(RPCResponse.ErrorCode.DEADLINE_EXCEEDED, response.getErrorCode());
+        assertFalse(tracker.start(call));
+        assertEquals(response, tracker.finish(call));
+    }
+
+    @Test
+    public void deadlineInterruptsRunningCall() throws Exception {
+        CallTracker.Call call = tracker.track(request(3, 50), System.nanoTime());
+        assertTrue(tracker.start(call));
+        assertEquals(true, CallTracker.invoke(CallTrackerTest::sleep, null, new Object[0]));
+        // The interrupt is cleared once the method returns
+        assertFalse(Thread.currentThread().isInterrupted());
+        tracker.handled();
+
+        RPCResponse<?> response = aborted.poll(5, TimeUnit.SECONDS);
+        assertNotNull(response);
+        assertEquals(RPCResponse.ErrorCode.DEADLINE_EXCEEDED, response.getErrorCode());
+        assertEquals(response, tracker.finish(call));
+        assertFalse(Thread.currentThread().isInterrupted());
+    }
+
+    @Test
+    public void abortOutsideTheMethodDoesNotInterrupt() throws Exception {
+        CallTracker.Call call = tracker.track(request(9, 0), System.nanoTime());
+        assertTrue(tracker.start(call));
+        assertEquals("done", CallTracker.invoke((target, args) -> "done", null, new Object[0]));
+        // The thread may be sending the response, or doing something else entirely
+        tracker.cancel(9);
+        assertFalse(Thread.interrupted());
+        tracker.handled();
+        assertEquals(RPCResponse.ErrorCode.CANCELLED, tracker.finish(call).getErrorCode());
+
+        // Methods invoked for a call that was already aborted are interrupted right away
+        CallTracker.Call next = tracker.track(request(10, 0), System.nanoTime());
+        assertTrue(tracker.start(next));
+        tracker.cancel(10);
+        assertEquals(true, CallTracker.invoke(CallTrackerTest::sleep, null, new Object[0]));
+        assertFalse(Thread.currentThread().isInterrupted());
+        tracker.handled();
+        tracker.finish(next);
+    }
+
+    @Test
+    public void otherInterruptsAreKept() throws Exception {
+        CallTracker.Call call = tracker.track(request(11, 0), System.nanoTime());
+        assertTrue(tracker.start(call));
+        // Such as the session closing while the method runs
+        CallTracker.invoke((target, args) -> {
+            Thread.currentThread().interrupt();
+            return null;
+        }, null, new Object[0]);
+        tracker.handled();
+        assertNull(tracker.finish(call));
+        assertTrue(Thread.interrupted());
+    }
+
+    @Test
+    public void finishedCallDoesNotTimeOut() throws InterruptedException {
+        CallTracker.Call call = tracker.track(request(4, 50), System.nanoTime());
+        assertTrue(tracker.start(call));
+        assertNull(tracker.finish(call));
+        assertNull(aborted.poll(200, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void cancelInterruptsRunningCall() throws InterruptedException {
+        CallTracker.Call call = tracker.track(request(5, 0), System.nanoTime());
+        CountDownLatch started = new CountDownLatch(1);
+        BlockingQueue<Boolean> interrupted = new LinkedBlockingQueue<>();
+        Thread worker = new Thread(() -> {
+            tracker.start(call);
+            try {
+                interrupted.add((Boolean) CallTracker.invoke((target, args) -> {
+                    started.countDown();
+                    return sleep(target, args);
+                }, null, new Object[0]));
+            } catch (ReflectiveOperationException e) {
+                interrupted.add(false);
+            }
+            tracker.handled();
+            tracker.finish(call);
+        });
+        worker.start();
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        tracker.cancel(5);
+        assertEquals(Boolean.TRUE, interrupted.poll(5, TimeUnit.SECONDS));
+        RPCResponse<?> response = aborted.poll(5, TimeUnit.SECONDS);
+        assertNotNull(response);
+        assertEquals(5, response.getId());
+        assertEquals(RPCResponse.ErrorCode.CANCELLED, response.getErrorCode());
+        worker.join();
+    }
+
+    @Test
+    public void cancelBeforeTrackSkipsTheCall() {
+        tracker.cancel(6);
+        CallTracker.Call call = tracker.track(request(6, 0), System.nanoTime());
+        assertFalse(tracker.start(call));
+        RPCResponse<?> response = aborted.poll();
+        assertNotNull(response);
+        assertEquals(RPCResponse.ErrorCode.CANCELLED, response.getErrorCode());
+        assertEquals(response, tracker.finish(call));
+    }
+
+    @Test
+    public void cancelAfterAnswerIsIgnored() throws IOException {
+        CallTracker.Call call = tracker.track(request(7, 0), System.nanoTime());
+        assertTrue(tracker.start(call));
+        BlockingQueue<RPCResponse<?>> sent = new LinkedBlockingQueue<>();
+        tracker.guard(call, sent::add).send(new RPCResponse<>(7, "done"));
+        tracker.cancel(7);
+        assertNull(tracker.finish(call));
+        assertEquals(1, sent.size());
+        assertTrue(aborted.isEmpty());
+    }
+
+    @Test
+    public void guardDropsResponsesOfAbortedCall() throws IOException {
+        CallTracker.Call call = tracker.track(request(8, 0), System.nanoTime());
+        assertTrue(tracker.start(call));
+        BlockingQueue<RPCResponse<?>> sent = new LinkedBlockingQueue<>();
+        RPCServer.ResponseSink sink = tracker.guard(call, sent::add);
+        sink.send(new RPCResponse<>(8, "chunk", false, true));
+
+        tracker.cancel(8);
+        try {
+            sink.send(new RPCResponse<>(8, "chunk", false, true));
+            fail("The stream should have been stopped");
+        } catch (CallTracker.AbortedException e) {
+            // Expected
+        }
+        // The thread isn't invoking a method for the call, so it isn't interrupted
+        assertFalse(Thread.currentThread().isInterrupted());
+        tracker.handled();
+        tracker.finish(call);
+        assertFalse(Thread.currentThread().isInterrupted());
+        assertEquals(1, sent.size());
+        assertEquals(1, aborted.size());
+    }
+}
@@ -0,0 +1,137 @@
+package com.coolioasjulio.rpc.server;
+
+import org.junit.Test;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class DispatchCacheTest {
+    public static class Target {
+        public static int answer() {
+            return 42;
+        }
+    }
+
+    private static DispatchCache.Key key(String methodName) {
+        return new DispatchCache.Key(false, Target.class.getName(), "", null, methodName, Collections.emptyList());
+    }
+
+    private static DispatchCache.Entry entry(Method method) {
+        return new DispatchCache.Entry(null, method, new Class<?>[0], null);
+    }
+
+    private static DispatchCache.Entry entry() throws NoSuchMethodException {
+        return entry(Target.class.getMethod("answer"));
+    }
+
+    @Test
+    public void hitsAndMisses() throws Exception {
+        DispatchCache cache = new DispatchCache();
+        assertNull(cache.get(key("answer")));
+        DispatchCache.Entry entry = entry();
+        cache.put(key("answer"), entry);
+        assertSame(entry, cache.get(key("answer")));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void oldestEntriesAreEvicted() throws Exception {
+        DispatchCache cache = new DispatchCache(2);
+        cache.put(key("a"), entry());
+        cache.put(key("b"), entry());
+        cache.put(key("b"), entry()); // Replacing an entry doesn't grow the cache
+        cache.put(key("c"), entry());
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+        assertNull(cache.get(key("a")));
+        assertNotNull(cache.get(key("b")));
+        assertNotNull(cache.get(key("c")));
+    }
+
+    @Test
+    public void classesAreBounded() throws Exception {
+        DispatchCache cache = new DispatchCache(2);
+        assertSame(String.class, cache.resolveClass("java.lang.String"));
+        cache.resolveClass("java.lang.Integer");
+        cache.resolveClass("java.lang.Long");
+        assertEquals(2, cache.getClassCount());
+    }
+
+    @Test
+    public void invalidationIsNotEviction() throws Exception {
+        DispatchCache cache = new DispatchCache();
+        cache.put(key("a"), entry());
+        cache.put(key("b"), entry());
+        cache.resolveClass("java.lang.String");
+        cache.invalidateAll();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getClassCount());
+        assertEquals(2, cache.getInvalidationCount());
+        assertEquals(0, cache.getEvictionCount());
+
+        // The cache is still bounded correctly afterwards
+        cache.setMaximumSize(1);
+        cache.put(key("a"), entry());
+        cache.put(key("b"), entry());
+        assertEquals(1, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+    }
+
+    @Test
+    public void invalidateByClassLoader() throws Exception {
+        DispatchCache cache = new DispatchCache();
+        cache.put(key("answer"), entry());
+        // String is loaded by the bootstrap class loader, which is null
+        cache.put(key("length"), entry(String.class.getMethod("length")));
+        cache.resolveClass("java.lang.String");
+        cache.resolveClass(Target.class.getName());
+
+        cache.invalidate(null);
+        assertEquals(1, cache.size());
+        assertNotNull(cache.get(key("answer")));
+        assertNull(cache.get(key("length")));
+        assertEquals(1, cache.getClassCount());
+        assertEquals(1, cache.getInvalidationCount());
+        assertEquals(0, cache.getEvictionCount());
+    }
+
+    @Test
+    public void countsStayConsistentUnderContention() throws Exception {
+        DispatchCache cache = new DispatchCache(64);
+        DispatchCache.Entry entry = entry();
+        int threads = 4;
+        int perThread = 2000;
+        List<Thread> writers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int offset = t * perThread;
+            writers.add(new Thread(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    cache.put(key("m" + (offset + i)), entry);
+                    if (i % 500 == 0) {
+                        cache.invalidateAll();
+                    }
+                }
+            }));
+        }
+        for (Thread writer : writers) {
+            writer.start();
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+
+        // Every entry that was put is either still cached, evicted, or invalidated
+        assertEquals((long) threads * perThread,
+                cache.size() + cache.getEvictionCount() + cache.getInvalidationCount());
+        assertTrue(cache.size() <= 64);
+    }
+}
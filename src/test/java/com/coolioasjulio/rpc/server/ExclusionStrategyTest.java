@@ -0,0 +1,156 @@
+package com.coolioasjulio.rpc.server;
+
+import com.coolioasjulio.rpc.client.RPCClient;
+import com.coolioasjulio.rpc.server.exclusionstrategies.SuperclassExclusionStrategy;
+import com.coolioasjulio.rpc.server.exclusionstrategies.WhitelistExclusionStrategy;
+import com.google.gson.ExclusionStrategy;
+import com.google.gson.FieldAttributes;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ExclusionStrategyTest {
+    public static class Point {
+        public int x;
+        public int y;
+
+        public Point() {
+        }
+
+        public Point(int x, int y) {
+            this.x = x;
+            this.y = y;
+        }
+    }
+
+    public static class Base {
+        public int value;
+    }
+
+    public static class Derived extends Base {
+        public int value; // Hides the field of the superclass
+        public int other;
+    }
+
+    public static class Holder {
+        public Point point;
+        public Object other;
+    }
+
+    public static class Source {
+        private static int counter = 0;
+
+        // A new point each time, so the result cache never answers instead
+        public static Point point() {
+            counter++;
+            return new Point(counter, counter);
+        }
+    }
+
+    /**
+     * Skips the y field, and counts how often it's asked about any field.
+     */
+    private static class SkipY implements ExclusionStrategy {
+        private final AtomicInteger calls = new AtomicInteger();
+
+        @Override
+        public boolean shouldSkipField(FieldAttributes f) {
+            calls.incrementAndGet();
+            return f.getName().equals("y");
+        }
+
+        @Override
+        public boolean shouldSkipClass(Class<?> clazz) {
+            return false;
+        }
+    }
+
+    private final RPCServer server = RPCServer.getInstance();
+    private RPCClient client;
+
+    @After
+    public void tearDown() throws Exception {
+        if (client != null) {
+            client.close();
+        }
+        server.close();
+        server.resetExclusionStrategies();
+    }
+
+    private void connect() throws IOException {
+        try (ServerSocket serverSocket = new ServerSocket(0)) {
+            Socket clientSocket = new Socket("127.0.0.1", serverSocket.getLocalPort());
+            Socket session = serverSocket.accept();
+            server.createRPCSession(session.getInputStream(), session.getOutputStream(), true);
+            client = new RPCClient(clientSocket.getInputStream(), clientSocket.getOutputStream());
+        }
+    }
+
+    private Point point() {
+        return client.executeStaticMethod(Source.class.getName(), "point", new String[0], new Object[0],
+                Point.class);
+    }
+
+    @Test
+    public void superclassFieldsAreSkipped() throws Exception {
+        SuperclassExclusionStrategy strategy = new SuperclassExclusionStrategy();
+        assertTrue(strategy.shouldSkipField(new FieldAttributes(Derived.class.getField("value"))));
+        assertFalse(strategy.shouldSkipField(new FieldAttributes(Derived.class.getField("other"))));
+        assertFalse(strategy.shouldSkipField(new FieldAttributes(Base.class.getField("value"))));
+    }
+
+    @Test
+    public void whitelistKeepsPrimitivesAndWhitelistedTypes() throws Exception {
+        WhitelistExclusionStrategy strategy = new WhitelistExclusionStrategy(Collections.singleton(int.class));
+        assertFalse(strategy.shouldSkipField(new FieldAttributes(Point.class.getField("x"))));
+        // Point has public fields of a whitelisted type, but Object doesn't
+        assertFalse(strategy.shouldSkipField(new FieldAttributes(Holder.class.getField("point"))));
+        assertTrue(strategy.shouldSkipField(new FieldAttributes(Holder.class.getField("other"))));
+        // Decisions are cached per class, and stay the same
+        assertTrue(strategy.shouldSkipField(new FieldAttributes(Holder.class.getField("other"))));
+    }
+
+    @Test
+    public void addedStrategiesApply() throws Exception {
+        connect();
+        server.addExclusionStrategies(RPCServer.StrategyType.SERIALIZATION, new SkipY());
+        Point point = point();
+        assertTrue(point.x > 0);
+        assertEquals(0, point.y);
+    }
+
+    @Test
+    public void resetRemovesAddedStrategies() throws Exception {
+        connect();
+        SkipY skipY = new SkipY();
+        server.addExclusionStrategies(RPCServer.StrategyType.BOTH, skipY);
+        server.resetExclusionStrategies();
+        int calls = skipY.calls.get();
+
+        // Only the default strategies are left, so the field is sent again and the strategy isn't asked
+        Point point = point();
+        assertEquals(point.x, point.y);
+        assertEquals(calls, skipY.calls.get());
+    }
+
+    @Test
+    public void clearRemovesEveryStrategy() throws Exception {
+        connect();
+        SkipY skipY = new SkipY();
+        server.addExclusionStrategies(RPCServer.StrategyType.SERIALIZATION, skipY);
+        server.clearExclusionStrategies(RPCServer.StrategyType.BOTH);
+        int calls = skipY.calls.get();
+        Point point = point();
+        assertEquals(point.x, point.y);
+        assertEquals(calls, skipY.calls.get());
+    }
+}
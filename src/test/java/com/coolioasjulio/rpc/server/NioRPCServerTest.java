@@ -0,0 +1,227 @@
+package com.coolioasjulio.rpc.server;
+
+import com.coolioasjulio.rpc.RPCRequest;
+import com.coolioasjulio.rpc.client.CallOptions;
+import com.coolioasjulio.rpc.client.RPCClient;
+import com.google.gson.Gson;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class NioRPCServerTest {
+    private static final String[] INT = {"java.lang.Integer"};
+
+    public static class Source {
+        public static int square(int x) {
+            return x * x;
+        }
+
+        public static List<Integer> range(int n) {
+            List<Integer> elements = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                elements.add(i);
+            }
+            return elements;
+        }
+
+        public static int sum(byte[] bytes) {
+            int sum = 0;
+            for (byte b : bytes) {
+                sum += b;
+            }
+            return sum;
+        }
+
+        public static String blob(int kilobytes) {
+            char[] chars = new char[kilobytes * 1024];
+            Arrays.fill(chars, 'x');
+            return new String(chars);
+        }
+    }
+
+    private final RPCServer server = RPCServer.getInstance();
+    private final List<Socket> sockets = new ArrayList<>();
+    private final List<RPCClient> clients = new ArrayList<>();
+    private NioRPCServer nio;
+
+    @After
+    public void tearDown() throws Exception {
+        for (RPCClient client : clients) {
+            client.close();
+        }
+        for (Socket socket : sockets) {
+            socket.close();
+        }
+        if (nio != null) {
+            nio.close();
+        }
+        server.close();
+        server.setAdmissionPolicy(AdmissionPolicy.DEFAULT);
+    }
+
+    private Socket connect() throws IOException {
+        Socket socket = new Socket();
+        socket.setReceiveBufferSize(4096);
+        socket.connect(nio.getLocalAddress());
+        sockets.add(socket);
+        return socket;
+    }
+
+    private RPCClient createClient() throws IOException {
+        Socket socket = connect();
+        RPCClient client = new RPCClient(socket.getInputStream(), socket.getOutputStream());
+        clients.add(client);
+        return client;
+    }
+
+    @Test
+    public void connectionsAreSeparateSessions() throws Exception {
+        nio = server.listen(new InetSocketAddress("127.0.0.1", 0), 2);
+        RPCClient first = createClient();
+        RPCClient second = createClient();
+        List<CompletableFuture<Integer>> squares = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            RPCClient client = i % 2 == 0 ? first : second;
+            squares.add(client.executeStaticMethodAsync(Source.class.getName(), "square", INT, new Object[]{i},
+                    Integer.class, CallOptions.DEFAULT));
+        }
+        for (int i = 0; i < squares.size(); i++) {
+            assertEquals(i * i, (int) squares.get(i).get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(2, nio.getConnectionCount());
+
+        int handle = first.instantiateObjectHandle(StringBuilder.class.getName());
+        first.executeMethod(handle, "append", new String[]{"java.lang.String"}, new Object[]{"a"});
+        assertEquals("a", first.executeMethod(handle, "toString", new String[0], new Object[0], String.class));
+        // The other connection has its own registry, so the same handle names a different object there
+        assertEquals(handle, second.instantiateObjectHandle(StringBuilder.class.getName()));
+        assertEquals("", second.executeMethod(handle, "toString", new String[0], new Object[0], String.class));
+    }
+
+    @Test
+    public void slowReaderDoesNotHoldUpWorkers() throws Exception {
+        nio = server.listen(new InetSocketAddress("127.0.0.1", 0), 1);
+        // This client sends far more than fits in the socket buffers, and doesn't read the responses yet
+        int requests = 40;
+        Socket slow = connect();
+        slow.setSoTimeout(10000);
+        OutputStream out = slow.getOutputStream();
+        Gson gson = new Gson();
+        for (int i = 0; i < requests; i++) {
+            RPCRequest request = new RPCRequest(i, false, Source.class.getName(), "", "blob", INT,
+                    new Object[]{512});
+            out.write((gson.toJson(request) + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+        out.flush();
+        Thread.sleep(200);
+
+        // The only worker isn't stuck waiting for the slow client
+        RPCClient client = createClient();
+        CompletableFuture<Integer> square = client.executeStaticMethodAsync(Source.class.getName(), "square", INT,
+                new Object[]{3}, Integer.class, CallOptions.DEFAULT);
+        assertEquals(9, (int) square.get(5, TimeUnit.SECONDS));
+
+        // Once the slow client reads, the rest of its requests are handled
+        BufferedReader in = new BufferedReader(new InputStreamReader(slow.getInputStream(), StandardCharsets.UTF_8));
+        for (int i = 0; i < requests; i++) {
+            String line = in.readLine();
+            assertNotNull(line);
+            assertTrue(line.contains("\"id\":" + i + ","));
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void idleStreamsDoNotHoldUpWorkers() throws Exception {
+        nio = server.listen(new InetSocketAddress("127.0.0.1", 0), 1);
+        // Each of these streams is far longer than the client asks for up front, and nobody consumes them yet
+        int length = 1000 * server.getStreamChunkSize();
+        List<RPCClient> idle = new ArrayList<>();
+        List<Iterator<Integer>> streams = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            RPCClient client = createClient();
+            Stream<Integer> stream = client.streamStaticMethod(Source.class.getName(), "range", INT,
+                    new Object[]{length}, Integer.class);
+            Iterator<Integer> elements = stream.iterator();
+            assertEquals(0, (int) elements.next());
+            idle.add(client);
+            streams.add(elements);
+        }
+
+        // The only worker isn't stuck waiting for demand, on this connection or the others
+        RPCClient client = createClient();
+        assertEquals(9, (int) client.executeStaticMethodAsync(Source.class.getName(), "square", INT,
+                new Object[]{3}, Integer.class, CallOptions.DEFAULT).get(5, TimeUnit.SECONDS));
+        assertEquals(16, (int) idle.get(0).executeStaticMethodAsync(Source.class.getName(), "square", INT,
+                new Object[]{4}, Integer.class, CallOptions.DEFAULT).get(5, TimeUnit.SECONDS));
+
+        // Once their clients ask for more, the streams pick up where they left off
+        for (Iterator<Integer> elements : streams) {
+            for (int i = 1; i < length; i++) {
+                assertEquals(i, (int) elements.next());
+            }
+            assertFalse(elements.hasNext());
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void streamsAtTheRequestLimitDoNotHoldUpWorkers() throws Exception {
+        server.setAdmissionPolicy(AdmissionPolicy.DEFAULT.withMaxInFlightRequests(2));
+        nio = server.listen(new InetSocketAddress("127.0.0.1", 0), 1);
+        // The first two streams take up the room, and wait for demand; the rest wait for room
+        int length = 100 * server.getStreamChunkSize();
+        List<Iterator<Integer>> streams = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            streams.add(createClient().<Integer>streamStaticMethod(Source.class.getName(), "range", INT,
+                    new Object[]{length}, Integer.class).iterator());
+        }
+        CompletableFuture<Integer> square = createClient().executeStaticMethodAsync(Source.class.getName(),
+                "square", INT, new Object[]{3}, Integer.class, CallOptions.DEFAULT);
+
+        // The only worker is still free to resume the streams as their demand arrives, and they make room in turn
+        for (Iterator<Integer> elements : streams) {
+            for (int i = 0; i < length; i++) {
+                assertEquals(i, (int) elements.next());
+            }
+            assertFalse(elements.hasNext());
+        }
+        assertEquals(9, (int) square.get(5, TimeUnit.SECONDS));
+        assertEquals(0, server.getAdmissionControl().getInFlightRequestCount());
+    }
+
+    @Test
+    public void attachmentOfTheLargestMessageSize() throws Exception {
+        int maxMessageSize = 64 * 1024;
+        server.setAdmissionPolicy(AdmissionPolicy.DEFAULT.withMaxMessageSize(maxMessageSize));
+        nio = server.listen(new InetSocketAddress("127.0.0.1", 0), 1);
+        RPCClient client = createClient();
+        client.setAttachmentThreshold(0);
+        byte[] bytes = new byte[maxMessageSize];
+        Arrays.fill(bytes, (byte) 1);
+        // The payload alone fills a buffer of the largest message size, so its header needs room on top of that
+        assertEquals(maxMessageSize, (int) client.executeStaticMethodAsync(Source.class.getName(), "sum",
+                new String[]{byte[].class.getName()}, new Object[]{bytes}, Integer.class, CallOptions.DEFAULT)
+                .get(5, TimeUnit.SECONDS));
+        // Messages after it are still read
+        assertEquals(4, (int) client.executeStaticMethod(Source.class.getName(), "square", INT, new Object[]{2},
+                Integer.class));
+    }
+}
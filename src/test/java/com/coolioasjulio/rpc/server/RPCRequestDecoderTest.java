@@ -0,0 +1,124 @@
+package com.coolioasjulio.rpc.server;
+
+import com.coolioasjulio.rpc.RPCBatch;
+import com.coolioasjulio.rpc.RPCRequest;
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonSyntaxException;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RPCRequestDecoderTest {
+    private final Gson gson = new Gson();
+    private final RPCRequestDecoder decoder = new RPCRequestDecoder(gson, new DispatchCache());
+
+    @Test
+    public void argsAreBoundWhileReading() {
+        RPCRequest request = decoder.decode("{\"id\":7,\"className\":\"java.lang.Math\",\"methodName\":\"max\","
+                + "\"argClassNames\":[\"java.lang.Integer\",\"java.lang.Long\"],\"args\":[1,2],\"timeoutMillis\":50}");
+        assertEquals(7, request.getId());
+        assertEquals("java.lang.Math", request.getClassName());
+        assertEquals("max", request.getMethodName());
+        assertEquals(50, request.getTimeoutMillis());
+        assertTrue(request.isArgsTyped());
+        assertEquals(Arrays.asList(1, 2L), request.getArgs());
+    }
+
+    @Test
+    public void argsBeforeTheirClassNamesAreBoundAfterwards() {
+        RPCRequest request = decoder.decode("{\"args\":[\"a\",[1,2]],\"methodName\":\"foo\","
+                + "\"argClassNames\":[\"java.lang.String\",\"[I\"]}");
+        assertTrue(request.isArgsTyped());
+        assertEquals("a", request.getArgs().get(0));
+        assertTrue(Arrays.equals(new int[]{1, 2}, (int[]) request.getArgs().get(1)));
+    }
+
+    @Test
+    public void unknownClassesLeaveArgsUntyped() {
+        RPCRequest request = decoder.decode("{\"methodName\":\"foo\",\"argClassNames\":[\"com.example.Missing\"],"
+                + "\"args\":[{\"x\":1}]}");
+        assertFalse(request.isArgsTyped());
+        assertTrue(request.getArgs().get(0) instanceof JsonElement);
+    }
+
+    @Test
+    public void remoteObjectsAndHandlesArePassedByReference() {
+        RPCRequest request = decoder.decode("{\"methodName\":\"foo\",\"argClassNames\":[\"REMOTE:java.lang.Object\","
+                + "\"HANDLE:java.lang.Object\"],\"args\":[\"name\",3]}");
+        assertTrue(request.isArgsTyped());
+        assertEquals(Arrays.asList("name", 3), request.getArgs());
+    }
+
+    @Test
+    public void matchesGson() {
+        RPCRequest expected = new RPCRequest(3, true, "java.lang.StringBuilder", "", "", new String[0],
+                new Object[0]);
+        expected.setResultName("builder");
+        expected.setStream(true);
+        expected.setDemand(4);
+        RPCRequest request = decoder.decode(gson.toJson(expected));
+        assertEquals(3, request.getId());
+        assertTrue(request.isInstantiate());
+        assertEquals("builder", request.getResultName());
+        assertTrue(request.isStream());
+        assertEquals(4, request.getDemand());
+        assertTrue(request.getArgs().isEmpty());
+    }
+
+    @Test
+    public void controlRequestsAreRecognizedByTheirStart() {
+        RPCRequest cancel = new RPCRequest(5, false, "", "", "", null, null);
+        cancel.setCancel(true);
+        RPCRequest demand = new RPCRequest(6, false, "", "", "", null, null);
+        demand.setDemand(8);
+        assertTrue(RPCRequest.isControlJson(cancel.toControlJson()));
+        assertTrue(RPCRequest.isControlJson(demand.toControlJson()));
+
+        RPCRequest decoded = decoder.decode(cancel.toControlJson());
+        assertTrue(decoded.isCancel());
+        assertEquals(5, decoded.getId());
+        decoded = decoder.decode(demand.toControlJson());
+        assertTrue(decoded.isDemand());
+        assertEquals(6, decoded.getId());
+        assertEquals(8, decoded.getDemand());
+
+        // Streaming requests have a demand too, and arguments may mention anything
+        RPCRequest stream = new RPCRequest(7, false, "java.lang.String", "", "valueOf",
+                new String[]{"java.lang.String"}, new Object[]{"{\"cancel\":true,\"demand\":1}"});
+        stream.setStream(true);
+        stream.setDemand(4);
+        assertFalse(RPCRequest.isControlJson(gson.toJson(stream)));
+    }
+
+    @Test
+    public void batches() {
+        Object message = decoder.decodeMessage("{\"id\":1,\"stopOnError\":true,\"requests\":["
+                + "{\"id\":2,\"methodName\":\"a\"},{\"id\":3,\"methodName\":\"b\"}]}");
+        assertTrue(message instanceof RPCBatch);
+        RPCBatch batch = (RPCBatch) message;
+        assertEquals(1, batch.getId());
+        assertTrue(batch.isStopOnError());
+        assertEquals(2, batch.getRequests().size());
+        assertEquals("b", batch.getRequests().get(1).getMethodName());
+    }
+
+    @Test(expected = JsonSyntaxException.class)
+    public void batchIsNotASingleRequest() {
+        decoder.decode("{\"id\":1,\"requests\":[]}");
+    }
+
+    @Test(expected = JsonSyntaxException.class)
+    public void nestedBatchesAreRejected() {
+        decoder.decodeMessage("{\"requests\":[{\"requests\":[]}]}");
+    }
+
+    @Test(expected = JsonSyntaxException.class)
+    public void malformedJsonIsRejected() {
+        decoder.decode("{\"id\":");
+    }
+}
@@ -0,0 +1,140 @@
+package com.coolioasjulio.rpc.server;
+
+import com.coolioasjulio.rpc.RPCRequest;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RequestSchedulerTest {
+    private final ExecutorService executor = Executors.newFixedThreadPool(8);
+    private final RequestScheduler scheduler = new RequestScheduler(executor, 64);
+    private final List<String> events = Collections.synchronizedList(new ArrayList<>());
+
+    @After
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private static RPCRequest call(String objectName) {
+        return new RPCRequest(0, false, "", objectName, "method", null, null);
+    }
+
+    private static RPCRequest instantiate(String objectName) {
+        return new RPCRequest(0, true, "Foo", objectName, "", null, null);
+    }
+
+    private Runnable task(String name, long sleepMillis) {
+        return () -> {
+            events.add("start " + name);
+            try {
+                Thread.sleep(sleepMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            events.add("end " + name);
+        };
+    }
+
+    @Test
+    public void sameObjectRunsInOrder() throws InterruptedException {
+        for (int i = 0; i < 5; i++) {
+            // Earlier calls take longer, so they'd finish last if they weren't ordered
+            scheduler.submit(call("a"), task("a" + i, 25 - 5 * i));
+        }
+        scheduler.awaitIdle();
+
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            expected.add("start a" + i);
+            expected.add("end a" + i);
+        }
+        assertEquals(expected, events);
+    }
+
+    @Test
+    public void differentObjectsRunConcurrently() throws InterruptedException {
+        CountDownLatch bothStarted = new CountDownLatch(2);
+        CountDownLatch release = new CountDownLatch(1);
+        Runnable task = () -> {
+            bothStarted.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+        scheduler.submit(call("a"), task);
+        scheduler.submit(call("b"), task);
+        assertTrue(bothStarted.await(5, TimeUnit.SECONDS));
+        release.countDown();
+        scheduler.awaitIdle();
+    }
+
+    @Test
+    public void remoteArgumentsAreOrderedWithTheirObject() throws InterruptedException {
+        scheduler.submit(call("a"), task("call a", 30));
+        RPCRequest usesA = new RPCRequest(0, false, "Foo", "", "method",
+                new String[]{"REMOTE:Bar"}, new Object[]{"a"});
+        scheduler.submit(usesA, task("uses a", 0));
+        scheduler.awaitIdle();
+
+        assertEquals("end call a", events.get(1));
+        assertEquals("start uses a", events.get(2));
+    }
+
+    @Test
+    public void instantiationIsABarrier() throws InterruptedException {
+        scheduler.submit(call("a"), task("a", 30));
+        scheduler.submit(call("b"), task("b", 10));
+        scheduler.submit(instantiate("c"), task("barrier", 20));
+        scheduler.submit(call("d"), task("d", 0));
+        scheduler.awaitIdle();
+
+        int barrierStart = events.indexOf("start barrier");
+        int barrierEnd = events.indexOf("end barrier");
+        assertTrue(events.indexOf("end a") < barrierStart);
+        assertTrue(events.indexOf("end b") < barrierStart);
+        assertTrue(barrierEnd < events.indexOf("start d"));
+        assertEquals(barrierStart + 1, barrierEnd);
+    }
+
+    @Test
+    public void submitBlocksWhenTooManyAreInFlight() throws InterruptedException {
+        RequestScheduler limited = new RequestScheduler(executor, 1);
+        CountDownLatch release = new CountDownLatch(1);
+        limited.submit(call("a"), () -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        CountDownLatch submitted = new CountDownLatch(1);
+        Thread submitter = new Thread(() -> {
+            try {
+                limited.submit(call("b"), () -> {
+                });
+                submitted.countDown();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        submitter.start();
+        assertFalse(submitted.await(100, TimeUnit.MILLISECONDS));
+        release.countDown();
+        assertTrue(submitted.await(5, TimeUnit.SECONDS));
+        limited.awaitIdle();
+    }
+}
@@ -0,0 +1,246 @@
+package com.coolioasjulio.rpc.server;
+
+import com.coolioasjulio.rpc.client.RPCClient;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ResultCacheTest {
+    private static final String[] INT = {"java.lang.Integer"};
+
+    public static class Source {
+        public static final AtomicInteger invocations = new AtomicInteger();
+
+        @Memoize
+        public static int square(int x) {
+            invocations.incrementAndGet();
+            return x * x;
+        }
+
+        @Memoize
+        public static int length(CharSequence s) {
+            invocations.incrementAndGet();
+            return s.length();
+        }
+
+        @Memoize
+        public static List<Integer> range(int n) {
+            invocations.incrementAndGet();
+            List<Integer> elements = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                elements.add(i);
+            }
+            return elements;
+        }
+
+        public static int cube(int x) {
+            return x * x * x;
+        }
+
+        public int negate(int x) {
+            return -x;
+        }
+    }
+
+    private final RPCServer server = RPCServer.getInstance();
+    private RPCClient client;
+
+    @After
+    public void tearDown() throws Exception {
+        if (client != null) {
+            client.close();
+        }
+        server.close();
+        server.getResultCache().disallowAll();
+    }
+
+    private void connect() throws IOException {
+        try (ServerSocket serverSocket = new ServerSocket(0)) {
+            Socket clientSocket = new Socket("127.0.0.1", serverSocket.getLocalPort());
+            Socket session = serverSocket.accept();
+            server.createRPCSession(session.getInputStream(), session.getOutputStream(), true);
+            client = new RPCClient(clientSocket.getInputStream(), clientSocket.getOutputStream());
+        }
+        server.getResultCache().invalidateAll();
+        Source.invocations.set(0);
+    }
+
+    private static ResultCache.Key key(String args) throws NoSuchMethodException {
+        return new ResultCache.Key(Source.class.getMethod("square", int.class), args);
+    }
+
+    @Test
+    public void hitsAndMisses() throws Exception {
+        ResultCache cache = new ResultCache();
+        assertNull(cache.get(key("[2]")));
+        cache.put(key("[2]"), 4, "4");
+        ResultCache.Entry entry = cache.get(key("[2]"));
+        assertNotNull(entry);
+        assertEquals(4, entry.getValue());
+        assertEquals("4", entry.getJson());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(0.5, cache.getHitRate(), 0);
+    }
+
+    @Test
+    public void oldestEntriesAreEvicted() throws Exception {
+        ResultCache cache = new ResultCache();
+        cache.setMaximumSize(2);
+        cache.put(key("[1]"), 1, "1");
+        cache.put(key("[2]"), 4, "4");
+        cache.put(key("[3]"), 9, "9");
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+        assertNull(cache.get(key("[1]")));
+
+        // Results are also evicted to stay under the byte limit, and results over it aren't cached at all
+        cache.setMaximumBytes(3);
+        cache.put(key("[10]"), 100, "100");
+        assertEquals(1, cache.size());
+        assertEquals(3, cache.getBytes());
+        cache.put(key("[100]"), 10000, "10000");
+        assertNull(cache.get(key("[100]")));
+    }
+
+    @Test
+    public void entriesExpire() throws Exception {
+        ResultCache cache = new ResultCache();
+        cache.setTimeToLive(1, TimeUnit.MILLISECONDS);
+        cache.put(key("[2]"), 4, "4");
+        Thread.sleep(10);
+        assertNull(cache.get(key("[2]")));
+        assertEquals(1, cache.getExpirationCount());
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getBytes());
+    }
+
+    @Test
+    public void invalidateAll() throws Exception {
+        ResultCache cache = new ResultCache();
+        cache.put(key("[1]"), 1, "1");
+        cache.put(key("[2]"), 4, "4");
+        cache.invalidateAll();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getBytes());
+        assertNull(cache.get(key("[1]")));
+        assertEquals(0, cache.getEvictionCount());
+    }
+
+    @Test
+    public void onlyAllowedStaticMethodsAreCacheable() throws Exception {
+        ResultCache cache = new ResultCache();
+        Method square = Source.class.getMethod("square", int.class);
+        Method cube = Source.class.getMethod("cube", int.class);
+        Method negate = Source.class.getMethod("negate", int.class);
+        assertTrue(cache.isCacheable(square));
+        assertFalse(cache.isCacheable(cube));
+        cache.allow(Source.class, "cube");
+        assertTrue(cache.isCacheable(cube));
+        cache.allow(Source.class);
+        assertFalse(cache.isCacheable(negate));
+        cache.disallowAll();
+        assertFalse(cache.isCacheable(cube));
+        assertTrue(cache.isCacheable(square));
+    }
+
+    @Test
+    public void countsStayConsistentUnderContention() throws Exception {
+        ResultCache cache = new ResultCache();
+        cache.setMaximumSize(64);
+        List<Thread> writers = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            int offset = t * 2000;
+            writers.add(new Thread(() -> {
+                try {
+                    for (int i = 0; i < 2000; i++) {
+                        cache.put(key("[" + (offset + i) + "]"), i, "1");
+                        if (i % 500 == 0) {
+                            cache.invalidateAll();
+                        }
+                    }
+                } catch (NoSuchMethodException e) {
+                    throw new AssertionError(e);
+                }
+            }));
+        }
+        for (Thread writer : writers) {
+            writer.start();
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        assertTrue(cache.size() <= 64);
+        assertEquals(cache.size(), cache.getBytes());
+    }
+
+    @Test
+    public void repeatedCallsHitTheCache() throws Exception {
+        connect();
+        for (int i = 0; i < 3; i++) {
+            assertEquals(49, (int) client.executeStaticMethod(Source.class.getName(), "square", INT,
+                    new Object[]{7}, Integer.class));
+        }
+        assertEquals(1, Source.invocations.get());
+        assertEquals(2, server.getResultCache().getHitCount());
+        // Other arguments are cached separately
+        assertEquals(64, (int) client.executeStaticMethod(Source.class.getName(), "square", INT, new Object[]{8},
+                Integer.class));
+        assertEquals(2, Source.invocations.get());
+    }
+
+    @Test
+    public void invalidatedResultsAreComputedAgain() throws Exception {
+        connect();
+        client.executeStaticMethod(Source.class.getName(), "square", INT, new Object[]{7}, Integer.class);
+        server.getResultCache().invalidateAll();
+        client.executeStaticMethod(Source.class.getName(), "square", INT, new Object[]{7}, Integer.class);
+        assertEquals(2, Source.invocations.get());
+    }
+
+    @Test
+    public void remoteArgumentsAreNotCached() throws Exception {
+        connect();
+        client.instantiateObject(StringBuilder.class.getName(), "builder");
+        String[] remote = {"REMOTE:java.lang.CharSequence"};
+        assertEquals(0, (int) client.executeStaticMethod(Source.class.getName(), "length", remote,
+                new Object[]{"builder"}, Integer.class));
+        client.executeMethod("builder", "append", new String[]{"java.lang.String"}, new Object[]{"abc"});
+        // The remote object changed, so the same reference has to give a different result
+        assertEquals(3, (int) client.executeStaticMethod(Source.class.getName(), "length", remote,
+                new Object[]{"builder"}, Integer.class));
+        assertEquals(2, Source.invocations.get());
+        assertEquals(0, server.getResultCache().size());
+    }
+
+    @Test
+    public void streamedResultsAreNotCached() throws Exception {
+        connect();
+        List<Integer> expected = Arrays.asList(0, 1, 2, 3, 4);
+        for (int i = 0; i < 2; i++) {
+            try (Stream<Integer> elements = client.streamStaticMethod(Source.class.getName(), "range", INT,
+                    new Object[]{5}, Integer.class)) {
+                assertEquals(expected, elements.collect(Collectors.toList()));
+            }
+        }
+        assertEquals(2, Source.invocations.get());
+        assertEquals(0, server.getResultCache().size());
+    }
+}
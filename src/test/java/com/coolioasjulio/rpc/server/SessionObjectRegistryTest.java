@@ -0,0 +1,115 @@
+package com.coolioasjulio.rpc.server;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SessionObjectRegistryTest {
+    @Test
+    public void evictsLeastRecentlyUsed() {
+        SessionObjectRegistry registry = new SessionObjectRegistry(
+                SessionObjectPolicy.DEFAULT.withMaxObjects(3), null);
+        registry.put("a", 1);
+        registry.put("b", 2);
+        int handle = registry.putHandle(3);
+        registry.get("a"); // Now b is the least recently used
+
+        registry.put("d", 4);
+        assertFalse(registry.containsKey("b"));
+        assertEquals(1, registry.get("a"));
+        assertEquals(3, registry.getHandle(handle));
+        assertEquals(4, registry.get("d"));
+        assertEquals(3, registry.getObjectCount());
+        assertEquals(1, registry.getEvictionCount());
+    }
+
+    @Test
+    public void evictsOverMaxBytes() {
+        SessionObjectRegistry registry = new SessionObjectRegistry(SessionObjectPolicy.DEFAULT
+                .withMaxBytes(2500)
+                .withSizeEstimator(value -> ((byte[]) value).length), null);
+        registry.put("a", new byte[1000]);
+        registry.put("b", new byte[1000]);
+        assertEquals(2000, registry.getResidentBytes());
+
+        registry.put("c", new byte[1000]);
+        assertFalse(registry.containsKey("a"));
+        assertEquals(2000, registry.getResidentBytes());
+
+        // An object over the limit on its own is still kept, but everything else goes
+        registry.put("d", new byte[5000]);
+        assertEquals(1, registry.getObjectCount());
+        assertTrue(registry.containsKey("d"));
+    }
+
+    @Test
+    public void evictsIdleObjects() throws InterruptedException {
+        SessionObjectRegistry registry = new SessionObjectRegistry(
+                SessionObjectPolicy.DEFAULT.withIdleTimeout(100, TimeUnit.MILLISECONDS), null);
+        registry.put("idle", 1);
+        registry.put("used", 2);
+        int handle = registry.putHandle(3);
+        for (int i = 0; i < 4; i++) {
+            Thread.sleep(40);
+            registry.get("used");
+        }
+
+        assertNull(registry.get("idle"));
+        assertFalse(registry.containsHandle(handle));
+        assertEquals(2, registry.get("used"));
+        assertEquals(2, registry.getEvictionCount());
+    }
+
+    @Test
+    public void replacingAnObjectIsNotAnEviction() {
+        SessionObjectRegistry registry = new SessionObjectRegistry();
+        registry.put("a", 1);
+        assertEquals(1, registry.put("a", 2));
+        assertEquals(2, registry.get("a"));
+        assertEquals(1, registry.getObjectCount());
+        assertEquals(0, registry.getEvictionCount());
+    }
+
+    @Test
+    public void staleHandleDoesNotFindReusedSlot() {
+        SessionObjectRegistry registry = new SessionObjectRegistry();
+        int first = registry.putHandle("first");
+        assertTrue(registry.releaseHandle(first));
+        assertFalse(registry.releaseHandle(first));
+
+        int second = registry.putHandle("second");
+        assertNotEquals(first, second);
+        assertNull(registry.getHandle(first));
+        assertFalse(registry.releaseHandle(first));
+        assertEquals("second", registry.getHandle(second));
+    }
+
+    @Test
+    public void handlesStayValidWhileOthersAreReleased() {
+        SessionObjectRegistry registry = new SessionObjectRegistry();
+        int[] handles = new int[100];
+        for (int i = 0; i < handles.length; i++) {
+            handles[i] = registry.putHandle(i);
+            assertTrue(handles[i] > 0);
+        }
+        for (int i = 0; i < handles.length; i += 2) {
+            registry.releaseHandle(handles[i]);
+        }
+        for (int i = 0; i < handles.length; i++) {
+            if (i % 2 == 0) {
+                assertNull(registry.getHandle(handles[i]));
+            } else {
+                assertEquals(i, registry.getHandle(handles[i]));
+            }
+        }
+        assertEquals(50, registry.getObjectCount());
+        // Objects stored under handles aren't part of the map view
+        assertEquals(0, registry.size());
+    }
+}
@@ -0,0 +1,217 @@
+package com.coolioasjulio.rpc.server;
+
+import com.coolioasjulio.rpc.client.CallOptions;
+import com.coolioasjulio.rpc.client.RPCClient;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class SessionThreadTest {
+    private static final String[] INT = {"java.lang.Integer"};
+
+    public static class Source {
+        static volatile CountDownLatch gate = new CountDownLatch(0);
+
+        public static int square(int x) {
+            return x * x;
+        }
+
+        public static String threadName() {
+            return Thread.currentThread().getName();
+        }
+
+        public static boolean await() throws InterruptedException {
+            return gate.await(10, TimeUnit.SECONDS);
+        }
+    }
+
+    private final RPCServer server = RPCServer.getInstance();
+    private final List<RPCClient> clients = new CopyOnWriteArrayList<>();
+    private final List<Thread> created = new CopyOnWriteArrayList<>();
+
+    @After
+    public void tearDown() throws Exception {
+        Source.gate.countDown();
+        for (RPCClient client : clients) {
+            client.close();
+        }
+        server.close();
+        server.setSessionThreadFactory(null);
+        server.setAdmissionPolicy(AdmissionPolicy.DEFAULT);
+    }
+
+    /**
+     * Wrap a thread factory so that the threads it creates are recorded in <code>created</code>.
+     */
+    private ThreadFactory recording(ThreadFactory factory) {
+        return r -> {
+            Thread t = factory.newThread(r);
+            created.add(t);
+            return t;
+        };
+    }
+
+    /**
+     * Connect a new client to a new session of the server.
+     *
+     * @param sessions The session is added to this.
+     * @return The client, which is closed after the test.
+     */
+    private RPCClient connect(List<RPCServer.RPCSession> sessions) throws IOException {
+        try (ServerSocket serverSocket = new ServerSocket(0)) {
+            Socket clientSocket = new Socket("127.0.0.1", serverSocket.getLocalPort());
+            Socket session = serverSocket.accept();
+            sessions.add(server.createRPCSession(session.getInputStream(), session.getOutputStream(), true));
+            RPCClient client = new RPCClient(clientSocket.getInputStream(), clientSocket.getOutputStream());
+            clients.add(client);
+            return client;
+        }
+    }
+
+    private RPCClient connect() throws IOException {
+        return connect(new ArrayList<>());
+    }
+
+    private static void awaitSessionCount(RPCServer server, int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (server.getSessionCount() != count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(count, server.getSessionCount());
+    }
+
+    @Test
+    public void sessionsRunOnTheFactorysThreads() throws Exception {
+        server.setSessionThreadFactory(recording(r -> {
+            Thread t = new Thread(r, "Custom-" + created.size());
+            t.setDaemon(true);
+            return t;
+        }));
+        RPCClient first = connect();
+        RPCClient second = connect();
+
+        // Without a request executor, requests run on the thread of their session
+        assertEquals(2, created.size());
+        assertEquals("Custom-0", first.executeStaticMethod(Source.class.getName(), "threadName",
+                new String[0], new Object[0], String.class));
+        assertEquals("Custom-1", second.executeStaticMethod(Source.class.getName(), "threadName",
+                new String[0], new Object[0], String.class));
+
+        // Sessions created after it's reset get a new platform thread again
+        server.setSessionThreadFactory(null);
+        RPCClient third = connect();
+        assertEquals(2, created.size());
+        assertNotEquals("Custom-2", third.executeStaticMethod(Source.class.getName(), "threadName",
+                new String[0], new Object[0], String.class));
+    }
+
+    @Test
+    public void sessionsWaitForAdmissionOnLocks() throws Exception {
+        // Virtual threads where there are any, otherwise a factory that makes the same kind of threads: daemons that
+        // the server can't configure any further
+        server.setSessionThreadFactory(recording(SessionThreadFactories.isVirtualThreadSupported()
+                ? SessionThreadFactories.virtualThreads() : SessionThreadFactories.platformThreads(true)));
+        server.setAdmissionPolicy(AdmissionPolicy.DEFAULT.withMaxInFlightRequests(1));
+        Source.gate = new CountDownLatch(1);
+        RPCClient holder = connect();
+        RPCClient waiter = connect();
+
+        // The first session holds the only slot, so the request of the second waits for it on its session thread
+        CompletableFuture<Boolean> holding = holder.executeStaticMethodAsync(Source.class.getName(), "await",
+                new String[0], new Object[0], Boolean.class, CallOptions.DEFAULT);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (server.getAdmissionControl().getInFlightRequestCount() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        CompletableFuture<Integer> waiting = waiter.executeStaticMethodAsync(Source.class.getName(), "square",
+                INT, new Object[]{3}, Integer.class, CallOptions.DEFAULT);
+
+        Thread session = created.get(1);
+        while (session.getState() != Thread.State.WAITING && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        // Parked on a condition, without holding a monitor, which would pin a virtual thread to its carrier
+        assertEquals(Thread.State.WAITING, session.getState());
+        ThreadInfo info = ManagementFactory.getThreadMXBean().getThreadInfo(new long[]{session.getId()}, true,
+                true)[0];
+        if (info != null) { // Virtual threads have no thread info
+            assertNotNull(info.getLockInfo());
+            assertTrue(info.getLockInfo().getClassName(),
+                    info.getLockInfo().getClassName().startsWith("java.util.concurrent.locks."));
+            assertEquals(0, info.getLockedMonitors().length);
+        }
+        assertFalse(waiting.isDone());
+
+        Source.gate.countDown();
+        assertTrue(holding.get(5, TimeUnit.SECONDS));
+        assertEquals(9, (int) waiting.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void sessionCountSurvivesChurn() throws Exception {
+        int threads = 8;
+        int rounds = 20;
+        CyclicBarrier opened = new CyclicBarrier(threads);
+        CyclicBarrier counted = new CyclicBarrier(threads);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> churners = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                boolean closeFromServer = i % 2 == 0;
+                churners.add(executor.submit(() -> {
+                    for (int round = 0; round < rounds; round++) {
+                        List<RPCServer.RPCSession> sessions = new ArrayList<>();
+                        RPCClient client = connect(sessions);
+                        RPCServer.RPCSession session = sessions.get(0);
+                        assertEquals(round * round, (int) client.executeStaticMethod(Source.class.getName(),
+                                "square", INT, new Object[]{round}, Integer.class));
+
+                        // Every session of this round is open now, and none of the earlier rounds are
+                        opened.await(5, TimeUnit.SECONDS);
+                        assertEquals(threads, server.getSessionCount());
+                        counted.await(5, TimeUnit.SECONDS);
+
+                        // Half the sessions are closed by the server, and half end when their client hangs up. A
+                        // session reading its socket only notices it was closed once the client hangs up too.
+                        if (closeFromServer) {
+                            session.close(true);
+                        }
+                        clients.remove(client);
+                        client.close();
+                        session.join();
+                        counted.await(5, TimeUnit.SECONDS);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> churner : churners) {
+                churner.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        awaitSessionCount(server, 0);
+    }
+}
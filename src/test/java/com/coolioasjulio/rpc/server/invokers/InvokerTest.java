@@ -0,0 +1,162 @@
+package com.coolioasjulio.rpc.server.invokers;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Executable;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class InvokerTest {
+    public static class Target {
+        private final String prefix;
+
+        public Target(String prefix) {
+            this.prefix = prefix;
+        }
+
+        public static long add(long a, int b) {
+            return a + b;
+        }
+
+        public static Object fail(String message) {
+            throw new IllegalStateException(message);
+        }
+
+        public String greet(String name, int times) {
+            StringBuilder sb = new StringBuilder(prefix);
+            for (int i = 0; i < times; i++) {
+                sb.append(name);
+            }
+            return sb.toString();
+        }
+    }
+
+    public static class Counter {
+        public static int calls;
+
+        public static Integer increment() {
+            return ++calls;
+        }
+    }
+
+    /**
+     * Loads its own copy of <code>Counter</code>, like a plugin class loader would.
+     */
+    private static class IsolatingClassLoader extends ClassLoader {
+        private IsolatingClassLoader() {
+            super(InvokerTest.class.getClassLoader());
+        }
+
+        @Override
+        protected synchronized Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            if (!name.equals(Counter.class.getName())) {
+                return super.loadClass(name, resolve);
+            }
+            Class<?> c = findLoadedClass(name);
+            if (c == null) {
+                String resource = name.replace('.', '/') + ".class";
+                try (InputStream in = getParent().getResourceAsStream(resource)) {
+                    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                    byte[] buffer = new byte[4096];
+                    int n;
+                    while ((n = in.read(buffer)) > 0) {
+                        bytes.write(buffer, 0, n);
+                    }
+                    c = defineClass(name, bytes.toByteArray(), 0, bytes.size());
+                } catch (IOException e) {
+                    throw new ClassNotFoundException(name, e);
+                }
+            }
+            return c;
+        }
+    }
+
+    private static Invoker[] invokers(Executable member) throws IllegalAccessException {
+        return new Invoker[]{new ReflectiveInvoker(member), new MethodHandleInvoker(member),
+                new GeneratedInvoker(member)};
+    }
+
+    private static void assertThrows(Class<? extends Throwable> expected, Invoker invoker, Object target,
+                                     Object... args) throws Exception {
+        try {
+            invoker.invoke(target, args);
+            fail(invoker.getClass().getSimpleName() + " should have thrown " + expected.getSimpleName());
+        } catch (Exception e) {
+            assertEquals(invoker.getClass().getSimpleName(), expected, e.getClass());
+        }
+    }
+
+    @Test
+    public void invokersAgreeOnResults() throws Exception {
+        Executable add = Target.class.getMethod("add", long.class, int.class);
+        Executable greet = Target.class.getMethod("greet", String.class, int.class);
+        Executable constructor = Target.class.getConstructor(String.class);
+        for (Invoker invoker : invokers(add)) {
+            assertEquals(5L, invoker.invoke(null, new Object[]{2L, 3}));
+            // An int widens to a long parameter, and a short to an int
+            assertEquals(5L, invoker.invoke(null, new Object[]{2, (short) 3}));
+        }
+        for (Invoker invoker : invokers(greet)) {
+            assertEquals("> hi hi", invoker.invoke(new Target(">"), new Object[]{" hi", 2}));
+        }
+        for (Invoker invoker : invokers(constructor)) {
+            Target target = (Target) invoker.invoke(null, new Object[]{"!"});
+            assertEquals("!", target.greet("", 0));
+        }
+    }
+
+    @Test
+    public void exceptionsFromTheMethodAreWrapped() throws Exception {
+        Executable method = Target.class.getMethod("fail", String.class);
+        for (Invoker invoker : invokers(method)) {
+            try {
+                invoker.invoke(null, new Object[]{"boom"});
+                fail("The exception should have been thrown");
+            } catch (InvocationTargetException e) {
+                assertTrue(e.getCause() instanceof IllegalStateException);
+                assertEquals("boom", e.getCause().getMessage());
+            }
+        }
+    }
+
+    @Test
+    public void badArgumentsAreReportedLikeReflection() throws Exception {
+        Executable add = Target.class.getMethod("add", long.class, int.class);
+        Executable greet = Target.class.getMethod("greet", String.class, int.class);
+        for (Invoker invoker : invokers(add)) {
+            assertThrows(IllegalArgumentException.class, invoker, null, 1L, null);
+            assertThrows(IllegalArgumentException.class, invoker, null, 1L, 2L);
+            assertThrows(IllegalArgumentException.class, invoker, null, "1", 2);
+            assertThrows(IllegalArgumentException.class, invoker, null, 1L);
+        }
+        for (Invoker invoker : invokers(greet)) {
+            assertThrows(NullPointerException.class, invoker, null, "a", 1);
+            assertThrows(IllegalArgumentException.class, invoker, "not a target", "a", 1);
+            assertThrows(IllegalArgumentException.class, invoker, new Target(""), 1, 1);
+        }
+    }
+
+    @Test
+    public void classesFromOtherLoadersUseMethodHandles() throws Exception {
+        Class<?> isolated = new IsolatingClassLoader().loadClass(Counter.class.getName());
+        assertNotSame(Counter.class, isolated);
+        Method increment = isolated.getMethod("increment");
+        assertFalse(GeneratedInvoker.isSupported(increment));
+
+        TieredInvoker invoker = new TieredInvoker(increment, InvocationMode.GENERATED, 0);
+        assertTrue(invoker.getDelegate() instanceof MethodHandleInvoker);
+        assertEquals(1, invoker.invoke(null, new Object[0]));
+        assertEquals(2, invoker.invoke(null, new Object[0]));
+        // The copy in this class loader wasn't called
+        assertEquals(0, Counter.calls);
+    }
+}
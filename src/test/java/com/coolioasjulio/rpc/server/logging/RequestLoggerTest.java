@@ -0,0 +1,184 @@
+package com.coolioasjulio.rpc.server.logging;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class RequestLoggerTest {
+    private final List<RequestEvent> events = new CopyOnWriteArrayList<>();
+    private RequestLogger logger;
+
+    @After
+    public void tearDown() {
+        if (logger != null) {
+            logger.close();
+        }
+    }
+
+    private RequestLogger createLogger(int capacity) {
+        logger = new RequestLogger(capacity);
+        logger.setWriter(events::add);
+        logger.setEnabled(true);
+        return logger;
+    }
+
+    private static RequestEvent event(long id) {
+        return new RequestEvent(0, "session", id, "method", 1000, RequestEvent.Outcome.SUCCESS, null, null, null);
+    }
+
+    @Test
+    public void sampling() {
+        RequestLogger logger = new RequestLogger();
+        assertFalse(logger.shouldLog());
+        logger.setEnabled(true);
+        assertTrue(logger.shouldLog());
+        logger.setSampleRate(0);
+        assertFalse(logger.shouldLog());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void sampleRateIsAFraction() {
+        new RequestLogger().setSampleRate(2);
+    }
+
+    @Test
+    public void eventsAreWrittenInOrder() {
+        createLogger(16);
+        logger.setOverflowPolicy(OverflowPolicy.BLOCK);
+        for (int i = 0; i < 100; i++) {
+            assertTrue(logger.log(event(i)));
+        }
+        assertTrue(logger.flush(5, TimeUnit.SECONDS));
+        assertEquals(100, logger.getWrittenCount());
+        for (int i = 0; i < events.size(); i++) {
+            assertEquals(i, events.get(i).getRequestId());
+        }
+    }
+
+    @Test
+    public void fullBufferDropsEvents() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch writing = new CountDownLatch(1);
+        createLogger(2);
+        logger.setWriter(event -> {
+            writing.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            events.add(event);
+        });
+        assertTrue(logger.log(event(0)));
+        assertTrue(writing.await(5, TimeUnit.SECONDS));
+        // The writer is stuck on the first event, so the buffer holds two more
+        assertTrue(logger.log(event(1)));
+        assertTrue(logger.log(event(2)));
+        assertFalse(logger.log(event(3)));
+        assertEquals(1, logger.getDroppedCount());
+
+        release.countDown();
+        assertTrue(logger.flush(5, TimeUnit.SECONDS));
+        assertEquals(3, events.size());
+    }
+
+    @Test
+    public void blockingLosesNothing() {
+        createLogger(2);
+        logger.setOverflowPolicy(OverflowPolicy.BLOCK);
+        logger.setWriter(event -> {
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            events.add(event);
+        });
+        for (int i = 0; i < 20; i++) {
+            assertTrue(logger.log(event(i)));
+        }
+        assertTrue(logger.flush(5, TimeUnit.SECONDS));
+        assertEquals(20, events.size());
+        assertEquals(0, logger.getDroppedCount());
+    }
+
+    @Test
+    public void errorsAreLoggedEvenWhenRequestsArent() {
+        createLogger(16);
+        logger.setEnabled(false);
+        IllegalStateException error = new IllegalStateException("Failed on purpose");
+        logger.logError("session", 1, "method", error);
+        logger.setErrorLoggingEnabled(false);
+        logger.logError("session", 2, "method", error);
+        assertTrue(logger.flush(5, TimeUnit.SECONDS));
+        assertEquals(1, events.size());
+        assertEquals(RequestEvent.Outcome.EXCEPTION, events.get(0).getOutcome());
+        assertEquals(error, events.get(0).getError());
+    }
+
+    @Test
+    public void closeWritesQueuedEvents() {
+        createLogger(16);
+        for (int i = 0; i < 10; i++) {
+            logger.log(event(i));
+        }
+        logger.close();
+        assertEquals(10, events.size());
+        assertFalse(logger.log(event(10)));
+    }
+
+    @Test
+    public void printStreamWriterQuotesPayloads() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        PrintStreamLogWriter writer = new PrintStreamLogWriter(new PrintStream(out), new PrintStream(err));
+        writer.write(new RequestEvent(0, "s", 3, "m", 2000, RequestEvent.Outcome.SUCCESS, "{\"a\":\"b\"}", "1",
+                null));
+        writer.flush();
+        String line = new String(out.toByteArray(), StandardCharsets.UTF_8);
+        assertTrue(line, line.contains(" session=s id=3 method=m outcome=SUCCESS duration_us=2 "));
+        assertTrue(line, line.contains("request=\"{\\\"a\\\":\\\"b\\\"}\" response=\"1\""));
+        assertEquals(0, err.size());
+
+        writer.write(new RequestEvent(0, "s", 4, "m", -1, RequestEvent.Outcome.EXCEPTION, null, null,
+                new IllegalStateException("oops")));
+        writer.flush();
+        String error = new String(err.toByteArray(), StandardCharsets.UTF_8);
+        assertTrue(error, error.contains("error=\"java.lang.IllegalStateException: oops\""));
+        assertFalse(error, error.contains("duration_us"));
+    }
+
+    @Test
+    public void writerFailuresDontStopLogging() {
+        createLogger(16);
+        logger.setWriter(event -> {
+            if (event.getRequestId() == 0) {
+                throw new IllegalStateException("Failed on purpose");
+            }
+            events.add(event);
+        });
+        PrintStream err = System.err;
+        System.setErr(new PrintStream(new ByteArrayOutputStream()));
+        try {
+            logger.log(event(0));
+            logger.log(event(1));
+            assertTrue(logger.flush(5, TimeUnit.SECONDS));
+        } finally {
+            System.setErr(err);
+        }
+        assertEquals(1, events.size());
+        assertNull(events.get(0).getError());
+    }
+}
@@ -0,0 +1,133 @@
+package com.coolioasjulio.rpc.server.metrics;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class RPCMetricsTest {
+    private final RPCMetrics metrics = new RPCMetrics();
+
+    @Test
+    public void callsAreRecordedPerMethodAndPhase() {
+        SessionMetrics session = metrics.openSession("client");
+        MethodMetrics max = metrics.getMethodMetrics("java.lang.Math.max(int,int)");
+        session.recordDispatch(max, 2000, 5000);
+        metrics.recordCall(session, false, 1000, 3000);
+        session.recordDispatch(max, 2000, 5000);
+        metrics.recordCall(session, true, 1000, 3000);
+
+        assertEquals(2, metrics.getRequestCount());
+        assertEquals(1, metrics.getErrorCount());
+        assertEquals(2, max.getCallCount());
+        assertEquals(1, max.getErrorCount());
+        assertEquals(2, session.getRequestCount());
+        assertEquals(2, metrics.getLatency(Phase.INVOKE).getCount());
+        assertEquals(5000, metrics.getLatency(Phase.INVOKE).getMaxNanos());
+        assertEquals(3000, max.getLatency(Phase.SERIALIZE).getMaxNanos());
+        assertEquals(5.0, metrics.getLatencyMicros("invoke", 50), 5.0 / 8);
+    }
+
+    @Test
+    public void unresolvedCalls() {
+        SessionMetrics session = metrics.openSession("client");
+        metrics.recordCall(session, true, 1000, 3000);
+        assertEquals(1, metrics.getUnresolvedMetrics().getCallCount());
+        assertTrue(metrics.getMethods().isEmpty());
+    }
+
+    @Test
+    public void batchedCallsAreParsedOnce() {
+        SessionMetrics session = metrics.openSession("client");
+        MethodMetrics max = metrics.getMethodMetrics("max");
+        for (int i = 0; i < 3; i++) {
+            session.recordDispatch(max, 100, 100);
+            metrics.recordCall(session, false, -1, -1);
+        }
+        metrics.recordBatch(1000, 1000);
+        assertEquals(3, metrics.getRequestCount());
+        assertEquals(3, metrics.getLatency(Phase.INVOKE).getCount());
+        assertEquals(1, metrics.getLatency(Phase.PARSE).getCount());
+        assertEquals(0, max.getLatency(Phase.PARSE).getCount());
+    }
+
+    @Test
+    public void disabledMetricsStillCountSessionRequests() {
+        metrics.setEnabled(false);
+        SessionMetrics session = metrics.openSession("client");
+        session.recordDispatch(metrics.getMethodMetrics("max"), 100, 100);
+        metrics.recordCall(session, false, 100, 100);
+        assertEquals(0, metrics.getRequestCount());
+        assertEquals(1, session.getRequestCount());
+    }
+
+    @Test
+    public void listenersSeeCallsAndClosedSessions() {
+        List<MethodMetrics> calls = new ArrayList<>();
+        List<SessionMetrics> closed = new ArrayList<>();
+        MetricsListener listener = new MetricsListener() {
+            @Override
+            public void onCall(SessionMetrics session, MethodMetrics method, boolean isException, long parseNanos,
+                               long dispatchNanos, long invokeNanos, long serializeNanos) {
+                calls.add(method);
+            }
+
+            @Override
+            public void onSessionClosed(SessionMetrics session) {
+                closed.add(session);
+            }
+        };
+        metrics.addListener(listener);
+        SessionMetrics session = metrics.openSession("client");
+        MethodMetrics max = metrics.getMethodMetrics("max");
+        session.recordDispatch(max, 100, 100);
+        metrics.recordCall(session, false, 100, 100);
+        assertEquals(1, metrics.getSessionCount());
+        metrics.closeSession(session);
+        metrics.closeSession(session); // Closing twice only reports it once
+
+        assertEquals(1, calls.size());
+        assertSame(max, calls.get(0));
+        assertEquals(1, closed.size());
+        assertTrue(session.isClosed());
+        assertEquals(0, metrics.getSessionCount());
+
+        metrics.removeListener(listener);
+        session = metrics.openSession("other");
+        metrics.recordCall(session, false, 100, 100);
+        assertEquals(1, calls.size());
+    }
+
+    @Test
+    public void trafficIsCountedPerSessionAndOverall() {
+        SessionMetrics first = metrics.openSession("first");
+        SessionMetrics second = metrics.openSession("second");
+        first.recordBytesIn(10);
+        second.recordBytesIn(20);
+        first.recordBytesOut(5);
+        assertEquals(10, first.getBytesIn());
+        assertEquals(30, metrics.getBytesIn());
+        assertEquals(5, metrics.getBytesOut());
+    }
+
+    @Test
+    public void resetKeepsSessions() {
+        SessionMetrics session = metrics.openSession("client");
+        MethodMetrics max = metrics.getMethodMetrics("max");
+        session.recordDispatch(max, 100, 100);
+        metrics.recordCall(session, false, 100, 100);
+        session.recordBytesIn(10);
+        metrics.reset();
+        assertEquals(0, metrics.getRequestCount());
+        assertEquals(0, metrics.getBytesIn());
+        assertEquals(0, max.getCallCount());
+        assertEquals(0, metrics.getLatency(Phase.INVOKE).getCount());
+        assertEquals(1, metrics.getSessionCount());
+        assertFalse(session.isClosed());
+    }
+}